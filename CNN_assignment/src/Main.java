@@ -118,8 +118,8 @@ public class Main extends JFrame implements ActionListener{
     // Method to train the Convolutional Neural Network
 	private void trainCNN() {
         
-		// Creating a thread pool with 12 threads
-		ExecutorService executorService = Executors.newFixedThreadPool(12);
+		// Creating a background thread so training does not block the GUI, the training itself runs on all cores
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
 		
 		// Execute a task in the executor service, which runs the Convolutional Neural Network (CNN) training process.
 		// Upon completion, update the output field with logs using the Logger class.
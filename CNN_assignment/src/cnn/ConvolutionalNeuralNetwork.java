@@ -7,10 +7,7 @@
  */
 package cnn;
 
-import static java.util.Collections.shuffle;
-
 import java.awt.BorderLayout;
-import java.util.List;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -22,10 +19,7 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
-import data.DataReader;
-import data.Image;
-import network.NetworkBuilder;
-import network.NeuralNetwork;
+import data.Dataset;
 
 public class ConvolutionalNeuralNetwork {
 
@@ -35,38 +29,9 @@ public class ConvolutionalNeuralNetwork {
 		Logger.createLogger();
 		Logger.writeLogger("Logger.txt created");
 
-		// Seed for random number generation
-		long SEED = 123;
-
-        // Starting message for data loading
-		System.out.println("\nStarting data loading...");
-		Logger.writeLogger("Data loaded");
-
-        // Loading image data from files using DataReader
-		List<Image> imageTest = new DataReader().readData("data/mnist_test.csv");
-		List<Image> imageTrain = new DataReader().readData("data/mnist_train.csv");
-
-        // Displaying the size of loaded image datasets
-		System.out.println("Image Train size: "+ imageTrain.size());
-		Logger.writeLogger("Image Train size: "+ imageTrain.size());
-
-		System.out.println("Image test size: "+ imageTest.size());
-		Logger.writeLogger("Image test size: "+ imageTest.size());
-
-
-		Logger.writeLogger("Creating Neural Network architecture....");
-
-        // Creating a Neural Network architecture using NetworkBuilder
-		NetworkBuilder builder = new NetworkBuilder(28, 28, 256 * 100);
-		builder.addConvolutionLayer(8, 8, 1, 0.1, SEED);
-		builder.addMaxPoolLayer(3, 2);
-		builder.addFullyConnectedLayer(10, 0.1, SEED);
-
-
-        // Building the Neural Network
-		NeuralNetwork net = builder.build();
-
-		Logger.writeLogger("Neural Network bulit");
+        // The datasets, architecture, epochs, batch size and SEED of this run are the defaults of TrainingConfig
+		TrainingConfig config = TrainingConfig.defaults();
+		Logger.writeLogger("Training with " + config.getSettings());
 
 		// Create chart panel
 		JPanel chartPanel = createChartPanel();
@@ -80,50 +45,48 @@ public class ConvolutionalNeuralNetwork {
         
         XYSeries validationAccuracySeries = new XYSeries("Validation Accuracy");
         XYSeries epochSeries = new XYSeries("Epochs");
-		
-        // Testing the network's performance before training
-		float rate = net.test(imageTest);
-		Logger.writeLogger("Test data tested");
-		System.out.println("Pre training success rate: "+ Math.round(rate) + "%");
-		Logger.writeLogger("Pre training sucess rate: "+ Math.round(rate) + "%");
 
+        // Starting message for data loading
+		System.out.println("\nStarting data loading...");
 
-        // Number of training epochs
-		int epochs = 3;
-		Logger.writeLogger("Number of epochs " + epochs);
-		
-        validationAccuracySeries.add(0, 0);
-        epochSeries.add(0, 0);
-		
-		for(int i = 0; i < epochs; i++) {
-
-			//Lines added for readability
-            Logger.writeLogger("--------------------------");
-
-			
-			// Shuffling the training data for each epoch
-			shuffle(imageTrain);
-			Logger.writeLogger("Training data shuffled");
-
-			// Training the network with shuffled data
-			net.train(imageTrain);
-			Logger.writeLogger("Training data being trained");
-
-			// Testing the network's performance after each training round
-            float validationAccuracy = net.test(imageTest);
-			Logger.writeLogger("Test data being tested");
-            
-			
-            validationAccuracySeries.add(i + 1, validationAccuracy);
-            epochSeries.add(i + 1, i + 1);
-
-            System.out.println("Epoch: " + (i + 1) + ", Validation Accuracy: " + Math.round(validationAccuracy) + "%");
-            Logger.writeLogger("Epoch: " + (i + 1) + ", Validation Accuracy: " + Math.round(validationAccuracy) + "%");
-
-            updateChart(chartPanel, validationAccuracySeries, epochSeries);
-            Logger.writeLogger("Chart has been updated");
-            
-            Logger.writeLogger("--------------------------");
+        // The headless TrainingRunner loads the data, trains and saves the network, this front end logs and charts its progress
+		TrainingRunner.run(config, System.out, new TrainingRunner.TrainingListener() {
+
+			@Override
+			public void datasetsLoaded(Dataset train, Dataset test) {
+				Logger.writeLogger("Data loaded");
+				Logger.writeLogger("Image Train size: "+ train.size());
+				Logger.writeLogger("Image test size: "+ test.size());
+				Logger.writeLogger("Neural Network bulit");
+			}
+
+			@Override
+			public void epochFinished(int epoch, float accuracy) {
+
+				if(epoch == 0) {
+					Logger.writeLogger("Pre training sucess rate: "+ Math.round(accuracy) + "%");
+					validationAccuracySeries.add(0, 0);
+					epochSeries.add(0, 0);
+					return;
+				}
+
+				//Lines added for readability
+	            Logger.writeLogger("--------------------------");
+
+	            validationAccuracySeries.add(epoch, accuracy);
+	            epochSeries.add(epoch, epoch);
+
+	            Logger.writeLogger("Epoch: " + epoch + ", Validation Accuracy: " + Math.round(accuracy) + "%");
+
+	            updateChart(chartPanel, validationAccuracySeries, epochSeries);
+	            Logger.writeLogger("Chart has been updated");
+	            
+	            Logger.writeLogger("--------------------------");
+			}
+		});
+
+		if(config.getModelPath() != null) {
+			Logger.writeLogger("Network saved to " + config.getModelPath());
 		}
 	}
 
@@ -0,0 +1,111 @@
+/*
+ * LogRingBuffer: This class is the bounded queue between the threads writing log messages and the Logger's writer
+ *                thread. It is a ring of slots, each with a sequence number telling whether it is free for the
+ *                producer at a position or holds the message the consumer expects there. Producers claim a position
+ *                with a compare-and-set on the tail and never take a lock, and the single consumer reads the slots in
+ *                order without any compare-and-set.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package cnn;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class LogRingBuffer {
+
+	private final String[] _messages; // Message of every slot
+	private final AtomicLongArray _sequences; // Position a slot is free for, or that position + 1 once its message is published
+	private final int _mask; // Capacity - 1, to turn a position into a slot
+	private final AtomicLong _tail = new AtomicLong(); // Next position a producer claims
+	private long _head; // Next position the consumer reads, only used by the consumer thread
+
+	/**
+	 * Constructor for LogRingBuffer
+	 * @param capacity Largest number of messages waiting, rounded up to a power of two of at least 2
+	 * @throws IllegalArgumentException if the capacity is less than 1 or larger than 2^30
+	 */
+	LogRingBuffer(int capacity) {
+
+		if(capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid log buffer capacity: " + capacity);
+		}
+
+		// A slot's two sequence numbers only differ by one, so a ring of one slot could not tell them apart from the next lap
+		int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+
+		_messages = new String[size];
+		_sequences = new AtomicLongArray(size);
+		_mask = size - 1;
+
+		for(int i = 0; i < size; i++) {
+			_sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Publishes a message without blocking, may be called by any thread.
+	 *
+	 * @param message The message.
+	 * @return True if the message was published, false if the buffer is full.
+	 */
+	boolean offer(String message) {
+
+		while(true) {
+			long position = _tail.get();
+			int slot = (int) position & _mask;
+			long free = _sequences.get(slot) - position;
+
+			if(free < 0) {
+				return false; // The consumer has not read the message written a lap ago
+			}
+
+			if(free == 0 && _tail.compareAndSet(position, position + 1)) {
+				_messages[slot] = message;
+				_sequences.lazySet(slot, position + 1); // Publishes the message, the consumer reads it after this
+				return true;
+			}
+			// Another producer claimed the position first, try the next one
+		}
+	}
+
+	/**
+	 * Takes the oldest message, only called by the consumer thread.
+	 *
+	 * @return The message, or null if no message is published yet.
+	 */
+	String poll() {
+
+		int slot = (int) _head & _mask;
+
+		if(_sequences.get(slot) != _head + 1) {
+			return null;
+		}
+
+		String message = _messages[slot];
+		_messages[slot] = null;
+		_sequences.lazySet(slot, _head + _messages.length); // Frees the slot for the producer of the next lap
+		_head++;
+
+		return message;
+	}
+
+	/**
+	 * Gets the number of messages published so far, counting the ones already taken.
+	 *
+	 * @return The number of positions claimed by producers.
+	 */
+	long published() {
+		return _tail.get();
+	}
+
+	/**
+	 * Checks if no message is waiting, only called by the consumer thread.
+	 *
+	 * @return True if every claimed position has been read.
+	 */
+	boolean isEmpty() {
+		return _tail.get() == _head;
+	}
+
+}
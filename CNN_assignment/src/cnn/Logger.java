@@ -2,29 +2,112 @@
  * Logger: This class provides logging functionalities for the ConvolutionalNeuralNetwork program.
  *         It allows creation of log files, writing log messages, and updating a JTextArea with log contents.
  *
+ *         Writing a message never touches the file: the message is published into a lock-free LogRingBuffer and a
+ *         background thread writes the waiting messages in batches to the log file, which it keeps open. A batch is
+ *         written once the flush interval has passed since its first message, straight away with an interval of 0,
+ *         or when it reaches MAX_BATCH_BYTES. When the buffer is full a message either waits for room or is dropped
+ *         and counted, depending on the OverflowPolicy. The last TAIL_LINES messages are also kept in memory, so the
+ *         user interface shows them without reading the file.
+ *
  * Author: Max Ceban
  * Date: 31/03/2024
  */
 package cnn;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.JTextArea;
 
 public class Logger {
 
     // Define the log file name
-    private static final String LOG_FILE = "Logger.txt";
+	private static final String LOG_FILE = "Logger.txt";
+
+	// Settings of the logger created by createLogger() or by the first message
+	static final int DEFAULT_CAPACITY = 8192;
+	static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+	// Number of messages kept in memory for the user interface, and the size at which a batch is written at once
+	static final int TAIL_LINES = 1000;
+	static final int MAX_BATCH_BYTES = 1 << 16;
+
+	/**
+	 * What writing a message does when the buffer is full.
+	 */
+	public enum OverflowPolicy {
+
+		// Wait until the writer thread has made room, so no message is lost
+		BLOCK,
+
+		// Drop the message, the number of dropped messages is written to the log once there is room
+		DROP
+	}
+
+	private static Logger _instance; // The running logger, or null before the first message
+	private static boolean _shutdownHookAdded; // Whether the hook writing the last messages at exit was added
+
+	private final LogRingBuffer _buffer; // Messages waiting to be written
+	private final OverflowPolicy _overflow; // What to do when the buffer is full
+	private final long _flushIntervalNanos; // Longest time a message waits in a batch before it is written
+	private final FileChannel _channel; // The open log file
+	private final Thread _writer; // Thread writing the batches
+	private final ArrayDeque<String> _tail = new ArrayDeque<>(); // Last messages, guarded by itself
+	private final AtomicLong _dropped = new AtomicLong(); // Messages dropped since the writer last reported them
+	private volatile long _written; // Number of published messages written to the file
+	private volatile boolean _writerIdle; // Whether the writer is parked with nothing to write, so a message must wake it
+	private volatile boolean _flushRequested; // Whether a thread is waiting in flush for the batch to be written
+	private volatile boolean _closed;
+
+	// Constructor for Logger, which opens the log file and starts the writer thread
+	private Logger(int capacity, long flushIntervalMillis, OverflowPolicy overflow, boolean truncate) throws IOException {
+
+		if(flushIntervalMillis < 0) {
+			throw new IllegalArgumentException("Invalid flush interval: " + flushIntervalMillis + " ms");
+		}
+
+		_buffer = new LogRingBuffer(capacity);
+		_overflow = overflow;
+		_flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		_channel = truncate
+				? FileChannel.open(Path.of(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+				: FileChannel.open(Path.of(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		// Daemon thread, the shutdown hook writes the last messages when the program exits
+		_writer = new Thread(this::writeLoop, "logger");
+		_writer.setDaemon(true);
+		_writer.start();
+	}
 
     // Method to create a new logger file
 	public static void createLogger() {
+		createLogger(DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Creates a new, empty log file with the given policies, after writing the messages of the previous logger.
+	 *
+	 * @param capacity Largest number of messages waiting to be written.
+	 * @param flushIntervalMillis Longest time a message waits before it is written, 0 to write every message straight away.
+	 * @param overflow What writing a message does when capacity messages are waiting.
+	 */
+	public static synchronized void createLogger(int capacity, long flushIntervalMillis, OverflowPolicy overflow) {
 		try {
-            PrintWriter myLogger = new PrintWriter(LOG_FILE);
-            myLogger.close();
+			closeLogger();
+			_instance = new Logger(capacity, flushIntervalMillis, overflow, true);
+			addShutdownHook();
             System.out.println("Logger created: " + LOG_FILE);
         } catch (IOException e) {
             System.out.println("An error occurred while creating the logger.");
@@ -32,45 +115,133 @@ public class Logger {
         }
 	}
 
-    // Method to retrieve the logger for writing logs
+	// Method to get the running logger, starting one that appends to the log file if none was created
+	private static synchronized Logger instance() throws IOException {
+
+		if(_instance == null) {
+			_instance = new Logger(DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS, OverflowPolicy.BLOCK, false);
+			addShutdownHook();
+		}
+
+		return _instance;
+	}
+
+	// Method to write the last messages when the program exits
+	private static void addShutdownHook() {
+
+		if(!_shutdownHookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread(Logger::closeLogger, "logger-shutdown"));
+			_shutdownHookAdded = true;
+		}
+	}
+
+	/**
+	 * Writes the waiting messages, stops the writer thread and closes the log file. The next message starts a new logger
+	 * appending to the file.
+	 */
+	public static synchronized void closeLogger() {
+
+		if(_instance != null) {
+			_instance.close();
+			_instance = null;
+		}
+	}
+
+    // Method to retrieve the logger for writing logs, every line printed to it is written like a message of writeLogger
 	public static PrintWriter getLogger() {
-        try {
-            FileWriter fileWriter = new FileWriter(LOG_FILE, true); // Appending mode set to true
-            return new PrintWriter(fileWriter);
-        } catch (IOException e) {
-            System.out.println("An error occurred while getting the logger.");
-            e.printStackTrace();
-            return null;
-        }
+
+		return new PrintWriter(new Writer() {
+
+			private final StringBuilder _line = new StringBuilder();
+
+			@Override
+			public void write(char[] chars, int offset, int length) {
+				for(int i = offset; i < offset + length; i++) {
+					if(chars[i] == '\n') {
+						writeLogger(_line.toString());
+						_line.setLength(0);
+					}
+					else if(chars[i] != '\r') {
+						_line.append(chars[i]);
+					}
+				}
+			}
+
+			@Override
+			public void flush() {
+				Logger.flush();
+			}
+
+			@Override
+			public void close() {
+				if(_line.length() > 0) {
+					writeLogger(_line.toString());
+					_line.setLength(0);
+				}
+				flush();
+			}
+		});
     }
 
-    // Method to write logs to the logger file
+    // Method to write logs to the logger file, the message is written by the writer thread
 	public static void writeLogger(String text) {
-		try (FileWriter fileWriter = new FileWriter(LOG_FILE, true); // Appending mode set to true
-	             PrintWriter printWriter = new PrintWriter(fileWriter)) {
-	             printWriter.println(text); // Write the provided text to the logger file
-	        } catch (IOException e) {
-	             System.out.println("An error occurred while writing to the logger.");
-	             e.printStackTrace();
-	        }
+		try {
+			instance().publish(text);
+		} catch (IOException e) {
+			System.out.println("An error occurred while writing to the logger.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Waits until every message written before the call is in the log file.
+	 */
+	public static void flush() {
+
+		Logger logger;
+
+		synchronized(Logger.class) {
+			logger = _instance;
+		}
+
+		if(logger != null) {
+			logger.waitForWrites();
+		}
+	}
+
+	/**
+	 * Gets the last messages, which are kept in memory so they can be shown without reading the log file.
+	 *
+	 * @return The last TAIL_LINES messages written to the file, oldest first.
+	 */
+	public static List<String> getTail() {
+
+		Logger logger;
+
+		synchronized(Logger.class) {
+			logger = _instance;
+		}
+
+		if(logger == null) {
+			return new ArrayList<>();
+		}
+
+		synchronized(logger._tail) {
+			return new ArrayList<>(logger._tail);
+		}
 	}
 
-	
+
 	public static void updateTextArea(PrintWriter logger, JTextArea outputField) {
-		// TODO Method to update a JTextArea with the contents of the logger file
+		// Method to update a JTextArea with the last messages of the logger, kept in memory
 		outputField.setText(""); // Clear the JTextArea
 
 		if(logger != null) {
 			logger.flush(); // Flush the logger to ensure all contents are written
 
-			try(BufferedReader reader = new BufferedReader(new FileReader("Logger.txt"))){
-				String line;
-				// Read each line from the logger file and append it to the JTextArea
-				while((line = reader.readLine()) != null) {
-	                outputField.append(line + "\n"); // Append each line to the text area
-				}
-			}catch (IOException e) {
-	            outputField.append("Error reading log file.\n");
+			// Append each message to the text area
+			for(String line : getTail()) {
+                outputField.append(line + "\n");
 			}
 		}
 		else {
@@ -78,4 +249,157 @@ public class Logger {
 		}
 
 	}
+
+	// Method to publish a message, waiting for room or dropping it when the buffer is full
+	private void publish(String text) {
+
+		while(!_buffer.offer(text)) {
+			if(_overflow == OverflowPolicy.DROP || _closed) {
+				_dropped.incrementAndGet();
+				return;
+			}
+
+			// The writer may be waiting for its flush interval, it must drain the buffer now
+			LockSupport.unpark(_writer);
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+		}
+
+		if(_writerIdle) {
+			LockSupport.unpark(_writer);
+		}
+	}
+
+	// Method to wait until the messages published so far have been written
+	private void waitForWrites() {
+
+		long target = _buffer.published();
+
+		while(_written < target && _writer.isAlive()) {
+			_flushRequested = true;
+			LockSupport.unpark(_writer);
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+	}
+
+	// Method to stop the writer thread after it has written the waiting messages, and close the file
+	private void close() {
+
+		_closed = true;
+		LockSupport.unpark(_writer);
+
+		try {
+			_writer.join();
+			_channel.close();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch(IOException e) {
+			System.out.println("An error occurred while closing the logger.");
+		}
+	}
+
+	// Method run by the writer thread, collecting the messages into batches and writing them to the file
+	private void writeLoop() {
+
+		StringBuilder batch = new StringBuilder();
+		long pending = 0; // Number of messages in the batch
+		long batchStart = 0; // Time the first message of the batch was taken
+		long taken = 0; // Number of messages taken from the buffer
+
+		while(true) {
+			String message = _buffer.poll();
+
+			if(message != null) {
+				if(pending == 0) {
+					batchStart = System.nanoTime();
+				}
+
+				append(batch, message);
+				pending++;
+				taken++;
+
+				if(batch.length() >= MAX_BATCH_BYTES) {
+					write(batch, taken);
+					pending = 0;
+				}
+				continue;
+			}
+
+			// The buffer is empty, report the dropped messages now that there is room for a line
+			long dropped = _dropped.getAndSet(0);
+
+			if(dropped > 0) {
+				append(batch, "[" + dropped + " log messages dropped]");
+				pending++;
+			}
+
+			boolean flushRequested = _flushRequested;
+			boolean closed = _closed;
+			long waited = System.nanoTime() - batchStart;
+
+			if(pending > 0 && (flushRequested || closed || waited >= _flushIntervalNanos)) {
+				write(batch, taken);
+				pending = 0;
+			}
+			else if(pending == 0) {
+				_written = taken;
+			}
+
+			if(flushRequested && pending == 0) {
+				_flushRequested = false;
+			}
+
+			if(closed && _buffer.isEmpty() && _dropped.get() == 0) {
+				return;
+			}
+
+			// Sleep until the batch is due, or until a message arrives if there is no batch
+			_writerIdle = pending == 0;
+
+			if(_buffer.isEmpty() && !_flushRequested && !_closed) {
+				if(pending == 0) {
+					LockSupport.park(this);
+				}
+				else {
+					LockSupport.parkNanos(this, _flushIntervalNanos - waited);
+				}
+			}
+
+			_writerIdle = false;
+		}
+	}
+
+	// Method to add a message to the batch and to the in-memory tail
+	private void append(StringBuilder batch, String message) {
+
+		batch.append(message).append(System.lineSeparator());
+
+		synchronized(_tail) {
+			if(_tail.size() == TAIL_LINES) {
+				_tail.removeFirst();
+			}
+			_tail.addLast(message);
+		}
+	}
+
+	// Method to write the batch to the file with one call, after which taken messages have been written
+	private void write(StringBuilder batch, long taken) {
+
+		ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+
+		try {
+			while(bytes.hasRemaining()) {
+				_channel.write(bytes);
+			}
+		}
+		catch(IOException e) {
+			System.out.println("An error occurred while writing to the logger.");
+			e.printStackTrace();
+		}
+
+		batch.setLength(0);
+		_written = taken;
+	}
+
 }
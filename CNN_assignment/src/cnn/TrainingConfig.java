@@ -0,0 +1,322 @@
+/*
+ * TrainingConfig: This class holds the settings of a training run of the TrainingRunner: the datasets, the architecture
+ *                 of the network, the number of epochs, the batch size, the number of threads, where to save the
+ *                 trained network and whether to report the layers against the peak of the machine, see
+ *                 RooflineReport. The settings are read from command line options, each a --name followed by its
+ *                 value, and from a properties file given with --config using the same names without the dashes.
+ *                 The command line overrides the file, and every setting missing from both keeps the value used by
+ *                 ConvolutionalNeuralNetwork.run.
+ *
+ *                 The learning rate is the step of the gradient of one image, like the training of one image at a time
+ *                 ConvolutionalNeuralNetwork.run used to do. A batch averages the gradients of its images, so the layers
+ *                 are given the learning rate times the batch size, and a batch takes the step the same images trained
+ *                 one at a time would take together.
+ *
+ *                 The architecture is a comma-separated list of layers:
+ *                   conv:<filters>:<filterSize>:<stepSize>[:direct|:im2col]   convolution layer
+ *                   pool:<windowSize>:<stepSize>                             max pooling layer
+ *                   fc:<outputs>                                             fully connected layer
+ *                 A dataset is a CSV file, a binary dataset file written by DatasetConverter, or synthetic:<images>
+ *                 for images generated by SyntheticDataset.
+ *
+ *                 A run writes no files unless asked to: the network is only saved with --model file.ckpt, and a CSV
+ *                 file is read into memory on every run unless --cache dir is given, in which case it is converted
+ *                 once to a binary dataset file in that directory and mapped from there on later runs.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package cnn;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import data.Precision;
+import layers.ConvolutionEngine;
+import network.NetworkBuilder;
+
+public class TrainingConfig {
+
+	// Settings with their defaults, the settings of ConvolutionalNeuralNetwork.run, in the order they are printed
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+	static {
+		DEFAULTS.put("train", "data/mnist_train.csv");
+		DEFAULTS.put("test", "data/mnist_test.csv");
+		DEFAULTS.put("architecture", "conv:8:8:1,pool:3:2,fc:10");
+		DEFAULTS.put("epochs", "3");
+		DEFAULTS.put("batch", "32");
+		DEFAULTS.put("threads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		DEFAULTS.put("seed", "123");
+		DEFAULTS.put("scale", Double.toString(256 * 100));
+		DEFAULTS.put("learning-rate", "0.1");
+		DEFAULTS.put("precision", "DOUBLE");
+		DEFAULTS.put("model", "none");
+		DEFAULTS.put("cache", "none");
+		DEFAULTS.put("roofline", "false");
+	}
+
+	private final Map<String, String> _settings; // Value of every setting
+
+	// Parsed settings
+	private final String _trainPath; // Training dataset
+	private final String _testPath; // Test dataset
+	private final String _architecture; // Layers of the network, see the description above
+	private final int _epochs; // Number of training epochs
+	private final int _batchSize; // Number of images per batch
+	private final int _threads; // Number of training threads
+	private final long _seed; // Seed of the weights and the shuffles
+	private final double _scaleFactor; // Factor the pixels are divided by
+	private final double _learningRate; // Learning rate of the gradient of one image, see the description above
+	private final Precision _precision; // Precision of the network
+	private final String _modelPath; // Checkpoint file the trained network is saved to, or none
+	private final String _cacheDirectory; // Directory the binary copies of CSV datasets are written to, or none
+	private final boolean _roofline; // Whether to measure the peak of the machine and report the layers against it
+
+	// Constructor for TrainingConfig from the value of every setting
+	private TrainingConfig(Map<String, String> settings) {
+
+		this._settings = settings;
+
+		try {
+			_trainPath = settings.get("train");
+			_testPath = settings.get("test");
+			_architecture = settings.get("architecture");
+			_epochs = Integer.parseInt(settings.get("epochs"));
+			_batchSize = Integer.parseInt(settings.get("batch"));
+			_threads = Integer.parseInt(settings.get("threads"));
+			_seed = Long.parseLong(settings.get("seed"));
+			_scaleFactor = Double.parseDouble(settings.get("scale"));
+			_learningRate = Double.parseDouble(settings.get("learning-rate"));
+			_precision = Precision.valueOf(settings.get("precision").toUpperCase(Locale.ROOT));
+			_modelPath = settings.get("model");
+			_cacheDirectory = settings.get("cache");
+			_roofline = parseBoolean(settings.get("roofline"));
+		}
+		catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid setting: " + e.getMessage(), e);
+		}
+
+		if(_epochs < 0 || _batchSize < 1 || _threads < 1 || _scaleFactor <= 0) {
+			throw new IllegalArgumentException("Epochs must not be negative and the batch size, threads and scale must be positive");
+		}
+
+		// Check the architecture now rather than once the datasets have been loaded
+		parseArchitecture(_architecture);
+	}
+
+	/**
+	 * Creates the configuration used by ConvolutionalNeuralNetwork.run.
+	 *
+	 * @return The default configuration.
+	 */
+	public static TrainingConfig defaults() {
+		return new TrainingConfig(new LinkedHashMap<>(DEFAULTS));
+	}
+
+	/**
+	 * Reads the configuration from command line options, see the description above.
+	 *
+	 * @param args The options, each a --name followed by its value.
+	 * @return The configuration.
+	 * @throws IllegalArgumentException if an option is unknown, has no value or has an invalid value.
+	 * @throws UncheckedIOException if the config file cannot be read.
+	 */
+	public static TrainingConfig fromArgs(String[] args) {
+
+		Map<String, String> options = new LinkedHashMap<>();
+
+		for(int i = 0; i < args.length; i += 2) {
+			if(!args[i].startsWith("--") || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Expected --name value but got " + args[i]);
+			}
+
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+
+		Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+		String config = options.remove("config");
+
+		if(config != null) {
+			Properties properties = new Properties();
+
+			try(Reader reader = Files.newBufferedReader(Path.of(config))) {
+				properties.load(reader);
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException("Could not read config file " + config, e);
+			}
+
+			for(String name : properties.stringPropertyNames()) {
+				put(settings, name, properties.getProperty(name).trim());
+			}
+		}
+
+		options.forEach((name, value) -> put(settings, name, value));
+
+		return new TrainingConfig(settings);
+	}
+
+	// Method to set a known setting
+	private static void put(Map<String, String> settings, String name, String value) {
+
+		if(!DEFAULTS.containsKey(name)) {
+			throw new IllegalArgumentException("Unknown setting " + name + ", expected one of config, " + String.join(", ", DEFAULTS.keySet()));
+		}
+
+		settings.put(name, value);
+	}
+
+	/**
+	 * Creates a builder with the layers of the architecture.
+	 *
+	 * @param inputRows Number of rows of the input images.
+	 * @param inputCols Number of columns of the input images.
+	 * @return The builder, ready to build the network.
+	 * @throws IllegalArgumentException if the architecture is invalid.
+	 */
+	public NetworkBuilder createBuilder(int inputRows, int inputCols) {
+
+		NetworkBuilder builder = new NetworkBuilder(inputRows, inputCols, _scaleFactor, _precision);
+
+		// Step of the batch-averaged gradients, see the description above
+		double learningRate = _learningRate*_batchSize;
+
+		for(String[] layer : parseArchitecture(_architecture)) {
+			switch(layer[0]) {
+				case "conv" -> builder.addConvolutionLayer(Integer.parseInt(layer[1]), Integer.parseInt(layer[2]), Integer.parseInt(layer[3]),
+						learningRate, _seed, ConvolutionEngine.valueOf(layer[4]));
+				case "pool" -> builder.addMaxPoolLayer(Integer.parseInt(layer[1]), Integer.parseInt(layer[2]));
+				default -> builder.addFullyConnectedLayer(Integer.parseInt(layer[1]), learningRate, _seed);
+			}
+		}
+
+		return builder;
+	}
+
+	// Method to split the architecture into its layers, each the type followed by its numbers and, for a convolution
+	// layer, the name of its engine, checking every value so building the layers cannot fail
+	private static List<String[]> parseArchitecture(String architecture) {
+
+		List<String[]> layers = new ArrayList<>();
+
+		for(String layer : architecture.split(",")) {
+			String[] parts = layer.trim().toLowerCase(Locale.ROOT).split(":");
+			boolean valid = (parts[0].equals("conv") && (parts.length == 4 || parts.length == 5))
+					|| (parts[0].equals("pool") && parts.length == 3) || (parts[0].equals("fc") && parts.length == 2);
+
+			// The numbers follow the type, and a convolution layer ends with its engine, DIRECT if it is left out
+			int numbers = parts.length;
+
+			if(valid && parts[0].equals("conv")) {
+				String engine = parts.length == 5 ? parts[4].toUpperCase(Locale.ROOT) : ConvolutionEngine.DIRECT.name();
+
+				valid = isEngine(engine);
+				numbers = 4;
+				parts = Arrays.copyOf(parts, 5);
+				parts[4] = engine;
+			}
+
+			for(int i = 1; valid && i < numbers; i++) {
+				valid = parts[i].matches("[1-9][0-9]{0,8}");
+			}
+
+			if(!valid) {
+				throw new IllegalArgumentException("Invalid layer " + layer + " in architecture " + architecture
+						+ ", expected conv:filters:size:step[:direct|:im2col], pool:window:step or fc:outputs");
+			}
+
+			layers.add(parts);
+		}
+
+		return layers;
+	}
+
+	// Method to parse true or false, rejecting any other value unlike Boolean.parseBoolean
+	private static boolean parseBoolean(String value) {
+
+		if(!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+			throw new IllegalArgumentException("Expected true or false but got " + value);
+		}
+
+		return value.equalsIgnoreCase("true");
+	}
+
+	// Method to check if a name is the name of a convolution engine
+	private static boolean isEngine(String name) {
+
+		for(ConvolutionEngine engine : ConvolutionEngine.values()) {
+			if(engine.name().equals(name)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets every setting with its value, in the order of the settings.
+	 *
+	 * @return The settings.
+	 */
+	public Map<String, String> getSettings() {
+		return _settings;
+	}
+
+	// Getters for the parsed settings
+	public String getTrainPath() {
+		return _trainPath;
+	}
+
+	public String getTestPath() {
+		return _testPath;
+	}
+
+	public int getEpochs() {
+		return _epochs;
+	}
+
+	public int getBatchSize() {
+		return _batchSize;
+	}
+
+	public int getThreads() {
+		return _threads;
+	}
+
+	public long getSeed() {
+		return _seed;
+	}
+
+	public double getScaleFactor() {
+		return _scaleFactor;
+	}
+
+	public Precision getPrecision() {
+		return _precision;
+	}
+
+	public boolean isRoofline() {
+		return _roofline;
+	}
+
+	// Method to get the checkpoint file the trained network is saved to, or null if it is not saved
+	public String getModelPath() {
+		return _modelPath.isEmpty() || _modelPath.equals("none") ? null : _modelPath;
+	}
+
+	// Method to get the directory the binary copies of CSV datasets are written to, or null if CSV files are read every run
+	public String getCacheDirectory() {
+		return _cacheDirectory.isEmpty() || _cacheDirectory.equals("none") ? null : _cacheDirectory;
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ * TrainingRunner: This class trains a network from the command line without a user interface, so it runs on headless
+ *                 servers and never loads AWT or Swing. The datasets, architecture, epochs, batch size and threads are
+ *                 read by TrainingConfig. Every line printed is a kind of record followed by key=value pairs, so the
+ *                 output can be parsed:
+ *                   config train=data/mnist_train.csv test=data/mnist_test.csv architecture=conv:8:8:1,pool:3:2,fc:10 ...
+ *                   data train_images=60000 test_images=10000 rows=28 cols=28 load_seconds=0.015
+ *                   layer name=0_ConvolutionLayer output=8x21x21 parameters=512 activation_bytes=28224 forward_flops=451584 ...
+ *                   epoch epoch=0 accuracy=9.80 test_seconds=0.912
+ *                   epoch epoch=1 train_seconds=11.532 images_per_second=5202.9 accuracy=87.41 test_seconds=0.874
+ *                   saved model=model.ckpt
+ *                 With --roofline true the peak of the machine and the rates of every layer pass follow, see RooflineReport:
+ *                   peak gflops=12.41 gbytes_per_second=9.87 ridge_point=1.26
+ *                   roofline name=0_ConvolutionLayer pass=forward us_per_image=95.21 gflops=4.74 ... bound=compute
+ *                 The saved line is only printed when --model names a checkpoint file. Epoch 0 is the accuracy before
+ *                 training. ConvolutionalNeuralNetwork.run trains with the same loop, adding its chart through a
+ *                 TrainingListener.
+ *                 A CSV training file read without --cache is streamed through the first epoch, which starts on the first
+ *                 batches while the rest of the file is still read, so the data record follows the training of that epoch.
+ *
+ *                 Usage: TrainingRunner [--config file.properties] [--name value]...
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package cnn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import data.DataPipeline;
+import data.DataReader;
+import data.Dataset;
+import data.DatasetConverter;
+import data.ImageStore;
+import data.MappedDataset;
+import data.SyntheticDataset;
+import network.ModelSummary;
+import network.NetworkMetrics;
+import network.NeuralNetwork;
+import network.ParallelTrainer;
+import network.RooflineReport;
+
+public class TrainingRunner {
+
+	// Prefix of a dataset path asking for generated images, followed by the number of images
+	static final String SYNTHETIC = "synthetic:";
+
+	// Number of images the first epoch of a streamed CSV file is shuffled among, which are read before its first batch
+	static final int STREAM_SHUFFLE_BUFFER = 4096;
+
+	/**
+	 * Receives the progress of a training run, for example to draw it. The methods are called on the training thread.
+	 */
+	public interface TrainingListener {
+
+		/**
+		 * Called once both datasets have been loaded, which for a CSV training file streamed through the first epoch is after
+		 * that epoch has been trained, before its epochFinished.
+		 *
+		 * @param train The training images.
+		 * @param test The test images.
+		 */
+		default void datasetsLoaded(Dataset train, Dataset test) {
+		}
+
+		/**
+		 * Called after every epoch, and with epoch 0 before the first one.
+		 *
+		 * @param epoch Number of epochs trained so far.
+		 * @param accuracy Percentage of test images predicted correctly.
+		 */
+		default void epochFinished(int epoch, float accuracy) {
+		}
+	}
+
+	/**
+	 * Loads the datasets, trains a network and saves it if the config names a checkpoint file, printing the progress. Without
+	 * a cache directory a CSV training file is streamed through the first epoch, see DataPipeline.fromCsv, and kept in memory
+	 * for the following ones.
+	 *
+	 * @param config The settings of the run.
+	 * @param out The stream the progress is printed to.
+	 * @param listener Receives the progress, or null.
+	 * @return The trained network.
+	 * @throws IllegalArgumentException if a dataset or the architecture is invalid.
+	 * @throws UncheckedIOException if a dataset cannot be read or the network cannot be saved.
+	 */
+	public static NeuralNetwork run(TrainingConfig config, PrintStream out, TrainingListener listener) {
+
+		if(listener == null) {
+			listener = new TrainingListener() {};
+		}
+
+		// The progress, throughput, loss and layer times can be watched with JConsole while the run goes on
+		NetworkMetrics.register();
+
+		out.println("config " + config.getSettings().entrySet().stream()
+				.map(setting -> setting.getKey().replace('-', '_') + "=" + setting.getValue().replace(' ', '_'))
+				.collect(Collectors.joining(" ")));
+
+		// Shuffling is seeded so a run with the same number of threads always gives the same weights
+		Random shuffleRandom = new Random(config.getSeed());
+		long firstSeed = shuffleRandom.nextLong();
+
+		long start = System.nanoTime();
+		Dataset train = null;
+		List<ImageStore> chunks = Collections.synchronizedList(new ArrayList<>()); // Images of a streamed CSV file
+
+		// Without a cache a CSV training file is streamed through the first epoch, which starts on the first batches while the
+		// rest of the file is still read, as the test set is loaded. The images are kept for the following epochs
+		try(DataPipeline stream = isStreamed(config) ? DataPipeline.fromCsv(config.getTrainPath(), config.getBatchSize(),
+				STREAM_SHUFFLE_BUFFER, firstSeed, config.getScaleFactor(), config.getPrecision(), chunks::add) : null) {
+
+			if(stream == null) {
+				train = loadDataset(config.getTrainPath(), config, 0);
+			}
+
+			Dataset test = loadDataset(config.getTestPath(), config, train == null ? 0 : train.size());
+
+			if(train != null) {
+				printData(train, test, start, out, listener);
+			}
+
+			Dataset shape = train != null ? train : test; // The size of the images of a streamed file is only known once it is read
+			NeuralNetwork net = config.createBuilder(shape.getRows(), shape.getCols()).build();
+
+			for(ModelSummary.Row layer : ModelSummary.rows(net)) {
+				out.printf(Locale.ROOT, "layer name=%s output=%s parameters=%d activation_bytes=%d forward_flops=%d backward_flops=%d%n",
+						layer.getLayer().replace(' ', '_'), layer.getOutputShape(), layer.getParameters(), layer.getActivationBytes(),
+						layer.getForwardFlops(), layer.getBackwardFlops());
+			}
+
+			// The roofline report covers the layer times of this run only
+			if(config.isRoofline()) {
+				NetworkMetrics.getInstance().reset();
+			}
+
+			long testStart = System.nanoTime();
+			float accuracy = net.test(test);
+
+			out.printf(Locale.ROOT, "epoch epoch=0 accuracy=%.2f test_seconds=%.3f%n", accuracy, seconds(testStart));
+			listener.epochFinished(0, accuracy);
+
+			try(ParallelTrainer trainer = new ParallelTrainer(net, config.getThreads())) {
+				for(int epoch = 1; epoch <= config.getEpochs(); epoch++) {
+
+					// The batches are shuffled, scaled and packed on background threads while the previous ones are trained on
+					long epochStart = System.nanoTime();
+
+					if(epoch == 1 && stream != null) {
+						trainer.train(stream);
+
+						// The training images are only known once the file has been read
+						train = ImageStore.concat(chunks);
+						chunks.clear();
+						printData(train, test, start, out, listener);
+					}
+					else {
+						try(DataPipeline pipeline = DataPipeline.fromDataset(train, config.getBatchSize(), train.size(),
+								epoch == 1 ? firstSeed : shuffleRandom.nextLong(), config.getScaleFactor(), config.getPrecision())) {
+							trainer.train(pipeline);
+						}
+					}
+
+					double trainSeconds = seconds(epochStart);
+
+					testStart = System.nanoTime();
+					accuracy = net.test(test);
+
+					out.printf(Locale.ROOT, "epoch epoch=%d train_seconds=%.3f images_per_second=%.1f accuracy=%.2f test_seconds=%.3f%n",
+							epoch, trainSeconds, train.size()/trainSeconds, accuracy, seconds(testStart));
+					listener.epochFinished(epoch, accuracy);
+				}
+			}
+
+			if(config.isRoofline()) {
+				printRoofline(net, out);
+			}
+
+			if(config.getModelPath() != null) {
+				createParentDirectory(new File(config.getModelPath()));
+				net.save(config.getModelPath());
+				out.println("saved model=" + config.getModelPath());
+			}
+
+			return net;
+		}
+	}
+
+	// Method to check if the training file is a CSV file streamed through the first epoch instead of loaded before it
+	private static boolean isStreamed(TrainingConfig config) {
+		return config.getEpochs() > 0 && config.getTrainPath().endsWith(".csv") && config.getCacheDirectory() == null;
+	}
+
+	// Method to print the data record and tell the listener the datasets have been loaded
+	private static void printData(Dataset train, Dataset test, long start, PrintStream out, TrainingListener listener) {
+		out.printf(Locale.ROOT, "data train_images=%d test_images=%d rows=%d cols=%d load_seconds=%.3f%n", train.size(), test.size(),
+				train.getRows(), train.getCols(), seconds(start));
+		listener.datasetsLoaded(train, test);
+	}
+
+	/**
+	 * Loads a dataset: synthetic:images generates the images, a CSV file is read into memory, or converted once to the binary
+	 * format in the cache directory when the config has one, and any other file is opened as a binary dataset file. The
+	 * cached pixels are raw bytes, or floats already divided by the scale factor for a float precision.
+	 *
+	 * @param path The dataset.
+	 * @param config The settings of the run, giving the seed of synthetic images, the scale factor and the cache directory.
+	 * @param firstImage Index of the first synthetic image, so the test images differ from the training images.
+	 * @return The dataset.
+	 * @throws IllegalArgumentException if the number of synthetic images or the file is invalid.
+	 * @throws UncheckedIOException if the file cannot be read or the cache directory cannot be created.
+	 */
+	static Dataset loadDataset(String path, TrainingConfig config, int firstImage) {
+
+		if(path.startsWith(SYNTHETIC)) {
+			return SyntheticDataset.generate(Integer.parseInt(path.substring(SYNTHETIC.length())), 28, 28, config.getSeed(), firstImage);
+		}
+
+		if(!path.endsWith(".csv")) {
+			return MappedDataset.open(path);
+		}
+
+		if(config.getCacheDirectory() == null) {
+			return new DataReader().readStore(path);
+		}
+
+		// A float precision reads pixels already divided by the scale factor, any other keeps the raw bytes so its inputs are
+		// not rounded to floats. The file is named after the whole path of the CSV file, the scale and the pixel format, so
+		// CSV files of the same name in other directories and conversions for other settings do not share it
+		File csv = new File(path);
+		double scaleFactor = config.getPrecision().isFloat() ? config.getScaleFactor() : 0;
+		String key = csv.getAbsoluteFile().toPath().normalize() + "|" + scaleFactor;
+		String name = csv.getName().substring(0, csv.getName().length() - ".csv".length());
+
+		File binary = new File(config.getCacheDirectory(), name + "-" + (scaleFactor > 0 ? "float32" : "uint8") + "-"
+				+ UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".bin");
+		createParentDirectory(binary);
+
+		// Convert the CSV file if the binary file is missing or older than it
+		if(!binary.exists() || binary.lastModified() < csv.lastModified()) {
+			DatasetConverter.convertCsv(csv.getPath(), binary.getPath(), scaleFactor);
+		}
+
+		return MappedDataset.open(binary.getPath());
+	}
+
+	// Method to create the directory a file is written to, if the run is the first to write there
+	private static void createParentDirectory(File file) {
+
+		File directory = file.getAbsoluteFile().getParentFile();
+
+		try {
+			Files.createDirectories(directory.toPath());
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not create the directory " + directory, e);
+		}
+	}
+
+	// Method to measure the peak of the machine and print the rates of every layer pass against it
+	private static void printRoofline(NeuralNetwork net, PrintStream out) {
+
+		RooflineReport.Peak peak = RooflineReport.measurePeak(net.getPrecision());
+
+		out.printf(Locale.ROOT, "peak gflops=%.2f gbytes_per_second=%.2f ridge_point=%.2f%n", peak.getGflops(), peak.getGbytesPerSecond(),
+				peak.getRidgePoint());
+
+		for(RooflineReport.Row pass : RooflineReport.rows(net, peak)) {
+			out.printf(Locale.ROOT, "roofline name=%s pass=%s us_per_image=%.2f gflops=%.2f gbytes_per_second=%.2f intensity=%.2f "
+					+ "attainable_gflops=%.2f efficiency=%.1f bound=%s%n", pass.getLayer().replace(' ', '_'), pass.getPass(),
+					pass.getMicrosPerImage(), pass.getGflops(), pass.getGbytesPerSecond(), pass.getIntensity(), pass.getAttainableGflops(),
+					pass.getEfficiency(), pass.getBound());
+		}
+	}
+
+	// Method to get the seconds elapsed since a time given by System.nanoTime
+	private static double seconds(long start) {
+		return (System.nanoTime() - start)/1e9;
+	}
+
+	/**
+	 * Runs the training, see the usage at the top of the file and TrainingConfig for the settings.
+	 *
+	 * @param args The options, each a --name followed by its value.
+	 */
+	public static void main(String[] args) {
+
+		TrainingConfig config;
+
+		try {
+			config = TrainingConfig.fromArgs(args);
+		}
+		catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: TrainingRunner [--config file.properties] [--name value]...");
+			System.err.println("       settings: " + String.join(", ", TrainingConfig.defaults().getSettings().keySet()));
+			System.exit(2);
+			return;
+		}
+
+		run(config, System.out, null);
+	}
+
+}
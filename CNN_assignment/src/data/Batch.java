@@ -0,0 +1,67 @@
+/*
+ * Batch: This class holds a batch of training images prepared by a DataPipeline, the scaled pixels packed into
+ *        one tensor ready to be passed to the first layer and the label of every sample.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+public class Batch {
+
+	private final Tensor _capacity; // Tensor holding up to the maximum number of samples
+	private final int[] _labels; // Label of every sample
+	private Tensor _input; // View of the first _size samples of _capacity
+	private int _size; // Number of samples in the batch
+
+	/**
+	 * Constructor for Batch
+	 * @param precision Precision of the input tensor
+	 * @param maxSize Maximum number of samples
+	 * @param rows Number of rows of every image
+	 * @param cols Number of columns of every image
+	 */
+	Batch(Precision precision, int maxSize, int rows, int cols) {
+		this._capacity = new Tensor(precision, maxSize, 1, rows, cols);
+		this._labels = new int[maxSize];
+		setSize(maxSize);
+	}
+
+	/**
+	 * Gets the number of samples in the batch.
+	 *
+	 * @return The number of samples.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Gets the scaled pixels of the samples, with the shape (size(), 1, rows, cols).
+	 *
+	 * @return The input tensor.
+	 */
+	public Tensor getInput() {
+		return _input;
+	}
+
+	/**
+	 * Gets the labels of the samples, the array may be longer than size().
+	 *
+	 * @return The labels, label n belongs to sample n.
+	 */
+	public int[] getLabels() {
+		return _labels;
+	}
+
+	// Method to set the number of samples filled in by the pipeline
+	void setSize(int size) {
+		_size = size;
+		_input = _capacity.samples(0, size);
+	}
+
+	// Method to get the tensor the pipeline packs the samples into
+	Tensor getCapacity() {
+		return _capacity;
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * DataLoadEvent: This class is the Java Flight Recorder event of DataReader parsing image data, a whole file for
+ *                readStore or one chunk for readChunks, leaving out the time the consumer of the chunk takes.
+ *                It costs nothing while no recording is running.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cnn.DataLoad")
+@Label("Data Load")
+@Category({"CNN", "Data"})
+@Description("Parsing of image data by DataReader")
+@Enabled(true)
+@Threshold("0 ms")
+@StackTrace(false)
+class DataLoadEvent extends Event {
+
+	@Label("Path")
+	String path;
+
+	@Label("Images")
+	int images;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+}
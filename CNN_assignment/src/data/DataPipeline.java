@@ -0,0 +1,425 @@
+/*
+ * DataPipeline: This class prepares the training batches of one epoch on background threads while the network trains.
+ *               The images flow through three stages connected by java.util.concurrent.Flow publishers:
+ *                 reader     - reads the images, from a CSV file as it is parsed or from a Dataset, in chunks
+ *                 sampler    - shuffles the images with a shuffle buffer and groups them into batches
+ *                 normalizer - copies the scaled pixels and labels of each batch into a Batch
+ *               The publishers have bounded buffers and the normalizer fills a fixed pool of batches, so a stage
+ *               that gets ahead waits for the next one instead of reading the whole file into memory.
+ *               The trainer takes the batches in order with next(), and can start on the first ones while the
+ *               rest of a CSV file is still being read.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class DataPipeline implements AutoCloseable {
+
+	// Number of images the reader publishes at once
+	private static final int CHUNK_SIZE = 256;
+
+	// Number of batches prepared ahead of the trainer
+	private static final int PREFETCH = 4;
+
+	// Number of items each publisher buffers before its stage waits for the next one
+	private static final int BUFFER_CAPACITY = 16;
+
+	// Item put after the last batch
+	private static final Object END = new Object();
+
+	private final int _size; // Number of images of the epoch, or -1 if unknown until the CSV file is read
+	private final int _batchSize; // Maximum number of images per batch
+	private final double _scaleFactor; // Factor the pixels are divided by
+	private final Random _random; // Random order of the shuffle buffer
+	private final ExecutorService _executor; // Threads running the stages
+	private final SubmissionPublisher<Chunk> _chunks; // Reader to sampler
+	private final SubmissionPublisher<Selection> _selections; // Sampler to normalizer
+	private final BlockingQueue<Batch> _free; // Batches the normalizer can fill
+	private final BlockingQueue<Object> _ready; // Batches ready for the trainer, then END or the exception that stopped a stage
+
+	private Batch _current; // Batch last returned by next, recycled by the following call
+	private boolean _finished; // True once next has returned null or thrown
+	private volatile boolean _closed; // True once close has been called
+
+	// Range of images of a dataset published by the reader
+	private static class Chunk {
+		final Dataset data;
+		final int from;
+		final int to;
+
+		Chunk(Dataset data, int from, int to) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	// Images chosen by the sampler for one batch, image n is images[n] of data[n]
+	private static class Selection {
+		final Dataset[] data;
+		final int[] images;
+		int size;
+
+		Selection(int batchSize) {
+			data = new Dataset[batchSize];
+			images = new int[batchSize];
+		}
+	}
+
+	/**
+	 * Creates a pipeline reading a CSV file, see DataReader. Training can start on the first batches while
+	 * the rest of the file is still being parsed.
+	 *
+	 * @param path The path to the CSV file.
+	 * @param batchSize Maximum number of images per batch.
+	 * @param shuffleBuffer Number of images the sampler picks from at random, 1 or less to keep the order of the file.
+	 * @param seed Seed of the shuffle.
+	 * @param scaleFactor Factor the pixels are divided by, the network's scale factor.
+	 * @param precision Precision of the batches, the network's precision.
+	 * @return The started pipeline.
+	 */
+	public static DataPipeline fromCsv(String path, int batchSize, int shuffleBuffer, long seed, double scaleFactor, Precision precision) {
+		return fromCsv(path, batchSize, shuffleBuffer, seed, scaleFactor, precision, chunk -> {});
+	}
+
+	/**
+	 * Creates a pipeline reading a CSV file which also hands every chunk of images to a consumer as it is read, so the
+	 * images can be kept for the following epochs without reading the file again.
+	 *
+	 * @param path The path to the CSV file.
+	 * @param batchSize Maximum number of images per batch.
+	 * @param shuffleBuffer Number of images the sampler picks from at random, 1 or less to keep the order of the file.
+	 * @param seed Seed of the shuffle.
+	 * @param scaleFactor Factor the pixels are divided by, the network's scale factor.
+	 * @param precision Precision of the batches, the network's precision.
+	 * @param chunks Receives the images in the order of the file, on the reader thread, before they are batched.
+	 * @return The started pipeline.
+	 */
+	public static DataPipeline fromCsv(String path, int batchSize, int shuffleBuffer, long seed, double scaleFactor, Precision precision,
+			Consumer<ImageStore> chunks) {
+
+		DataReader reader = new DataReader();
+
+		// The image size is only known once the file is opened, so the batches are created by the normalizer
+		return new DataPipeline(publish -> reader.readChunks(path, CHUNK_SIZE, chunk -> {
+			chunks.accept(chunk);
+			publish.accept(new Chunk(chunk, 0, chunk.size()));
+		}), -1, batchSize, shuffleBuffer, seed, scaleFactor, precision);
+	}
+
+	/**
+	 * Creates a pipeline reading a dataset, for example a MappedDataset, so the shuffling, scaling and packing of the
+	 * batches happens on background threads.
+	 *
+	 * @param data The images.
+	 * @param batchSize Maximum number of images per batch.
+	 * @param shuffleBuffer Number of images the sampler picks from at random, at least data.size() for a full shuffle,
+	 *                      1 or less to keep the order of the dataset.
+	 * @param seed Seed of the shuffle.
+	 * @param scaleFactor Factor the pixels are divided by, the network's scale factor.
+	 * @param precision Precision of the batches, the network's precision.
+	 * @return The started pipeline.
+	 */
+	public static DataPipeline fromDataset(Dataset data, int batchSize, int shuffleBuffer, long seed, double scaleFactor, Precision precision) {
+
+		return new DataPipeline(publish -> {
+			for(int from = 0; from < data.size(); from += CHUNK_SIZE) {
+				publish.accept(new Chunk(data, from, Math.min(from + CHUNK_SIZE, data.size())));
+			}
+		}, data.size(), batchSize, shuffleBuffer, seed, scaleFactor, precision);
+	}
+
+	// Constructor starting the stages, the reader gives its chunks to the consumer it is called with
+	private DataPipeline(Consumer<Consumer<Chunk>> reader, int size, int batchSize, int shuffleBuffer, long seed, double scaleFactor, Precision precision) {
+
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+		}
+
+		_size = size;
+		_batchSize = batchSize;
+		_scaleFactor = scaleFactor;
+		_random = new Random(seed);
+		_free = new LinkedBlockingQueue<>();
+		_ready = new LinkedBlockingQueue<>();
+
+		// Daemon threads, so a pipeline that is not closed does not keep the program running
+		_executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "data-pipeline");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// A subscriber that throws is cancelled without onError being called, so the handler reports the exception
+		_chunks = new SubmissionPublisher<>(_executor, BUFFER_CAPACITY, (subscriber, e) -> _ready.add(e));
+		_selections = new SubmissionPublisher<>(_executor, BUFFER_CAPACITY, (subscriber, e) -> _ready.add(e));
+
+		_chunks.subscribe(new Sampler(Math.max(1, shuffleBuffer)));
+		_selections.subscribe(new Normalizer(precision));
+
+		// Reader stage, publishing the chunks until the source is exhausted
+		_executor.execute(() -> {
+			try {
+				reader.accept(chunk -> publish(_chunks, chunk));
+				_chunks.close();
+			}
+			catch(RuntimeException e) {
+				_chunks.closeExceptionally(e);
+			}
+		});
+	}
+
+	/**
+	 * Gets the number of images of the epoch.
+	 *
+	 * @return The number of images, or -1 for a CSV file, whose size is only known once it has been read.
+	 */
+	public int getSize() {
+		return _size;
+	}
+
+	/**
+	 * Takes the next batch, waiting for it to be prepared. The batch stays valid until the next call,
+	 * which hands it back to the pipeline to be refilled.
+	 *
+	 * @return The next batch, or null once every image has been returned.
+	 * @throws IllegalArgumentException if the CSV file is malformed, or the exception that stopped another stage.
+	 * @throws IllegalStateException if the pipeline has been closed or the thread is interrupted.
+	 */
+	public Batch next() {
+
+		if(_current != null) {
+			_free.add(_current);
+			_current = null;
+		}
+
+		if(_finished) {
+			return null;
+		}
+
+		if(_closed) {
+			throw new IllegalStateException("The data pipeline has been closed");
+		}
+
+		Object item;
+
+		try {
+			item = _ready.take();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a batch", e);
+		}
+
+		if(item == END) {
+			_finished = true;
+			return null;
+		}
+
+		if(item instanceof Throwable failure) {
+			_finished = true;
+
+			// Report the real cause, such as the line of a malformed CSV file
+			if(failure instanceof RuntimeException runtime) {
+				throw runtime;
+			}
+			throw new IllegalStateException("The data pipeline failed", failure);
+		}
+
+		_current = (Batch) item;
+		return _current;
+	}
+
+	/**
+	 * Stops the stages, the batches that have not been taken are discarded.
+	 */
+	@Override
+	public void close() {
+		_closed = true;
+		_chunks.close();
+		_selections.close();
+		_executor.shutdownNow();
+	}
+
+	// Method to publish an item, waiting while the next stage's buffer is full, until the pipeline is closed
+	private <T> void publish(SubmissionPublisher<T> publisher, T item) {
+
+		while(!_closed) {
+			// offer returns a negative number if the item was dropped because the buffer stayed full
+			if(publisher.offer(item, 100, TimeUnit.MILLISECONDS, null) >= 0) {
+				return;
+			}
+		}
+
+		throw new IllegalStateException("The data pipeline has been closed");
+	}
+
+	// Sampler stage, keeping a shuffle buffer of images and taking a random one out for every image that comes in
+	private class Sampler implements Flow.Subscriber<Chunk> {
+
+		private final Dataset[] _bufferData; // Dataset of every buffered image
+		private final int[] _bufferImages; // Index of every buffered image in its dataset
+		private int _count; // Number of buffered images
+		private Selection _selection; // Batch being filled
+		private Flow.Subscription _subscription;
+
+		Sampler(int capacity) {
+			_bufferData = new Dataset[capacity];
+			_bufferImages = new int[capacity];
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			_subscription = subscription;
+			_subscription.request(1);
+		}
+
+		@Override
+		public void onNext(Chunk chunk) {
+
+			for(int i = chunk.from; i < chunk.to; i++) {
+
+				if(_count < _bufferData.length) {
+					_bufferData[_count] = chunk.data;
+					_bufferImages[_count] = i;
+					_count++;
+					continue;
+				}
+
+				// Take a random image out of the full buffer and put the new one in its place
+				int j = _random.nextInt(_count);
+				select(_bufferData[j], _bufferImages[j]);
+				_bufferData[j] = chunk.data;
+				_bufferImages[j] = i;
+			}
+
+			_subscription.request(1); // Ask for the next chunk only once this one is used
+		}
+
+		@Override
+		public void onComplete() {
+
+			// Empty the buffer in random order, then publish the last batch which may be smaller
+			while(_count > 0) {
+				int j = _random.nextInt(_count);
+				select(_bufferData[j], _bufferImages[j]);
+
+				_count--;
+				_bufferData[j] = _bufferData[_count];
+				_bufferImages[j] = _bufferImages[_count];
+				_bufferData[_count] = null;
+			}
+
+			if(_selection != null) {
+				publish(_selections, _selection);
+			}
+
+			_selections.close();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			_selections.closeExceptionally(throwable);
+		}
+
+		// Method to add an image to the batch being filled, publishing the batch once it is full
+		private void select(Dataset data, int image) {
+
+			if(_selection == null) {
+				_selection = new Selection(_batchSize);
+			}
+
+			_selection.data[_selection.size] = data;
+			_selection.images[_selection.size] = image;
+			_selection.size++;
+
+			if(_selection.size == _batchSize) {
+				publish(_selections, _selection);
+				_selection = null;
+			}
+		}
+	}
+
+	// Normalizer stage, packing the scaled pixels and labels of every selection into a batch from the pool
+	private class Normalizer implements Flow.Subscriber<Selection> {
+
+		private final Precision _precision; // Precision of the batches
+		private int _created; // Number of batches created for the pool
+		private Flow.Subscription _subscription;
+
+		Normalizer(Precision precision) {
+			_precision = precision;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			_subscription = subscription;
+			_subscription.request(1);
+		}
+
+		@Override
+		public void onNext(Selection selection) {
+
+			Batch batch = takeBatch(selection.data[0]);
+			Tensor input = batch.getCapacity();
+
+			for(int n = 0; n < selection.size; n++) {
+				Dataset data = selection.data[n];
+				int image = selection.images[n];
+
+				if(input.isFloat()) {
+					data.copyPixels(image, _scaleFactor, input.getFloatData(), input.matrixOffset(n, 0));
+				}
+				else {
+					data.copyPixels(image, _scaleFactor, input.getData(), input.matrixOffset(n, 0));
+				}
+
+				batch.getLabels()[n] = data.getLabel(image);
+			}
+
+			batch.setSize(selection.size);
+			_ready.add(batch);
+
+			_subscription.request(1);
+		}
+
+		@Override
+		public void onComplete() {
+			_ready.add(END);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			_ready.add(throwable);
+		}
+
+		// Method to get an empty batch, creating the pool on first use and then waiting for the trainer to return one
+		private Batch takeBatch(Dataset data) {
+
+			if(_created < PREFETCH + 1) {
+				_created++;
+				return new Batch(_precision, _batchSize, data.getRows(), data.getCols());
+			}
+
+			try {
+				return _free.take();
+			}
+			catch(InterruptedException e) {
+				// Only happens when the pipeline is closed
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("The data pipeline has been closed", e);
+			}
+		}
+	}
+
+}
@@ -1,63 +1,345 @@
 /*
  * DataReader: This class is responsible for reading image data from a file and creating Image objects.
  *              It parses the file containing image data and labels, then constructs Image objects for each entry.
+ *              The file is memory-mapped and split into ranges of whole lines which are parsed on all cores,
+ *              reading the digits straight from the mapped bytes into the compact byte arrays of an ImageStore.
  *
  * Author: Max Ceban
  * Date: 26/03/2024
  */
 package data;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 public class DataReader {
 
 	//Attributes
-	private final int rows = 28; // Number of rows in the image data
-	private final int cols = 28; // Number of columns in the image data
+	private final int rows; // Number of rows in the image data, or 0 to work it out from the first line
+	private final int cols; // Number of columns in the image data, or 0 to work it out from the first line
+
+	// Smallest range of the file given to one thread, smaller files are parsed in fewer ranges
+	private static final int MIN_RANGE_SIZE = 1 << 20;
+
+	/**
+	 * Constructs a DataReader for square images, whose size is worked out from the number of values per line.
+	 */
+	public DataReader() {
+		this(0, 0);
+	}
+
+	/**
+	 * Constructs a DataReader for images of the given size.
+	 *
+	 * @param rows Number of rows of every image.
+	 * @param cols Number of columns of every image.
+	 */
+	public DataReader(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+	}
 
 	/**
-	 * Reads image data from a file and constructs Image objects.
+	 * Reads image data from a file and constructs Image objects, which are views of an ImageStore holding the pixels.
 	 *
 	 * @param path The path to the file containing image data.
-	 * @return A list of Image objects constructed from the data.
-	 * @throws IllegalArgumentException if the file is not found.
+	 * @return A list of Image objects constructed from the data, in the order of the file.
+	 * @throws UncheckedIOException if the file cannot be read.
+	 * @throws IllegalArgumentException if a line is malformed, with the line and column of the error.
+	 * @see #readStore(String)
 	 */
 	public List<Image> readData(String path){
+		return readStore(path).images(); // Return the list of Image objects
+	}
+
+	/**
+	 * Reads image data from a file into an ImageStore. Every line holds the label followed by the pixels row by row,
+	 * separated by commas, each between 0 and 255. A first line that does not start with a digit is a header and is skipped.
+	 *
+	 * @param path The path to the file containing image data.
+	 * @return The store holding the images, in the order of the file.
+	 * @throws UncheckedIOException if the file cannot be read.
+	 * @throws IllegalArgumentException if a line is malformed, with the line and column of the error.
+	 */
+	public ImageStore readStore(String path){
+
+		DataLoadEvent event = new DataLoadEvent();
+		event.begin();
+
+		ByteBuffer file = map(path);
+		int start = skipHeader(file);
+
+		int[] size = imageSize(file, start, path);
+		int imageRows = size[0];
+		int imageCols = size[1];
+
+		// Split the file into ranges of whole lines, each starting just after a line break
+		int threads = Runtime.getRuntime().availableProcessors();
+		int ranges = Math.max(1, Math.min(threads, (file.limit() - start)/MIN_RANGE_SIZE));
+		int[] bounds = new int[ranges + 1];
+
+		bounds[0] = start;
+		bounds[ranges] = file.limit();
+
+		for(int r = 1; r < ranges; r++) {
+			bounds[r] = nextLine(file, Math.max(bounds[r - 1], start + (int) ((long) (file.limit() - start)*r/ranges)));
+		}
+
+		int parsedRows = imageRows;
+		int parsedCols = imageCols;
+
+		// Parse the ranges in parallel, the ordered stream keeps the images in the order of the file
+		List<Part> parts = IntStream.range(0, ranges).parallel()
+				.mapToObj(r -> parseRange(file, bounds[r], bounds[r + 1], parsedRows, parsedCols, Integer.MAX_VALUE, path))
+				.toList();
+
+		// Join the parts into the arrays of the store
+		int count = 0;
+		for(Part part: parts) {
+			count += part.count;
+		}
 
-		List<Image> images = new ArrayList<>(); // List to store the Image objects
+		int pixels = imageRows*imageCols;
+		byte[] pixelBytes = new byte[count*pixels];
+		byte[] labelBytes = new byte[count];
 
-		try(BufferedReader dataReader = new BufferedReader(new FileReader(path))){
+		int n = 0;
+		for(Part part: parts) {
+			System.arraycopy(part.pixels, 0, pixelBytes, n*pixels, part.count*pixels);
+			System.arraycopy(part.labels, 0, labelBytes, n, part.count);
+			n += part.count;
+		}
+
+		commitLoad(event, path, count, file.limit() - start);
+		return new ImageStore(count, imageRows, imageCols, pixelBytes, labelBytes);
+	}
+
+	/**
+	 * Reads image data from a file sequentially on the calling thread, handing the images to the consumer
+	 * in stores of chunkSize images (the last one may be smaller) as soon as they are parsed.
+	 * Unlike readStore the first images can be used while the rest of the file is still being read.
+	 *
+	 * @param path The path to the file containing image data.
+	 * @param chunkSize Number of images per store given to the consumer.
+	 * @param consumer Receives the stores in the order of the file.
+	 * @throws UncheckedIOException if the file cannot be read.
+	 * @throws IllegalArgumentException if a line is malformed, with the line and column of the error.
+	 */
+	public void readChunks(String path, int chunkSize, Consumer<ImageStore> consumer){
+
+		ByteBuffer file = map(path);
+		int pos = skipHeader(file);
+
+		int[] size = imageSize(file, pos, path);
+		int pixels = size[0]*size[1];
+
+		while(pos < file.limit()) {
+			DataLoadEvent event = new DataLoadEvent();
+			event.begin();
 
-			String line; // Variable to hold each line read from the file
+			Part part = parseRange(file, pos, file.limit(), size[0], size[1], chunkSize, path);
+			commitLoad(event, path, part.count, part.end - pos);
+			pos = part.end;
 
-			// Loop through each line in the file
-			while((line = dataReader.readLine()) != null) {
+			if(part.count > 0) {
+				consumer.accept(new ImageStore(part.count, size[0], size[1],
+						Arrays.copyOf(part.pixels, part.count*pixels), Arrays.copyOf(part.labels, part.count)));
+			}
+		}
+	}
 
-				String[] lineItems = line.split(","); // Split the line by comma
+	// Method to commit the event of parsing the given number of images from the given number of bytes, if the recording keeps it
+	private static void commitLoad(DataLoadEvent event, String path, int images, long bytes) {
 
-				double[][] data = new double[rows][cols]; // 2D array to hold image data
-				int label = Integer.parseInt(lineItems[0]); // Extract label from the first item
+		event.end();
 
-				int i = 1; // Counter to keep track of the current position in the line
+		if(event.shouldCommit()) {
+			event.path = path;
+			event.images = images;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	// Method to memory-map a file for reading
+	private static ByteBuffer map(String path) {
+
+		try(FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("File is larger than 2 GB: " + path);
+			}
+
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not read " + path, e);
+		}
+	}
+
+	// Method to get the rows and columns of the images, given to the constructor or worked out from the line at start
+	private int[] imageSize(ByteBuffer file, int start, String path) {
+
+		if(rows > 0 && cols > 0) {
+			return new int[] {rows, cols};
+		}
 
-				// Loop through each row and column of the image data
-				for(int row = 0; row < rows; row++) {
-					for(int col = 0; col < cols; col++) {
-						data[row][col] = Integer.parseInt(lineItems[i]); // Parse data and store in the array
-						i++; // Move to the next item in the line
+		int pixels = countValues(file, start) - 1;
+		int side = (int) Math.round(Math.sqrt(pixels));
+
+		if(pixels > 0 && side*side != pixels) {
+			throw new IllegalArgumentException(path + ": " + pixels + " pixels per line do not make a square image, give the image size to the DataReader");
+		}
+
+		return new int[] {side, side};
+	}
+
+	// Pixels and labels of the images parsed from one range of the file, the arrays may be longer than count images
+	private static class Part {
+		byte[] pixels;
+		byte[] labels;
+		int count;
+		int end; // Index in the file just after the last parsed line
+	}
+
+	// Method to parse the lines in file[from..to), which starts at the beginning of a line, stopping after maxCount images
+	private static Part parseRange(ByteBuffer file, int from, int to, int rows, int cols, int maxCount, String path) {
+
+		Part part = new Part();
+		part.labels = new byte[Math.min(64, maxCount)];
+		part.pixels = new byte[part.labels.length*rows*cols];
+		int pos = from;
+
+		while(pos < to && part.count < maxCount) {
+
+			// Skip blank lines, including the line break of Windows files
+			byte b = file.get(pos);
+			if(b == '\n' || b == '\r') {
+				pos++;
+				continue;
+			}
+
+			// Grow the arrays of the part when they are full
+			if(part.count == part.labels.length) {
+				int capacity = (int) Math.min(2L*part.count, maxCount);
+				part.labels = Arrays.copyOf(part.labels, capacity);
+				part.pixels = Arrays.copyOf(part.pixels, capacity*rows*cols);
+			}
+
+			int k = part.count*rows*cols; // Index in part.pixels of the image's first pixel
+
+			// Extract label from the first value
+			int value = 0;
+			int digits = 0;
+			for(; pos < to && isDigit(b = file.get(pos)); pos++, digits++) {
+				value = Math.min(value*10 + (b - '0'), 256); // Stop growing once the value is too large
+			}
+			if(digits == 0 || value > 255) {
+				throw parseError(file, pos, "the label is not a number between 0 and 255", path);
+			}
+			part.labels[part.count] = (byte) value;
+
+			// Loop through each row and column of the image data
+			for(int row = 0; row < rows; row++) {
+				for(int col = 0; col < cols; col++) {
+
+					if(pos >= to || file.get(pos) != ',') {
+						throw parseError(file, pos, "expected " + (rows*cols) + " pixels after the label", path);
+					}
+					pos++;
+
+					value = 0;
+					digits = 0;
+					for(; pos < to && isDigit(b = file.get(pos)); pos++, digits++) {
+						value = Math.min(value*10 + (b - '0'), 256);
 					}
+					if(digits == 0 || value > 255) {
+						throw parseError(file, pos, "a pixel is not a number between 0 and 255", path);
+					}
+
+					part.pixels[k++] = (byte) value; // Store the parsed pixel in the array
 				}
-				// Create a new Image object using the extracted data and label, then add it to the list
-                images.add(new Image(data, label));
 			}
 
+			// The line must end here
+			if(pos < to && file.get(pos) == '\r') {
+				pos++;
+			}
+			if(pos < to && file.get(pos) != '\n') {
+				throw parseError(file, pos, "expected " + (rows*cols) + " pixels after the label", path);
+			}
+			pos++;
 
-		}catch(Exception e) {
-			throw new IllegalArgumentException("File not found " + path); // Throw exception if file not found or there's an issue reading it
+			part.count++;
 		}
-		return images; // Return the list of Image objects
+
+		part.end = pos;
+		return part;
+	}
+
+	// Method to skip a header line, which does not start with a digit, returning the index of the first data line
+	private static int skipHeader(ByteBuffer file) {
+
+		if(file.limit() == 0 || isDigit(file.get(0))) {
+			return 0;
+		}
+
+		return nextLine(file, 0);
+	}
+
+	// Method to count the comma-separated values on the line starting at pos
+	private static int countValues(ByteBuffer file, int pos) {
+
+		if(pos >= file.limit()) {
+			return 0;
+		}
+
+		int values = 1;
+		for(; pos < file.limit() && file.get(pos) != '\n'; pos++) {
+			if(file.get(pos) == ',') {
+				values++;
+			}
+		}
+
+		return values;
+	}
+
+	// Method to get the index just after the next line break at or after pos, or the end of the file
+	private static int nextLine(ByteBuffer file, int pos) {
+
+		while(pos < file.limit() && file.get(pos) != '\n') {
+			pos++;
+		}
+
+		return Math.min(pos + 1, file.limit());
+	}
+
+	// Method to check if a byte is an ASCII digit
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	// Method to create the exception for a parse error at pos, giving its line and column, counted only when an error occurs
+	private static IllegalArgumentException parseError(ByteBuffer file, int pos, String message, String path) {
+
+		int line = 1;
+		int lineStart = 0;
+
+		for(int i = 0; i < pos && i < file.limit(); i++) {
+			if(file.get(i) == '\n') {
+				line++;
+				lineStart = i + 1;
+			}
+		}
+
+		return new IllegalArgumentException(path + ":" + line + ":" + (pos - lineStart + 1) + ": " + message);
 	}
 }
@@ -0,0 +1,73 @@
+/*
+ * Dataset: This interface represents a set of labelled images that the network can be trained and tested on.
+ *          The pixels of an image are copied straight into the network's input tensor, already divided by the
+ *          network's scale factor, so implementations can keep them in whatever compact form suits them.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import java.util.List;
+
+public interface Dataset {
+
+	/**
+	 * Wraps a list of images in a dataset without copying them.
+	 *
+	 * @param images The images, which must all have the same number of rows and columns.
+	 * @return A dataset reading the images of the list.
+	 */
+	static Dataset of(List<Image> images) {
+		return new ImageListDataset(images);
+	}
+
+	/**
+	 * Gets the number of images in the dataset.
+	 *
+	 * @return The number of images.
+	 */
+	int size();
+
+	/**
+	 * Gets the number of rows of every image.
+	 *
+	 * @return The number of rows.
+	 */
+	int getRows();
+
+	/**
+	 * Gets the number of columns of every image.
+	 *
+	 * @return The number of columns.
+	 */
+	int getCols();
+
+	/**
+	 * Gets the label of an image.
+	 *
+	 * @param index Index of the image.
+	 * @return The image label.
+	 */
+	int getLabel(int index);
+
+	/**
+	 * Copies the pixels of an image row by row into an array, divided by the scale factor.
+	 *
+	 * @param index Index of the image.
+	 * @param scaleFactor Factor the pixel values are divided by.
+	 * @param out Array receiving the getRows() * getCols() scaled pixels.
+	 * @param outOffset Index in out of the first pixel.
+	 */
+	void copyPixels(int index, double scaleFactor, double[] out, int outOffset);
+
+	/**
+	 * Float version of copyPixels(int, double, double[], int).
+	 *
+	 * @param index Index of the image.
+	 * @param scaleFactor Factor the pixel values are divided by.
+	 * @param out Array receiving the getRows() * getCols() scaled pixels.
+	 * @param outOffset Index in out of the first pixel.
+	 */
+	void copyPixels(int index, double scaleFactor, float[] out, int outOffset);
+
+}
@@ -0,0 +1,184 @@
+/*
+ * DatasetConverter: This class converts a dataset once, from a CSV file or from the MNIST IDX files,
+ *                   into the binary format read by MappedDataset. The pixels can be stored already divided
+ *                   by the network's scale factor, so loading them needs no arithmetic at all.
+ *
+ *                   Usage: DatasetConverter csv <input.csv> <output> [scaleFactor]
+ *                          DatasetConverter idx <images-idx3-ubyte> <labels-idx1-ubyte> <output> [scaleFactor]
+ *                   Without a scale factor the raw pixels are stored, one byte each.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class DatasetConverter {
+
+	// Magic numbers of the MNIST IDX files, unsigned byte values with 3 and 1 dimensions
+	private static final int IDX_IMAGES = 0x00000803;
+	private static final int IDX_LABELS = 0x00000801;
+
+	// Alignment of the pixels and labels in the output file
+	private static final int ALIGNMENT = 64;
+
+	/**
+	 * Converts a CSV file with one image per line, the label followed by the pixels, into a dataset file.
+	 *
+	 * @param csvPath The path to the CSV file.
+	 * @param outPath The path of the dataset file to write.
+	 * @param scaleFactor Factor the stored pixels are divided by, or 0 to store the raw pixels.
+	 * @throws IllegalArgumentException if the CSV file is malformed, see DataReader.readStore.
+	 * @throws UncheckedIOException if a file cannot be read or written.
+	 */
+	public static void convertCsv(String csvPath, String outPath, double scaleFactor) {
+
+		ImageStore store = new DataReader().readStore(csvPath);
+
+		write(store.size(), store.getRows(), store.getCols(), store.getPixelBytes(), store.getLabelBytes(), outPath, scaleFactor);
+	}
+
+	/**
+	 * Converts a pair of MNIST IDX files, the images and their labels, into a dataset file.
+	 *
+	 * @param imagesPath The path to the images file (idx3-ubyte).
+	 * @param labelsPath The path to the labels file (idx1-ubyte).
+	 * @param outPath The path of the dataset file to write.
+	 * @param scaleFactor Factor the stored pixels are divided by, or 0 to store the raw pixels.
+	 * @throws IllegalArgumentException if the files are not IDX files, are truncated or do not hold the same number of images.
+	 * @throws UncheckedIOException if a file cannot be read or written.
+	 */
+	public static void convertIdx(String imagesPath, String labelsPath, String outPath, double scaleFactor) {
+
+		try(DataInputStream images = new DataInputStream(Files.newInputStream(Path.of(imagesPath)));
+				DataInputStream labels = new DataInputStream(Files.newInputStream(Path.of(labelsPath)))) {
+
+			// The IDX headers are big-endian ints, which is what DataInputStream reads
+			if(images.readInt() != IDX_IMAGES) {
+				throw new IllegalArgumentException("Not an IDX images file: " + imagesPath);
+			}
+			if(labels.readInt() != IDX_LABELS) {
+				throw new IllegalArgumentException("Not an IDX labels file: " + labelsPath);
+			}
+
+			int count = images.readInt();
+			int rows = images.readInt();
+			int cols = images.readInt();
+
+			if(labels.readInt() != count) {
+				throw new IllegalArgumentException("The IDX files hold a different number of images and labels: " + imagesPath + ", " + labelsPath);
+			}
+
+			// The sizes come from the file, so check them before they size the arrays: the 16 and 8 byte headers are
+			// followed by one byte per pixel and per label
+			long imagePixels = (long) rows*cols;
+			long pixels = imagePixels*Math.max(count, 0); // At most 2^62 once one image fits in an int
+
+			if(count < 0 || rows < 1 || cols < 1 || imagePixels > Integer.MAX_VALUE || pixels > Integer.MAX_VALUE
+					|| 16 + pixels > Files.size(Path.of(imagesPath))) {
+				throw new IllegalArgumentException("IDX images file is truncated or its header is corrupt: " + count + " images of "
+						+ rows + "x" + cols + " pixels in " + imagesPath);
+			}
+			if(8 + (long) count > Files.size(Path.of(labelsPath))) {
+				throw new IllegalArgumentException("IDX labels file is truncated: " + labelsPath);
+			}
+
+			byte[] pixelBytes = new byte[(int) pixels];
+			byte[] labelBytes = new byte[count];
+
+			images.readFully(pixelBytes);
+			labels.readFully(labelBytes);
+
+			write(count, rows, cols, pixelBytes, labelBytes, outPath, scaleFactor);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not convert " + imagesPath + " and " + labelsPath, e);
+		}
+	}
+
+	// Method to write the header, pixels and labels of a dataset file, see MappedDataset for the layout
+	private static void write(int count, int rows, int cols, byte[] pixels, byte[] labels, String outPath, double scaleFactor) {
+
+		boolean normalized = scaleFactor > 0;
+
+		long pixelsOffset = MappedDataset.HEADER_SIZE;
+		long pixelBytes = (long) pixels.length*(normalized ? Float.BYTES : 1);
+		long labelsOffset = align(pixelsOffset + pixelBytes);
+		long size = labelsOffset + count;
+
+		if(size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Dataset is too large for a single file: " + size + " bytes");
+		}
+
+		try(FileChannel channel = FileChannel.open(Path.of(outPath), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(0, MappedDataset.MAGIC);
+			buffer.putInt(4, MappedDataset.VERSION);
+			buffer.putInt(8, count);
+			buffer.putInt(12, rows);
+			buffer.putInt(16, cols);
+			buffer.putInt(20, normalized ? MappedDataset.PIXELS_FLOAT32 : MappedDataset.PIXELS_UINT8);
+			buffer.putDouble(24, normalized ? scaleFactor : 0);
+			buffer.putLong(32, pixelsOffset);
+			buffer.putLong(40, labelsOffset);
+
+			if(normalized) {
+				// Divide exactly like the network scales the pixels of an Image for a float precision
+				FloatBuffer out = buffer.slice((int) pixelsOffset, (int) pixelBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+				double scale = 1.0/scaleFactor;
+
+				for(int i = 0; i < pixels.length; i++) {
+					out.put(i, (float) ((pixels[i] & 0xFF)*scale));
+				}
+			}
+			else {
+				buffer.put((int) pixelsOffset, pixels);
+			}
+
+			buffer.put((int) labelsOffset, labels);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not write dataset file " + outPath, e);
+		}
+	}
+
+	// Method to round an offset up to the alignment of the file's sections
+	private static long align(long offset) {
+		return (offset + ALIGNMENT - 1)/ALIGNMENT*ALIGNMENT;
+	}
+
+	/**
+	 * Runs the conversion from the command line, see the usage at the top of the file.
+	 *
+	 * @param args The format, the input files, the output file and optionally the scale factor.
+	 */
+	public static void main(String[] args) {
+
+		if(args.length >= 3 && args[0].equals("csv")) {
+			double scaleFactor = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+			convertCsv(args[1], args[2], scaleFactor);
+		}
+		else if(args.length >= 4 && args[0].equals("idx")) {
+			double scaleFactor = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+			convertIdx(args[1], args[2], args[3], scaleFactor);
+		}
+		else {
+			System.err.println("Usage: DatasetConverter csv <input.csv> <output> [scaleFactor]");
+			System.err.println("       DatasetConverter idx <images-idx3-ubyte> <labels-idx1-ubyte> <output> [scaleFactor]");
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,682 @@
+/**
+ * FloatGemm: This class provides the single-precision versions of the Gemm kernels, used by networks built with
+ *            a float precision. The blocking, register tiles and order of the sums are the same as in Gemm.
+ *            Each kernel can accumulate the inner products either in float, which keeps the tiles half the size,
+ *            or in double, in which case every value of C is rounded to float only once when it is stored.
+ *            With float accumulation, C += A * B and C += transpose(A) * B use the vectorized blocks of VectorKernels
+ *            when Simd.isEnabled().
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import static data.Gemm.BLOCK_K;
+import static data.Gemm.BLOCK_M;
+import static data.Gemm.BLOCK_N;
+import static data.Gemm.TILE;
+
+public class FloatGemm {
+
+	/**
+     * Computes C += A * B.
+     *
+     * @param m Number of rows of A and C.
+     * @param n Number of columns of B and C.
+     * @param k Number of columns of A and rows of B.
+     * @param a Array holding A (m x k).
+     * @param aOffset Index of A's first value.
+     * @param lda Row stride of A.
+     * @param b Array holding B (k x n).
+     * @param bOffset Index of B's first value.
+     * @param ldb Row stride of B.
+     * @param c Array holding C (m x n).
+     * @param cOffset Index of C's first value.
+     * @param ldc Row stride of C.
+     * @param doubleAccumulation True to accumulate the inner products in double, rounding each value of C once.
+     */
+	public static void multiply(int m, int n, int k, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc, boolean doubleAccumulation) {
+
+		// With double accumulation the whole of k is one block, so the sums are not rounded to float between blocks
+		int blockK = doubleAccumulation ? Math.max(k, 1) : BLOCK_K;
+
+		// The blocks of k are visited in order, so every value of C sees its products in increasing p
+		for(int p0 = 0; p0 < k; p0 += blockK) {
+			int p1 = Math.min(p0 + blockK, k);
+
+			for(int i0 = 0; i0 < m; i0 += BLOCK_M) {
+				int i1 = Math.min(i0 + BLOCK_M, m);
+
+				for(int j0 = 0; j0 < n; j0 += BLOCK_N) {
+					int j1 = Math.min(j0 + BLOCK_N, n);
+
+					if(doubleAccumulation) {
+						blockNNDouble(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+					else if(Simd.isEnabled()) {
+						VectorKernels.gemmBlockNN(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+					else {
+						blockNN(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+     * Computes C += A * transpose(B).
+     *
+     * @param m Number of rows of A and C.
+     * @param n Number of rows of B and columns of C.
+     * @param k Number of columns of A and B.
+     * @param a Array holding A (m x k).
+     * @param aOffset Index of A's first value.
+     * @param lda Row stride of A.
+     * @param b Array holding B (n x k).
+     * @param bOffset Index of B's first value.
+     * @param ldb Row stride of B.
+     * @param c Array holding C (m x n).
+     * @param cOffset Index of C's first value.
+     * @param ldc Row stride of C.
+     * @param doubleAccumulation True to accumulate the inner products in double, rounding each value of C once.
+     */
+	public static void multiplyTransposedB(int m, int n, int k, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc, boolean doubleAccumulation) {
+
+		// With double accumulation the whole of k is one block, so the sums are not rounded to float between blocks
+		int blockK = doubleAccumulation ? Math.max(k, 1) : BLOCK_K;
+
+		// The blocks of k are visited in order, so every value of C sees its products in increasing p
+		for(int p0 = 0; p0 < k; p0 += blockK) {
+			int p1 = Math.min(p0 + blockK, k);
+
+			for(int i0 = 0; i0 < m; i0 += BLOCK_M) {
+				int i1 = Math.min(i0 + BLOCK_M, m);
+
+				for(int j0 = 0; j0 < n; j0 += BLOCK_N) {
+					int j1 = Math.min(j0 + BLOCK_N, n);
+
+					if(doubleAccumulation) {
+						blockNTDouble(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+					else {
+						blockNT(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+     * Computes C += transpose(A) * B.
+     *
+     * @param m Number of columns of A and rows of C.
+     * @param n Number of columns of B and C.
+     * @param k Number of rows of A and B.
+     * @param a Array holding A (k x m).
+     * @param aOffset Index of A's first value.
+     * @param lda Row stride of A.
+     * @param b Array holding B (k x n).
+     * @param bOffset Index of B's first value.
+     * @param ldb Row stride of B.
+     * @param c Array holding C (m x n).
+     * @param cOffset Index of C's first value.
+     * @param ldc Row stride of C.
+     * @param doubleAccumulation True to accumulate the inner products in double, rounding each value of C once.
+     */
+	public static void multiplyTransposedA(int m, int n, int k, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc, boolean doubleAccumulation) {
+
+		// With double accumulation the whole of k is one block, so the sums are not rounded to float between blocks
+		int blockK = doubleAccumulation ? Math.max(k, 1) : BLOCK_K;
+
+		// The blocks of k are visited in order, so every value of C sees its products in increasing p
+		for(int p0 = 0; p0 < k; p0 += blockK) {
+			int p1 = Math.min(p0 + blockK, k);
+
+			for(int i0 = 0; i0 < m; i0 += BLOCK_M) {
+				int i1 = Math.min(i0 + BLOCK_M, m);
+
+				for(int j0 = 0; j0 < n; j0 += BLOCK_N) {
+					int j1 = Math.min(j0 + BLOCK_N, n);
+
+					if(doubleAccumulation) {
+						blockTNDouble(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+					else if(Simd.isEnabled()) {
+						VectorKernels.gemmBlockTN(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+					else {
+						blockTN(i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+					}
+				}
+			}
+		}
+	}
+
+	// Multiplies one block, C += A * B, accumulating in float
+	private static void blockNN(int i0, int i1, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int i = i0;
+		for(; i + TILE <= i1; i += TILE) {
+			int j = j0;
+			for(; j + TILE <= j1; j += TILE) {
+				tileNN(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+			for(; j < j1; j++) {
+				columnNN(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			rowNN(i, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Register tile: accumulates a 4 x 4 tile of C in local variables
+	private static void tileNN(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow0 = cOffset + i*ldc + j;
+		int cRow1 = cOffset + (i+1)*ldc + j;
+		int cRow2 = cOffset + (i+2)*ldc + j;
+		int cRow3 = cOffset + (i+3)*ldc + j;
+		float c00 = c[cRow0], c01 = c[cRow0 + 1], c02 = c[cRow0 + 2], c03 = c[cRow0 + 3];
+		float c10 = c[cRow1], c11 = c[cRow1 + 1], c12 = c[cRow1 + 2], c13 = c[cRow1 + 3];
+		float c20 = c[cRow2], c21 = c[cRow2 + 1], c22 = c[cRow2 + 2], c23 = c[cRow2 + 3];
+		float c30 = c[cRow3], c31 = c[cRow3 + 1], c32 = c[cRow3 + 2], c33 = c[cRow3 + 3];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			int bRow = bOffset + p*ldb + j;
+			float a0 = a[aColumn], a1 = a[aColumn + lda], a2 = a[aColumn + 2*lda], a3 = a[aColumn + 3*lda];
+			float b0 = b[bRow], b1 = b[bRow + 1], b2 = b[bRow + 2], b3 = b[bRow + 3];
+
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+
+		c[cRow0] = c00; c[cRow0 + 1] = c01; c[cRow0 + 2] = c02; c[cRow0 + 3] = c03;
+		c[cRow1] = c10; c[cRow1 + 1] = c11; c[cRow1 + 2] = c12; c[cRow1 + 3] = c13;
+		c[cRow2] = c20; c[cRow2 + 1] = c21; c[cRow2 + 2] = c22; c[cRow2 + 3] = c23;
+		c[cRow3] = c30; c[cRow3 + 1] = c31; c[cRow3 + 2] = c32; c[cRow3 + 3] = c33;
+	}
+
+	// Edge of the block: accumulates 4 rows of a single column of C
+	private static void columnNN(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cColumn = cOffset + i*ldc + j;
+		float c0 = c[cColumn], c1 = c[cColumn + ldc], c2 = c[cColumn + 2*ldc], c3 = c[cColumn + 3*ldc];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			float bValue = b[bOffset + p*ldb + j];
+
+			c0 += a[aColumn]*bValue;
+			c1 += a[aColumn + lda]*bValue;
+			c2 += a[aColumn + 2*lda]*bValue;
+			c3 += a[aColumn + 3*lda]*bValue;
+		}
+
+		c[cColumn] = c0; c[cColumn + ldc] = c1; c[cColumn + 2*ldc] = c2; c[cColumn + 3*ldc] = c3;
+	}
+
+	// Edge of the block: accumulates the columns j0 to j1 of a single row of C
+	private static void rowNN(int i, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow = cOffset + i*ldc;
+
+		for(int p = p0; p < p1; p++) {
+			float aValue = a[aOffset + i*lda + p];
+			int bRow = bOffset + p*ldb;
+
+			for(int j = j0; j < j1; j++) {
+				c[cRow + j] += aValue*b[bRow + j];
+			}
+		}
+	}
+
+	// Multiplies one block, C += A * transpose(B), accumulating in float
+	private static void blockNT(int i0, int i1, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int i = i0;
+		for(; i + TILE <= i1; i += TILE) {
+			int j = j0;
+			for(; j + TILE <= j1; j += TILE) {
+				tileNT(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+			for(; j < j1; j++) {
+				columnNT(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			rowNT(i, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Register tile: accumulates a 4 x 4 tile of C in local variables
+	private static void tileNT(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow0 = cOffset + i*ldc + j;
+		int cRow1 = cOffset + (i+1)*ldc + j;
+		int cRow2 = cOffset + (i+2)*ldc + j;
+		int cRow3 = cOffset + (i+3)*ldc + j;
+		float c00 = c[cRow0], c01 = c[cRow0 + 1], c02 = c[cRow0 + 2], c03 = c[cRow0 + 3];
+		float c10 = c[cRow1], c11 = c[cRow1 + 1], c12 = c[cRow1 + 2], c13 = c[cRow1 + 3];
+		float c20 = c[cRow2], c21 = c[cRow2 + 1], c22 = c[cRow2 + 2], c23 = c[cRow2 + 3];
+		float c30 = c[cRow3], c31 = c[cRow3 + 1], c32 = c[cRow3 + 2], c33 = c[cRow3 + 3];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			int bColumn = bOffset + j*ldb + p;
+			float a0 = a[aColumn], a1 = a[aColumn + lda], a2 = a[aColumn + 2*lda], a3 = a[aColumn + 3*lda];
+			float b0 = b[bColumn], b1 = b[bColumn + ldb], b2 = b[bColumn + 2*ldb], b3 = b[bColumn + 3*ldb];
+
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+
+		c[cRow0] = c00; c[cRow0 + 1] = c01; c[cRow0 + 2] = c02; c[cRow0 + 3] = c03;
+		c[cRow1] = c10; c[cRow1 + 1] = c11; c[cRow1 + 2] = c12; c[cRow1 + 3] = c13;
+		c[cRow2] = c20; c[cRow2 + 1] = c21; c[cRow2 + 2] = c22; c[cRow2 + 3] = c23;
+		c[cRow3] = c30; c[cRow3 + 1] = c31; c[cRow3 + 2] = c32; c[cRow3 + 3] = c33;
+	}
+
+	// Edge of the block: accumulates 4 rows of a single column of C
+	private static void columnNT(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cColumn = cOffset + i*ldc + j;
+		float c0 = c[cColumn], c1 = c[cColumn + ldc], c2 = c[cColumn + 2*ldc], c3 = c[cColumn + 3*ldc];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			float bValue = b[bOffset + j*ldb + p];
+
+			c0 += a[aColumn]*bValue;
+			c1 += a[aColumn + lda]*bValue;
+			c2 += a[aColumn + 2*lda]*bValue;
+			c3 += a[aColumn + 3*lda]*bValue;
+		}
+
+		c[cColumn] = c0; c[cColumn + ldc] = c1; c[cColumn + 2*ldc] = c2; c[cColumn + 3*ldc] = c3;
+	}
+
+	// Edge of the block: accumulates the columns j0 to j1 of a single row of C
+	private static void rowNT(int i, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int aRow = aOffset + i*lda;
+		int cRow = cOffset + i*ldc;
+
+		for(int j = j0; j < j1; j++) {
+			int bRow = bOffset + j*ldb;
+			float sum = c[cRow + j];
+
+			for(int p = p0; p < p1; p++) {
+				sum += a[aRow + p]*b[bRow + p];
+			}
+
+			c[cRow + j] = sum;
+		}
+	}
+
+	// Multiplies one block, C += transpose(A) * B, accumulating in float
+	private static void blockTN(int i0, int i1, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int i = i0;
+		for(; i + TILE <= i1; i += TILE) {
+			int j = j0;
+			for(; j + TILE <= j1; j += TILE) {
+				tileTN(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+			for(; j < j1; j++) {
+				columnTN(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			rowTN(i, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Register tile: accumulates a 4 x 4 tile of C in local variables
+	private static void tileTN(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow0 = cOffset + i*ldc + j;
+		int cRow1 = cOffset + (i+1)*ldc + j;
+		int cRow2 = cOffset + (i+2)*ldc + j;
+		int cRow3 = cOffset + (i+3)*ldc + j;
+		float c00 = c[cRow0], c01 = c[cRow0 + 1], c02 = c[cRow0 + 2], c03 = c[cRow0 + 3];
+		float c10 = c[cRow1], c11 = c[cRow1 + 1], c12 = c[cRow1 + 2], c13 = c[cRow1 + 3];
+		float c20 = c[cRow2], c21 = c[cRow2 + 1], c22 = c[cRow2 + 2], c23 = c[cRow2 + 3];
+		float c30 = c[cRow3], c31 = c[cRow3 + 1], c32 = c[cRow3 + 2], c33 = c[cRow3 + 3];
+
+		for(int p = p0; p < p1; p++) {
+			int aRow = aOffset + p*lda + i;
+			int bRow = bOffset + p*ldb + j;
+			float a0 = a[aRow], a1 = a[aRow + 1], a2 = a[aRow + 2], a3 = a[aRow + 3];
+			float b0 = b[bRow], b1 = b[bRow + 1], b2 = b[bRow + 2], b3 = b[bRow + 3];
+
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+
+		c[cRow0] = c00; c[cRow0 + 1] = c01; c[cRow0 + 2] = c02; c[cRow0 + 3] = c03;
+		c[cRow1] = c10; c[cRow1 + 1] = c11; c[cRow1 + 2] = c12; c[cRow1 + 3] = c13;
+		c[cRow2] = c20; c[cRow2 + 1] = c21; c[cRow2 + 2] = c22; c[cRow2 + 3] = c23;
+		c[cRow3] = c30; c[cRow3 + 1] = c31; c[cRow3 + 2] = c32; c[cRow3 + 3] = c33;
+	}
+
+	// Edge of the block: accumulates 4 rows of a single column of C
+	private static void columnTN(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cColumn = cOffset + i*ldc + j;
+		float c0 = c[cColumn], c1 = c[cColumn + ldc], c2 = c[cColumn + 2*ldc], c3 = c[cColumn + 3*ldc];
+
+		for(int p = p0; p < p1; p++) {
+			int aRow = aOffset + p*lda + i;
+			float bValue = b[bOffset + p*ldb + j];
+
+			c0 += a[aRow]*bValue;
+			c1 += a[aRow + 1]*bValue;
+			c2 += a[aRow + 2]*bValue;
+			c3 += a[aRow + 3]*bValue;
+		}
+
+		c[cColumn] = c0; c[cColumn + ldc] = c1; c[cColumn + 2*ldc] = c2; c[cColumn + 3*ldc] = c3;
+	}
+
+	// Edge of the block: accumulates the columns j0 to j1 of a single row of C
+	private static void rowTN(int i, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow = cOffset + i*ldc;
+
+		for(int p = p0; p < p1; p++) {
+			float aValue = a[aOffset + p*lda + i];
+			int bRow = bOffset + p*ldb;
+
+			for(int j = j0; j < j1; j++) {
+				c[cRow + j] += aValue*b[bRow + j];
+			}
+		}
+	}
+
+	// Multiplies one block, C += A * B, accumulating in double
+	private static void blockNNDouble(int i0, int i1, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int i = i0;
+		for(; i + TILE <= i1; i += TILE) {
+			int j = j0;
+			for(; j + TILE <= j1; j += TILE) {
+				tileNNDouble(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+			for(; j < j1; j++) {
+				columnNNDouble(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			rowNNDouble(i, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Register tile: accumulates a 4 x 4 tile of C in local variables
+	private static void tileNNDouble(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow0 = cOffset + i*ldc + j;
+		int cRow1 = cOffset + (i+1)*ldc + j;
+		int cRow2 = cOffset + (i+2)*ldc + j;
+		int cRow3 = cOffset + (i+3)*ldc + j;
+		double c00 = c[cRow0], c01 = c[cRow0 + 1], c02 = c[cRow0 + 2], c03 = c[cRow0 + 3];
+		double c10 = c[cRow1], c11 = c[cRow1 + 1], c12 = c[cRow1 + 2], c13 = c[cRow1 + 3];
+		double c20 = c[cRow2], c21 = c[cRow2 + 1], c22 = c[cRow2 + 2], c23 = c[cRow2 + 3];
+		double c30 = c[cRow3], c31 = c[cRow3 + 1], c32 = c[cRow3 + 2], c33 = c[cRow3 + 3];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			int bRow = bOffset + p*ldb + j;
+			double a0 = a[aColumn], a1 = a[aColumn + lda], a2 = a[aColumn + 2*lda], a3 = a[aColumn + 3*lda];
+			double b0 = b[bRow], b1 = b[bRow + 1], b2 = b[bRow + 2], b3 = b[bRow + 3];
+
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+
+		c[cRow0] = (float) c00; c[cRow0 + 1] = (float) c01; c[cRow0 + 2] = (float) c02; c[cRow0 + 3] = (float) c03;
+		c[cRow1] = (float) c10; c[cRow1 + 1] = (float) c11; c[cRow1 + 2] = (float) c12; c[cRow1 + 3] = (float) c13;
+		c[cRow2] = (float) c20; c[cRow2 + 1] = (float) c21; c[cRow2 + 2] = (float) c22; c[cRow2 + 3] = (float) c23;
+		c[cRow3] = (float) c30; c[cRow3 + 1] = (float) c31; c[cRow3 + 2] = (float) c32; c[cRow3 + 3] = (float) c33;
+	}
+
+	// Edge of the block: accumulates 4 rows of a single column of C
+	private static void columnNNDouble(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cColumn = cOffset + i*ldc + j;
+		double c0 = c[cColumn], c1 = c[cColumn + ldc], c2 = c[cColumn + 2*ldc], c3 = c[cColumn + 3*ldc];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			double bValue = b[bOffset + p*ldb + j];
+
+			c0 += a[aColumn]*bValue;
+			c1 += a[aColumn + lda]*bValue;
+			c2 += a[aColumn + 2*lda]*bValue;
+			c3 += a[aColumn + 3*lda]*bValue;
+		}
+
+		c[cColumn] = (float) c0; c[cColumn + ldc] = (float) c1; c[cColumn + 2*ldc] = (float) c2; c[cColumn + 3*ldc] = (float) c3;
+	}
+
+	// Edge of the block: accumulates the columns j0 to j1 of a single row of C
+	private static void rowNNDouble(int i, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow = cOffset + i*ldc;
+
+		// The values of C are kept in double while the products are added, 4 columns at a time
+		int j = j0;
+		for(; j + TILE <= j1; j += TILE) {
+			double c0 = c[cRow + j], c1 = c[cRow + j + 1], c2 = c[cRow + j + 2], c3 = c[cRow + j + 3];
+
+			for(int p = p0; p < p1; p++) {
+				double aValue = a[aOffset + i*lda + p];
+				int bRow = bOffset + p*ldb + j;
+
+				c0 += aValue*b[bRow]; c1 += aValue*b[bRow + 1]; c2 += aValue*b[bRow + 2]; c3 += aValue*b[bRow + 3];
+			}
+
+			c[cRow + j] = (float) c0; c[cRow + j + 1] = (float) c1; c[cRow + j + 2] = (float) c2; c[cRow + j + 3] = (float) c3;
+		}
+		for(; j < j1; j++) {
+			double sum = c[cRow + j];
+
+			for(int p = p0; p < p1; p++) {
+				sum += (double) a[aOffset + i*lda + p]*b[bOffset + p*ldb + j];
+			}
+
+			c[cRow + j] = (float) sum;
+		}
+	}
+
+	// Multiplies one block, C += A * transpose(B), accumulating in double
+	private static void blockNTDouble(int i0, int i1, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int i = i0;
+		for(; i + TILE <= i1; i += TILE) {
+			int j = j0;
+			for(; j + TILE <= j1; j += TILE) {
+				tileNTDouble(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+			for(; j < j1; j++) {
+				columnNTDouble(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			rowNTDouble(i, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Register tile: accumulates a 4 x 4 tile of C in local variables
+	private static void tileNTDouble(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow0 = cOffset + i*ldc + j;
+		int cRow1 = cOffset + (i+1)*ldc + j;
+		int cRow2 = cOffset + (i+2)*ldc + j;
+		int cRow3 = cOffset + (i+3)*ldc + j;
+		double c00 = c[cRow0], c01 = c[cRow0 + 1], c02 = c[cRow0 + 2], c03 = c[cRow0 + 3];
+		double c10 = c[cRow1], c11 = c[cRow1 + 1], c12 = c[cRow1 + 2], c13 = c[cRow1 + 3];
+		double c20 = c[cRow2], c21 = c[cRow2 + 1], c22 = c[cRow2 + 2], c23 = c[cRow2 + 3];
+		double c30 = c[cRow3], c31 = c[cRow3 + 1], c32 = c[cRow3 + 2], c33 = c[cRow3 + 3];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			int bColumn = bOffset + j*ldb + p;
+			double a0 = a[aColumn], a1 = a[aColumn + lda], a2 = a[aColumn + 2*lda], a3 = a[aColumn + 3*lda];
+			double b0 = b[bColumn], b1 = b[bColumn + ldb], b2 = b[bColumn + 2*ldb], b3 = b[bColumn + 3*ldb];
+
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+
+		c[cRow0] = (float) c00; c[cRow0 + 1] = (float) c01; c[cRow0 + 2] = (float) c02; c[cRow0 + 3] = (float) c03;
+		c[cRow1] = (float) c10; c[cRow1 + 1] = (float) c11; c[cRow1 + 2] = (float) c12; c[cRow1 + 3] = (float) c13;
+		c[cRow2] = (float) c20; c[cRow2 + 1] = (float) c21; c[cRow2 + 2] = (float) c22; c[cRow2 + 3] = (float) c23;
+		c[cRow3] = (float) c30; c[cRow3 + 1] = (float) c31; c[cRow3 + 2] = (float) c32; c[cRow3 + 3] = (float) c33;
+	}
+
+	// Edge of the block: accumulates 4 rows of a single column of C
+	private static void columnNTDouble(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cColumn = cOffset + i*ldc + j;
+		double c0 = c[cColumn], c1 = c[cColumn + ldc], c2 = c[cColumn + 2*ldc], c3 = c[cColumn + 3*ldc];
+
+		for(int p = p0; p < p1; p++) {
+			int aColumn = aOffset + i*lda + p;
+			double bValue = b[bOffset + j*ldb + p];
+
+			c0 += a[aColumn]*bValue;
+			c1 += a[aColumn + lda]*bValue;
+			c2 += a[aColumn + 2*lda]*bValue;
+			c3 += a[aColumn + 3*lda]*bValue;
+		}
+
+		c[cColumn] = (float) c0; c[cColumn + ldc] = (float) c1; c[cColumn + 2*ldc] = (float) c2; c[cColumn + 3*ldc] = (float) c3;
+	}
+
+	// Edge of the block: accumulates the columns j0 to j1 of a single row of C
+	private static void rowNTDouble(int i, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int aRow = aOffset + i*lda;
+		int cRow = cOffset + i*ldc;
+
+		for(int j = j0; j < j1; j++) {
+			int bRow = bOffset + j*ldb;
+			double sum = c[cRow + j];
+
+			for(int p = p0; p < p1; p++) {
+				sum += (double) a[aRow + p]*b[bRow + p];
+			}
+
+			c[cRow + j] = (float) sum;
+		}
+	}
+
+	// Multiplies one block, C += transpose(A) * B, accumulating in double
+	private static void blockTNDouble(int i0, int i1, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int i = i0;
+		for(; i + TILE <= i1; i += TILE) {
+			int j = j0;
+			for(; j + TILE <= j1; j += TILE) {
+				tileTNDouble(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+			for(; j < j1; j++) {
+				columnTNDouble(i, j, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			rowTNDouble(i, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Register tile: accumulates a 4 x 4 tile of C in local variables
+	private static void tileTNDouble(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow0 = cOffset + i*ldc + j;
+		int cRow1 = cOffset + (i+1)*ldc + j;
+		int cRow2 = cOffset + (i+2)*ldc + j;
+		int cRow3 = cOffset + (i+3)*ldc + j;
+		double c00 = c[cRow0], c01 = c[cRow0 + 1], c02 = c[cRow0 + 2], c03 = c[cRow0 + 3];
+		double c10 = c[cRow1], c11 = c[cRow1 + 1], c12 = c[cRow1 + 2], c13 = c[cRow1 + 3];
+		double c20 = c[cRow2], c21 = c[cRow2 + 1], c22 = c[cRow2 + 2], c23 = c[cRow2 + 3];
+		double c30 = c[cRow3], c31 = c[cRow3 + 1], c32 = c[cRow3 + 2], c33 = c[cRow3 + 3];
+
+		for(int p = p0; p < p1; p++) {
+			int aRow = aOffset + p*lda + i;
+			int bRow = bOffset + p*ldb + j;
+			double a0 = a[aRow], a1 = a[aRow + 1], a2 = a[aRow + 2], a3 = a[aRow + 3];
+			double b0 = b[bRow], b1 = b[bRow + 1], b2 = b[bRow + 2], b3 = b[bRow + 3];
+
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+
+		c[cRow0] = (float) c00; c[cRow0 + 1] = (float) c01; c[cRow0 + 2] = (float) c02; c[cRow0 + 3] = (float) c03;
+		c[cRow1] = (float) c10; c[cRow1 + 1] = (float) c11; c[cRow1 + 2] = (float) c12; c[cRow1 + 3] = (float) c13;
+		c[cRow2] = (float) c20; c[cRow2 + 1] = (float) c21; c[cRow2 + 2] = (float) c22; c[cRow2 + 3] = (float) c23;
+		c[cRow3] = (float) c30; c[cRow3 + 1] = (float) c31; c[cRow3 + 2] = (float) c32; c[cRow3 + 3] = (float) c33;
+	}
+
+	// Edge of the block: accumulates 4 rows of a single column of C
+	private static void columnTNDouble(int i, int j, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cColumn = cOffset + i*ldc + j;
+		double c0 = c[cColumn], c1 = c[cColumn + ldc], c2 = c[cColumn + 2*ldc], c3 = c[cColumn + 3*ldc];
+
+		for(int p = p0; p < p1; p++) {
+			int aRow = aOffset + p*lda + i;
+			double bValue = b[bOffset + p*ldb + j];
+
+			c0 += a[aRow]*bValue;
+			c1 += a[aRow + 1]*bValue;
+			c2 += a[aRow + 2]*bValue;
+			c3 += a[aRow + 3]*bValue;
+		}
+
+		c[cColumn] = (float) c0; c[cColumn + ldc] = (float) c1; c[cColumn + 2*ldc] = (float) c2; c[cColumn + 3*ldc] = (float) c3;
+	}
+
+	// Edge of the block: accumulates the columns j0 to j1 of a single row of C
+	private static void rowTNDouble(int i, int j0, int j1, int p0, int p1, float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int cRow = cOffset + i*ldc;
+
+		// The values of C are kept in double while the products are added, 4 columns at a time
+		int j = j0;
+		for(; j + TILE <= j1; j += TILE) {
+			double c0 = c[cRow + j], c1 = c[cRow + j + 1], c2 = c[cRow + j + 2], c3 = c[cRow + j + 3];
+
+			for(int p = p0; p < p1; p++) {
+				double aValue = a[aOffset + p*lda + i];
+				int bRow = bOffset + p*ldb + j;
+
+				c0 += aValue*b[bRow]; c1 += aValue*b[bRow + 1]; c2 += aValue*b[bRow + 2]; c3 += aValue*b[bRow + 3];
+			}
+
+			c[cRow + j] = (float) c0; c[cRow + j + 1] = (float) c1; c[cRow + j + 2] = (float) c2; c[cRow + j + 3] = (float) c3;
+		}
+		for(; j < j1; j++) {
+			double sum = c[cRow + j];
+
+			for(int p = p0; p < p1; p++) {
+				sum += (double) a[aOffset + p*lda + i]*b[bOffset + p*ldb + j];
+			}
+
+			c[cRow + j] = (float) sum;
+		}
+	}
+}
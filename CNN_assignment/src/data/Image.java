@@ -1,29 +1,51 @@
 /*
  * Image: This class represents an image along with its associated label.
  *        It is used to store image data and corresponding labels for training or testing.
+ *        An image either holds its own pixels or is a lightweight view of an image in an ImageStore.
  *
  * Author: Max Ceban
  * Date: 26/03/2024
  */
 package data;
 
+import static data.MatrixUtility.multiply;
+
 public class Image {
 
 	//Attributes
 
-    /** The pixel data of the image. */
+    /** The pixel data of the image, or null if the image is a view of a store. */
 	private double[][] data;
 
+    /** The store holding the pixels of the image, or null if the image holds its own pixels. */
+	private ImageStore store;
+
+    /** Index of the image in its store. */
+	private int index;
+
     /** The label associated with the image. */
 	private int label;
 
 	/**
-     * Gets the pixel data of the image.
+     * Gets the pixel data of the image. For a view of an ImageStore this creates a new array on every call,
+     * so code running over many images should use copyPixels instead.
      *
      * @return The pixel data.
      */
 	public double[][] getData() {
-		return data;
+
+		if(store == null) {
+			return data;
+		}
+
+		double[][] pixels = new double[getRows()][getCols()];
+		for(int row = 0; row < pixels.length; row++) {
+			for(int col = 0; col < pixels[0].length; col++) {
+				pixels[row][col] = store.getPixel(index, row, col);
+			}
+		}
+
+		return pixels;
 	}
 
 	/**
@@ -35,6 +57,56 @@ public class Image {
 		return label;
 	}
 
+	/**
+     * Gets the number of rows of the image.
+     *
+     * @return The number of rows.
+     */
+	public int getRows() {
+		return store == null ? data.length : store.getRows();
+	}
+
+	/**
+     * Gets the number of columns of the image.
+     *
+     * @return The number of columns.
+     */
+	public int getCols() {
+		return store == null ? data[0].length : store.getCols();
+	}
+
+	/**
+     * Copies the pixels of the image row by row into a caller-supplied array, divided by the scale factor.
+     *
+     * @param scaleFactor Factor the pixel values are divided by.
+     * @param out Array receiving the getRows() * getCols() scaled pixels.
+     * @param outOffset Index in out of the first pixel.
+     */
+	public void copyPixels(double scaleFactor, double[] out, int outOffset) {
+		if(store == null) {
+			multiply(data, 1.0/scaleFactor, out, outOffset);
+		}
+		else {
+			store.copyPixels(index, scaleFactor, out, outOffset);
+		}
+	}
+
+	/**
+     * Float version of copyPixels(double, double[], int).
+     *
+     * @param scaleFactor Factor the pixel values are divided by.
+     * @param out Array receiving the getRows() * getCols() scaled pixels.
+     * @param outOffset Index in out of the first pixel.
+     */
+	public void copyPixels(double scaleFactor, float[] out, int outOffset) {
+		if(store == null) {
+			multiply(data, 1.0/scaleFactor, out, outOffset);
+		}
+		else {
+			store.copyPixels(index, scaleFactor, out, outOffset);
+		}
+	}
+
 	/**
      * Constructs an Image object with the given pixel data and label.
      *
@@ -46,6 +118,18 @@ public class Image {
 		this.label = label;
 	}
 
+	/**
+     * Constructs a view of an image in a store, see ImageStore.get.
+     *
+     * @param store The store holding the image.
+     * @param index Index of the image in the store.
+     */
+	Image(ImageStore store, int index) {
+		this.store = store;
+		this.index = index;
+		this.label = store.getLabel(index);
+	}
+
 	/**
      * Returns a string representation of the Image object, including its label and pixel data.
      *
@@ -53,6 +137,7 @@ public class Image {
      */
 	@Override
 	public String toString() {
+		double[][] data = getData();
 		String s  = label + ", \n";
 
 		for (double[] element : data) {
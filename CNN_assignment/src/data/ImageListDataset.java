@@ -0,0 +1,52 @@
+/*
+ * ImageListDataset: This class adapts a list of Image objects to the Dataset interface, see Dataset.of.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import java.util.List;
+
+class ImageListDataset implements Dataset {
+
+	private final List<Image> _images; // The wrapped images
+
+	/**
+	 * Constructor for ImageListDataset
+	 * @param images The images, which must all have the same number of rows and columns
+	 */
+	ImageListDataset(List<Image> images) {
+		this._images = images;
+	}
+
+	@Override
+	public int size() {
+		return _images.size();
+	}
+
+	@Override
+	public int getRows() {
+		return _images.get(0).getRows();
+	}
+
+	@Override
+	public int getCols() {
+		return _images.get(0).getCols();
+	}
+
+	@Override
+	public int getLabel(int index) {
+		return _images.get(index).getLabel();
+	}
+
+	@Override
+	public void copyPixels(int index, double scaleFactor, double[] out, int outOffset) {
+		_images.get(index).copyPixels(scaleFactor, out, outOffset);
+	}
+
+	@Override
+	public void copyPixels(int index, double scaleFactor, float[] out, int outOffset) {
+		_images.get(index).copyPixels(scaleFactor, out, outOffset);
+	}
+
+}
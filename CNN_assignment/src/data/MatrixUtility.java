@@ -1,5 +1,7 @@
 /**
  * MatrixUtility: This class provides utility methods for matrix operations such as addition and multiplication.
+ *                The rows are processed with the vectorized kernels of VectorKernels when Simd.isEnabled(),
+ *                which give exactly the same results as the scalar loops.
  * Author: Max Ceban
  * Date: 26/03/2024
  */
@@ -21,9 +23,7 @@ public class MatrixUtility {
 
         // Perform element-wise addition
 		for(int i =0; i < a.length; i++) {
-			for(int j = 0; j < a[0].length; j++) {
-				out[i][j] = a[i][j] + b[i][j];
-			}
+			addRange(a[i], b[i], out[i], 0, a[0].length);
 		}
 
 		return out;
@@ -42,9 +42,7 @@ public class MatrixUtility {
 		double[] out = new double[a.length];
 
         // Perform element-wise addition
-		for(int i =0; i < a.length; i++) {
-			out[i] = a[i] + b[i];
-		}
+		addRange(a, b, out, 0, a.length);
 
 		return out;
 	}
@@ -62,9 +60,7 @@ public class MatrixUtility {
 
         // Perform scalar multiplication
 		for(int i =0; i < a.length; i++) {
-			for(int j = 0; j < a[0].length; j++) {
-				out[i][j] = a[i][j] * scalar;
-			}
+			multiplyRange(a[i], scalar, out[i], 0, a[0].length);
 		}
 
 		return out;
@@ -83,11 +79,95 @@ public class MatrixUtility {
 		double[] out = new double[a.length];
 
         // Perform scalar multiplication
+		multiplyRange(a, scalar, out, 0, a.length);
+
+		return out;
+
+	}
+
+	/**
+     * Performs element-wise addition of two 1D arrays in place, adding b to a.
+     *
+     * @param a The 1D array receiving the result.
+     * @param b The 1D array to add.
+     */
+	public static void addInPlace(double[] a, double[] b){
+
+		addRange(a, b, a, 0, a.length);
+
+	}
+
+	/**
+     * Performs scalar multiplication of a 1D array in place.
+     *
+     * @param a The 1D array to multiply.
+     * @param scalar The scalar value to multiply each element by.
+     */
+	public static void multiplyInPlace(double[] a, double scalar){
+
+		multiplyRange(a, scalar, a, 0, a.length);
+
+	}
+
+	/**
+     * Performs scalar multiplication of a 2D array, writing the result row by row into an existing 1D array.
+     *
+     * @param a The input 2D array.
+     * @param scalar The scalar value to multiply each element by.
+     * @param out The 1D array receiving the result.
+     * @param outOffset Index in out of the result's first value.
+     */
+	public static void multiply(double[][] a, double scalar, double[] out, int outOffset){
+
 		for(int i =0; i < a.length; i++) {
-			out[i] = a[i]*scalar;
+			multiplyRange(a[i], scalar, out, outOffset + i*a[0].length, a[0].length);
 		}
 
-		return out;
+	}
+
+	/**
+     * Performs scalar multiplication of a 2D array, writing the result row by row into an existing float 1D array.
+     * Each product is computed in double and rounded to float once.
+     *
+     * @param a The input 2D array.
+     * @param scalar The scalar value to multiply each element by.
+     * @param out The float 1D array receiving the result.
+     * @param outOffset Index in out of the result's first value.
+     */
+	public static void multiply(double[][] a, double scalar, float[] out, int outOffset){
+
+		int k = outOffset;
+		for(int i =0; i < a.length; i++) {
+			for(int j = 0; j < a[0].length; j++) {
+				out[k++] = (float) (a[i][j] * scalar);
+			}
+		}
+
+	}
+
+	// Adds the first length values of b to those of a into out starting at outOffset, vectorized when possible
+	private static void addRange(double[] a, double[] b, double[] out, int outOffset, int length){
+
+		if(Simd.isEnabled()) {
+			VectorKernels.add(a, 0, b, 0, out, outOffset, length);
+			return;
+		}
 
+		for(int j = 0; j < length; j++) {
+			out[outOffset + j] = a[j] + b[j];
+		}
+	}
+
+	// Multiplies the first length values of a by the scalar into out starting at outOffset, vectorized when possible
+	private static void multiplyRange(double[] a, double scalar, double[] out, int outOffset, int length){
+
+		if(Simd.isEnabled()) {
+			VectorKernels.multiply(a, 0, scalar, out, outOffset, length);
+			return;
+		}
+
+		for(int j = 0; j < length; j++) {
+			out[outOffset + j] = a[j] * scalar;
+		}
 	}
 }
@@ -0,0 +1,35 @@
+/*
+ * Precision: This enum lists the floating point formats a network can store its weights and activations in.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+public enum Precision {
+
+	// Weights, activations and sums in 64-bit doubles
+	DOUBLE,
+
+	// Weights and activations in 32-bit floats, half the memory and bandwidth of DOUBLE, with the sums also in float
+	FLOAT,
+
+	// Weights and activations in 32-bit floats, with the inner-product sums accumulated in double
+	// and rounded to float once when they are stored
+	FLOAT_DOUBLE_ACCUMULATION;
+
+	// Returns true if the values are stored in float arrays
+	public boolean isFloat() {
+		return this != DOUBLE;
+	}
+
+	// Returns true if the float kernels should accumulate their sums in double
+	public boolean accumulatesInDouble() {
+		return this == FLOAT_DOUBLE_ACCUMULATION;
+	}
+
+	// Returns the number of bytes of a stored value
+	public int getBytes() {
+		return isFloat() ? Float.BYTES : Double.BYTES;
+	}
+
+}
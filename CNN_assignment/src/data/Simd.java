@@ -0,0 +1,66 @@
+/*
+ * Simd: This class checks once whether the vectorized kernels of VectorKernels can be used.
+ *       They need the incubating Vector API, which the JVM only provides when it is started with
+ *       --add-modules jdk.incubator.vector. Without it, or with -Dcnn.simd=false, every caller uses its scalar loops.
+ *       The classes of the Vector API are only loaded when the check succeeds, so the rest of the program runs either way.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+public class Simd {
+
+	// Largest step between the pooled windows that the vectorized max pooling handles, it scans the windows starting at
+	// every column and keeps one lane in stepSize, so larger steps would waste most lanes and use the scalar loops instead
+	public static final int MAX_POOL_STEP = 4;
+
+	// Whether the vectorized kernels are used, decided once when the class is loaded
+	private static final boolean ENABLED = detect();
+
+	/**
+	 * Checks if the vectorized kernels are available and enabled.
+	 *
+	 * @return True if callers should use VectorKernels, false to use their scalar loops.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Gets the number of doubles the vectorized kernels process at once.
+	 *
+	 * @return The number of double lanes, or 1 if the kernels are not enabled.
+	 */
+	public static int doubleLanes() {
+		return ENABLED ? VectorKernels.doubleLanes() : 1;
+	}
+
+	/**
+	 * Gets the number of floats the vectorized kernels process at once.
+	 *
+	 * @return The number of float lanes, or 1 if the kernels are not enabled.
+	 */
+	public static int floatLanes() {
+		return ENABLED ? VectorKernels.floatLanes() : 1;
+	}
+
+	// Method to check if the Vector API module is present and the hardware has vectors of at least 2 doubles
+	private static boolean detect() {
+
+		if(!Boolean.parseBoolean(System.getProperty("cnn.simd", "true"))) {
+			return false;
+		}
+
+		if(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return false;
+		}
+
+		try {
+			return VectorKernels.doubleLanes() >= 2;
+		}
+		catch(LinkageError e) {
+			return false;
+		}
+	}
+
+}
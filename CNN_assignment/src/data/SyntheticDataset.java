@@ -0,0 +1,127 @@
+/*
+ * SyntheticDataset: This class generates MNIST-shaped datasets in memory, so the network can be trained and benchmarked
+ *                   without the CSV files. Every class has its own shape of two or three curved strokes, and every image
+ *                   draws its class's strokes with the control points moved by a few pixels, anti-aliased like the
+ *                   MNIST digits. About a sixth of the pixels are nonzero, close to MNIST, so the sparse kernels of the
+ *                   first layer see the same kind of input. The images depend only on the seed and their index.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public final class SyntheticDataset {
+
+	// Number of classes, like the ten MNIST digits
+	public static final int CLASSES = 10;
+
+	// Largest distance in pixels of a 28x28 image a control point of an image is moved from its class's shape
+	private static final double JITTER = 2.0;
+
+	// Number of points drawn along every stroke, and the width of a stroke in pixels of a 28x28 image
+	private static final int STROKE_STEPS = 100;
+	private static final double STROKE_WIDTH = 1.75;
+
+	private SyntheticDataset() {
+	}
+
+	/**
+	 * Generates a dataset of size images with uniformly distributed labels.
+	 *
+	 * @param size Number of images.
+	 * @param rows Number of rows of every image.
+	 * @param cols Number of columns of every image.
+	 * @param seed Seed of the classes' shapes and of the images.
+	 * @return The dataset, with the same images for the same arguments.
+	 * @throws IllegalArgumentException if the size is negative or an image is smaller than 8x8 pixels.
+	 */
+	public static ImageStore generate(int size, int rows, int cols, long seed) {
+		return generate(size, rows, cols, seed, 0);
+	}
+
+	/**
+	 * Generates images firstImage..firstImage+size-1 of the sequence of images of a seed. Datasets generated with the
+	 * same seed share the shapes of the classes, so a test set generated after a training set has different images
+	 * of the same classes.
+	 *
+	 * @param size Number of images.
+	 * @param rows Number of rows of every image.
+	 * @param cols Number of columns of every image.
+	 * @param seed Seed of the classes' shapes and of the images.
+	 * @param firstImage Index in the sequence of the first image.
+	 * @return The dataset, with the same images for the same arguments.
+	 * @throws IllegalArgumentException if the size is negative or an image is smaller than 8x8 pixels.
+	 */
+	public static ImageStore generate(int size, int rows, int cols, long seed, int firstImage) {
+
+		if(size < 0 || rows < 8 || cols < 8) {
+			throw new IllegalArgumentException("Cannot generate " + size + " images of " + rows + "x" + cols + " pixels");
+		}
+
+		// Control points of the strokes of every class, in units of the image size within a centred box
+		double[][][] shapes = new double[CLASSES][][];
+		Random shapeRandom = new Random(seed);
+
+		for(int label = 0; label < CLASSES; label++) {
+			shapes[label] = new double[2 + shapeRandom.nextInt(2)][6];
+
+			for(double[] stroke : shapes[label]) {
+				for(int i = 0; i < stroke.length; i++) {
+					stroke[i] = 0.15 + 0.7*shapeRandom.nextDouble();
+				}
+			}
+		}
+
+		byte[] pixels = new byte[size*rows*cols];
+		byte[] labels = new byte[size];
+
+		// Every image has its own random generator, so they can be drawn in parallel and still only depend on the seed
+		IntStream.range(0, size).parallel().forEach(n -> {
+			Random random = new Random(seed*31 + firstImage + n);
+			int label = random.nextInt(CLASSES);
+
+			labels[n] = (byte) label;
+			draw(shapes[label], random, pixels, n*rows*cols, rows, cols);
+		});
+
+		return new ImageStore(size, rows, cols, pixels, labels);
+	}
+
+	// Method to draw the jittered quadratic Bezier strokes of a class into the pixels of one image
+	private static void draw(double[][] shape, Random random, byte[] pixels, int offset, int rows, int cols) {
+
+		double scale = Math.min(rows, cols)/28.0;
+		double width = STROKE_WIDTH*scale;
+
+		for(double[] stroke : shape) {
+			double[] p = new double[6];
+
+			for(int i = 0; i < p.length; i++) {
+				double size = i%2 == 0 ? rows : cols;
+				p[i] = stroke[i]*size + (2*random.nextDouble() - 1)*JITTER*scale;
+			}
+
+			for(int step = 0; step <= STROKE_STEPS; step++) {
+				double t = (double) step/STROKE_STEPS;
+				double u = 1 - t;
+				double y = u*u*p[0] + 2*u*t*p[2] + t*t*p[4];
+				double x = u*u*p[1] + 2*u*t*p[3] + t*t*p[5];
+
+				// Pixels within the width of the stroke are fully on, fading out over the next pixel
+				for(int r = Math.max(0, (int) (y - width)); r <= Math.min(rows - 1, (int) (y + width)); r++) {
+					for(int c = Math.max(0, (int) (x - width)); c <= Math.min(cols - 1, (int) (x + width)); c++) {
+						double value = Math.min(1, Math.max(0, width - Math.hypot(r - y, c - x)));
+						int pixel = (int) (value*255);
+
+						if(pixel > (pixels[offset + r*cols + c] & 0xFF)) {
+							pixels[offset + r*cols + c] = (byte) pixel;
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Tensor: This class represents a batch of feature maps stored in one contiguous array.
+ *         The shape is (batch, length, rows, cols) in row-major order, so every matrix of a feature map,
+ *         every sample and the whole batch are contiguous ranges of the same array.
+ *         Reshaping and selecting samples create views that share the array instead of copying it.
+ *         The values are stored either in a double array or, for networks built with a float precision, in a float array.
+ *
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Tensor {
+
+	//Attributes
+
+	/** The array holding the values, shared between a tensor and its views, or null if the values are floats. */
+	private final double[] data;
+
+	/** The array holding the values of a float tensor, or null if the values are doubles. */
+	private final float[] floatData;
+
+	/** Index in data of the first value of this tensor. */
+	private final int offset;
+
+	/** Number of samples in the batch. */
+	private final int batch;
+
+	/** Number of feature maps (channels) per sample. */
+	private final int length;
+
+	/** Number of rows of each feature map. */
+	private final int rows;
+
+	/** Number of columns of each feature map. */
+	private final int cols;
+
+	/**
+	 * Constructs a tensor of zeros with the given shape.
+	 *
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 */
+	public Tensor(int batch, int length, int rows, int cols) {
+		this(new double[batch*length*rows*cols], 0, batch, length, rows, cols);
+	}
+
+	/**
+	 * Constructs a tensor of zeros with the given shape, stored as floats or doubles depending on the precision.
+	 *
+	 * @param precision Precision of the values.
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 */
+	public Tensor(Precision precision, int batch, int length, int rows, int cols) {
+		this(precision.isFloat() ? null : new double[batch*length*rows*cols],
+				precision.isFloat() ? new float[batch*length*rows*cols] : null, 0, batch, length, rows, cols);
+	}
+
+	/**
+	 * Constructs a tensor that is a view over part of an existing array.
+	 *
+	 * @param data The array holding the values.
+	 * @param offset Index of the first value.
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 * @throws IllegalArgumentException if the shape does not fit in the array.
+	 */
+	public Tensor(double[] data, int offset, int batch, int length, int rows, int cols) {
+		this(data, null, offset, batch, length, rows, cols);
+	}
+
+	/**
+	 * Constructs a float tensor that is a view over part of an existing array.
+	 *
+	 * @param data The array holding the values.
+	 * @param offset Index of the first value.
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 * @throws IllegalArgumentException if the shape does not fit in the array.
+	 */
+	public Tensor(float[] data, int offset, int batch, int length, int rows, int cols) {
+		this(null, data, offset, batch, length, rows, cols);
+	}
+
+	// Constructs a view over whichever of the two arrays is not null
+	private Tensor(double[] data, float[] floatData, int offset, int batch, int length, int rows, int cols) {
+
+		int capacity = data != null ? data.length : floatData.length;
+
+		if(batch < 0 || length < 0 || rows < 0 || cols < 0 || offset < 0
+				|| offset + (long)batch*length*rows*cols > capacity) {
+			throw new IllegalArgumentException("Shape (" + batch + ", " + length + ", " + rows + ", " + cols
+					+ ") at offset " + offset + " does not fit in an array of " + capacity);
+		}
+
+		this.data = data;
+		this.floatData = floatData;
+		this.offset = offset;
+		this.batch = batch;
+		this.length = length;
+		this.rows = rows;
+		this.cols = cols;
+	}
+
+	/**
+	 * Gets the array holding the values. Index getOffset() is the first value of this tensor.
+	 *
+	 * @return The backing array, or null if the values are floats.
+	 */
+	public double[] getData() {
+		return data;
+	}
+
+	/**
+	 * Gets the array holding the values of a float tensor. Index getOffset() is the first value of this tensor.
+	 *
+	 * @return The backing array, or null if the values are doubles.
+	 */
+	public float[] getFloatData() {
+		return floatData;
+	}
+
+	/**
+	 * Checks if the values are stored as floats.
+	 *
+	 * @return True for a float tensor, false for a double tensor.
+	 */
+	public boolean isFloat() {
+		return floatData != null;
+	}
+
+	/**
+	 * Gets the number of values the backing array can hold.
+	 *
+	 * @return The length of the backing array.
+	 */
+	public int capacity() {
+		return data != null ? data.length : floatData.length;
+	}
+
+	/**
+	 * Gets the index in the backing array of the first value of this tensor.
+	 *
+	 * @return The offset.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the number of samples in the batch.
+	 *
+	 * @return The batch size.
+	 */
+	public int getBatch() {
+		return batch;
+	}
+
+	/**
+	 * Gets the number of feature maps per sample.
+	 *
+	 * @return The number of feature maps.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the number of rows of each feature map.
+	 *
+	 * @return The number of rows.
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns of each feature map.
+	 *
+	 * @return The number of columns.
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Gets the number of values in one sample.
+	 *
+	 * @return length * rows * cols.
+	 */
+	public int getSampleSize() {
+		return length*rows*cols;
+	}
+
+	/**
+	 * Gets the total number of values in the tensor.
+	 *
+	 * @return batch * length * rows * cols.
+	 */
+	public int size() {
+		return batch*getSampleSize();
+	}
+
+	/**
+	 * Gets the index in the backing array of the first value of a feature map.
+	 *
+	 * @param n Sample index.
+	 * @param l Feature map index.
+	 * @return The index of the feature map's first value.
+	 */
+	public int matrixOffset(int n, int l) {
+		return offset + (n*length + l)*rows*cols;
+	}
+
+	/**
+	 * Gets one value of the tensor.
+	 *
+	 * @param n Sample index.
+	 * @param l Feature map index.
+	 * @param r Row index.
+	 * @param c Column index.
+	 * @return The value.
+	 */
+	public double get(int n, int l, int r, int c) {
+		int i = matrixOffset(n, l) + r*cols + c;
+		return data != null ? data[i] : floatData[i];
+	}
+
+	/**
+	 * Sets one value of the tensor.
+	 *
+	 * @param n Sample index.
+	 * @param l Feature map index.
+	 * @param r Row index.
+	 * @param c Column index.
+	 * @param value The new value.
+	 */
+	public void set(int n, int l, int r, int c, double value) {
+		int i = matrixOffset(n, l) + r*cols + c;
+
+		if(data != null) {
+			data[i] = value;
+		}
+		else {
+			floatData[i] = (float) value;
+		}
+	}
+
+	/**
+	 * Creates a view of the same values with another shape. No values are copied.
+	 *
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 * @return The reshaped view.
+	 * @throws IllegalArgumentException if the new shape has a different number of values.
+	 */
+	public Tensor reshape(int batch, int length, int rows, int cols) {
+
+		if(batch*length*rows*cols != size()) {
+			throw new IllegalArgumentException("Cannot reshape " + size() + " values to (" + batch + ", "
+					+ length + ", " + rows + ", " + cols + ")");
+		}
+
+		if(batch == this.batch && length == this.length && rows == this.rows && cols == this.cols) {
+			return this;
+		}
+
+		return new Tensor(data, floatData, offset, batch, length, rows, cols);
+	}
+
+	/**
+	 * Creates a view of the samples from (inclusive) to (exclusive). No values are copied.
+	 *
+	 * @param from Index of the first sample.
+	 * @param to Index after the last sample.
+	 * @return The view of the samples.
+	 */
+	public Tensor samples(int from, int to) {
+		return new Tensor(data, floatData, offset + from*getSampleSize(), to - from, length, rows, cols);
+	}
+
+	/**
+	 * Creates a view of a single sample. No values are copied.
+	 *
+	 * @param n Index of the sample.
+	 * @return The view of the sample, with a batch size of 1.
+	 */
+	public Tensor sample(int n) {
+		return samples(n, n + 1);
+	}
+
+	/**
+	 * Sets every value of the tensor to the same value.
+	 *
+	 * @param value The value.
+	 */
+	public void fill(double value) {
+		if(data != null) {
+			Arrays.fill(data, offset, offset + size(), value);
+		}
+		else {
+			Arrays.fill(floatData, offset, offset + size(), (float) value);
+		}
+	}
+
+	/**
+	 * Creates a tensor holding a copy of the values of this tensor, stored in the same precision.
+	 *
+	 * @return The copy.
+	 */
+	public Tensor copy() {
+		if(data != null) {
+			return new Tensor(Arrays.copyOfRange(data, offset, offset + size()), 0, batch, length, rows, cols);
+		}
+		else {
+			return new Tensor(Arrays.copyOfRange(floatData, offset, offset + size()), 0, batch, length, rows, cols);
+		}
+	}
+
+	/**
+	 * Gets a tensor of the given shape for a training hot path, reusing the array of the workspace tensor from
+	 * the previous batch when it is large enough so steady-state training does not allocate new arrays.
+	 * The values are not cleared; callers that accumulate into the tensor must fill it with zeros first.
+	 *
+	 * @param workspace The workspace tensor from the previous batch, or null on the first batch.
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 * @return The workspace tensor to use for this batch.
+	 */
+	public static Tensor workspace(Tensor workspace, int batch, int length, int rows, int cols) {
+		return workspace(workspace, Precision.DOUBLE, batch, length, rows, cols);
+	}
+
+	/**
+	 * Gets a workspace tensor, see workspace(Tensor, int, int, int, int), whose values are stored in the given precision.
+	 *
+	 * @param workspace The workspace tensor from the previous batch, or null on the first batch.
+	 * @param precision Precision of the values.
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of each feature map.
+	 * @param cols Number of columns of each feature map.
+	 * @return The workspace tensor to use for this batch.
+	 */
+	public static Tensor workspace(Tensor workspace, Precision precision, int batch, int length, int rows, int cols) {
+
+		if(workspace == null || workspace.isFloat() != precision.isFloat()) {
+			return new Tensor(precision, batch, length, rows, cols);
+		}
+
+		if(workspace.batch == batch && workspace.length == length && workspace.rows == rows && workspace.cols == cols) {
+			return workspace;
+		}
+
+		// Keep the larger array when the batch shrinks, for example for the last batch of an epoch
+		if(workspace.capacity() >= batch*length*rows*cols) {
+			return new Tensor(workspace.data, workspace.floatData, 0, batch, length, rows, cols);
+		}
+
+		return new Tensor(precision, batch, length, rows, cols);
+	}
+
+	/**
+	 * Creates a tensor holding a copy of a list of matrices as the feature maps of a single sample.
+	 *
+	 * @param input The matrices, all with the same dimensions.
+	 * @return The new tensor.
+	 */
+	public static Tensor fromMatrices(List<double[][]> input) {
+
+		int length = input.size();
+		int rows = input.get(0).length;
+		int cols = input.get(0)[0].length;
+
+		Tensor tensor = new Tensor(1, length, rows, cols);
+
+		int i = 0;
+		for(int l = 0; l < length; l++) {
+			for(int r = 0; r < rows; r++) {
+				System.arraycopy(input.get(l)[r], 0, tensor.data, i, cols);
+				i += cols;
+			}
+		}
+
+		return tensor;
+	}
+
+	/**
+	 * Copies the feature maps of one sample into a list of matrices.
+	 *
+	 * @param n Index of the sample.
+	 * @return The list of matrices.
+	 */
+	public List<double[][]> toMatrices(int n) {
+
+		List<double[][]> out = new ArrayList<>();
+
+		for(int l = 0; l < length; l++) {
+
+			double[][] matrix = new double[rows][cols];
+			int i = matrixOffset(n, l);
+
+			for(int r = 0; r < rows; r++) {
+				if(data != null) {
+					System.arraycopy(data, i, matrix[r], 0, cols);
+				}
+				else {
+					for(int c = 0; c < cols; c++) {
+						matrix[r][c] = floatData[i + c];
+					}
+				}
+				i += cols;
+			}
+
+			out.add(matrix);
+		}
+
+		return out;
+	}
+
+	/**
+	 * Returns a string representation of the tensor's shape.
+	 *
+	 * @return The shape as (batch, length, rows, cols).
+	 */
+	@Override
+	public String toString() {
+		return "Tensor(" + batch + ", " + length + ", " + rows + ", " + cols + ")";
+	}
+
+}
@@ -0,0 +1,577 @@
+/*
+ * VectorKernels: This class provides explicitly vectorized versions of the hot loops of the network, written with the
+ *                incubating Vector API (jdk.incubator.vector) so they use the full width of the CPU's SIMD registers.
+ *                Only use it when Simd.isEnabled() returns true, the callers keep their scalar loops as the fallback.
+ *
+ *                Every kernel performs the same rounded operations in the same order as the scalar loop it replaces,
+ *                vectorizing across independent output values rather than splitting a sum, and never fusing a
+ *                multiplication with an addition. The results are therefore bitwise identical with and without SIMD.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package data;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernels {
+
+	// Widest vectors supported by the CPU
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+	// Method to get the number of doubles per vector
+	static int doubleLanes() {
+		return DOUBLES.length();
+	}
+
+	// Method to get the number of floats per vector
+	static int floatLanes() {
+		return FLOATS.length();
+	}
+
+	/**
+	 * Adds two ranges of double values element by element, out = a + b. The ranges may overlap exactly for an in place addition.
+	 *
+	 * @param a Array holding the first range.
+	 * @param aOffset Index of the first range's first value.
+	 * @param b Array holding the second range.
+	 * @param bOffset Index of the second range's first value.
+	 * @param out Array receiving the sums.
+	 * @param outOffset Index of the first sum.
+	 * @param length Number of values.
+	 */
+	public static void add(double[] a, int aOffset, double[] b, int bOffset, double[] out, int outOffset, int length) {
+
+		int i = 0;
+		for(; i < DOUBLES.loopBound(length); i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, a, aOffset + i).add(DoubleVector.fromArray(DOUBLES, b, bOffset + i)).intoArray(out, outOffset + i);
+		}
+		for(; i < length; i++) {
+			out[outOffset + i] = a[aOffset + i] + b[bOffset + i];
+		}
+	}
+
+	/**
+	 * Multiplies a range of double values by a scalar, out = a * scalar.
+	 *
+	 * @param a Array holding the range.
+	 * @param aOffset Index of the range's first value.
+	 * @param scalar The scalar value to multiply each element by.
+	 * @param out Array receiving the products.
+	 * @param outOffset Index of the first product.
+	 * @param length Number of values.
+	 */
+	public static void multiply(double[] a, int aOffset, double scalar, double[] out, int outOffset, int length) {
+
+		int i = 0;
+		for(; i < DOUBLES.loopBound(length); i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, a, aOffset + i).mul(scalar).intoArray(out, outOffset + i);
+		}
+		for(; i < length; i++) {
+			out[outOffset + i] = a[aOffset + i] * scalar;
+		}
+	}
+
+	/**
+	 * Adds a range of double values multiplied by a scalar to another range, y += x * scalar. The product is rounded
+	 * before it is added, as in the scalar loops, so every value of y gets the same result as with a plain loop.
+	 *
+	 * @param x Array holding the range to multiply.
+	 * @param xOffset Index of x's first value.
+	 * @param scalar The scalar value to multiply each element of x by.
+	 * @param y Array holding the range receiving the sums.
+	 * @param yOffset Index of y's first value.
+	 * @param length Number of values.
+	 */
+	public static void multiplyAdd(double[] x, int xOffset, double scalar, double[] y, int yOffset, int length) {
+
+		int i = 0;
+		for(; i < DOUBLES.loopBound(length); i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, y, yOffset + i).add(DoubleVector.fromArray(DOUBLES, x, xOffset + i).mul(scalar)).intoArray(y, yOffset + i);
+		}
+		for(; i < length; i++) {
+			y[yOffset + i] += x[xOffset + i] * scalar;
+		}
+	}
+
+	/**
+	 * Vectorized version of the Gemm block kernel C += A * B on double values. The vectors run along the columns of C and
+	 * every value of C adds its products in increasing p, so the results are the same as the scalar kernels.
+	 */
+	public static void gemmBlockNN(int i0, int i1, int j0, int j1, int p0, int p1,
+			double[] a, int aOffset, int lda, double[] b, int bOffset, int ldb, double[] c, int cOffset, int ldc) {
+		gemmBlock(false, i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+	}
+
+	/**
+	 * Vectorized version of the Gemm block kernel C += transpose(A) * B on double values, see gemmBlockNN.
+	 */
+	public static void gemmBlockTN(int i0, int i1, int j0, int j1, int p0, int p1,
+			double[] a, int aOffset, int lda, double[] b, int bOffset, int ldb, double[] c, int cOffset, int ldc) {
+		gemmBlock(true, i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+	}
+
+	// Multiplies one block in tiles of 4 rows by one vector of columns, the value of A at (i, p) is at
+	// aOffset + p*lda + i when A is transposed and at aOffset + i*lda + p otherwise. The columns left over after the last
+	// full vector are done by scalar loops, as masked vectors are not compiled into registers and would be allocated
+	private static void gemmBlock(boolean transposedA, int i0, int i1, int j0, int j1, int p0, int p1,
+			double[] a, int aOffset, int lda, double[] b, int bOffset, int ldb, double[] c, int cOffset, int ldc) {
+
+		int aRowStride = transposedA ? 1 : lda; // Distance between A(i, p) and A(i+1, p)
+		int aColumnStride = transposedA ? lda : 1; // Distance between A(i, p) and A(i, p+1)
+		int vectorEnd = j0 + DOUBLES.loopBound(j1 - j0); // End of the columns done with full vectors
+
+		int i = i0;
+		for(; i + 4 <= i1; i += 4) {
+			for(int j = j0; j < vectorEnd; j += DOUBLES.length()) {
+
+				int cRow = cOffset + i*ldc + j;
+
+				DoubleVector c0 = DoubleVector.fromArray(DOUBLES, c, cRow);
+				DoubleVector c1 = DoubleVector.fromArray(DOUBLES, c, cRow + ldc);
+				DoubleVector c2 = DoubleVector.fromArray(DOUBLES, c, cRow + 2*ldc);
+				DoubleVector c3 = DoubleVector.fromArray(DOUBLES, c, cRow + 3*ldc);
+
+				for(int p = p0; p < p1; p++) {
+					int aIndex = aOffset + i*aRowStride + p*aColumnStride;
+					DoubleVector bRow = DoubleVector.fromArray(DOUBLES, b, bOffset + p*ldb + j);
+
+					c0 = c0.add(bRow.mul(a[aIndex]));
+					c1 = c1.add(bRow.mul(a[aIndex + aRowStride]));
+					c2 = c2.add(bRow.mul(a[aIndex + 2*aRowStride]));
+					c3 = c3.add(bRow.mul(a[aIndex + 3*aRowStride]));
+				}
+
+				c0.intoArray(c, cRow);
+				c1.intoArray(c, cRow + ldc);
+				c2.intoArray(c, cRow + 2*ldc);
+				c3.intoArray(c, cRow + 3*ldc);
+			}
+
+			for(int r = i; r < i + 4; r++) {
+				gemmColumns(r, vectorEnd, j1, p0, p1, aRowStride, aColumnStride, a, aOffset, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			for(int j = j0; j < vectorEnd; j += DOUBLES.length()) {
+
+				int cRow = cOffset + i*ldc + j;
+
+				DoubleVector c0 = DoubleVector.fromArray(DOUBLES, c, cRow);
+
+				for(int p = p0; p < p1; p++) {
+					c0 = c0.add(DoubleVector.fromArray(DOUBLES, b, bOffset + p*ldb + j).mul(a[aOffset + i*aRowStride + p*aColumnStride]));
+				}
+
+				c0.intoArray(c, cRow);
+			}
+
+			gemmColumns(i, vectorEnd, j1, p0, p1, aRowStride, aColumnStride, a, aOffset, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Multiplies the columns j0..j1-1 of one row i of a block without vectors, every value of C adding its products in
+	// increasing p like the vectors
+	private static void gemmColumns(int i, int j0, int j1, int p0, int p1, int aRowStride, int aColumnStride,
+			double[] a, int aOffset, double[] b, int bOffset, int ldb, double[] c, int cOffset, int ldc) {
+
+		for(int j = j0; j < j1; j++) {
+			double sum = c[cOffset + i*ldc + j];
+
+			for(int p = p0; p < p1; p++) {
+				sum += b[bOffset + p*ldb + j] * a[aOffset + i*aRowStride + p*aColumnStride];
+			}
+
+			c[cOffset + i*ldc + j] = sum;
+		}
+	}
+
+	/**
+	 * Vectorized version of the max pooling of one double feature map done by MaxPoolLayer. The windows starting at
+	 * consecutive columns are scanned together with contiguous loads, one per lane, and the lanes of the columns where
+	 * a pooled window starts (every stepSize columns) are kept. The value and position of each maximum are chosen with
+	 * the same strict comparison as the scalar loop, so the results are identical.
+	 *
+	 * @param input Array holding the input feature map.
+	 * @param inOffset Index of the input feature map's first value.
+	 * @param inCols Number of columns of the input feature map.
+	 * @param windowSize Size of the pooling window.
+	 * @param stepSize Step between the pooled windows.
+	 * @param output Array receiving the pooled feature map.
+	 * @param outOffset Index of the pooled feature map's first value.
+	 * @param outRows Number of rows of the pooled feature map.
+	 * @param outCols Number of columns of the pooled feature map.
+	 * @param maxRow Array receiving the row of each maximum, or null to not store the positions.
+	 * @param maxCol Array receiving the column of each maximum, or null to not store the positions.
+	 * @param maxOffset Index in maxRow and maxCol of the pooled feature map's first position.
+	 * @param scratch Array of at least 2 * Simd.doubleLanes() values used to unpack the lanes.
+	 */
+	public static void pool(double[] input, int inOffset, int inCols, int windowSize, int stepSize,
+			double[] output, int outOffset, int outRows, int outCols, int[] maxRow, int[] maxCol, int maxOffset, double[] scratch) {
+
+		int lanes = DOUBLES.length();
+		int lastStart = (outCols - 1)/stepSize*stepSize; // Column of the last pooled window
+
+		for(int r = 0; r < outRows; r += stepSize) {
+
+			int c0 = 0;
+			for(; c0 + lanes - 1 <= lastStart; c0 += lanes) {
+
+				DoubleVector max = DoubleVector.zero(DOUBLES);
+				DoubleVector position = DoubleVector.broadcast(DOUBLES, -1); // Index x*windowSize+y of the maximum in its window
+
+				for(int x = 0; x < windowSize; x++) {
+					for(int y = 0; y < windowSize; y++) {
+						DoubleVector value = DoubleVector.fromArray(DOUBLES, input, inOffset + (r+x)*inCols + c0 + y);
+						VectorMask<Double> greater = max.compare(VectorOperators.LT, value);
+
+						max = max.blend(value, greater);
+						position = position.blend(x*windowSize + y, greater);
+					}
+				}
+
+				max.intoArray(scratch, 0);
+				position.intoArray(scratch, lanes);
+
+				for(int l = 0; l < lanes; l++) {
+					int c = c0 + l;
+
+					if(c % stepSize != 0) {
+						continue;
+					}
+
+					output[outOffset + r*outCols + c] = scratch[l];
+
+					if(maxRow != null) {
+						int k = (int) scratch[lanes + l];
+						maxRow[maxOffset + r*outCols + c] = k < 0 ? -1 : r + k/windowSize;
+						maxCol[maxOffset + r*outCols + c] = k < 0 ? -1 : c + k%windowSize;
+					}
+				}
+			}
+
+			// The remaining windows are scanned one at a time
+			for(int c = (c0 + stepSize - 1)/stepSize*stepSize; c <= lastStart; c += stepSize) {
+
+				double max = 0;
+				int maxX = -1;
+				int maxY = -1;
+
+				for(int x = 0; x < windowSize; x++) {
+					for(int y = 0; y < windowSize; y++) {
+						double value = input[inOffset + (r+x)*inCols + c + y];
+						if(max < value) {
+							max = value;
+							maxX = x;
+							maxY = y;
+						}
+					}
+				}
+
+				output[outOffset + r*outCols + c] = max;
+
+				if(maxRow != null) {
+					maxRow[maxOffset + r*outCols + c] = maxX < 0 ? -1 : r + maxX;
+					maxCol[maxOffset + r*outCols + c] = maxY < 0 ? -1 : c + maxY;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a range of float values multiplied by a scalar to another range, y += x * scalar. The product is rounded
+	 * before it is added, as in the scalar loops, so every value of y gets the same result as with a plain loop.
+	 *
+	 * @param x Array holding the range to multiply.
+	 * @param xOffset Index of x's first value.
+	 * @param scalar The scalar value to multiply each element of x by.
+	 * @param y Array holding the range receiving the sums.
+	 * @param yOffset Index of y's first value.
+	 * @param length Number of values.
+	 */
+	public static void multiplyAdd(float[] x, int xOffset, float scalar, float[] y, int yOffset, int length) {
+
+		int i = 0;
+		for(; i < FLOATS.loopBound(length); i += FLOATS.length()) {
+			FloatVector.fromArray(FLOATS, y, yOffset + i).add(FloatVector.fromArray(FLOATS, x, xOffset + i).mul(scalar)).intoArray(y, yOffset + i);
+		}
+		for(; i < length; i++) {
+			y[yOffset + i] += x[xOffset + i] * scalar;
+		}
+	}
+
+	/**
+	 * Vectorized version of the Gemm block kernel C += A * B on float values. The vectors run along the columns of C and
+	 * every value of C adds its products in increasing p, so the results are the same as the scalar kernels.
+	 */
+	public static void gemmBlockNN(int i0, int i1, int j0, int j1, int p0, int p1,
+			float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+		gemmBlock(false, i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+	}
+
+	/**
+	 * Vectorized version of the Gemm block kernel C += transpose(A) * B on float values, see gemmBlockNN.
+	 */
+	public static void gemmBlockTN(int i0, int i1, int j0, int j1, int p0, int p1,
+			float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+		gemmBlock(true, i0, i1, j0, j1, p0, p1, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+	}
+
+	// Multiplies one block in tiles of 4 rows by one vector of columns, the value of A at (i, p) is at
+	// aOffset + p*lda + i when A is transposed and at aOffset + i*lda + p otherwise. The columns left over after the last
+	// full vector are done by scalar loops, as masked vectors are not compiled into registers and would be allocated
+	private static void gemmBlock(boolean transposedA, int i0, int i1, int j0, int j1, int p0, int p1,
+			float[] a, int aOffset, int lda, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		int aRowStride = transposedA ? 1 : lda; // Distance between A(i, p) and A(i+1, p)
+		int aColumnStride = transposedA ? lda : 1; // Distance between A(i, p) and A(i, p+1)
+		int vectorEnd = j0 + FLOATS.loopBound(j1 - j0); // End of the columns done with full vectors
+
+		int i = i0;
+		for(; i + 4 <= i1; i += 4) {
+			for(int j = j0; j < vectorEnd; j += FLOATS.length()) {
+
+				int cRow = cOffset + i*ldc + j;
+
+				FloatVector c0 = FloatVector.fromArray(FLOATS, c, cRow);
+				FloatVector c1 = FloatVector.fromArray(FLOATS, c, cRow + ldc);
+				FloatVector c2 = FloatVector.fromArray(FLOATS, c, cRow + 2*ldc);
+				FloatVector c3 = FloatVector.fromArray(FLOATS, c, cRow + 3*ldc);
+
+				for(int p = p0; p < p1; p++) {
+					int aIndex = aOffset + i*aRowStride + p*aColumnStride;
+					FloatVector bRow = FloatVector.fromArray(FLOATS, b, bOffset + p*ldb + j);
+
+					c0 = c0.add(bRow.mul(a[aIndex]));
+					c1 = c1.add(bRow.mul(a[aIndex + aRowStride]));
+					c2 = c2.add(bRow.mul(a[aIndex + 2*aRowStride]));
+					c3 = c3.add(bRow.mul(a[aIndex + 3*aRowStride]));
+				}
+
+				c0.intoArray(c, cRow);
+				c1.intoArray(c, cRow + ldc);
+				c2.intoArray(c, cRow + 2*ldc);
+				c3.intoArray(c, cRow + 3*ldc);
+			}
+
+			for(int r = i; r < i + 4; r++) {
+				gemmColumns(r, vectorEnd, j1, p0, p1, aRowStride, aColumnStride, a, aOffset, b, bOffset, ldb, c, cOffset, ldc);
+			}
+		}
+		for(; i < i1; i++) {
+			for(int j = j0; j < vectorEnd; j += FLOATS.length()) {
+
+				int cRow = cOffset + i*ldc + j;
+
+				FloatVector c0 = FloatVector.fromArray(FLOATS, c, cRow);
+
+				for(int p = p0; p < p1; p++) {
+					c0 = c0.add(FloatVector.fromArray(FLOATS, b, bOffset + p*ldb + j).mul(a[aOffset + i*aRowStride + p*aColumnStride]));
+				}
+
+				c0.intoArray(c, cRow);
+			}
+
+			gemmColumns(i, vectorEnd, j1, p0, p1, aRowStride, aColumnStride, a, aOffset, b, bOffset, ldb, c, cOffset, ldc);
+		}
+	}
+
+	// Multiplies the columns j0..j1-1 of one row i of a block without vectors, every value of C adding its products in
+	// increasing p like the vectors
+	private static void gemmColumns(int i, int j0, int j1, int p0, int p1, int aRowStride, int aColumnStride,
+			float[] a, int aOffset, float[] b, int bOffset, int ldb, float[] c, int cOffset, int ldc) {
+
+		for(int j = j0; j < j1; j++) {
+			float sum = c[cOffset + i*ldc + j];
+
+			for(int p = p0; p < p1; p++) {
+				sum += b[bOffset + p*ldb + j] * a[aOffset + i*aRowStride + p*aColumnStride];
+			}
+
+			c[cOffset + i*ldc + j] = sum;
+		}
+	}
+
+	/**
+	 * Vectorized version of the max pooling of one float feature map done by MaxPoolLayer. The windows starting at
+	 * consecutive columns are scanned together with contiguous loads, one per lane, and the lanes of the columns where
+	 * a pooled window starts (every stepSize columns) are kept. The value and position of each maximum are chosen with
+	 * the same strict comparison as the scalar loop, so the results are identical.
+	 *
+	 * @param input Array holding the input feature map.
+	 * @param inOffset Index of the input feature map's first value.
+	 * @param inCols Number of columns of the input feature map.
+	 * @param windowSize Size of the pooling window.
+	 * @param stepSize Step between the pooled windows.
+	 * @param output Array receiving the pooled feature map.
+	 * @param outOffset Index of the pooled feature map's first value.
+	 * @param outRows Number of rows of the pooled feature map.
+	 * @param outCols Number of columns of the pooled feature map.
+	 * @param maxRow Array receiving the row of each maximum, or null to not store the positions.
+	 * @param maxCol Array receiving the column of each maximum, or null to not store the positions.
+	 * @param maxOffset Index in maxRow and maxCol of the pooled feature map's first position.
+	 * @param scratch Array of at least 2 * Simd.floatLanes() values used to unpack the lanes.
+	 */
+	public static void pool(float[] input, int inOffset, int inCols, int windowSize, int stepSize,
+			float[] output, int outOffset, int outRows, int outCols, int[] maxRow, int[] maxCol, int maxOffset, float[] scratch) {
+
+		int lanes = FLOATS.length();
+		int lastStart = (outCols - 1)/stepSize*stepSize; // Column of the last pooled window
+
+		for(int r = 0; r < outRows; r += stepSize) {
+
+			int c0 = 0;
+			for(; c0 + lanes - 1 <= lastStart; c0 += lanes) {
+
+				FloatVector max = FloatVector.zero(FLOATS);
+				FloatVector position = FloatVector.broadcast(FLOATS, -1); // Index x*windowSize+y of the maximum in its window
+
+				for(int x = 0; x < windowSize; x++) {
+					for(int y = 0; y < windowSize; y++) {
+						FloatVector value = FloatVector.fromArray(FLOATS, input, inOffset + (r+x)*inCols + c0 + y);
+						VectorMask<Float> greater = max.compare(VectorOperators.LT, value);
+
+						max = max.blend(value, greater);
+						position = position.blend(x*windowSize + y, greater);
+					}
+				}
+
+				max.intoArray(scratch, 0);
+				position.intoArray(scratch, lanes);
+
+				for(int l = 0; l < lanes; l++) {
+					int c = c0 + l;
+
+					if(c % stepSize != 0) {
+						continue;
+					}
+
+					output[outOffset + r*outCols + c] = scratch[l];
+
+					if(maxRow != null) {
+						int k = (int) scratch[lanes + l];
+						maxRow[maxOffset + r*outCols + c] = k < 0 ? -1 : r + k/windowSize;
+						maxCol[maxOffset + r*outCols + c] = k < 0 ? -1 : c + k%windowSize;
+					}
+				}
+			}
+
+			// The remaining windows are scanned one at a time
+			for(int c = (c0 + stepSize - 1)/stepSize*stepSize; c <= lastStart; c += stepSize) {
+
+				float max = 0;
+				int maxX = -1;
+				int maxY = -1;
+
+				for(int x = 0; x < windowSize; x++) {
+					for(int y = 0; y < windowSize; y++) {
+						float value = input[inOffset + (r+x)*inCols + c + y];
+						if(max < value) {
+							max = value;
+							maxX = x;
+							maxY = y;
+						}
+					}
+				}
+
+				output[outOffset + r*outCols + c] = max;
+
+				if(maxRow != null) {
+					maxRow[maxOffset + r*outCols + c] = maxX < 0 ? -1 : r + maxX;
+					maxCol[maxOffset + r*outCols + c] = maxY < 0 ? -1 : c + maxY;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Runs the operations of the kernels, a multiplication followed by a separate addition, on 8 vectors of values held
+	 * in registers, as fast as the CPU allows, to measure its peak rate of floating-point operations. Every value v
+	 * becomes v * a + b, repeats times, which is 2 * repeats * values.length operations.
+	 *
+	 * @param values Array of 8 * doubleLanes() values, updated in place.
+	 * @param a The factor.
+	 * @param b The value added.
+	 * @param repeats Number of times every value is updated.
+	 */
+	public static void multiplyAddLoop(double[] values, double a, double b, long repeats) {
+
+		int lanes = DOUBLES.length();
+		DoubleVector v0 = DoubleVector.fromArray(DOUBLES, values, 0);
+		DoubleVector v1 = DoubleVector.fromArray(DOUBLES, values, lanes);
+		DoubleVector v2 = DoubleVector.fromArray(DOUBLES, values, 2*lanes);
+		DoubleVector v3 = DoubleVector.fromArray(DOUBLES, values, 3*lanes);
+		DoubleVector v4 = DoubleVector.fromArray(DOUBLES, values, 4*lanes);
+		DoubleVector v5 = DoubleVector.fromArray(DOUBLES, values, 5*lanes);
+		DoubleVector v6 = DoubleVector.fromArray(DOUBLES, values, 6*lanes);
+		DoubleVector v7 = DoubleVector.fromArray(DOUBLES, values, 7*lanes);
+
+		// Eight independent chains, enough to hide the latency of the operations
+		for(long r = 0; r < repeats; r++) {
+			v0 = v0.mul(a).add(b);
+			v1 = v1.mul(a).add(b);
+			v2 = v2.mul(a).add(b);
+			v3 = v3.mul(a).add(b);
+			v4 = v4.mul(a).add(b);
+			v5 = v5.mul(a).add(b);
+			v6 = v6.mul(a).add(b);
+			v7 = v7.mul(a).add(b);
+		}
+
+		v0.intoArray(values, 0);
+		v1.intoArray(values, lanes);
+		v2.intoArray(values, 2*lanes);
+		v3.intoArray(values, 3*lanes);
+		v4.intoArray(values, 4*lanes);
+		v5.intoArray(values, 5*lanes);
+		v6.intoArray(values, 6*lanes);
+		v7.intoArray(values, 7*lanes);
+	}
+
+	/**
+	 * Float version of multiplyAddLoop(double[], double, double, long).
+	 *
+	 * @param values Array of 8 * floatLanes() values, updated in place.
+	 * @param a The factor.
+	 * @param b The value added.
+	 * @param repeats Number of times every value is updated.
+	 */
+	public static void multiplyAddLoop(float[] values, float a, float b, long repeats) {
+
+		int lanes = FLOATS.length();
+		FloatVector v0 = FloatVector.fromArray(FLOATS, values, 0);
+		FloatVector v1 = FloatVector.fromArray(FLOATS, values, lanes);
+		FloatVector v2 = FloatVector.fromArray(FLOATS, values, 2*lanes);
+		FloatVector v3 = FloatVector.fromArray(FLOATS, values, 3*lanes);
+		FloatVector v4 = FloatVector.fromArray(FLOATS, values, 4*lanes);
+		FloatVector v5 = FloatVector.fromArray(FLOATS, values, 5*lanes);
+		FloatVector v6 = FloatVector.fromArray(FLOATS, values, 6*lanes);
+		FloatVector v7 = FloatVector.fromArray(FLOATS, values, 7*lanes);
+
+		for(long r = 0; r < repeats; r++) {
+			v0 = v0.mul(a).add(b);
+			v1 = v1.mul(a).add(b);
+			v2 = v2.mul(a).add(b);
+			v3 = v3.mul(a).add(b);
+			v4 = v4.mul(a).add(b);
+			v5 = v5.mul(a).add(b);
+			v6 = v6.mul(a).add(b);
+			v7 = v7.mul(a).add(b);
+		}
+
+		v0.intoArray(values, 0);
+		v1.intoArray(values, lanes);
+		v2.intoArray(values, 2*lanes);
+		v3.intoArray(values, 3*lanes);
+		v4.intoArray(values, 4*lanes);
+		v5.intoArray(values, 5*lanes);
+		v6.intoArray(values, 6*lanes);
+		v7.intoArray(values, 7*lanes);
+	}
+
+}
@@ -0,0 +1,17 @@
+/*
+ * ConvolutionEngine: This enum lists the ways a ConvolutionLayer can compute its forward pass and backpropagation.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package layers;
+
+public enum ConvolutionEngine {
+
+	// Slides every filter over every input feature map one output value at a time
+	DIRECT,
+
+	// Unrolls the patches of each input feature map into the columns of a matrix once (im2col),
+	// then applies all the filters together with a single cache-blocked matrix multiplication
+	IM2COL
+
+}
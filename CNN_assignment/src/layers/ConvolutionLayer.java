@@ -9,13 +9,17 @@
 
 package layers;
 
-import static data.MatrixUtility.add;
-import static data.MatrixUtility.multiply;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
+import data.FloatGemm;
+import data.Gemm;
+import data.Precision;
+import data.Simd;
+import data.Tensor;
+import data.VectorKernels;
+
 
 public class ConvolutionLayer extends Layer{
 
@@ -24,8 +28,8 @@ public class ConvolutionLayer extends Layer{
     // Seed for random filter initialization
 	private long SEED;
 
-    // List of filters (kernels) for convolution
-	private List<double[][]> _filters;
+    // Filters (kernels) for convolution, stored as the feature maps of a single sample
+	private Tensor _filters;
 
     // Size of each filter
 	private int _filterSize;
@@ -45,8 +49,40 @@ public class ConvolutionLayer extends Layer{
     // Learning rate for weight updates
 	private double _learningRate;
 
+    // Algorithm used to compute the convolutions
+	private ConvolutionEngine _engine;
+
+    // Precision of the filters and feature maps
+	private Precision _precision;
+
     // Last input feature maps used in forward pass
-	private List<double[][]> _lastInput;
+	private Tensor _lastInput;
+
+    // Filter updates accumulated over the current batch, applied by applyGradients
+	private Tensor _filtersDelta;
+
+    // Workspaces reused by forward and backward from one batch to the next, see Tensor.workspace
+	private Tensor _outputWorkspace;
+	private Tensor _dLdXWorkspace;
+
+    // Unrolled patches (1, 1, filterSize^2, outRows*outCols) and filter gradients (1, 1, numFilters, filterSize^2)
+    // of one input feature map, used by the im2col engine in forward and backward
+	private Tensor _columnsWorkspace;
+	private Tensor _dLdFWorkspace;
+
+    // Sums of one row of filter gradients (1, 1, 1, filterSize), used by the vectorized direct engine in backward
+	private Tensor _rowSumsWorkspace;
+
+    // Nonzero values of the last input, only found by the first layer, which skips the zero pixels when the input is sparse enough
+	private SparseInput _sparseInput;
+
+    // Filter gradients of one input feature map (1, numFilters, filterSize, filterSize) used by the sparse backward,
+    // in double unless the float kernels accumulate in float
+	private Tensor _filterSumsWorkspace;
+
+    // Output sums of one input feature map (1, numFilters, outRows, outCols) in double, used by the sparse forward of the
+    // float kernels that accumulate in double
+	private Tensor _outputSumsWorkspace;
 
 	/**
      * Constructor for ConvolutionLayer
@@ -60,6 +96,60 @@ public class ConvolutionLayer extends Layer{
      * @param learningRate Learning rate for weight updates
      */
 	public ConvolutionLayer(int _filterSize, int _stepSize, int _inLength, int _inRows, int _inCols,long SEED,int numFilters,double learningRate) {
+		this(_filterSize, _stepSize, _inLength, _inRows, _inCols, SEED, numFilters, learningRate, ConvolutionEngine.DIRECT);
+	}
+
+	/**
+     * Constructor for ConvolutionLayer with a choice of convolution engine
+     * @param _filterSize Size of each filter
+     * @param _stepSize Stride size for convolution
+     * @param _inLength Number of input channels
+     * @param _inRows Height of input feature maps
+     * @param _inCols Width of input feature maps
+     * @param SEED Seed for random filter initialization
+     * @param numFilters Number of filters to be generated
+     * @param learningRate Learning rate for weight updates
+     * @param engine Algorithm used to compute the convolutions
+     */
+	public ConvolutionLayer(int _filterSize, int _stepSize, int _inLength, int _inRows, int _inCols,long SEED,int numFilters,double learningRate,
+			ConvolutionEngine engine) {
+		this(_filterSize, _stepSize, _inLength, _inRows, _inCols, SEED, numFilters, learningRate, engine, Precision.DOUBLE);
+	}
+
+	/**
+     * Constructor for ConvolutionLayer with a choice of convolution engine and precision
+     * @param _filterSize Size of each filter
+     * @param _stepSize Stride size for convolution
+     * @param _inLength Number of input channels
+     * @param _inRows Height of input feature maps
+     * @param _inCols Width of input feature maps
+     * @param SEED Seed for random filter initialization
+     * @param numFilters Number of filters to be generated
+     * @param learningRate Learning rate for weight updates
+     * @param engine Algorithm used to compute the convolutions
+     * @param precision Precision of the filters and feature maps
+     */
+	public ConvolutionLayer(int _filterSize, int _stepSize, int _inLength, int _inRows, int _inCols,long SEED,int numFilters,double learningRate,
+			ConvolutionEngine engine, Precision precision) {
+		this(_filterSize, _stepSize, _inLength, _inRows, _inCols, SEED, numFilters, learningRate, engine, precision, true);
+	}
+
+	/**
+     * Constructor for ConvolutionLayer which can leave the filters at zero, used when they are read from a checkpoint
+     * @param _filterSize Size of each filter
+     * @param _stepSize Stride size for convolution
+     * @param _inLength Number of input channels
+     * @param _inRows Height of input feature maps
+     * @param _inCols Width of input feature maps
+     * @param SEED Seed for random filter initialization
+     * @param numFilters Number of filters to be generated
+     * @param learningRate Learning rate for weight updates
+     * @param engine Algorithm used to compute the convolutions
+     * @param precision Precision of the filters and feature maps
+     * @param initialize Whether to draw the random initial filters, false leaves them at zero for readParameters
+     */
+	public ConvolutionLayer(int _filterSize, int _stepSize, int _inLength, int _inRows, int _inCols,long SEED,int numFilters,double learningRate,
+			ConvolutionEngine engine, Precision precision, boolean initialize) {
 		super();
 		this._filterSize = _filterSize;
 		this._stepSize = _stepSize;
@@ -68,346 +158,1250 @@ public class ConvolutionLayer extends Layer{
 		this._inCols = _inCols;
 		this.SEED = SEED;
 		_learningRate = learningRate;
+		_engine = engine;
+		_precision = precision;
 
-		generateRandomFilters(numFilters);
+		generateRandomFilters(numFilters, initialize);
+	}
+
+	/**
+     * Copy constructor used by createReplica, the replica shares the filters of the original layer
+     * @param original Layer whose filters are shared
+     */
+	private ConvolutionLayer(ConvolutionLayer original) {
+		super();
+		this._filterSize = original._filterSize;
+		this._stepSize = original._stepSize;
+		this._inLength = original._inLength;
+		this._inRows = original._inRows;
+		this._inCols = original._inCols;
+		this.SEED = original.SEED;
+		_learningRate = original._learningRate;
+		_engine = original._engine;
+		_precision = original._precision;
+		_filters = original._filters;
+
+		_filtersDelta = new Tensor(_precision, 1, _filters.getLength(), _filterSize, _filterSize);
 	}
 
 	/**
      * Generates random filters (kernels) for convolution
      * @param numFilters Number of filters to be generated
+     * @param initialize Whether to fill the filters with random values, false leaves them at zero
      */
-	private void generateRandomFilters(int numFilters) {
-		List<double[][]> filters = new ArrayList<>();
+	private void generateRandomFilters(int numFilters, boolean initialize) {
+		Tensor filters = new Tensor(_precision, 1, numFilters, _filterSize, _filterSize);
 		Random random = new Random(SEED);
 
-		for(int n = 0; n < numFilters; n++) {
-			double[][] newFilter = new double[_filterSize][_filterSize];
+        // Initialize filter weights with random Gaussian values, filter by filter and row by row
+		for(int i = 0; initialize && i < filters.size(); i++) {
+			if(filters.isFloat()) {
+				filters.getFloatData()[i] = (float) random.nextGaussian();
+			}
+			else {
+				filters.getData()[i] = random.nextGaussian();
+			}
+		}
 
-			for(int i = 0; i < _filterSize; i++) {
-				for(int j = 0; j < _filterSize; j++) {
-                    // Initialize filter weights with random Gaussian values
-					double value = random.nextGaussian();
-					newFilter[i][j] = value;
-				}
+		_filters = filters;
+		_filtersDelta = new Tensor(_precision, 1, numFilters, _filterSize, _filterSize);
+
+	}
+
+	/**
+     * Performs forward pass through the convolutional layer
+     * @param input Input feature maps
+     * @return Output feature maps after convolution
+     */
+	@Override
+	public Tensor forward(Tensor input){
+
+		LayerEvent event = new LayerEvent();
+		event.begin();
+
+		Tensor output = forwardPass(input);
+
+		event.commit(this, "forward", input, output);
+		return output;
+	}
+
+	// Forward pass itself, recorded by forward as a LayerEvent
+	private Tensor forwardPass(Tensor input){
+
+		Tensor matrixInput = input.reshape(input.getBatch(), _inLength, _inRows, _inCols);
+
+		_lastInput = matrixInput;
+
+		_outputWorkspace = Tensor.workspace(_outputWorkspace, _precision, input.getBatch(), getOutputLength(), getOutputRows(), getOutputCols());
+
+		if(_engine == ConvolutionEngine.IM2COL && _columnsWorkspace == null) {
+			_columnsWorkspace = new Tensor(_precision, 1, 1, _filterSize*_filterSize, getOutputRows()*getOutputCols());
+		}
+
+        // The input of the first layer is the images themselves, mostly zero pixels for MNIST, which can be skipped
+		if(_previousLayer == null) {
+			if(_sparseInput == null) {
+				_sparseInput = new SparseInput();
 			}
 
-			filters.add(newFilter);
+			if(_sparseInput.encode(matrixInput, _inRows, _inCols)) {
+				if(_precision.accumulatesInDouble()) {
+					_outputSumsWorkspace = Tensor.workspace(_outputSumsWorkspace, Precision.DOUBLE, 1, _filters.getLength(), getOutputRows(), getOutputCols());
+				}
 
+				convolveAllSparse(matrixInput, _sparseInput, _outputWorkspace, _precision.accumulatesInDouble() ? _outputSumsWorkspace.getData() : null);
+				return _outputWorkspace;
+			}
 		}
 
-		_filters = filters;
+		convolveAll(matrixInput, _outputWorkspace, _columnsWorkspace);
 
+		return _outputWorkspace;
 	}
 
 	/**
-     * Performs forward pass through the convolutional layer
-     * @param list Input feature maps
+     * Performs the forward pass without caching anything for backpropagation
+     * @param input Input feature maps
      * @return Output feature maps after convolution
      */
-	public List<double[][]> convolutionForwardPass(List<double[][]> list){
+	@Override
+	public Tensor inferLayer(Tensor input) {
 
-		_lastInput = list;
+		Tensor output = new Tensor(_precision, input.getBatch(), getOutputLength(), getOutputRows(), getOutputCols());
+		Tensor matrixInput = input.reshape(input.getBatch(), _inLength, _inRows, _inCols);
+		Tensor columns = null;
 
-		List<double[][]> output = new ArrayList<>();
+        // Same sparse path as forward, with its own index as several threads may call inferLayer
+		if(_previousLayer == null) {
+			SparseInput sparseInput = new SparseInput();
 
-        // Iterate over each input feature map and each filter
-		for(int m=0; m < list.size(); m++) {
-			for(double[][] filter: _filters) {
-                // Apply convolution operation for each filter
-				output.add(convolve(list.get(m),filter,_stepSize));
+			if(sparseInput.encode(matrixInput, _inRows, _inCols)) {
+				convolveAllSparse(matrixInput, sparseInput, output,
+						_precision.accumulatesInDouble() ? new double[_filters.getLength()*getOutputRows()*getOutputCols()] : null);
+				return output;
 			}
 		}
 
+		if(_engine == ConvolutionEngine.IM2COL) {
+			columns = new Tensor(_precision, 1, 1, _filterSize*_filterSize, getOutputRows()*getOutputCols());
+		}
+
+		convolveAll(matrixInput, output, columns);
+
 		return output;
 	}
 
 	/**
-     * Performs 2D convolution operation
-     * @param input Input feature map
-     * @param filter Convolution filter
-     * @param stepSize Stride size
-     * @return Output feature map after convolution
+     * Applies every filter to every input feature map
+     * @param input Input feature maps
+     * @param output Output feature maps after convolution, the output map of input map m and filter f is m*numFilters+f
+     * @param columns Tensor for the unrolled patches of the im2col engine (filterSize^2 x outRows*outCols), unused by the direct engine
      */
-	private double[][] convolve(double[][] input, double[][] filter, int stepSize) {
+	private void convolveAll(Tensor input, Tensor output, Tensor columns){
 
-        // Calculate dimensions of output feature map
-		int outRows = (input.length - filter.length)/stepSize + 1;
-		int outCols = (input[0].length - filter[0].length)/stepSize + 1;
+		int numFilters = _filters.getLength();
 
-		int inRows = input.length;
-		int inCols = input[0].length;
-
-		int fRows = filter.length;
-		int fCols = filter[0].length;
+		if(_engine == ConvolutionEngine.IM2COL) {
+			convolveAllIm2col(input, output, columns);
+			return;
+		}
 
-		double[][] output = new double[outRows][outCols];
+        // Iterate over each sample, each input feature map and each filter
+		for(int n = 0; n < input.getBatch(); n++) {
+			for(int m=0; m < _inLength; m++) {
+				for(int f = 0; f < numFilters; f++) {
+                    // Apply convolution operation for each filter
+					if(output.isFloat()) {
+						convolve(input.getFloatData(), input.matrixOffset(n, m), _filters.getFloatData(), _filters.matrixOffset(0, f),
+								output.getFloatData(), output.matrixOffset(n, m*numFilters + f));
+					}
+					else {
+						convolve(input.getData(), input.matrixOffset(n, m), _filters.getData(), _filters.matrixOffset(0, f),
+								output.getData(), output.matrixOffset(n, m*numFilters + f));
+					}
+				}
+			}
+		}
+	}
 
-		int outRow = 0;
-		int outCol;
+	/**
+     * Performs 2D convolution operation of one input feature map with one filter
+     * @param input Array holding the input feature map
+     * @param inOffset Index of the input feature map's first value
+     * @param filter Array holding the filter
+     * @param filterOffset Index of the filter's first value
+     * @param output Array receiving the output feature map
+     * @param outOffset Index of the output feature map's first value
+     */
+	private void convolve(double[] input, int inOffset, double[] filter, int filterOffset, double[] output, int outOffset) {
+
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+
+        // With a step of 1 the values of an output row read consecutive inputs, so a whole row is computed with vectors,
+        // adding the product of each filter value in the same order as the loops below
+		if(Simd.isEnabled() && _stepSize == 1) {
+			for(int outRow = 0; outRow < outRows; outRow++) {
+				int outRowOffset = outOffset + outRow*outCols;
+				Arrays.fill(output, outRowOffset, outRowOffset + outCols, 0.0);
+
+				for(int x = 0; x < _filterSize; x++) {
+					for(int y = 0; y < _filterSize; y++) {
+						VectorKernels.multiplyAdd(input, inOffset + (outRow+x)*_inCols + y, filter[filterOffset + x*_filterSize + y],
+								output, outRowOffset, outCols);
+					}
+				}
+			}
+			return;
+		}
 
         // Convolution operation
-		for(int i = 0; i <= inRows - fRows; i += stepSize) {
-			outCol = 0;
-			for(int j = 0; j <= inCols - fCols; j += stepSize) {
+		for(int outRow = 0; outRow < outRows; outRow++) {
+			int i = outRow*_stepSize;
+
+			for(int outCol = 0; outCol < outCols; outCol++) {
+				int j = outCol*_stepSize;
+
 				double sum = 0.0;
 				//Apply filter around this position
-				for(int x = 0; x < fRows; x++) {
-					for(int y = 0; y < fCols; y++) {
-						int inputRowIndex = i+x;
-						int inputColIndex = j+y;
+				for(int x = 0; x < _filterSize; x++) {
+					int inputRow = inOffset + (i+x)*_inCols + j;
+					int filterRow = filterOffset + x*_filterSize;
+
+					for(int y = 0; y < _filterSize; y++) {
                         // Compute element-wise multiplication and accumulate sum
-						double value = filter[x][y] * input[inputRowIndex][inputColIndex];
-						sum += value;
+						sum += filter[filterRow + y] * input[inputRow + y];
 					}
 				}
 
-				output[outRow][outCol] = sum;
-				outCol++;
+				output[outOffset + outRow*outCols + outCol] = sum;
 
 			}
 
-			outRow++;
+		}
+
+	}
+
+	// Float version of convolve(double[], int, double[], int, double[], int), the sums are accumulated in double if the precision asks for it
+	private void convolve(float[] input, int inOffset, float[] filter, int filterOffset, float[] output, int outOffset) {
+
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		boolean doubleAccumulation = _precision.accumulatesInDouble();
 
+		if(Simd.isEnabled() && _stepSize == 1 && !doubleAccumulation) {
+			for(int outRow = 0; outRow < outRows; outRow++) {
+				int outRowOffset = outOffset + outRow*outCols;
+				Arrays.fill(output, outRowOffset, outRowOffset + outCols, 0.0f);
+
+				for(int x = 0; x < _filterSize; x++) {
+					for(int y = 0; y < _filterSize; y++) {
+						VectorKernels.multiplyAdd(input, inOffset + (outRow+x)*_inCols + y, filter[filterOffset + x*_filterSize + y],
+								output, outRowOffset, outCols);
+					}
+				}
+			}
+			return;
 		}
 
-		return output;
+		for(int outRow = 0; outRow < outRows; outRow++) {
+			int i = outRow*_stepSize;
+
+			for(int outCol = 0; outCol < outCols; outCol++) {
+				int j = outCol*_stepSize;
+
+				if(doubleAccumulation) {
+					double sum = 0.0;
+					for(int x = 0; x < _filterSize; x++) {
+						int inputRow = inOffset + (i+x)*_inCols + j;
+						int filterRow = filterOffset + x*_filterSize;
 
+						for(int y = 0; y < _filterSize; y++) {
+							sum += (double) filter[filterRow + y] * input[inputRow + y];
+						}
+					}
+					output[outOffset + outRow*outCols + outCol] = (float) sum;
+				}
+				else {
+					float sum = 0.0f;
+					for(int x = 0; x < _filterSize; x++) {
+						int inputRow = inOffset + (i+x)*_inCols + j;
+						int filterRow = filterOffset + x*_filterSize;
+
+						for(int y = 0; y < _filterSize; y++) {
+							sum += filter[filterRow + y] * input[inputRow + y];
+						}
+					}
+					output[outOffset + outRow*outCols + outCol] = sum;
+				}
+			}
+		}
 	}
 
 	/**
-     * Performs space-to-array operation to expand feature maps
-     * @param input Input feature map
-     * @return Expanded feature map
+     * Applies every filter to every input feature map of a sparse input, visiting only its nonzero values
+     * @param input Input feature maps
+     * @param sparseInput Nonzero values of the input, found by SparseInput.encode
+     * @param output Output feature maps after convolution, laid out as in convolveAll
+     * @param sums Array of numFilters*outRows*outCols values receiving the sums of the output feature maps of one input
+     *             feature map in double, for the float kernels that accumulate in double, otherwise null
      */
-	public double[][] spaceArray(double[][] input){
+	private void convolveAllSparse(Tensor input, SparseInput sparseInput, Tensor output, double[] sums){
 
-	    // If the step size is 1, return the input array as it is
-		if(_stepSize == 1) {
-			return input;
+		int numFilters = _filters.getLength();
+
+		for(int n = 0; n < input.getBatch(); n++) {
+			for(int m=0; m < _inLength; m++) {
+				if(output.isFloat()) {
+					convolveSparse(input.getFloatData(), input.matrixOffset(n, m), sparseInput, n*_inLength + m,
+							output.getFloatData(), output.matrixOffset(n, m*numFilters), sums);
+				}
+				else {
+					convolveSparse(input.getData(), input.matrixOffset(n, m), sparseInput, n*_inLength + m,
+							output.getData(), output.matrixOffset(n, m*numFilters));
+				}
+			}
 		}
+	}
 
-	    // Calculate the dimensions of the output array after upsampling
-		int outRows = (input.length - 1)*_stepSize+1;
-		int outCols = (input[0].length - 1)*_stepSize+1;
+	/**
+     * Performs the 2D convolution of one sparse input feature map with every filter. Instead of summing the window of every
+     * output position, each nonzero input value is multiplied by the filter values that reach it and added to the outputs
+     * whose window covers it. Going through the input row by row, each row from left to right, every output gets its
+     * products in the same order as in convolve.
+     * @param input Array holding the input feature map
+     * @param inOffset Index of the input feature map's first value
+     * @param sparseInput Nonzero values of the input
+     * @param map Index of the input feature map in sparseInput
+     * @param output Array receiving the output feature maps, one per filter
+     * @param outOffset Index of the first output feature map's first value
+     */
+	private void convolveSparse(double[] input, int inOffset, SparseInput sparseInput, int map, double[] output, int outOffset) {
 
-	    // Initialize the output array
-		double[][] output = new double[outRows][outCols];
+		int numFilters = _filters.getLength();
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		int outSize = outRows*outCols;
+		int filterArea = _filterSize*_filterSize;
+		int[] columns = sparseInput.getColumns();
+		double[] filters = _filters.getData();
 
-	    // Fill the output array by inserting zeros between elements of the input array based on the step size
-		for(int i = 0; i < input.length; i++) {
-			for(int j = 0; j < input[0].length; j++) {
-				output[i*_stepSize][j*_stepSize] = input[i][j];
+		Arrays.fill(output, outOffset, outOffset + numFilters*outSize, 0.0);
+
+		for(int row = 0; row < _inRows; row++) {
+			int end = sparseInput.rowStart(map, row + 1);
+
+            // Output rows whose window covers this row, at filter row row - outRow*stepSize
+			int firstRow = firstCovering(row);
+			int lastRow = Math.min(outRows - 1, row/_stepSize);
+
+			for(int k = sparseInput.rowStart(map, row); k < end; k++) {
+				int c = columns[k];
+				double value = input[inOffset + row*_inCols + c];
+
+                // Output columns whose window covers column c, at filter column c - outCol*stepSize
+				int firstCol = firstCovering(c);
+				int lastCol = Math.min(outCols - 1, c/_stepSize);
+
+				for(int outRow = firstRow; outRow <= lastRow; outRow++) {
+					int filterRow = _filters.getOffset() + (row - outRow*_stepSize)*_filterSize + c;
+
+					for(int f = 0; f < numFilters; f++) {
+						int outRowOffset = outOffset + f*outSize + outRow*outCols;
+						int filterIndex = filterRow + f*filterArea;
+
+						for(int outCol = firstCol; outCol <= lastCol; outCol++) {
+							output[outRowOffset + outCol] += filters[filterIndex - outCol*_stepSize] * value;
+						}
+					}
+				}
 			}
 		}
+	}
 
-	    // Return the upsampled array with spaced-out elements
-		return output;
+	// Float version of convolveSparse(double[], int, SparseInput, int, double[], int), the outputs are accumulated in sums if it is not null
+	private void convolveSparse(float[] input, int inOffset, SparseInput sparseInput, int map, float[] output, int outOffset, double[] sums) {
+
+		int numFilters = _filters.getLength();
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		int outSize = outRows*outCols;
+		int filterArea = _filterSize*_filterSize;
+		int[] columns = sparseInput.getColumns();
+		float[] filters = _filters.getFloatData();
+
+		if(sums != null) {
+			Arrays.fill(sums, 0.0);
+		}
+		else {
+			Arrays.fill(output, outOffset, outOffset + numFilters*outSize, 0.0f);
+		}
+
+		for(int row = 0; row < _inRows; row++) {
+			int end = sparseInput.rowStart(map, row + 1);
+			int firstRow = firstCovering(row);
+			int lastRow = Math.min(outRows - 1, row/_stepSize);
+
+			for(int k = sparseInput.rowStart(map, row); k < end; k++) {
+				int c = columns[k];
+				float value = input[inOffset + row*_inCols + c];
+				int firstCol = firstCovering(c);
+				int lastCol = Math.min(outCols - 1, c/_stepSize);
+
+				for(int outRow = firstRow; outRow <= lastRow; outRow++) {
+					int filterRow = _filters.getOffset() + (row - outRow*_stepSize)*_filterSize + c;
+
+					for(int f = 0; f < numFilters; f++) {
+						int outRowOffset = f*outSize + outRow*outCols;
+						int filterIndex = filterRow + f*filterArea;
+
+						if(sums != null) {
+							for(int outCol = firstCol; outCol <= lastCol; outCol++) {
+								sums[outRowOffset + outCol] += (double) filters[filterIndex - outCol*_stepSize] * value;
+							}
+						}
+						else {
+							for(int outCol = firstCol; outCol <= lastCol; outCol++) {
+								output[outOffset + outRowOffset + outCol] += filters[filterIndex - outCol*_stepSize] * value;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		if(sums != null) {
+			for(int i = 0; i < numFilters*outSize; i++) {
+				output[outOffset + i] = (float) sums[i];
+			}
+		}
 	}
 
-	@Override
-	public double[] getOutput(List<double[][]> input) {
-		List<double[][]> output = convolutionForwardPass(input);
-		return _nextLayer.getOutput(output);
+	// Method to get the first output row or column whose window covers the input row or column index
+	private int firstCovering(int index) {
+		return Math.max(0, (index - _filterSize + _stepSize)/_stepSize);
 	}
 
-	@Override
-	public void backPropagation(List<double[][]> dLdO) {
+	/**
+     * Applies every filter to every input feature map by unrolling the patches of each input feature map
+     * and multiplying the filters (numFilters x filterSize^2) by the unrolled patches (filterSize^2 x outRows*outCols)
+     * @param input Input feature maps
+     * @param output Output feature maps, the maps of input map m are contiguous so one multiplication fills them all
+     * @param columns Tensor for the unrolled patches of one input feature map
+     */
+	private void convolveAllIm2col(Tensor input, Tensor output, Tensor columns) {
+
+		int numFilters = _filters.getLength();
+		int patchSize = _filterSize*_filterSize;
+		int positions = getOutputRows()*getOutputCols();
+
+	    // The multiplication adds to the output, which may hold the previous batch's values
+		output.fill(0);
 
-	    // Initialize lists to store the gradients of filters and errors for the previous layer
-		List<double[][]> filtersDelta = new ArrayList<>();
-		List<double[][]> dLdOPreviousLayer = new ArrayList<>();
+		for(int n = 0; n < input.getBatch(); n++) {
+			for(int m = 0; m < _inLength; m++) {
+				if(output.isFloat()) {
+					im2col(input.getFloatData(), input.matrixOffset(n, m), columns.getFloatData());
 
-	    // Initialize the filtersDelta list with zeros
-		for(int f = 0; f < _filters.size();f++) {
-			filtersDelta.add(new double[_filterSize][_filterSize]);
+					FloatGemm.multiply(numFilters, positions, patchSize, _filters.getFloatData(), _filters.getOffset(), patchSize,
+							columns.getFloatData(), 0, positions, output.getFloatData(), output.matrixOffset(n, m*numFilters), positions,
+							_precision.accumulatesInDouble());
+				}
+				else {
+					im2col(input.getData(), input.matrixOffset(n, m), columns.getData());
+
+					Gemm.multiply(numFilters, positions, patchSize, _filters.getData(), _filters.getOffset(), patchSize,
+							columns.getData(), 0, positions, output.getData(), output.matrixOffset(n, m*numFilters), positions);
+				}
+			}
 		}
+	}
 
-	    // Iterate over each input feature map and its corresponding error
-		for(int i =0; i<_lastInput.size();i++) {
+	/**
+     * Unrolls the patches of an input feature map, row x*filterSize+y of the result holds the input value at
+     * filter position (x, y) for every output position
+     * @param input Array holding the input feature map
+     * @param inOffset Index of the input feature map's first value
+     * @param columns Array receiving the unrolled patches (filterSize^2 x outRows*outCols)
+     */
+	private void im2col(double[] input, int inOffset, double[] columns) {
 
-	        // Initialize an error matrix for the input feature map
-			double[][] errorForInput = new double[_inRows][_inCols];
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
 
-	        // Iterate over each filter in the layer
-			for(int f = 0; f < _filters.size();f++) {
+		int i = 0;
+		for(int x = 0; x < _filterSize; x++) {
+			for(int y = 0; y < _filterSize; y++) {
+				for(int outRow = 0; outRow < outRows; outRow++) {
+					int inputRow = inOffset + (outRow*_stepSize + x)*_inCols + y;
 
-	            // Get the current filter and its corresponding error
-				double[][] currFilter = _filters.get(f);
-				double[][] error = dLdO.get(i*_filters.size()+f);
+					for(int outCol = 0; outCol < outCols; outCol++) {
+						columns[i++] = input[inputRow + outCol*_stepSize];
+					}
+				}
+			}
+		}
+	}
 
-	            // Perform full convolution between the error and the transposed filter
-				double[][] spacedError = spaceArray(error);
-				double[][] dLdF = convolve(_lastInput.get(i), spacedError, 1);
+	/**
+     * Adds unrolled patch gradients back to the positions of the input feature map they were taken from,
+     * the reverse of im2col
+     * @param columns Array holding the unrolled patch gradients (filterSize^2 x outRows*outCols)
+     * @param output Array holding the error of the input feature map
+     * @param outOffset Index of the input error's first value
+     */
+	private void col2im(double[] columns, double[] output, int outOffset) {
 
-	            // Update the filter gradients by multiplying the convolution result with the learning rate
-				double[][] delta = multiply(dLdF,_learningRate*-1);
-				double[][] newTotalDelta = add(filtersDelta.get(f),delta);
-				filtersDelta.set(f, newTotalDelta);
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
 
-	            // Calculate the error contribution for the input feature map by performing full convolution
-				double[][] flippedError = flipArrayHorizontal(flipArrayVertical(spacedError));
-				errorForInput = add(errorForInput, fullConvolve(currFilter, flippedError));
+		int i = 0;
+		for(int x = 0; x < _filterSize; x++) {
+			for(int y = 0; y < _filterSize; y++) {
+				for(int outRow = 0; outRow < outRows; outRow++) {
+					int inputRow = outOffset + (outRow*_stepSize + x)*_inCols + y;
 
+					for(int outCol = 0; outCol < outCols; outCol++) {
+						output[inputRow + outCol*_stepSize] += columns[i++];
+					}
+				}
 			}
+		}
+	}
+
+	// Float version of im2col(double[], int, double[])
+	private void im2col(float[] input, int inOffset, float[] columns) {
 
-	        // Add the error contribution for the input feature map to the list
-			dLdOPreviousLayer.add(errorForInput);
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
 
+		int i = 0;
+		for(int x = 0; x < _filterSize; x++) {
+			for(int y = 0; y < _filterSize; y++) {
+				for(int outRow = 0; outRow < outRows; outRow++) {
+					int inputRow = inOffset + (outRow*_stepSize + x)*_inCols + y;
+
+					for(int outCol = 0; outCol < outCols; outCol++) {
+						columns[i++] = input[inputRow + outCol*_stepSize];
+					}
+				}
+			}
 		}
+	}
+
+	// Float version of col2im(double[], double[], int)
+	private void col2im(float[] columns, float[] output, int outOffset) {
+
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
 
-	    // Update the filters by adding the accumulated gradients
-		for(int f =0; f< _filters.size(); f++) {
-			double[][] modified = add(filtersDelta.get(f),_filters.get(f));
-			_filters.set(f, modified);
+		int i = 0;
+		for(int x = 0; x < _filterSize; x++) {
+			for(int y = 0; y < _filterSize; y++) {
+				for(int outRow = 0; outRow < outRows; outRow++) {
+					int inputRow = outOffset + (outRow*_stepSize + x)*_inCols + y;
+
+					for(int outCol = 0; outCol < outCols; outCol++) {
+						output[inputRow + outCol*_stepSize] += columns[i++];
+					}
+				}
+			}
 		}
+	}
+
+	@Override
+	public Tensor backward(Tensor dLdO) {
 
-	    // Propagate the errors to the previous layer if it exists
-		if(_previousLayer != null) {
-			_previousLayer.backPropagation(dLdOPreviousLayer);
+		LayerEvent event = new LayerEvent();
+		event.begin();
+
+		Tensor dLdX = backwardPass(dLdO);
+
+		event.commit(this, "backward", dLdO, dLdX);
+		return dLdX;
+	}
+
+	// Backward pass itself, recorded by backward as a LayerEvent
+	private Tensor backwardPass(Tensor dLdO) {
+
+		if(_sparseInput != null && _sparseInput.isSparse()) {
+			return backwardSparse(dLdO);
+		}
+
+		if(_engine == ConvolutionEngine.IM2COL) {
+			return backwardIm2col(dLdO);
+		}
+
+		int batch = _lastInput.getBatch();
+		int numFilters = _filters.getLength();
+
+		Tensor error = dLdO.reshape(batch, getOutputLength(), getOutputRows(), getOutputCols());
+
+	    // Initialize the tensor storing the errors for the previous layer, the first layer has no use for them
+		Tensor dLdOPreviousLayer = inputGradientWorkspace(batch);
+
+	    // Iterate over each sample and each input feature map
+		for(int n = 0; n < batch; n++) {
+			for(int i = 0; i < _inLength; i++) {
+
+		        // Iterate over each filter in the layer
+				for(int f = 0; f < numFilters; f++) {
+
+					int errorOffset = error.matrixOffset(n, i*numFilters + f);
+
+					if(error.isFloat()) {
+						accumulateFilterDelta(_lastInput.getFloatData(), _lastInput.matrixOffset(n, i), error.getFloatData(), errorOffset,
+								_filtersDelta.getFloatData(), _filtersDelta.matrixOffset(0, f));
+
+						if(dLdOPreviousLayer != null) {
+							fullConvolve(_filters.getFloatData(), _filters.matrixOffset(0, f), error.getFloatData(), errorOffset,
+									dLdOPreviousLayer.getFloatData(), dLdOPreviousLayer.matrixOffset(n, i));
+						}
+						continue;
+					}
+
+		            // Accumulate the filter gradients, scaled by the learning rate, for this batch
+					accumulateFilterDelta(_lastInput.getData(), _lastInput.matrixOffset(n, i), error.getData(), errorOffset,
+							_filtersDelta.getData(), _filtersDelta.matrixOffset(0, f));
+
+		            // Add the error contribution for the input feature map by performing full convolution
+					if(dLdOPreviousLayer != null) {
+						fullConvolve(_filters.getData(), _filters.matrixOffset(0, f), error.getData(), errorOffset,
+								dLdOPreviousLayer.getData(), dLdOPreviousLayer.matrixOffset(n, i));
+					}
+
+				}
+			}
 		}
 
+		return dLdOPreviousLayer;
+
 	}
 
+	/**
+	 * Performs backpropagation for a sparse input, only found by the first layer, which has no previous layer to pass errors to.
+	 * The filter gradients are computed from the nonzero input values found by forward.
+	 *
+	 * @param dLdO Gradients of the loss with respect to the layer's output
+	 * @return null, the first layer has no use for the gradients with respect to its input
+	 */
+	private Tensor backwardSparse(Tensor dLdO) {
+
+		int batch = _lastInput.getBatch();
+		int numFilters = _filters.getLength();
+
+		Tensor error = dLdO.reshape(batch, getOutputLength(), getOutputRows(), getOutputCols());
+
+		if(_filterSumsWorkspace == null) {
+			boolean floatSums = _precision.isFloat() && !_precision.accumulatesInDouble();
+			_filterSumsWorkspace = new Tensor(floatSums ? Precision.FLOAT : Precision.DOUBLE, 1, numFilters, _filterSize, _filterSize);
+		}
+
+		for(int n = 0; n < batch; n++) {
+			for(int i = 0; i < _inLength; i++) {
+				if(error.isFloat()) {
+					accumulateFilterDeltaSparse(_lastInput.getFloatData(), _lastInput.matrixOffset(n, i), n*_inLength + i,
+							error.getFloatData(), error.matrixOffset(n, i*numFilters));
+				}
+				else {
+					accumulateFilterDeltaSparse(_lastInput.getData(), _lastInput.matrixOffset(n, i), n*_inLength + i,
+							error.getData(), error.matrixOffset(n, i*numFilters));
+				}
+			}
+		}
+
+		return null;
+	}
 
 	/**
-     * Flips the 2D array horizontally
-     * @param array Input 2D array
-     * @return Flipped array
-     */
-	public double[][] flipArrayHorizontal(double[][] array){
+	 * Adds the gradients of every filter for one sparse input feature map, multiplied by minus the learning rate, to the filter deltas.
+	 * Each nonzero input value is multiplied by the errors of the outputs whose window covers it and added to the gradients
+	 * of the filter values it meets there. Going through the input row by row, each row from left to right, every gradient
+	 * gets its products in the same order as in accumulateFilterDelta.
+	 *
+	 * @param input Array holding the input feature map
+	 * @param inOffset Index of the input feature map's first value
+	 * @param map Index of the input feature map in _sparseInput
+	 * @param error Array holding the errors of the output feature maps, one per filter
+	 * @param errorOffset Index of the first error's first value
+	 */
+	private void accumulateFilterDeltaSparse(double[] input, int inOffset, int map, double[] error, int errorOffset) {
+
+		int numFilters = _filters.getLength();
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		int outSize = outRows*outCols;
+		int filterArea = _filterSize*_filterSize;
+		int[] columns = _sparseInput.getColumns();
+		double[] sums = _filterSumsWorkspace.getData();
+		double[] delta = _filtersDelta.getData();
+
+		Arrays.fill(sums, 0.0);
+
+		for(int row = 0; row < _inRows; row++) {
+			int end = _sparseInput.rowStart(map, row + 1);
+			int firstRow = firstCovering(row);
+			int lastRow = Math.min(outRows - 1, row/_stepSize);
+
+			for(int k = _sparseInput.rowStart(map, row); k < end; k++) {
+				int c = columns[k];
+				double value = input[inOffset + row*_inCols + c];
+				int firstCol = firstCovering(c);
+				int lastCol = Math.min(outCols - 1, c/_stepSize);
+
+				for(int outRow = firstRow; outRow <= lastRow; outRow++) {
+					int sumRow = (row - outRow*_stepSize)*_filterSize + c;
+
+					for(int f = 0; f < numFilters; f++) {
+						int errorRow = errorOffset + f*outSize + outRow*outCols;
+						int sumIndex = sumRow + f*filterArea;
+
+						for(int outCol = firstCol; outCol <= lastCol; outCol++) {
+							sums[sumIndex - outCol*_stepSize] += error[errorRow + outCol] * value;
+						}
+					}
+				}
+			}
+		}
+
+		for(int k = 0; k < sums.length; k++) {
+			delta[_filtersDelta.getOffset() + k] += sums[k]*(_learningRate*-1);
+		}
+	}
+
+	// Float version of accumulateFilterDeltaSparse(double[], int, int, double[], int), the sums are accumulated in double
+	// if the precision asks for it
+	private void accumulateFilterDeltaSparse(float[] input, int inOffset, int map, float[] error, int errorOffset) {
+
+		int numFilters = _filters.getLength();
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		int outSize = outRows*outCols;
+		int filterArea = _filterSize*_filterSize;
+		int[] columns = _sparseInput.getColumns();
+		boolean doubleAccumulation = _precision.accumulatesInDouble();
+		double[] doubleSums = doubleAccumulation ? _filterSumsWorkspace.getData() : null;
+		float[] sums = doubleAccumulation ? null : _filterSumsWorkspace.getFloatData();
+		float[] delta = _filtersDelta.getFloatData();
+
+		if(doubleAccumulation) {
+			Arrays.fill(doubleSums, 0.0);
+		}
+		else {
+			Arrays.fill(sums, 0.0f);
+		}
 
-	    // Get the number of rows and columns in the input array
-		int rows = array.length;
-		int cols = array[0].length;
+		for(int row = 0; row < _inRows; row++) {
+			int end = _sparseInput.rowStart(map, row + 1);
+			int firstRow = firstCovering(row);
+			int lastRow = Math.min(outRows - 1, row/_stepSize);
 
-	    // Create a new array to store the horizontally flipped version
-		double[][] output = new double[rows][cols];
+			for(int k = _sparseInput.rowStart(map, row); k < end; k++) {
+				int c = columns[k];
+				float value = input[inOffset + row*_inCols + c];
+				int firstCol = firstCovering(c);
+				int lastCol = Math.min(outCols - 1, c/_stepSize);
 
-	    // Iterate through each element in the input array
-		for(int i = 0;i < rows; i++) {
-			for(int j = 0;j < rows; j++) {
-	            // Copy elements from the input array to the output array, flipping horizontally
-				output[rows-i-1][j] = array[i][j];
+				for(int outRow = firstRow; outRow <= lastRow; outRow++) {
+					int sumRow = (row - outRow*_stepSize)*_filterSize + c;
+
+					for(int f = 0; f < numFilters; f++) {
+						int errorRow = errorOffset + f*outSize + outRow*outCols;
+						int sumIndex = sumRow + f*filterArea;
+
+						if(doubleAccumulation) {
+							for(int outCol = firstCol; outCol <= lastCol; outCol++) {
+								doubleSums[sumIndex - outCol*_stepSize] += (double) error[errorRow + outCol] * value;
+							}
+						}
+						else {
+							for(int outCol = firstCol; outCol <= lastCol; outCol++) {
+								sums[sumIndex - outCol*_stepSize] += error[errorRow + outCol] * value;
+							}
+						}
+					}
+				}
 			}
 		}
 
-	    // Return the horizontally flipped array
-		return output;
+		for(int k = 0; k < numFilters*filterArea; k++) {
+			double sum = doubleAccumulation ? doubleSums[k] : sums[k];
+
+			// The im2col engine rounds the gradients to float in its gradient matrix before scaling them
+			if(_engine == ConvolutionEngine.IM2COL) {
+				sum = (float) sum;
+			}
+
+			delta[_filtersDelta.getOffset() + k] = (float) (delta[_filtersDelta.getOffset() + k] + sum*(_learningRate*-1));
+		}
 	}
 
+	/**
+	 * Gets the cleared workspace receiving the errors for the previous layer
+	 * @param batch Number of samples
+	 * @return Tensor of zeros shaped like the layer's input, or null for the first layer that has no use for them
+	 */
+	private Tensor inputGradientWorkspace(int batch) {
+
+		if(_previousLayer == null) {
+			return null;
+		}
+
+		_dLdXWorkspace = Tensor.workspace(_dLdXWorkspace, _precision, batch, _inLength, _inRows, _inCols);
+		_dLdXWorkspace.fill(0);
+
+		return _dLdXWorkspace;
+	}
 
 	/**
-     * Flips the 2D array vertically
-     * @param array Input 2D array
-     * @return Flipped array
-     */
-	public double[][] flipArrayVertical(double[][] array){
+	 * Performs backpropagation with the im2col engine. For each input feature map the filter gradients are the
+	 * output errors (numFilters x outRows*outCols) multiplied by the transposed unrolled patches, and the input
+	 * errors are the transposed filters multiplied by the output errors, added back to the input with col2im.
+	 *
+	 * @param dLdO Gradients of the loss with respect to the layer's output
+	 * @return Gradients of the loss with respect to the layer's input, or null for the first layer
+	 */
+	private Tensor backwardIm2col(Tensor dLdO) {
 
-		int rows = array.length;
-		int cols = array[0].length;
+		int batch = _lastInput.getBatch();
+		int numFilters = _filters.getLength();
+		int patchSize = _filterSize*_filterSize;
+		int positions = getOutputRows()*getOutputCols();
 
-		double[][] output = new double[rows][cols];
+		Tensor error = dLdO.reshape(batch, getOutputLength(), getOutputRows(), getOutputCols());
+		Tensor dLdOPreviousLayer = inputGradientWorkspace(batch);
 
-		for(int i = 0;i < rows; i++) {
-			for(int j = 0;j < rows; j++) {
-				output[i][cols-j-1] = array[i][j];
+		if(_dLdFWorkspace == null) {
+			_dLdFWorkspace = new Tensor(_precision, 1, 1, numFilters, patchSize);
+		}
+
+		if(_precision.isFloat()) {
+			backwardIm2colFloat(error, dLdOPreviousLayer);
+			return dLdOPreviousLayer;
+		}
+
+		double[] columns = _columnsWorkspace.getData();
+		double[] dLdF = _dLdFWorkspace.getData();
+		double[] delta = _filtersDelta.getData();
+
+		for(int n = 0; n < batch; n++) {
+			for(int i = 0; i < _inLength; i++) {
+
+				int errorOffset = error.matrixOffset(n, i*numFilters);
+
+	            // Filter gradients for this input feature map, scaled by the learning rate and accumulated for this batch
+				im2col(_lastInput.getData(), _lastInput.matrixOffset(n, i), columns);
+
+				Arrays.fill(dLdF, 0);
+				Gemm.multiplyTransposedB(numFilters, patchSize, positions, error.getData(), errorOffset, positions,
+						columns, 0, positions, dLdF, 0, patchSize);
+
+				for(int k = 0; k < dLdF.length; k++) {
+					delta[k] += dLdF[k]*(_learningRate*-1);
+				}
+
+	            // Errors of the input feature map, the unrolled patches are no longer needed so their array is reused
+				if(dLdOPreviousLayer != null) {
+					Arrays.fill(columns, 0);
+					Gemm.multiplyTransposedA(patchSize, positions, numFilters, _filters.getData(), _filters.getOffset(), patchSize,
+							error.getData(), errorOffset, positions, columns, 0, positions);
+
+					col2im(columns, dLdOPreviousLayer.getData(), dLdOPreviousLayer.matrixOffset(n, i));
+				}
 			}
 		}
 
-		return output;
+		return dLdOPreviousLayer;
 	}
 
+	// Float version of the loop in backwardIm2col, using the workspaces it has prepared
+	private void backwardIm2colFloat(Tensor error, Tensor dLdOPreviousLayer) {
+
+		int numFilters = _filters.getLength();
+		int patchSize = _filterSize*_filterSize;
+		int positions = getOutputRows()*getOutputCols();
+		boolean doubleAccumulation = _precision.accumulatesInDouble();
+
+		float[] columns = _columnsWorkspace.getFloatData();
+		float[] dLdF = _dLdFWorkspace.getFloatData();
+		float[] delta = _filtersDelta.getFloatData();
+
+		for(int n = 0; n < error.getBatch(); n++) {
+			for(int i = 0; i < _inLength; i++) {
+
+				int errorOffset = error.matrixOffset(n, i*numFilters);
+
+				im2col(_lastInput.getFloatData(), _lastInput.matrixOffset(n, i), columns);
+
+				Arrays.fill(dLdF, 0);
+				FloatGemm.multiplyTransposedB(numFilters, patchSize, positions, error.getFloatData(), errorOffset, positions,
+						columns, 0, positions, dLdF, 0, patchSize, doubleAccumulation);
+
+				for(int k = 0; k < dLdF.length; k++) {
+					delta[k] = (float) (delta[k] + dLdF[k]*(_learningRate*-1));
+				}
+
+				if(dLdOPreviousLayer != null) {
+					Arrays.fill(columns, 0);
+					FloatGemm.multiplyTransposedA(patchSize, positions, numFilters, _filters.getFloatData(), _filters.getOffset(), patchSize,
+							error.getFloatData(), errorOffset, positions, columns, 0, positions, doubleAccumulation);
+
+					col2im(columns, dLdOPreviousLayer.getFloatData(), dLdOPreviousLayer.matrixOffset(n, i));
+				}
+			}
+		}
+	}
 
 	/**
-     * Performs full convolution operation
-     * @param input Input feature map
-     * @param filter Convolution filter
-     * @return Output feature map after convolution
-     */
-	private double[][] fullConvolve(double[][] input, double[][] filter) {
+	 * Adds the gradient of one filter for one input feature map, multiplied by minus the learning rate, to the filter's delta.
+	 * The gradient is the convolution of the input with the output error spaced out by the step size, the zeros
+	 * inserted by the spacing contribute nothing, so only the error values themselves are visited.
+	 *
+	 * @param input Array holding the input feature map
+	 * @param inOffset Index of the input feature map's first value
+	 * @param error Array holding the error of the output feature map
+	 * @param errorOffset Index of the error's first value
+	 * @param delta Array holding the filter deltas
+	 * @param deltaOffset Index of the filter delta's first value
+	 */
+	private void accumulateFilterDelta(double[] input, int inOffset, double[] error, int errorOffset, double[] delta, int deltaOffset) {
 
-	    // Calculate the dimensions of the output array
-		int outRows = (input.length + filter.length) + 1;
-		int outCols = (input[0].length + filter[0].length) + 1;
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
 
-		int inRows = input.length;
-		int inCols = input[0].length;
+	    // With a step of 1 the gradients of a filter row read consecutive inputs, so the sums of a whole row are
+	    // computed with vectors, adding the products in the same order as the loops below
+		if(Simd.isEnabled() && _stepSize == 1) {
+			double[] sums = rowSumsWorkspace().getData();
 
-		int fRows = filter.length;
-		int fCols = filter[0].length;
+			for(int i = 0; i < _filterSize; i++) {
+				Arrays.fill(sums, 0.0);
 
+				for(int p = 0; p < outRows; p++) {
+					for(int q = 0; q < outCols; q++) {
+						VectorKernels.multiplyAdd(input, inOffset + (i + p)*_inCols + q, error[errorOffset + p*outCols + q], sums, 0, _filterSize);
+					}
+				}
 
-	    // Initialize the output array
-		double[][] output = new double[outRows][outCols];
+				for(int j = 0; j < _filterSize; j++) {
+					delta[deltaOffset + i*_filterSize + j] += sums[j]*(_learningRate*-1);
+				}
+			}
+			return;
+		}
 
-		int outRow = 0;
-		int outCol;
+		for(int i = 0; i < _filterSize; i++) {
+			for(int j = 0; j < _filterSize; j++) {
 
-	    // Iterate over each position in the output array
-		for(int i = -fRows + 1; i < inRows; i++) {
+				double sum = 0.0;
 
-			outCol = 0;
+				for(int p = 0; p < outRows; p++) {
+					int inputRow = inOffset + (i + p*_stepSize)*_inCols + j;
+					int errorRow = errorOffset + p*outCols;
 
-			for(int j = -fCols; j < inCols; j++) {
+					for(int q = 0; q < outCols; q++) {
+						sum += error[errorRow + q] * input[inputRow + q*_stepSize];
+					}
+				}
+
+				delta[deltaOffset + i*_filterSize + j] += sum*(_learningRate*-1);
+			}
+		}
+	}
+
+	/**
+     * Performs the full convolution of a filter with the spaced out output error flipped horizontally and vertically,
+     * adding the result to the error of the input feature map. As with accumulateFilterDelta only the error values
+     * are visited, the spacing and flipping are done through the indices.
+     * @param filter Array holding the filter
+     * @param filterOffset Index of the filter's first value
+     * @param error Array holding the error of the output feature map
+     * @param errorOffset Index of the error's first value
+     * @param output Array holding the error of the input feature map
+     * @param outOffset Index of the input error's first value
+     */
+	private void fullConvolve(double[] filter, int filterOffset, double[] error, int errorOffset, double[] output, int outOffset) {
+
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+
+	    // Size of the spaced out error
+		int spacedRows = (outRows - 1)*_stepSize + 1;
+		int spacedCols = (outCols - 1)*_stepSize + 1;
+
+	    // Number of rows and columns of the full convolution that fall inside the input feature map
+		int rows = Math.min(_inRows, _filterSize + spacedRows - 1);
+		int cols = Math.min(_inCols, _filterSize + spacedCols - 1);
+
+	    // Iterate over each position in the output array
+		for(int a = 0; a < rows; a++) {
+			for(int b = 0; b < cols; b++) {
 
 				double sum = 0.0;
 
-				//Apply filter around this position
-				for(int x = 0; x < fRows; x++) {
-					for(int y = 0; y < fCols; y++) {
-						int inputRowIndex = i+x;
-						int inputColIndex = j+y;
-	                    // Check if the current position is within the bounds of the input matrix
-						if(inputRowIndex >= 0 && inputColIndex >= 0 && inputRowIndex < inRows && inputColIndex < inCols) {
-							double value = filter[x][y] * input[inputRowIndex][inputColIndex];
-							sum += value;
+				// Apply the flipped error around this position, keeping only filter positions inside its bounds
+				for(int p = outRows - 1; p >= 0; p--) {
+					int filterRowIndex = a - p*_stepSize;
+
+					if(filterRowIndex < 0 || filterRowIndex >= _filterSize) {
+						continue;
+					}
+
+					for(int q = outCols - 1; q >= 0; q--) {
+						int filterColIndex = b - q*_stepSize;
+
+						if(filterColIndex >= 0 && filterColIndex < _filterSize) {
+							sum += error[errorOffset + p*outCols + q] * filter[filterOffset + filterRowIndex*_filterSize + filterColIndex];
 						}
 					}
 				}
 
 	            // Store the result of the convolution in the output array
-				output[outRow][outCol] = sum;
-				outCol++;
+				output[outOffset + a*_inCols + b] += sum;
+
+			}
+
+		}
+
+	}
+
+	// Float version of accumulateFilterDelta(double[], int, double[], int, double[], int), the sums are accumulated
+	// in double if the precision asks for it
+	private void accumulateFilterDelta(float[] input, int inOffset, float[] error, int errorOffset, float[] delta, int deltaOffset) {
+
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		boolean doubleAccumulation = _precision.accumulatesInDouble();
+
+		if(Simd.isEnabled() && _stepSize == 1 && !doubleAccumulation) {
+			float[] sums = rowSumsWorkspace().getFloatData();
+
+			for(int i = 0; i < _filterSize; i++) {
+				Arrays.fill(sums, 0.0f);
+
+				for(int p = 0; p < outRows; p++) {
+					for(int q = 0; q < outCols; q++) {
+						VectorKernels.multiplyAdd(input, inOffset + (i + p)*_inCols + q, error[errorOffset + p*outCols + q], sums, 0, _filterSize);
+					}
+				}
 
+				for(int j = 0; j < _filterSize; j++) {
+					delta[deltaOffset + i*_filterSize + j] = (float) (delta[deltaOffset + i*_filterSize + j] + sums[j]*(_learningRate*-1));
+				}
 			}
+			return;
+		}
 
-			outRow++;
+		for(int i = 0; i < _filterSize; i++) {
+			for(int j = 0; j < _filterSize; j++) {
 
+				double sum;
+
+				if(doubleAccumulation) {
+					sum = 0.0;
+					for(int p = 0; p < outRows; p++) {
+						int inputRow = inOffset + (i + p*_stepSize)*_inCols + j;
+						int errorRow = errorOffset + p*outCols;
+
+						for(int q = 0; q < outCols; q++) {
+							sum += (double) error[errorRow + q] * input[inputRow + q*_stepSize];
+						}
+					}
+				}
+				else {
+					float floatSum = 0.0f;
+					for(int p = 0; p < outRows; p++) {
+						int inputRow = inOffset + (i + p*_stepSize)*_inCols + j;
+						int errorRow = errorOffset + p*outCols;
+
+						for(int q = 0; q < outCols; q++) {
+							floatSum += error[errorRow + q] * input[inputRow + q*_stepSize];
+						}
+					}
+					sum = floatSum;
+				}
+
+				delta[deltaOffset + i*_filterSize + j] = (float) (delta[deltaOffset + i*_filterSize + j] + sum*(_learningRate*-1));
+			}
 		}
+	}
 
-	    // Return the result of the full convolution operation
-		return output;
+	// Gets the workspace for the sums of one row of filter gradients, only used in backward so it is not shared between threads
+	private Tensor rowSumsWorkspace() {
+		if(_rowSumsWorkspace == null) {
+			_rowSumsWorkspace = new Tensor(_precision, 1, 1, 1, _filterSize);
+		}
+		return _rowSumsWorkspace;
+	}
+
+	// Float version of fullConvolve(double[], int, double[], int, double[], int), the sums are accumulated
+	// in double if the precision asks for it
+	private void fullConvolve(float[] filter, int filterOffset, float[] error, int errorOffset, float[] output, int outOffset) {
+
+		int outRows = getOutputRows();
+		int outCols = getOutputCols();
+		boolean doubleAccumulation = _precision.accumulatesInDouble();
+
+		int spacedRows = (outRows - 1)*_stepSize + 1;
+		int spacedCols = (outCols - 1)*_stepSize + 1;
+
+		int rows = Math.min(_inRows, _filterSize + spacedRows - 1);
+		int cols = Math.min(_inCols, _filterSize + spacedCols - 1);
+
+		for(int a = 0; a < rows; a++) {
+			for(int b = 0; b < cols; b++) {
+
+				double doubleSum = 0.0;
+				float floatSum = 0.0f;
+
+				for(int p = outRows - 1; p >= 0; p--) {
+					int filterRowIndex = a - p*_stepSize;
+
+					if(filterRowIndex < 0 || filterRowIndex >= _filterSize) {
+						continue;
+					}
+
+					for(int q = outCols - 1; q >= 0; q--) {
+						int filterColIndex = b - q*_stepSize;
+
+						if(filterColIndex >= 0 && filterColIndex < _filterSize) {
+							float e = error[errorOffset + p*outCols + q];
+							float w = filter[filterOffset + filterRowIndex*_filterSize + filterColIndex];
+
+							if(doubleAccumulation) {
+								doubleSum += (double) e * w;
+							}
+							else {
+								floatSum += e * w;
+							}
+						}
+					}
+				}
+
+				output[outOffset + a*_inCols + b] += doubleAccumulation ? (float) doubleSum : floatSum;
+
+			}
+
+		}
 
 	}
 
 	/**
-	 * Computes the output of the layer given a 1D input array by first converting it into a list of 2D matrices,
-	 * then passing it to the getOutput method that takes a list of matrices as input.
+	 * Updates the filters in place with the average of the deltas accumulated since the last update
+	 * and resets the accumulators for the next batch.
 	 *
-	 * @param input The 1D input array to be processed.
-	 * @return The output of the layer computed from the input array.
+	 * @param batchSize Number of samples whose gradients were accumulated.
 	 */
 	@Override
-	public double[] getOutput(double[] input) {
-	    // Convert the 1D input array into a list of 2D matrices
-		List<double[][]> matrixInput = vectorToMatrix(input, _inLength, _inRows, _inCols);
-	    // Compute the output using the list of matrices and return it
-		return getOutput(matrixInput);
+	public void applyGradients(int batchSize) {
+		if(_precision.isFloat()) {
+			float[] filters = _filters.getFloatData();
+			float[] delta = _filtersDelta.getFloatData();
+
+			for(int i = 0; i < filters.length; i++) {
+				filters[i] = delta[i]/batchSize + filters[i];
+				delta[i] = 0;
+			}
+			return;
+		}
+
+		double[] filters = _filters.getData();
+		double[] delta = _filtersDelta.getData();
+
+		for(int i = 0; i < filters.length; i++) {
+			filters[i] = delta[i]/batchSize + filters[i];
+			delta[i] = 0;
+		}
 	}
 
 	/**
-	 * Performs backpropagation for the layer given a 1D array representing the gradients of the loss function
-	 * with respect to the layer's output. Converts the 1D array into a list of 2D matrices and passes it to
-	 * the backPropagation method that handles matrices as input.
+	 * Creates a replica of this layer which shares the filters but has its own gradient accumulators.
 	 *
-	 * @param dLdO The 1D array representing the gradients of the loss function with respect to the layer's output.
+	 * @return The replica layer.
 	 */
 	@Override
-	public void backPropagation(double[] dLdO) {
-	    // Convert the 1D array of gradients into a list of 2D matrices
-		List<double[][]> matrixInput = vectorToMatrix(dLdO, _inLength, _inRows, _inCols);
-	    // Perform backpropagation using the list of matrices
-		backPropagation(matrixInput);
+	public Layer createReplica() {
+		return new ConvolutionLayer(this);
+	}
+
+	/**
+	 * Creates a snapshot of this layer with its own copy of the current filters.
+	 *
+	 * @return The snapshot layer.
+	 */
+	@Override
+	public Layer createSnapshot() {
+		ConvolutionLayer snapshot = new ConvolutionLayer(this);
+
+		snapshot._filters = _filters.copy();
+		return snapshot;
+	}
+
+	/**
+	 * Adds the filter deltas accumulated by a replica to this layer and clears the replica's deltas.
+	 *
+	 * @param replica A replica created by createReplica.
+	 */
+	@Override
+	public void addGradients(Layer replica) {
+		if(_precision.isFloat()) {
+			float[] delta = _filtersDelta.getFloatData();
+			float[] otherDelta = ((ConvolutionLayer) replica)._filtersDelta.getFloatData();
+
+			for(int i = 0; i < delta.length; i++) {
+				delta[i] += otherDelta[i];
+				otherDelta[i] = 0;
+			}
+			return;
+		}
+
+		double[] delta = _filtersDelta.getData();
+		double[] otherDelta = ((ConvolutionLayer) replica)._filtersDelta.getData();
+
+		for(int i = 0; i < delta.length; i++) {
+			delta[i] += otherDelta[i];
+			otherDelta[i] = 0;
+		}
+	}
+
+	/**
+	 * Gets the number of filter values, the parameters saved by a checkpoint.
+	 *
+	 * @return The number of filters times the filter size squared.
+	 */
+	@Override
+	public int getParameterCount() {
+		return _filters.size();
+	}
+
+	/**
+	 * Copies the filters into the buffer, filter by filter and row by row.
+	 *
+	 * @param out Buffer receiving getParameterCount() doubles or floats.
+	 */
+	@Override
+	public void writeParameters(ByteBuffer out) {
+		if(_precision.isFloat()) {
+			out.asFloatBuffer().put(_filters.getFloatData(), _filters.getOffset(), _filters.size());
+		}
+		else {
+			out.asDoubleBuffer().put(_filters.getData(), _filters.getOffset(), _filters.size());
+		}
+	}
+
+	/**
+	 * Replaces the filters with the values written by writeParameters.
+	 *
+	 * @param in Buffer holding getParameterCount() doubles or floats.
+	 */
+	@Override
+	public void readParameters(ByteBuffer in) {
+		if(_precision.isFloat()) {
+			in.asFloatBuffer().get(_filters.getFloatData(), _filters.getOffset(), _filters.size());
+		}
+		else {
+			in.asDoubleBuffer().get(_filters.getData(), _filters.getOffset(), _filters.size());
+		}
 	}
 
 	/**
@@ -418,7 +1412,7 @@ public class ConvolutionLayer extends Layer{
 	@Override
 	public int getOutputLength() {
 	    // Compute the output length as the product of the number of filters and the input length
-		return _filters.size()*_inLength;
+		return _filters.getLength()*_inLength;
 	}
 
 	/**
@@ -454,4 +1448,64 @@ public class ConvolutionLayer extends Layer{
 		return getOutputCols()*getOutputRows()*getOutputLength();
 	}
 
+	/**
+	 * Computes the operations of the forward pass, a multiplication and an addition per filter value for every output.
+	 *
+	 * @param batch Number of samples.
+	 * @return The number of floating-point operations.
+	 */
+	@Override
+	public long getForwardFlops(int batch) {
+		return 2L*batch*getOutputElements()*_filterSize*_filterSize;
+	}
+
+	/**
+	 * Computes the operations of the backward pass, the forward pass's for the filter gradients and as many again for the
+	 * gradients of the inputs, which the first layer does not compute.
+	 *
+	 * @param batch Number of samples.
+	 * @return The number of floating-point operations.
+	 */
+	@Override
+	public long getBackwardFlops(int batch) {
+		return getForwardFlops(batch)*(_previousLayer == null ? 1 : 2);
+	}
+
+	/**
+	 * Computes the bytes of the forward pass: the inputs and filters read and the outputs written.
+	 *
+	 * @param batch Number of samples.
+	 * @return The number of bytes.
+	 */
+	@Override
+	public long getForwardBytes(int batch) {
+		return (long) _precision.getBytes()*((long) batch*(getInputElements() + getOutputElements()) + getParameterCount());
+	}
+
+	/**
+	 * Computes the bytes of the backward pass: the output gradients and cached inputs read, the filter gradients updated
+	 * and, unless this is the first layer, the filters read and the input gradients written.
+	 *
+	 * @param batch Number of samples.
+	 * @return The number of bytes.
+	 */
+	@Override
+	public long getBackwardBytes(int batch) {
+
+		int inputGradients = _previousLayer == null ? 0 : 1;
+
+		return (long) _precision.getBytes()*((long) batch*(getOutputElements() + (1 + inputGradients)*getInputElements())
+				+ (long) (2 + inputGradients)*getParameterCount());
+	}
+
+	/**
+	 * Computes the number of elements of one input sample.
+	 *
+	 * @return The number of input elements.
+	 */
+	@Override
+	public int getInputElements() {
+		return _inLength*_inRows*_inCols;
+	}
+
 }
@@ -6,21 +6,38 @@
  */
 package layers;
 
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
+import data.FloatGemm;
+import data.Gemm;
+import data.Precision;
+import data.Tensor;
+
 public class FullyConnectedLayer extends Layer{
 
 	private long SEED; // Seed for random weight initialization
 	private final double leak = 0.01; // Leakage parameter for ReLU activation function
 
-	private double[][] _weights; // Weight matrix connecting input neurons to output neurons
+	private double[] _weights; // Weight matrix connecting input neurons to output neurons, row k holds the weights of input k
+	private double[] _weightsGradient; // Weight gradients accumulated over the current batch
+	private float[] _floatWeights; // Weights of a float layer, used instead of _weights
+	private float[] _floatWeightsGradient; // Weight gradients of a float layer, used instead of _weightsGradient
+	private Precision _precision; // Precision of the weights and activations
 	private int _inLength; // Number of input neurons
 	private int _outLength; // Number of output neurons
 	private double _learningRate; // Learning rate for weight updates
 
-	private double[] lastZ; // Last computed weighted sum of inputs
-	private double[] lastX; // Last input vector
+	private Tensor lastZ; // Last computed weighted sum of inputs
+	private Tensor lastX; // Last input vector
+
+	// Workspaces reused by forward and backward from one batch to the next, see Tensor.workspace
+	private Tensor _outputWorkspace; // Activations returned by forward
+	private Tensor _dLdZWorkspace; // Gradients with respect to the weighted sums
+	private Tensor _dLdXWorkspace; // Gradients with respect to the inputs returned by backward
+	private Tensor _sumsWorkspace; // Weighted sums of one sample in double, for the sparse forward of the float kernels that accumulate in double
+	private SparseInput _sparseInput; // Nonzero inputs of the last batch, only found by the first layer to skip the zero pixels
 
 	/**
 	 * Constructor for FullyConnectedLayer
@@ -30,113 +47,426 @@ public class FullyConnectedLayer extends Layer{
      * @param learningRate Learning rate for weight updates
 	 */
 	public FullyConnectedLayer(int _intLength, int _outLength,long SEED,double learningRate) {
+		this(_intLength, _outLength, SEED, learningRate, Precision.DOUBLE);
+	}
+
+	/**
+	 * Constructor for FullyConnectedLayer with a choice of precision
+	 * @param _inLength Number of input neurons
+     * @param _outLength Number of output neurons
+     * @param SEED Seed for random weight initialization
+     * @param learningRate Learning rate for weight updates
+     * @param precision Precision of the weights and activations
+	 */
+	public FullyConnectedLayer(int _intLength, int _outLength,long SEED,double learningRate, Precision precision) {
+		this(_intLength, _outLength, SEED, learningRate, precision, true);
+	}
+
+	/**
+	 * Constructor for FullyConnectedLayer which can leave the weights at zero, used when they are read from a checkpoint
+	 * @param _inLength Number of input neurons
+     * @param _outLength Number of output neurons
+     * @param SEED Seed for random weight initialization
+     * @param learningRate Learning rate for weight updates
+     * @param precision Precision of the weights and activations
+     * @param initialize Whether to draw the random initial weights, false leaves them at zero for readParameters
+	 */
+	public FullyConnectedLayer(int _intLength, int _outLength,long SEED,double learningRate, Precision precision, boolean initialize) {
 
 		this._inLength = _intLength;
 		this._outLength = _outLength;
 		this.SEED = SEED;
 		this._learningRate = learningRate;
+		this._precision = precision;
+
+		if(precision.isFloat()) {
+			_floatWeights = new float[_intLength*_outLength];
+			_floatWeightsGradient = new float[_intLength*_outLength];
+		}
+		else {
+			_weights = new double[_intLength*_outLength];
+			_weightsGradient = new double[_intLength*_outLength];
+		}
+		if(initialize) {
+			setRandomWeights();
+		}
+	}
+
+	/**
+	 * Copy constructor used by createReplica, the replica shares the weights of the original layer
+	 * @param original Layer whose weights are shared
+	 */
+	private FullyConnectedLayer(FullyConnectedLayer original) {
 
-		_weights = new double[_intLength][_outLength];
-		setRandomWeights();
+		this._inLength = original._inLength;
+		this._outLength = original._outLength;
+		this.SEED = original.SEED;
+		this._learningRate = original._learningRate;
+		this._precision = original._precision;
+
+		if(_precision.isFloat()) {
+			_floatWeights = original._floatWeights;
+			_floatWeightsGradient = new float[_inLength*_outLength];
+		}
+		else {
+			_weights = original._weights;
+			_weightsGradient = new double[_inLength*_outLength];
+		}
 	}
 
-    // Forward pass through the fully connected layer
-	public double[] fullyConnectedForwardPass(double[] input){
+    // Forward pass through the fully connected layer, each sample of the input is flattened to a vector
+	@Override
+	public Tensor forward(Tensor input){
 
-		lastX = input;
+		LayerEvent event = new LayerEvent();
+		event.begin();
 
-		double[] z = new double[_outLength];
-		double[] out = new double[_outLength];
+		Tensor output = forwardPass(input);
 
-        // Calculate the weighted sum of inputs
-		for(int i = 0; i < _inLength; i++) {
-			for(int j = 0; j < _outLength; j++) {
-				z[j] += input[i]*_weights[i][j];
+		event.commit(this, "forward", input, output);
+		return output;
+	}
+
+	// Forward pass itself, recorded by forward as a LayerEvent
+	private Tensor forwardPass(Tensor input){
+
+		lastX = input.reshape(input.getBatch(), 1, 1, _inLength);
+
+		lastZ = Tensor.workspace(lastZ, _precision, input.getBatch(), 1, 1, _outLength);
+		_outputWorkspace = Tensor.workspace(_outputWorkspace, _precision, input.getBatch(), 1, 1, _outLength);
+
+		// The input of the first layer is the images themselves, mostly zero pixels for MNIST, which can be skipped
+		if(_previousLayer == null) {
+			if(_sparseInput == null) {
+				_sparseInput = new SparseInput();
 			}
+			_sparseInput.encode(lastX, 1, _inLength);
 		}
 
-		lastZ = z;
+		if(_precision.accumulatesInDouble()) {
+			_sumsWorkspace = Tensor.workspace(_sumsWorkspace, Precision.DOUBLE, 1, 1, 1, _outLength);
+		}
 
-        // Apply ReLU activation function
-		for(int i = 0; i < _inLength; i++) {
-			for(int j = 0; j < _outLength; j++) {
-				out[j] = relu(z[j]);
-			}
+		weightedSum(lastX, lastZ, _sparseInput, _precision.accumulatesInDouble() ? _sumsWorkspace.getData() : null);
+
+		activate(lastZ, _outputWorkspace);
+
+		return _outputWorkspace;
+	}
+
+    // Prediction forward pass, without caching the input or weighted sums
+	@Override
+	public Tensor inferLayer(Tensor input) {
+		Tensor z = new Tensor(_precision, input.getBatch(), 1, 1, _outLength);
+		Tensor out = new Tensor(_precision, input.getBatch(), 1, 1, _outLength);
+
+		Tensor x = input.reshape(input.getBatch(), 1, 1, _inLength);
+		SparseInput sparseInput = null;
+
+		// Same sparse path as forward, with its own index as several threads may call inferLayer
+		if(_previousLayer == null) {
+			sparseInput = new SparseInput();
+			sparseInput.encode(x, 1, _inLength);
 		}
 
+		weightedSum(x, z, sparseInput, _precision.accumulatesInDouble() ? new double[_outLength] : null);
+
+		activate(z, out);
+
 		return out;
 	}
 
-    // Override method: Get output using matrix input
-	@Override
-	public double[] getOutput(List<double[][]> input) {
-		double[] vector = matrixToVector(input);
-		return getOutput(vector);
+    // Calculate the weighted sum of inputs of every sample into z, Z = X * W with one matrix multiplication for the batch,
+    // or by adding the weight rows of the nonzero inputs only if sparseInput is not null and found them sparse enough.
+    // sums holds _outLength values for the sparse sums of the float kernels that accumulate in double, otherwise it is null
+	private void weightedSum(Tensor input, Tensor z, SparseInput sparseInput, double[] sums){
+
+		z.fill(0);
+
+		if(sparseInput != null && sparseInput.isSparse()) {
+			weightedSumSparse(input, z, sparseInput, sums);
+			return;
+		}
+
+		if(_precision.isFloat()) {
+			FloatGemm.multiply(input.getBatch(), _outLength, _inLength, input.getFloatData(), input.getOffset(), _inLength,
+					_floatWeights, 0, _outLength, z.getFloatData(), z.getOffset(), _outLength, _precision.accumulatesInDouble());
+			return;
+		}
+
+		Gemm.multiply(input.getBatch(), _outLength, _inLength, input.getData(), input.getOffset(), _inLength,
+				_weights, 0, _outLength, z.getData(), z.getOffset(), _outLength);
 	}
 
-    // Override method: Perform backpropagation using matrix input
-	@Override
-	public void backPropagation(List<double[][]> dLdO) {
-		double[] vector = matrixToVector(dLdO);
-		backPropagation(vector);
+    // Calculate Z = X * W for a sparse input, adding the row of weights of every nonzero input multiplied by its value.
+    // Every weighted sum gets its products in increasing input index as in the matrix multiplication, so the results are the same
+	private void weightedSumSparse(Tensor input, Tensor z, SparseInput sparseInput, double[] sums){
+
+		int[] columns = sparseInput.getColumns();
+
+		for(int n = 0; n < input.getBatch(); n++) {
+			int inputRow = input.getOffset() + n*_inLength;
+			int zRow = z.getOffset() + n*_outLength;
+			int end = sparseInput.rowStart(n, 1);
+
+			if(sums != null) {
+				Arrays.fill(sums, 0.0);
+			}
+
+			for(int k = sparseInput.rowStart(n, 0); k < end; k++) {
+				int i = columns[k];
+
+				if(sums != null) {
+					float x = input.getFloatData()[inputRow + i];
+					for(int j = 0; j < _outLength; j++) {
+						sums[j] += (double) x * _floatWeights[i*_outLength + j];
+					}
+				}
+				else if(_precision.isFloat()) {
+					SparseInput.multiplyAdd(_floatWeights, i*_outLength, input.getFloatData()[inputRow + i], z.getFloatData(), zRow, _outLength);
+				}
+				else {
+					SparseInput.multiplyAdd(_weights, i*_outLength, input.getData()[inputRow + i], z.getData(), zRow, _outLength);
+				}
+			}
+
+			if(sums != null) {
+				for(int j = 0; j < _outLength; j++) {
+					z.getFloatData()[zRow + j] = (float) sums[j];
+				}
+			}
+		}
 	}
 
-    // Override method: Get output using vector input
-	@Override
-	public double[] getOutput(double[] input) {
-		double[] forwardPass = fullyConnectedForwardPass(input);
+    // Accumulate dL/dW += transpose(X) * dL/dZ for a sparse input, adding the gradients of every nonzero input multiplied by
+    // its value. Every weight gradient gets its products in increasing sample index as in the matrix multiplication
+	private void accumulateWeightsGradientSparse(double[] g) {
+
+		int[] columns = _sparseInput.getColumns();
+
+		for(int n = 0; n < lastX.getBatch(); n++) {
+			int inputRow = lastX.getOffset() + n*_inLength;
+			int end = _sparseInput.rowStart(n, 1);
 
-		if(_nextLayer != null) {
-			return _nextLayer.getOutput(forwardPass);
+			for(int k = _sparseInput.rowStart(n, 0); k < end; k++) {
+				int i = columns[k];
+				SparseInput.multiplyAdd(g, n*_outLength, lastX.getData()[inputRow + i], _weightsGradient, i*_outLength, _outLength);
+			}
 		}
-		else {
-			return forwardPass;
+	}
+
+    // Float version of accumulateWeightsGradientSparse(double[]), for the float kernels that accumulate in float
+	private void accumulateWeightsGradientSparse(float[] g) {
+
+		int[] columns = _sparseInput.getColumns();
+
+		for(int n = 0; n < lastX.getBatch(); n++) {
+			int inputRow = lastX.getOffset() + n*_inLength;
+			int end = _sparseInput.rowStart(n, 1);
+
+			for(int k = _sparseInput.rowStart(n, 0); k < end; k++) {
+				int i = columns[k];
+				SparseInput.multiplyAdd(g, n*_outLength, lastX.getFloatData()[inputRow + i], _floatWeightsGradient, i*_outLength, _outLength);
+			}
 		}
 	}
 
-    // Override method: Perform backpropagation using vector input
+    // Apply ReLU activation function to the weighted sums, writing the activations into out
+	private void activate(Tensor z, Tensor out){
+
+		if(out.isFloat()) {
+			float[] in = z.getFloatData();
+			float[] values = out.getFloatData();
+
+			for(int i = 0; i < out.size(); i++) {
+				values[out.getOffset() + i] = (float) relu(in[z.getOffset() + i]);
+			}
+			return;
+		}
+
+		double[] in = z.getData();
+		double[] values = out.getData();
+
+		for(int i = 0; i < out.size(); i++) {
+			values[out.getOffset() + i] = relu(in[z.getOffset() + i]);
+		}
+	}
+
+    // Override method: Perform backpropagation, accumulating the weight gradients of every sample
 	@Override
-	public void backPropagation(double[] dLdO) {
+	public Tensor backward(Tensor dLdO) {
+
+		LayerEvent event = new LayerEvent();
+		event.begin();
+
+		Tensor dLdX = backwardPass(dLdO);
+
+		event.commit(this, "backward", dLdO, dLdX);
+		return dLdX;
+	}
+
+	// Backward pass itself, recorded by backward as a LayerEvent
+	private Tensor backwardPass(Tensor dLdO) {
 
         // Chain Rule: Compute the gradients of the loss with respect to the inputs
 
-		double[] dLdX = new double[_inLength];
+		int batch = lastX.getBatch();
+		Tensor error = dLdO.reshape(batch, 1, 1, _outLength);
+
+		_dLdZWorkspace = Tensor.workspace(_dLdZWorkspace, _precision, batch, 1, 1, _outLength);
 
-		double dOdZ;
-		double dZdW;
-		double dLdW;
-		double dZdX;
+		if(_precision.isFloat()) {
+			return backwardFloat(error, batch);
+		}
 
-        // Calculate gradients for each input neuron
-		for(int k = 0; k < _inLength;k++) {
+        // Gradients with respect to the weighted sums, dL/dZ = dL/dO * dO/dZ
+		double[] z = lastZ.getData();
+		double[] e = error.getData();
+		double[] g = _dLdZWorkspace.getData();
+
+		for(int i = 0; i < _dLdZWorkspace.size(); i++) {
+			g[i] = e[error.getOffset() + i]*derivativeRelu(z[lastZ.getOffset() + i]);
+		}
+
+        // Accumulate the weight gradients of the batch, dL/dW += transpose(X) * dL/dZ, applied once per batch by applyGradients
+		if(_sparseInput != null && _sparseInput.isSparse()) {
+			accumulateWeightsGradientSparse(g);
+		}
+		else {
+			Gemm.multiplyTransposedA(_inLength, _outLength, batch, lastX.getData(), lastX.getOffset(), _inLength,
+					g, 0, _outLength, _weightsGradient, 0, _outLength);
+		}
+
+        // Gradients with respect to the inputs, dL/dX = dL/dZ * transpose(W), only needed if there is a previous layer
+		if(_previousLayer == null) {
+			return null;
+		}
+
+		_dLdXWorkspace = Tensor.workspace(_dLdXWorkspace, _precision, batch, 1, 1, _inLength);
+		_dLdXWorkspace.fill(0);
+
+		Gemm.multiplyTransposedB(batch, _inLength, _outLength, g, 0, _outLength,
+				_weights, 0, _outLength, _dLdXWorkspace.getData(), 0, _inLength);
+
+		return _dLdXWorkspace;
+	}
 
-			double dLdX_sum = 0;
+    // Float version of the backpropagation in backward, the error has already been reshaped
+	private Tensor backwardFloat(Tensor error, int batch) {
+
+		boolean doubleAccumulation = _precision.accumulatesInDouble();
+		float[] z = lastZ.getFloatData();
+		float[] e = error.getFloatData();
+		float[] g = _dLdZWorkspace.getFloatData();
+
+		for(int i = 0; i < _dLdZWorkspace.size(); i++) {
+			g[i] = (float) (e[error.getOffset() + i]*derivativeRelu(z[lastZ.getOffset() + i]));
+		}
+
+		// With double accumulation every gradient is rounded to float once for the whole batch, which the sparse loop
+		// going through the batch sample by sample cannot do
+		if(_sparseInput != null && _sparseInput.isSparse() && !doubleAccumulation) {
+			accumulateWeightsGradientSparse(g);
+		}
+		else {
+			FloatGemm.multiplyTransposedA(_inLength, _outLength, batch, lastX.getFloatData(), lastX.getOffset(), _inLength,
+					g, 0, _outLength, _floatWeightsGradient, 0, _outLength, doubleAccumulation);
+		}
+
+		if(_previousLayer == null) {
+			return null;
+		}
+
+		_dLdXWorkspace = Tensor.workspace(_dLdXWorkspace, _precision, batch, 1, 1, _inLength);
+		_dLdXWorkspace.fill(0);
+
+		FloatGemm.multiplyTransposedB(batch, _inLength, _outLength, g, 0, _outLength,
+				_floatWeights, 0, _outLength, _dLdXWorkspace.getFloatData(), 0, _inLength, doubleAccumulation);
+
+		return _dLdXWorkspace;
+	}
+
+    // Override method: Update weights using gradient descent with the batch-averaged gradients
+	@Override
+	public void applyGradients(int batchSize) {
+		if(_precision.isFloat()) {
+			for(int i = 0; i < _floatWeights.length; i++) {
+				_floatWeights[i] = (float) (_floatWeights[i] - (_floatWeightsGradient[i]/batchSize)*_learningRate);
+				_floatWeightsGradient[i] = 0;
+			}
+			return;
+		}
+
+		for(int i = 0; i < _weights.length; i++) {
+			_weights[i] -= (_weightsGradient[i]/batchSize)*_learningRate;
+			_weightsGradient[i] = 0;
+		}
+	}
 
-            // Compute gradients for each output neuron
-			for(int j = 0; j < _outLength; j++) {
+    // Override method: Create a replica sharing the weights with its own gradient accumulator
+	@Override
+	public Layer createReplica() {
+		return new FullyConnectedLayer(this);
+	}
 
-                // Compute derivatives of activation function
-				dOdZ = derivativeRelu(lastZ[j]);
-				dZdW = lastX[k];
-				dZdX = _weights[k][j];
+    // Override method: Create a snapshot with its own copy of the current weights
+	@Override
+	public Layer createSnapshot() {
+		FullyConnectedLayer snapshot = new FullyConnectedLayer(this);
 
-                // Compute gradient of loss with respect to weights
-				dLdW = dLdO[j]*dOdZ*dZdW;
+		if(_precision.isFloat()) {
+			snapshot._floatWeights = _floatWeights.clone();
+		}
+		else {
+			snapshot._weights = _weights.clone();
+		}
+		return snapshot;
+	}
 
-                // Update weights using gradient descent
-				_weights[k][j] -= dLdW*_learningRate;
+    // Override method: Add the gradients of a replica to this layer and clear the replica's gradients
+	@Override
+	public void addGradients(Layer replica) {
+		FullyConnectedLayer other = (FullyConnectedLayer) replica;
 
-                // Accumulate gradient of loss with respect to inputs
-				dLdX_sum += dLdO[j]*dOdZ*dZdX;
+		if(_precision.isFloat()) {
+			for(int i = 0; i < _floatWeightsGradient.length; i++) {
+				_floatWeightsGradient[i] += other._floatWeightsGradient[i];
+				other._floatWeightsGradient[i] = 0;
 			}
+			return;
+		}
 
-            // Assign accumulated gradient to the corresponding input neuron
-			dLdX[k] = dLdX_sum;
+		for(int i = 0; i < _weightsGradient.length; i++) {
+			_weightsGradient[i] += other._weightsGradient[i];
+			other._weightsGradient[i] = 0;
 		}
+	}
 
-        // Propagate gradients to the previous layer
-		if(_previousLayer != null) {
-			_previousLayer.backPropagation(dLdX);
+    // Override method: Get the number of weights, the parameters saved by a checkpoint
+	@Override
+	public int getParameterCount() {
+		return _inLength*_outLength;
+	}
+
+    // Override method: Copy the weights into the buffer, the weights of input k in row k
+	@Override
+	public void writeParameters(ByteBuffer out) {
+		if(_precision.isFloat()) {
+			out.asFloatBuffer().put(_floatWeights);
+		}
+		else {
+			out.asDoubleBuffer().put(_weights);
+		}
+	}
+
+    // Override method: Replace the weights with the values written by writeParameters
+	@Override
+	public void readParameters(ByteBuffer in) {
+		if(_precision.isFloat()) {
+			in.asFloatBuffer().get(_floatWeights);
+		}
+		else {
+			in.asDoubleBuffer().get(_weights);
 		}
 	}
 
@@ -164,15 +494,56 @@ public class FullyConnectedLayer extends Layer{
 		return _outLength;
 	}
 
+    // Override method: Get number of elements of one input sample
+	@Override
+	public int getInputElements() {
+		return _inLength;
+	}
+
+    // Override method: Operations of the forward pass, a multiplication and an addition per weight and the activation of every output
+	@Override
+	public long getForwardFlops(int batch) {
+		return (long) batch*(2L*_inLength*_outLength + _outLength);
+	}
+
+    // Override method: Operations of the backward pass, the derivative of every activation, the weight gradients and,
+    // unless this is the first layer, as many again for the gradients of the inputs
+	@Override
+	public long getBackwardFlops(int batch) {
+		return (long) batch*(_outLength + 2L*_inLength*_outLength*(_previousLayer == null ? 1 : 2));
+	}
+
+    // Override method: Bytes of the forward pass, the inputs and weights read and the weighted sums and activations written
+	@Override
+	public long getForwardBytes(int batch) {
+		return (long) _precision.getBytes()*((long) batch*(_inLength + 2*_outLength) + getParameterCount());
+	}
+
+    // Override method: Bytes of the backward pass, the output gradients, weighted sums and inputs read, the weight
+    // gradients updated and, unless this is the first layer, the weights read and the input gradients written
+	@Override
+	public long getBackwardBytes(int batch) {
+
+		int inputGradients = _previousLayer == null ? 0 : 1;
+
+		return (long) _precision.getBytes()*((long) batch*(2*_outLength + (1 + inputGradients)*_inLength)
+				+ (long) (2 + inputGradients)*getParameterCount());
+	}
+
     // Method to initialize weights randomly
 	public void setRandomWeights() {
 
 		Random random = new Random(SEED);
 
-		for(int i = 0; i < _inLength; i++) {
-			for(int j = 0; j < _outLength; j++) {
-				_weights[i][j] = random.nextGaussian();
+		if(_precision.isFloat()) {
+			for(int i = 0; i < _floatWeights.length; i++) {
+				_floatWeights[i] = (float) random.nextGaussian();
 			}
+			return;
+		}
+
+		for(int i = 0; i < _weights.length; i++) {
+			_weights[i] = random.nextGaussian();
 		}
 
 	}
@@ -6,8 +6,9 @@
  */
 package layers;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+
+import data.Tensor;
 
 //Abstract class representing a layer in a neural network
 public abstract class Layer {
@@ -37,65 +38,95 @@ public abstract class Layer {
 	}
 
 	// Abstraction: Abstract methods defining behavior to be implemented by subclasses
-    // Polymorphism: Method overloading based on input type
-	public abstract double[] getOutput(List<double[][]> input);
-	public abstract void backPropagation(List<double[][]> dLdO );
+	// Forward pass of this layer only, caching what backward needs. The input may have any shape holding
+	// getInputElements() values per sample, it is reshaped to the layer's input shape without copying.
+	// The returned tensor is a workspace of the layer that the next call to forward overwrites
+	public abstract Tensor forward(Tensor input);
+
+	// Backpropagation through this layer only, accumulating the gradients of its parameters.
+	// Returns the gradients with respect to the layer's input, or null if there is no previous layer to use them,
+	// in a workspace of the layer that the next call to backward overwrites
+	public abstract Tensor backward(Tensor dLdO);
+
+	// Forward pass of this layer only used for predictions, unlike forward it does not cache anything
+	// for backpropagation, so several threads may call it at the same time
+	public abstract Tensor inferLayer(Tensor input);
+
+	// Forward pass through this layer and all the following layers, returning the output of the last layer
+	public Tensor getOutput(Tensor input) {
+		Tensor output = forward(input);
+
+		if(_nextLayer != null) {
+			return _nextLayer.getOutput(output);
+		}
+		else {
+			return output;
+		}
+	}
 
-	// Abstraction: Abstract methods defining behavior to be implemented by subclasses
-    // Polymorphism: Method overloading based on input type
-	public abstract double[] getOutput(double[] input);
-	public abstract void backPropagation(double[] dLdO );
-
-    // Abstraction: Abstract methods defining behavior to be implemented by subclasses
-	public abstract int getOutputLength();
-	public abstract int getOutputRows();
-	public abstract int getOutputCols();
-	public abstract int getOutputElements();
+	// Backpropagation through this layer and all the previous layers
+	public void backPropagation(Tensor dLdO) {
+		Tensor dLdX = backward(dLdO);
 
+		if(_previousLayer != null) {
+			_previousLayer.backPropagation(dLdX);
+		}
+	}
 
-    // Helper method to convert matrix representation to vector
-	public double[] matrixToVector(List<double[][]> input) {
+	// Prediction forward pass through this layer and all the following layers, see inferLayer
+	public Tensor infer(Tensor input) {
+		Tensor output = inferLayer(input);
 
-		int length = input.size();
-		int rows = input.get(0).length;
-		int cols = input.get(0)[0].length;
+		if(_nextLayer != null) {
+			return _nextLayer.infer(output);
+		}
+		else {
+			return output;
+		}
+	}
 
-		double[] vector = new double[length*rows*cols];
+	// Abstraction: Applies the gradients accumulated by backPropagation since the last call,
+	// averaged over the number of samples in the batch, and then clears the accumulators
+	public abstract void applyGradients(int batchSize);
 
-		int i = 0;
-		for(int l = 0; l < length; l++) {
-			for(int r = 0; r < rows; r++) {
-				for(int c = 0; c < cols; c++) {
-					vector[i] = input.get(l)[r][c];
-					i++;
-				}
-			}
-		}
+	// Abstraction: Creates a copy of this layer that shares its parameters but owns its own
+	// forward pass caches and gradient accumulators, so it can be trained on another thread
+	public abstract Layer createReplica();
 
-		return vector;
-	}
+	// Abstraction: Adds the gradients accumulated by a replica of this layer to this layer's
+	// accumulators and clears the replica's accumulators
+	public abstract void addGradients(Layer replica);
 
-    // Helper method to convert vector representation to matrix
-	public List<double[][]> vectorToMatrix(double[] input, int length, int rows, int cols){
+	// Abstraction: Creates an independent copy of this layer with its own copy of the current parameters,
+	// used to take a snapshot of the network that later training does not change
+	public abstract Layer createSnapshot();
 
-		List<double[][]> out = new ArrayList<>();
+	// Abstraction: Gets the number of parameters of the layer, the values saved by a checkpoint, 0 for a layer without any
+	public abstract int getParameterCount();
 
-		int i = 0;
+	// Abstraction: Copies the parameters into the buffer from its first byte, as doubles or floats like the layer's precision,
+	// in the byte order of the buffer
+	public abstract void writeParameters(ByteBuffer out);
 
-		for(int l = 0; l < length; l++) {
+	// Abstraction: Replaces the parameters with the values written by writeParameters, read from the buffer's first byte
+	public abstract void readParameters(ByteBuffer in);
 
-			double[][] matrix = new double[rows][cols];
+	// Abstraction: Gets the floating-point operations of a forward or backward pass over a batch, counting a multiplication
+	// and an addition as two and a comparison as one. They are worked out from the shape of the layer rather than measured,
+	// counting every input as nonzero
+	public abstract long getForwardFlops(int batch);
+	public abstract long getBackwardFlops(int batch);
 
-			for(int r = 0; r < rows; r++) {
-				for(int c = 0; c < cols; c++) {
-					matrix[r][c] = input[i];
-					i++;
-				}
-			}
+	// Abstraction: Gets the bytes a forward or backward pass over a batch reads and writes at the least, every input,
+	// output, parameter and gradient it touches counted once, as if no cache held them from one pass to the next
+	public abstract long getForwardBytes(int batch);
+	public abstract long getBackwardBytes(int batch);
 
-			out.add(matrix);
-		}
+    // Abstraction: Abstract methods defining behavior to be implemented by subclasses
+	public abstract int getOutputLength();
+	public abstract int getOutputRows();
+	public abstract int getOutputCols();
+	public abstract int getOutputElements();
+	public abstract int getInputElements();
 
-		return out;
-	}
-}
\ No newline at end of file
+}
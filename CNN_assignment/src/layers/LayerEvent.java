@@ -0,0 +1,76 @@
+/*
+ * LayerEvent: This class is the Java Flight Recorder event of a forward or backward pass of a layer over a batch, so a
+ *             recording shows the time of every layer without walking the stacks of Layer.getOutput. Like every JFR
+ *             event it costs nothing while no recording is running, and the fields are only filled in for the passes
+ *             a recording keeps, the ones longer than the threshold.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package layers;
+
+import data.Tensor;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cnn.LayerPass")
+@Label("Layer Pass")
+@Category({"CNN", "Layers"})
+@Description("Forward or backward pass of a layer over a batch")
+@Enabled(true)
+@Threshold("100 us")
+@StackTrace(false)
+class LayerEvent extends Event {
+
+	@Label("Layer")
+	String layer;
+
+	@Label("Pass")
+	@Description("forward or backward")
+	String pass;
+
+	@Label("Batch Size")
+	int batch;
+
+	@Label("Input Shape")
+	@Description("Shape of the tensor the pass reads, batch x length x rows x cols: the input of a forward pass, the "
+			+ "gradients of the output of a backward pass")
+	String inputShape;
+
+	@Label("Output Shape")
+	@Description("Shape of the tensor the pass returns, empty for the backward pass of the first layer")
+	String outputShape;
+
+	/**
+	 * Fills in the fields and commits the event if the recording keeps it, the event must have been begun.
+	 *
+	 * @param source The layer.
+	 * @param passName forward or backward.
+	 * @param input The tensor the pass read.
+	 * @param output The tensor the pass returned, or null.
+	 */
+	void commit(Layer source, String passName, Tensor input, Tensor output) {
+
+		end();
+
+		if(shouldCommit()) {
+			layer = source.getClass().getSimpleName();
+			pass = passName;
+			batch = input.getBatch();
+			inputShape = shape(input);
+			outputShape = output == null ? "" : shape(output);
+			commit();
+		}
+	}
+
+	// Method to write the shape of a tensor as batch x length x rows x cols
+	private static String shape(Tensor tensor) {
+		return tensor.getBatch() + "x" + tensor.getLength() + "x" + tensor.getRows() + "x" + tensor.getCols();
+	}
+
+}
@@ -7,8 +7,13 @@
 
 package layers;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import data.Precision;
+import data.Simd;
+import data.Tensor;
+import data.VectorKernels;
 
 public class MaxPoolLayer extends Layer {
 
@@ -19,9 +24,16 @@ public class MaxPoolLayer extends Layer {
 	private int _inLength; // Number of input channels
 	private int _inRows; // Number of input rows
 	private int _inCols; // Number of input columns
+	private Precision _precision; // Precision of the feature maps
+
+	int _lastBatch; // Number of samples in the last forward pass
+	int[] _lastMaxRow; // Store indices of max elements along rows, one per output element
+	int[] _lastMaxCol; // Store indices of max elements along columns, one per output element
 
-	List<int[][]> _lastMaxRow; // Store indices of max elements along rows
-	List<int[][]> _lastMaxCol; // Store indices of max elements along columns
+	// Workspaces reused by forward and backward from one batch to the next, see Tensor.workspace
+	private Tensor _outputWorkspace; // Pooled feature maps returned by forward
+	private Tensor _dXdLWorkspace; // Gradients with respect to the inputs returned by backward
+	private Tensor _scratchWorkspace; // Scratch values of the vectorized pooling used by forward
 
 	/**
 	 * Constructor for MaxPoolLayer
@@ -32,125 +44,294 @@ public class MaxPoolLayer extends Layer {
 	 * @param _inCols Number of input columns
 	 */
 	public MaxPoolLayer(int _stepSize, int _windowSize, int _inLength, int _inRows, int _inCols) {
+		this(_stepSize, _windowSize, _inLength, _inRows, _inCols, Precision.DOUBLE);
+	}
+
+	/**
+	 * Constructor for MaxPoolLayer with a choice of precision
+	 * @param _stepSize The step size for the sliding window
+	 * @param _windowSize the size of the pooling window
+	 * @param _inLength Number of input channels
+	 * @param _inRows Number of input rows
+	 * @param _inCols Number of input columns
+	 * @param precision Precision of the feature maps
+	 */
+	public MaxPoolLayer(int _stepSize, int _windowSize, int _inLength, int _inRows, int _inCols, Precision precision) {
 		super();
 		this._stepSize = _stepSize;
 		this._windowSize = _windowSize;
 		this._inLength = _inLength;
 		this._inRows = _inRows;
 		this._inCols = _inCols;
+		this._precision = precision;
 	}
 
 	/**
      * Performs forward pass of max pooling on the input
-     * @param input List of input matrices (channels)
-     * @return List of pooled matrices (channels)
+     * @param input Input feature maps (channels)
+     * @return Pooled feature maps (channels)
      */
-	public List<double[][]> maxPoolForwardPass(List<double[][]> input){
+	@Override
+	public Tensor forward(Tensor input){
+
+		LayerEvent event = new LayerEvent();
+		event.begin();
+
+		Tensor output = forwardPass(input);
+
+		event.commit(this, "forward", input, output);
+		return output;
+	}
+
+	// Forward pass itself, recorded by forward as a LayerEvent
+	private Tensor forwardPass(Tensor input){
+
+		Tensor matrixInput = input.reshape(input.getBatch(), _inLength, _inRows, _inCols);
+		_outputWorkspace = Tensor.workspace(_outputWorkspace, _precision, input.getBatch(), _inLength, getOutputRows(), getOutputCols());
+		Tensor output = _outputWorkspace;
+
+		_lastBatch = input.getBatch();
+
+		// Reuse the index arrays while they are large enough. The pooling loop only visits some output cells,
+		// the others must hold 0 like freshly allocated arrays so backward routes their errors the same way
+		if(_lastMaxRow == null || _lastMaxRow.length < output.size()) {
+			_lastMaxRow = new int[output.size()];
+			_lastMaxCol = new int[output.size()];
+		}
+		else {
+			Arrays.fill(_lastMaxRow, 0, output.size(), 0);
+			Arrays.fill(_lastMaxCol, 0, output.size(), 0);
+			output.fill(0);
+		}
+
+		if(_scratchWorkspace == null) {
+			_scratchWorkspace = createScratch();
+		}
 
-		List<double[][]> output = new ArrayList<>();
-		_lastMaxRow = new ArrayList<>();
-		_lastMaxCol = new ArrayList<>();
+		// Loop through each input matrix and perform max pooling, storing the max indices for backpropagation
+		for(int n = 0; n < input.getBatch(); n++) {
+			for(int l = 0; l < _inLength; l++) {
+				int maxOffset = output.matrixOffset(n, l) - output.getOffset();
 
-		// Loop through each input matrix and perform max pooling
-		for(int l = 0; l<input.size(); l++) {
-			output.add(pool(input.get(l)));
+				if(output.isFloat()) {
+					pool(matrixInput.getFloatData(), matrixInput.matrixOffset(n, l), output.getFloatData(), output.matrixOffset(n, l), maxOffset,
+							_scratchWorkspace.getFloatData());
+				}
+				else {
+					pool(matrixInput.getData(), matrixInput.matrixOffset(n, l), output.getData(), output.matrixOffset(n, l), maxOffset,
+							_scratchWorkspace.getData());
+				}
+			}
 		}
 		return output;
 
 	}
 
+	@Override
+	public Tensor inferLayer(Tensor input) {
+
+		Tensor matrixInput = input.reshape(input.getBatch(), _inLength, _inRows, _inCols);
+		Tensor output = new Tensor(_precision, input.getBatch(), _inLength, getOutputRows(), getOutputCols());
+		Tensor scratch = createScratch();
+
+		// Pool each input matrix without recording the max indices
+		for(int n = 0; n < input.getBatch(); n++) {
+			for(int l = 0; l < _inLength; l++) {
+				if(output.isFloat()) {
+					pool(matrixInput.getFloatData(), matrixInput.matrixOffset(n, l), output.getFloatData(), output.matrixOffset(n, l), -1,
+							scratch.getFloatData());
+				}
+				else {
+					pool(matrixInput.getData(), matrixInput.matrixOffset(n, l), output.getData(), output.matrixOffset(n, l), -1,
+							scratch.getData());
+				}
+			}
+		}
+		return output;
+	}
+
 	/**
      * Performs max pooling on a single input matrix
-     * @param input Input matrix
-     * @return Pooled matrix
+     * @param input Array holding the input matrix
+     * @param inOffset Index of the input matrix's first value
+     * @param output Array receiving the pooled matrix
+     * @param outOffset Index of the pooled matrix's first value
+     * @param maxOffset Index in _lastMaxRow and _lastMaxCol where the max indices are stored, or -1 to not store them
+     * @param scratch Scratch values for the vectorized pooling, see createScratch
      */
-	public double[][] pool(double[][] input){
+	private void pool(double[] input, int inOffset, double[] output, int outOffset, int maxOffset, double[] scratch){
 
-		double[][] output = new double[getOutputRows()][getOutputCols()];
+		int outCols = getOutputCols();
 
-		int[][] maxRows = new int[getOutputRows()][getOutputCols()];
-		int[][] maxCols = new int[getOutputRows()][getOutputCols()];
+		// Scan several windows at once with vectors when possible, the results are the same as the loops below
+		if(Simd.isEnabled() && _stepSize <= Simd.MAX_POOL_STEP) {
+			VectorKernels.pool(input, inOffset, _inCols, _windowSize, _stepSize, output, outOffset, getOutputRows(), outCols,
+					maxOffset >= 0 ? _lastMaxRow : null, _lastMaxCol, maxOffset, scratch);
+			return;
+		}
 
 		// Loop through the input matrix with the sliding window
 		for(int r = 0; r < getOutputRows(); r += _stepSize) {
-			for(int c = 0; c < getOutputCols(); c+= _stepSize) {
+			for(int c = 0; c < outCols; c+= _stepSize) {
 
 				double max = 0.0;
-				maxRows[r][c] = -1;
-				maxCols[r][c] = -1;
+				int maxRow = -1;
+				int maxCol = -1;
 
 				// Find the maxium value within the window
 				for(int x = 0; x < _windowSize; x++) {
 					for(int y =0; y < _windowSize; y++) {
-						if(max < input[r+x][c+y]) {
-							max = input[r+x][c+y];
-							maxRows[r][c] = r+x;
-							maxCols[r][c] = c+y;
+						double value = input[inOffset + (r+x)*_inCols + c+y];
+						if(max < value) {
+							max = value;
+							maxRow = r+x;
+							maxCol = c+y;
 						}
 					}
 				}
 
-				output[r][c] = max;
+				output[outOffset + r*outCols + c] = max;
+
+				// Store indices of max elements for backpropagation
+				if(maxOffset >= 0) {
+					_lastMaxRow[maxOffset + r*outCols + c] = maxRow;
+					_lastMaxCol[maxOffset + r*outCols + c] = maxCol;
+				}
 			}
 		}
+	}
 
-		// Store indices of max elements for backpropagation
-		_lastMaxRow.add(maxRows);
-		_lastMaxCol.add(maxCols);
+	// Float version of pool(double[], int, double[], int, int, double[])
+	private void pool(float[] input, int inOffset, float[] output, int outOffset, int maxOffset, float[] scratch){
 
-		return output;
+		int outCols = getOutputCols();
+
+		if(Simd.isEnabled() && _stepSize <= Simd.MAX_POOL_STEP) {
+			VectorKernels.pool(input, inOffset, _inCols, _windowSize, _stepSize, output, outOffset, getOutputRows(), outCols,
+					maxOffset >= 0 ? _lastMaxRow : null, _lastMaxCol, maxOffset, scratch);
+			return;
+		}
+
+		for(int r = 0; r < getOutputRows(); r += _stepSize) {
+			for(int c = 0; c < outCols; c+= _stepSize) {
+
+				float max = 0.0f;
+				int maxRow = -1;
+				int maxCol = -1;
+
+				for(int x = 0; x < _windowSize; x++) {
+					for(int y =0; y < _windowSize; y++) {
+						float value = input[inOffset + (r+x)*_inCols + c+y];
+						if(max < value) {
+							max = value;
+							maxRow = r+x;
+							maxCol = c+y;
+						}
+					}
+				}
+
+				output[outOffset + r*outCols + c] = max;
+
+				if(maxOffset >= 0) {
+					_lastMaxRow[maxOffset + r*outCols + c] = maxRow;
+					_lastMaxCol[maxOffset + r*outCols + c] = maxCol;
+				}
+			}
+		}
+	}
+
+	// Method to create the scratch values the vectorized pooling unpacks its lanes into, two per lane
+	private Tensor createScratch() {
+		int lanes = _precision.isFloat() ? Simd.floatLanes() : Simd.doubleLanes();
+		return new Tensor(_precision, 1, 1, 1, 2*lanes);
 	}
 
 	@Override
-	public void backPropagation(List<double[][]> dLdO) {
+	public Tensor backward(Tensor dLdO) {
 
-		List<double[][]> dXdL = new ArrayList<>();
+		LayerEvent event = new LayerEvent();
+		event.begin();
 
-		int l = 0;
+		Tensor dLdX = backwardPass(dLdO);
 
-		// Backpropagate errors to previous layer
-		for(double[][] array : dLdO) {
+		event.commit(this, "backward", dLdO, dLdX);
+		return dLdX;
+	}
 
-			double[][] error = new double[_inRows][_inCols];
+	// Backward pass itself, recorded by backward as a LayerEvent
+	private Tensor backwardPass(Tensor dLdO) {
 
-			for(int r =0; r < getOutputRows(); r++) {
-				for(int c =0; c < getOutputCols(); c++) {
-					int max_i = _lastMaxRow.get(l)[r][c];
-					int max_j = _lastMaxCol.get(l)[r][c];
+		Tensor array = dLdO.reshape(_lastBatch, _inLength, getOutputRows(), getOutputCols());
+		_dXdLWorkspace = Tensor.workspace(_dXdLWorkspace, _precision, _lastBatch, _inLength, _inRows, _inCols);
+		Tensor dXdL = _dXdLWorkspace;
 
-					if(max_i != -1) {
-						error[max_i][max_j] += array[r][c];
-					}
+		dXdL.fill(0);
+
+		int outCols = getOutputCols();
+
+		// Backpropagate errors to previous layer
+		for(int n = 0; n < _lastBatch; n++) {
+			for(int l = 0; l < _inLength; l++) {
+
+				int errorOffset = array.matrixOffset(n, l);
+				int maxOffset = errorOffset - array.getOffset();
+				int inputOffset = dXdL.matrixOffset(n, l);
+
+				for(int r =0; r < getOutputRows(); r++) {
+					for(int c =0; c < outCols; c++) {
+						int max_i = _lastMaxRow[maxOffset + r*outCols + c];
+						int max_j = _lastMaxCol[maxOffset + r*outCols + c];
+
+						if(max_i != -1) {
+							if(dXdL.isFloat()) {
+								dXdL.getFloatData()[inputOffset + max_i*_inCols + max_j] += array.getFloatData()[errorOffset + r*outCols + c];
+							}
+							else {
+								dXdL.getData()[inputOffset + max_i*_inCols + max_j] += array.getData()[errorOffset + r*outCols + c];
+							}
+						}
 
+					}
 				}
 			}
-
-			dXdL.add(error);
-			l++;
 		}
 
-		// Propagate errors to previous layer
-		if(_previousLayer != null) {
-		   _previousLayer.backPropagation(dXdL);
-		}
+		return dXdL;
+	}
+
+	@Override
+	public void applyGradients(int batchSize) {
+		// Max pooling has no trainable parameters, nothing to update
 	}
 
 	@Override
-	public double[] getOutput(double[] input) {
-		List<double[][]> matrixList = vectorToMatrix(input, _inLength, _inRows, _inCols);
-		return getOutput(matrixList);
+	public Layer createReplica() {
+		return new MaxPoolLayer(_stepSize, _windowSize, _inLength, _inRows, _inCols, _precision);
 	}
 
 	@Override
-	public double[] getOutput(List<double[][]> input) {
-		List<double[][]> outputPool = maxPoolForwardPass(input);
-		return _nextLayer.getOutput(outputPool);
+	public void addGradients(Layer replica) {
+		// Max pooling has no trainable parameters, nothing to reduce
 	}
 
 	@Override
-	public void backPropagation(double[] dLdO) {
-		List<double[][]> matrixList = vectorToMatrix(dLdO, getOutputLength(), getOutputRows(), getOutputCols());
-		backPropagation(matrixList);
+	public Layer createSnapshot() {
+		return new MaxPoolLayer(_stepSize, _windowSize, _inLength, _inRows, _inCols, _precision);
+	}
+
+	@Override
+	public int getParameterCount() {
+		return 0; // Max pooling has no trainable parameters, nothing to save
+	}
+
+	@Override
+	public void writeParameters(ByteBuffer out) {
+		// Max pooling has no trainable parameters, nothing to save
+	}
+
+	@Override
+	public void readParameters(ByteBuffer in) {
+		// Max pooling has no trainable parameters, nothing to load
 	}
 
 	@Override
@@ -173,4 +354,33 @@ public class MaxPoolLayer extends Layer {
 		return _inLength*getOutputCols()*getOutputRows();
 	}
 
+	@Override
+	public int getInputElements() {
+		return _inLength*_inRows*_inCols;
+	}
+
+	// Comparisons of the forward pass, one per value of a window after the first, for every output
+	@Override
+	public long getForwardFlops(int batch) {
+		return (long) batch*getOutputElements()*(_windowSize*_windowSize - 1);
+	}
+
+	// Additions of the backward pass, one per output gradient added to the input gradient of its maximum
+	@Override
+	public long getBackwardFlops(int batch) {
+		return (long) batch*getOutputElements();
+	}
+
+	// Bytes of the forward pass, the inputs read, the outputs written and the row and column of every maximum written
+	@Override
+	public long getForwardBytes(int batch) {
+		return (long) batch*(_precision.getBytes()*(getInputElements() + getOutputElements()) + 2*Integer.BYTES*getOutputElements());
+	}
+
+	// Bytes of the backward pass, the output gradients and positions of the maxima read and the input gradients written
+	@Override
+	public long getBackwardBytes(int batch) {
+		return getForwardBytes(batch);
+	}
+
 }
@@ -0,0 +1,140 @@
+/*
+ * SparseInput: This class holds the positions of the nonzero values of a batch of feature maps, row by row, so the first
+ *              layer of a network can skip the zero pixels that make up most of an MNIST image. The positions are found
+ *              with one pass over the input and reused by backward, the values themselves are read from the input tensor.
+ *              The sparse kernels of the layers add the products of the nonzero values in the same order as the dense
+ *              kernels, and the products of the zero values they skip cannot change a sum, so the results are the same.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package layers;
+
+import java.util.Arrays;
+
+import data.Simd;
+import data.Tensor;
+import data.VectorKernels;
+
+class SparseInput {
+
+	// Largest fraction of nonzero values for which the sparse kernels are used, denser inputs are faster with the dense kernels
+	static final double MAX_DENSITY = 0.4;
+
+	private int _rows; // Number of rows of every feature map
+	private int[] _rowStarts = new int[1]; // Index in _columns of the first nonzero value of every row of every map, then the count
+	private int[] _columns = new int[0]; // Column of every nonzero value, row after row
+	private boolean _sparse; // Whether the last encoded input was sparse enough for the sparse kernels
+
+	/**
+	 * Finds the nonzero values of the input, which is split into feature maps of rows x cols values.
+	 *
+	 * @param input The input tensor.
+	 * @param rows Number of rows of every feature map.
+	 * @param cols Number of columns of every feature map.
+	 * @return True if at most MAX_DENSITY of the values are nonzero, so the sparse kernels should be used.
+	 */
+	boolean encode(Tensor input, int rows, int cols) {
+
+		int totalRows = input.size()/cols;
+
+		_rows = rows;
+
+		if(_rowStarts.length < totalRows + 1) {
+			_rowStarts = new int[totalRows + 1];
+		}
+
+		// Most inputs are sparse, so the columns are sized for MAX_DENSITY and grown only if a denser input comes along
+		int capacity = (int) Math.ceil(input.size()*MAX_DENSITY);
+		if(_columns.length < capacity) {
+			_columns = new int[capacity];
+		}
+
+		int count = 0;
+		int index = input.getOffset();
+
+		for(int r = 0; r < totalRows; r++) {
+			_rowStarts[r] = count;
+
+			if(count + cols > _columns.length) {
+				_columns = Arrays.copyOf(_columns, Math.max(2*_columns.length, count + cols));
+			}
+
+			if(input.isFloat()) {
+				float[] data = input.getFloatData();
+				for(int c = 0; c < cols; c++, index++) {
+					if(data[index] != 0) {
+						_columns[count++] = c;
+					}
+				}
+			}
+			else {
+				double[] data = input.getData();
+				for(int c = 0; c < cols; c++, index++) {
+					if(data[index] != 0) {
+						_columns[count++] = c;
+					}
+				}
+			}
+		}
+		_rowStarts[totalRows] = count;
+
+		_sparse = count <= input.size()*MAX_DENSITY;
+		return _sparse;
+	}
+
+	/**
+	 * Checks if the last encoded input was sparse enough for the sparse kernels.
+	 *
+	 * @return The result of the last call to encode.
+	 */
+	boolean isSparse() {
+		return _sparse;
+	}
+
+	/**
+	 * Gets the index in getColumns() of the first nonzero value of a row, the row's values end where the next row starts.
+	 *
+	 * @param map Index of the feature map, counting the maps of every sample in order.
+	 * @param row Row in the feature map, up to the number of rows to get the end of the last row.
+	 * @return The index of the row's first nonzero value.
+	 */
+	int rowStart(int map, int row) {
+		return _rowStarts[map*_rows + row];
+	}
+
+	/**
+	 * Gets the columns of the nonzero values, in increasing order within each row.
+	 *
+	 * @return The array of columns, indexed from rowStart.
+	 */
+	int[] getColumns() {
+		return _columns;
+	}
+
+	// Method to compute y += x * scalar with the vectorized kernel when it is enabled, the results are the same either way
+	static void multiplyAdd(double[] x, int xOffset, double scalar, double[] y, int yOffset, int length) {
+
+		if(Simd.isEnabled()) {
+			VectorKernels.multiplyAdd(x, xOffset, scalar, y, yOffset, length);
+			return;
+		}
+
+		for(int i = 0; i < length; i++) {
+			y[yOffset + i] += x[xOffset + i] * scalar;
+		}
+	}
+
+	// Float version of multiplyAdd(double[], int, double, double[], int, int)
+	static void multiplyAdd(float[] x, int xOffset, float scalar, float[] y, int yOffset, int length) {
+
+		if(Simd.isEnabled()) {
+			VectorKernels.multiplyAdd(x, xOffset, scalar, y, yOffset, length);
+			return;
+		}
+
+		for(int i = 0; i < length; i++) {
+			y[yOffset + i] += x[xOffset + i] * scalar;
+		}
+	}
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Checkpoint: This class saves a trained network to a binary file and loads it back, so a network can be used for
+ *             predictions without being trained again. The file records the layers as they were added to the
+ *             NetworkBuilder, which builds the network again when it is loaded, and the parameters of every layer in
+ *             one aligned block. The file is memory-mapped and every block is copied into its layer in one bulk copy,
+ *             so loading a network takes milliseconds.
+ *
+ *             The file is little-endian and starts with a 64 byte header:
+ *               0  int    magic number "CNNM"
+ *               4  int    format version
+ *               8  int    precision, the index in PRECISIONS, which is also the type of the parameters
+ *               12 int    number of rows of the input images
+ *               16 int    number of columns of the input images
+ *               20 int    number of layers
+ *               24 double scale factor of the input data
+ *               32 long   size of the file
+ *               40        reserved, zeros
+ *             followed by one 64 byte record per layer:
+ *               0  int    layer type, see NetworkBuilder
+ *               4  int    number of filters, pooling window size or number of output neurons
+ *               8  int    filter size
+ *               12 int    step size
+ *               16 int    index of the convolution engine in ConvolutionEngine.values(), -1 for other layers
+ *               20        reserved, zeros
+ *               24 double learning rate
+ *               32 long   seed
+ *               40 long   offset of the parameters, aligned to 64 bytes, 0 for a layer without parameters
+ *               48 long   number of parameters, doubles for the DOUBLE precision and floats otherwise
+ *               56        reserved, zeros
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import data.Precision;
+import layers.ConvolutionEngine;
+import layers.Layer;
+
+class Checkpoint {
+
+	// Layout of the file, see the description above
+	static final int MAGIC = 0x4D4E4E43; // "CNNM" read as a little-endian int
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 64;
+	static final int ALIGNMENT = 64;
+
+	// Precisions in the order of their index in the file
+	private static final Precision[] PRECISIONS = {Precision.DOUBLE, Precision.FLOAT, Precision.FLOAT_DOUBLE_ACCUMULATION};
+
+	/**
+	 * Saves the topology and current parameters of a network.
+	 *
+	 * @param net The network, built by a NetworkBuilder.
+	 * @param path The path of the checkpoint file to write.
+	 * @throws IllegalStateException if the network was not built by a NetworkBuilder.
+	 * @throws UncheckedIOException if the file cannot be written.
+	 */
+	static void save(NeuralNetwork net, String path) {
+
+		NetworkBuilder builder = net.builder;
+
+		if(builder == null) {
+			throw new IllegalStateException("Only a network built by a NetworkBuilder can be saved");
+		}
+
+		List<NetworkBuilder.LayerSpec> topology = builder._topology;
+		int valueBytes = net.getPrecision().isFloat() ? Float.BYTES : Double.BYTES;
+
+		// Place the parameter blocks one after another after the records
+		long[] offsets = new long[topology.size()];
+		long size = HEADER_SIZE + (long) RECORD_SIZE*topology.size();
+
+		for(int i = 0; i < topology.size(); i++) {
+			int count = net._layers.get(i).getParameterCount();
+
+			if(count > 0) {
+				offsets[i] = align(size);
+				size = offsets[i] + (long) count*valueBytes;
+			}
+		}
+
+		if(size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Network is too large for a single checkpoint file: " + size + " bytes");
+		}
+
+		try(FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, List.of(PRECISIONS).indexOf(net.getPrecision()));
+			buffer.putInt(12, builder.getInputRows());
+			buffer.putInt(16, builder.getInputCols());
+			buffer.putInt(20, topology.size());
+			buffer.putDouble(24, net.getScaleFactor());
+			buffer.putLong(32, size);
+
+			for(int i = 0; i < topology.size(); i++) {
+				NetworkBuilder.LayerSpec spec = topology.get(i);
+				Layer layer = net._layers.get(i);
+				int record = HEADER_SIZE + i*RECORD_SIZE;
+
+				buffer.putInt(record, spec.type);
+				buffer.putInt(record + 4, spec.size);
+				buffer.putInt(record + 8, spec.filterSize);
+				buffer.putInt(record + 12, spec.stepSize);
+				buffer.putInt(record + 16, spec.engine == null ? -1 : spec.engine.ordinal());
+				buffer.putDouble(record + 24, spec.learningRate);
+				buffer.putLong(record + 32, spec.seed);
+				buffer.putLong(record + 40, offsets[i]);
+				buffer.putLong(record + 48, layer.getParameterCount());
+
+				if(offsets[i] > 0) {
+					layer.writeParameters(block(buffer, offsets[i], layer.getParameterCount()*valueBytes));
+				}
+			}
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not write checkpoint file " + path, e);
+		}
+	}
+
+	/**
+	 * Loads a network saved by save. The network is built again from the recorded topology without drawing random initial
+	 * parameters, and the saved parameters are copied in.
+	 *
+	 * @param path The path of the checkpoint file.
+	 * @return The network.
+	 * @throws IllegalArgumentException if the file is not a valid checkpoint file.
+	 * @throws UncheckedIOException if the file cannot be read.
+	 */
+	static NeuralNetwork load(String path) {
+
+		ByteBuffer buffer;
+
+		try(FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Checkpoint file is larger than 2 GB: " + path);
+			}
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not read checkpoint file " + path, e);
+		}
+
+		if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a checkpoint file: " + path);
+		}
+		if(buffer.getInt(4) != VERSION) {
+			throw new IllegalArgumentException("Unsupported checkpoint file version " + buffer.getInt(4) + ": " + path);
+		}
+
+		int precision = buffer.getInt(8);
+		int layers = buffer.getInt(20);
+
+		if(precision < 0 || precision >= PRECISIONS.length || buffer.getInt(12) < 1 || buffer.getInt(16) < 1 || layers < 0
+				|| buffer.getLong(32) != buffer.capacity() || HEADER_SIZE + (long) RECORD_SIZE*layers > buffer.capacity()) {
+			throw new IllegalArgumentException("Checkpoint file is truncated or its header is corrupt: " + path);
+		}
+
+		NetworkBuilder builder = new NetworkBuilder(buffer.getInt(12), buffer.getInt(16), buffer.getDouble(24), PRECISIONS[precision]);
+		builder.skipInitialization(); // Every parameter is read from the file below
+		int valueBytes = PRECISIONS[precision].isFloat() ? Float.BYTES : Double.BYTES;
+
+		for(int i = 0; i < layers; i++) {
+			int record = HEADER_SIZE + i*RECORD_SIZE;
+			int type = buffer.getInt(record);
+			int size = buffer.getInt(record + 4);
+			int filterSize = buffer.getInt(record + 8);
+			int stepSize = buffer.getInt(record + 12);
+			int engine = buffer.getInt(record + 16);
+
+			if(engine >= ConvolutionEngine.values().length || (type == NetworkBuilder.CONVOLUTION && engine < 0)) {
+				throw new IllegalArgumentException("Unknown convolution engine " + engine + " of layer " + i + ": " + path);
+			}
+			if(!fitsPreviousLayer(builder, type, size, filterSize, stepSize)) {
+				throw new IllegalArgumentException("Checkpoint file has a corrupt record at layer " + i + ": " + path);
+			}
+
+			builder.addLayer(new NetworkBuilder.LayerSpec(type, size, filterSize, stepSize, engine < 0 ? null : ConvolutionEngine.values()[engine],
+					buffer.getDouble(record + 24), buffer.getLong(record + 32)));
+		}
+
+		NeuralNetwork net = builder.build();
+
+		// Copy every block of parameters into its layer, which must have been built with the same number of them
+		for(int i = 0; i < layers; i++) {
+			int record = HEADER_SIZE + i*RECORD_SIZE;
+			long offset = buffer.getLong(record + 40);
+			long count = buffer.getLong(record + 48);
+			Layer layer = net._layers.get(i);
+
+			if(count != layer.getParameterCount() || (count > 0 && (offset < HEADER_SIZE || offset + count*valueBytes > buffer.capacity()))) {
+				throw new IllegalArgumentException("Checkpoint file does not match the topology it records at layer " + i + ": " + path);
+			}
+
+			if(count > 0) {
+				layer.readParameters(block(buffer, offset, (int) count*valueBytes));
+			}
+		}
+
+		return net;
+	}
+
+	// Method to check the sizes of a layer record are positive and fit the output of the layer before it, so a corrupt
+	// record cannot make a layer allocate a negative or overflowing number of values
+	private static boolean fitsPreviousLayer(NetworkBuilder builder, int type, int size, int filterSize, int stepSize) {
+
+		int rows = builder.getInputRows();
+		int cols = builder.getInputCols();
+		long elements = (long) rows*cols;
+
+		if(!builder._layers.isEmpty()) {
+			Layer prev = builder._layers.get(builder._layers.size() - 1);
+			rows = prev.getOutputRows();
+			cols = prev.getOutputCols();
+			elements = prev.getOutputElements();
+		}
+
+		return switch(type) {
+			case NetworkBuilder.CONVOLUTION -> size >= 1 && filterSize >= 1 && stepSize >= 1 && filterSize <= rows && filterSize <= cols
+					&& (long) size*filterSize*filterSize <= Integer.MAX_VALUE;
+			case NetworkBuilder.MAX_POOL -> size >= 1 && stepSize >= 1 && size <= rows && size <= cols;
+			case NetworkBuilder.FULLY_CONNECTED -> size >= 1 && elements*size <= Integer.MAX_VALUE;
+			default -> false;
+		};
+	}
+
+	// Method to get a little-endian view of bytes offset..offset+length-1 of the file
+	private static ByteBuffer block(ByteBuffer buffer, long offset, int length) {
+		return buffer.slice((int) offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// Method to round an offset up to the alignment of the parameter blocks
+	private static long align(long offset) {
+		return (offset + ALIGNMENT - 1)/ALIGNMENT*ALIGNMENT;
+	}
+
+}
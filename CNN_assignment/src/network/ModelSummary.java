@@ -0,0 +1,138 @@
+/*
+ * ModelSummary: This class summarizes the layers of a network: the shape of their outputs, their parameters, the memory
+ *               of their activations and the floating-point operations of their forward and backward passes, per image.
+ *               The operations are worked out from the shapes of the layers, see Layer.getForwardFlops. It is printed
+ *               by NetworkBuilder.build(PrintStream), for example:
+ *
+ *                 Layer                  Output      Parameters  Activations  Forward FLOPs  Backward FLOPs
+ *                 0 ConvolutionLayer     8x21x21            512     28,224 B        451,584         451,584
+ *                 1 MaxPoolLayer         8x10x10              0      6,400 B          6,400             800
+ *                 2 FullyConnectedLayer  10               8,000         80 B         16,010          32,010
+ *                 Total                                   8,512     34,704 B        473,994         484,394
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import layers.Layer;
+
+public class ModelSummary {
+
+	// Format of a row of the table
+	private static final String ROW = "%-22s %-10s %11s %12s %14s %15s%n";
+
+	/**
+	 * Summary of one layer, per image.
+	 */
+	public static final class Row {
+
+		private final String _layer;
+		private final String _outputShape;
+		private final long _parameters;
+		private final long _activationBytes;
+		private final long _forwardFlops;
+		private final long _backwardFlops;
+
+		Row(String layer, String outputShape, long parameters, long activationBytes, long forwardFlops, long backwardFlops) {
+			_layer = layer;
+			_outputShape = outputShape;
+			_parameters = parameters;
+			_activationBytes = activationBytes;
+			_forwardFlops = forwardFlops;
+			_backwardFlops = backwardFlops;
+		}
+
+		// Getters
+		public String getLayer() {
+			return _layer;
+		}
+
+		// Shape of the output of an image, length x rows x cols, or the number of outputs of a fully connected layer
+		public String getOutputShape() {
+			return _outputShape;
+		}
+
+		public long getParameters() {
+			return _parameters;
+		}
+
+		// Bytes of the output of an image, kept by the layer for the next layer and for backpropagation
+		public long getActivationBytes() {
+			return _activationBytes;
+		}
+
+		public long getForwardFlops() {
+			return _forwardFlops;
+		}
+
+		public long getBackwardFlops() {
+			return _backwardFlops;
+		}
+	}
+
+	/**
+	 * Summarizes every layer of a network.
+	 *
+	 * @param net The network.
+	 * @return One row per layer, in the order of the network.
+	 */
+	public static List<Row> rows(NeuralNetwork net) {
+
+		List<Row> rows = new ArrayList<>();
+
+		for(int i = 0; i < net._layers.size(); i++) {
+			Layer layer = net._layers.get(i);
+
+			// A fully connected layer has no rows and columns, only a number of outputs
+			String shape = layer.getOutputRows() == 0 ? Integer.toString(layer.getOutputElements())
+					: layer.getOutputLength() + "x" + layer.getOutputRows() + "x" + layer.getOutputCols();
+
+			rows.add(new Row(i + " " + layer.getClass().getSimpleName(), shape, layer.getParameterCount(),
+					(long) layer.getOutputElements()*net.precision.getBytes(), layer.getForwardFlops(1), layer.getBackwardFlops(1)));
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Formats the summary of a network as a table with a row per layer and the totals, see the example at the top of the file.
+	 *
+	 * @param net The network.
+	 * @return The table, ending with a line break.
+	 */
+	public static String format(NeuralNetwork net) {
+
+		StringBuilder table = new StringBuilder();
+		table.append(String.format(Locale.ROOT, ROW, "Layer", "Output", "Parameters", "Activations", "Forward FLOPs", "Backward FLOPs"));
+
+		long parameters = 0;
+		long activationBytes = 0;
+		long forwardFlops = 0;
+		long backwardFlops = 0;
+
+		for(Row row : rows(net)) {
+			table.append(String.format(Locale.ROOT, ROW, row.getLayer(), row.getOutputShape(), number(row.getParameters()),
+					number(row.getActivationBytes()) + " B", number(row.getForwardFlops()), number(row.getBackwardFlops())));
+
+			parameters += row.getParameters();
+			activationBytes += row.getActivationBytes();
+			forwardFlops += row.getForwardFlops();
+			backwardFlops += row.getBackwardFlops();
+		}
+
+		table.append(String.format(Locale.ROOT, ROW, "Total", "", number(parameters), number(activationBytes) + " B",
+				number(forwardFlops), number(backwardFlops)));
+
+		return table.toString();
+	}
+
+	// Method to write a number with its thousands separated by commas
+	private static String number(long value) {
+		return String.format(Locale.ROOT, "%,d", value);
+	}
+
+}
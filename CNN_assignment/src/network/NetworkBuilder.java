@@ -7,9 +7,12 @@
 
 package network;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import data.Precision;
+import layers.ConvolutionEngine;
 import layers.ConvolutionLayer;
 import layers.FullyConnectedLayer;
 import layers.Layer;
@@ -21,7 +24,36 @@ public class NetworkBuilder {
 	private int _inputRows; // Number of rows in the input range
 	private int _inputCols; // Number of columns in the input image
 	private double _scaleFactor; // Factor used for scaling input data
+	private Precision _precision; // Precision of the weights and activations of every layer
+	private boolean _initializeParameters = true; // False when a Checkpoint reads the parameters in after the build
 	List<Layer> _layers; // List to store the layers of the network
+	List<LayerSpec> _topology; // The arguments every layer was added with, saved by a Checkpoint to build the network again
+
+	// Kinds of layers recorded in the topology
+	static final int CONVOLUTION = 1;
+	static final int MAX_POOL = 2;
+	static final int FULLY_CONNECTED = 3;
+
+	// The arguments a layer was added with, the sizes not used by its kind are 0
+	static final class LayerSpec {
+		final int type; // CONVOLUTION, MAX_POOL or FULLY_CONNECTED
+		final int size; // Number of filters, pooling window size or number of output neurons
+		final int filterSize; // Size of each filter of a convolutional layer
+		final int stepSize; // Stride of a convolutional or max pooling layer
+		final ConvolutionEngine engine; // Engine of a convolutional layer, null for the other kinds
+		final double learningRate; // Learning rate of a layer with weights
+		final long seed; // Seed of the initial weights of a layer with weights
+
+		LayerSpec(int type, int size, int filterSize, int stepSize, ConvolutionEngine engine, double learningRate, long seed) {
+			this.type = type;
+			this.size = size;
+			this.filterSize = filterSize;
+			this.stepSize = stepSize;
+			this.engine = engine;
+			this.learningRate = learningRate;
+			this.seed = seed;
+		}
+	}
 
 	/**
 	 * Constructor to initialize the NetworkBuilder object with input dimensions and scale factor.
@@ -30,49 +62,121 @@ public class NetworkBuilder {
 	 * @param _scaleFactor Factor used for scaling input data
 	 */
 	public NetworkBuilder(int _inputRows, int _inputCols, double _scaleFactor) {
+		this(_inputRows, _inputCols, _scaleFactor, Precision.DOUBLE);
+	}
+
+	/**
+	 * Constructor to initialize the NetworkBuilder object with input dimensions, scale factor and the precision
+	 * every layer stores its weights and activations in.
+	 * @param _inputRows Number of rows in the input range
+	 * @param _inputCols Number of columns in the input image
+	 * @param _scaleFactor Factor used for scaling input data
+	 * @param _precision Precision of the weights and activations, FLOAT halves the memory used by the network
+	 */
+	public NetworkBuilder(int _inputRows, int _inputCols, double _scaleFactor, Precision _precision) {
 		super();
 		this._inputRows = _inputRows;
 		this._inputCols = _inputCols;
 		this._scaleFactor = _scaleFactor;
+		this._precision = _precision;
 		_layers = new ArrayList<>(); // Initialize thee list of layers
+		_topology = new ArrayList<>();
 	}
 
 	// Method to add a convolutional layer to the network
 	public void addConvolutionLayer(int numFilters, int filterSize, int stepSize, double learningRate, long SEED) {
+		addConvolutionLayer(numFilters, filterSize, stepSize, learningRate, SEED, ConvolutionEngine.DIRECT);
+	}
+
+	// Method to add a convolutional layer to the network which computes its convolutions with the given engine
+	public void addConvolutionLayer(int numFilters, int filterSize, int stepSize, double learningRate, long SEED, ConvolutionEngine engine) {
+
+		_topology.add(new LayerSpec(CONVOLUTION, numFilters, filterSize, stepSize, engine, learningRate, SEED));
 
 		if(_layers.isEmpty()) {
-			_layers.add(new ConvolutionLayer(filterSize, stepSize, 1, _inputRows, _inputCols, SEED, numFilters, learningRate));
+			_layers.add(new ConvolutionLayer(filterSize, stepSize, 1, _inputRows, _inputCols, SEED, numFilters, learningRate, engine, _precision, _initializeParameters));
 		} else {
 			Layer prev = _layers.get(_layers.size() - 1);
-			_layers.add(new ConvolutionLayer(filterSize, stepSize, prev.getOutputLength(), prev.getOutputRows(), prev.getOutputCols(), SEED, numFilters, learningRate));
+			_layers.add(new ConvolutionLayer(filterSize, stepSize, prev.getOutputLength(), prev.getOutputRows(), prev.getOutputCols(), SEED, numFilters, learningRate, engine, _precision, _initializeParameters));
 		}
 	}
 
 	// Method to add a max pooling layer to the network
 	public void addMaxPoolLayer(int windowSize, int stepSize) {
 
+		_topology.add(new LayerSpec(MAX_POOL, windowSize, 0, stepSize, null, 0, 0));
+
 		if(_layers.isEmpty()) {
-			_layers.add(new MaxPoolLayer(stepSize, windowSize, 1, _inputRows, _inputCols));
+			_layers.add(new MaxPoolLayer(stepSize, windowSize, 1, _inputRows, _inputCols, _precision));
 		} else {
 			Layer prev = _layers.get(_layers.size() - 1);
-			_layers.add(new MaxPoolLayer(stepSize, windowSize, prev.getOutputLength(), prev.getOutputRows(), prev.getOutputCols()));
+			_layers.add(new MaxPoolLayer(stepSize, windowSize, prev.getOutputLength(), prev.getOutputRows(), prev.getOutputCols(), _precision));
 		}
 	}
 
 	// Method to add a fully connected layer to the network
 	public void addFullyConnectedLayer(int outLength, double learningRate, long SEED) {
+
+		_topology.add(new LayerSpec(FULLY_CONNECTED, outLength, 0, 0, null, learningRate, SEED));
+
 		if(_layers.isEmpty()) {
-			_layers.add(new FullyConnectedLayer(_inputCols*_inputRows, outLength, SEED, learningRate));
+			_layers.add(new FullyConnectedLayer(_inputCols*_inputRows, outLength, SEED, learningRate, _precision, _initializeParameters));
 		} else {
 			Layer prev = _layers.get(_layers.size() - 1);
-			_layers.add(new FullyConnectedLayer(prev.getOutputElements(), outLength, SEED, learningRate));
+			_layers.add(new FullyConnectedLayer(prev.getOutputElements(), outLength, SEED, learningRate, _precision, _initializeParameters));
 		}
 	}
 
+	// Method to add a layer recorded in the topology of another builder, used to build a network again from a checkpoint
+	void addLayer(LayerSpec spec) {
+		switch(spec.type) {
+			case CONVOLUTION -> addConvolutionLayer(spec.size, spec.filterSize, spec.stepSize, spec.learningRate, spec.seed, spec.engine);
+			case MAX_POOL -> addMaxPoolLayer(spec.size, spec.stepSize);
+			case FULLY_CONNECTED -> addFullyConnectedLayer(spec.size, spec.learningRate, spec.seed);
+			default -> throw new IllegalArgumentException("Unknown layer type: " + spec.type);
+		}
+	}
+
+	// Method to leave the weights of the layers added afterwards at zero instead of drawing them from their seeds,
+	// used by a Checkpoint which overwrites every parameter once the network is built
+	void skipInitialization() {
+		_initializeParameters = false;
+	}
+
+	// Getters for the input size, scale factor and precision, saved by a Checkpoint
+	int getInputRows() {
+		return _inputRows;
+	}
+
+	int getInputCols() {
+		return _inputCols;
+	}
+
+	double getScaleFactor() {
+		return _scaleFactor;
+	}
+
+	Precision getPrecision() {
+		return _precision;
+	}
+
 	// Method to build the neural network using the constructed layers
 	public NeuralNetwork build() {
-		net = new NeuralNetwork(_layers,_scaleFactor);
+		net = new NeuralNetwork(_layers,_scaleFactor,_precision);
+		net.builder = this;
 		return net;
 	}
 
+	/**
+	 * Builds the neural network and prints its ModelSummary: the parameters, activation memory and operations of every layer.
+	 *
+	 * @param summary The stream the summary is printed to.
+	 * @return The network.
+	 */
+	public NeuralNetwork build(PrintStream summary) {
+		NeuralNetwork network = build();
+		summary.print(ModelSummary.format(network));
+		return network;
+	}
+
 }
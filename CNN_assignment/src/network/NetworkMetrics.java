@@ -0,0 +1,354 @@
+/*
+ * NetworkMetrics: This class collects live metrics of the networks trained and used in the program: the progress and
+ *                 throughput of the current epoch, moving averages of the training loss and accuracy, the forward and
+ *                 backward time of every layer and the latency of inference. Once register() has been called they can
+ *                 be watched with JConsole or VisualVM under network:type=NetworkMetrics.
+ *
+ *                 The counters are striped LongAdders, so the worker threads of a ParallelTrainer or the requests of
+ *                 an InferenceServer record without contending on a single value. Recording happens once per batch
+ *                 and layer, never per image. The layers are identified by their position and class, so the replicas
+ *                 of a network, and networks of the same architecture, add up to the same timings.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import layers.Layer;
+
+public class NetworkMetrics implements NetworkMetricsMXBean {
+
+	// Name the metrics are registered under
+	public static final String OBJECT_NAME = "network:type=NetworkMetrics";
+
+	// Number of most recent images the moving averages of the loss and accuracy mostly reflect
+	static final int MOVING_AVERAGE_IMAGES = 1000;
+
+	private static final NetworkMetrics INSTANCE = new NetworkMetrics();
+
+	// Epoch
+	private final AtomicInteger _epoch = new AtomicInteger(); // Number of epochs started
+	private final LongAdder _epochImages = new LongAdder(); // Images trained on in the current epoch
+	private volatile long _epochSize = -1; // Images of the current epoch, or -1 if unknown
+	private volatile long _epochStart; // System.nanoTime when the current epoch started
+	private volatile long _epochEnd; // System.nanoTime when the current epoch finished, or 0 while it runs
+
+	// Training
+	private final LongAdder _imagesTrained = new LongAdder();
+	private final AtomicLong _loss = new AtomicLong(Double.doubleToRawLongBits(Double.NaN)); // Moving average, as double bits
+	private final AtomicLong _accuracy = new AtomicLong(Double.doubleToRawLongBits(Double.NaN)); // Moving average, as double bits
+	private volatile double _testAccuracy = Double.NaN;
+	private final ConcurrentHashMap<String, LayerTimes> _layers = new ConcurrentHashMap<>(); // Timings by layer name
+
+	// Inference
+	private final LongAdder _inferenceCalls = new LongAdder();
+	private final LongAdder _imagesInferred = new LongAdder();
+	private final LongAdder _inferenceNanos = new LongAdder();
+	private final LongAccumulator _maxInferenceNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Counters of the forward and backward passes of one layer, shared by every network with that layer at that position.
+	 */
+	static final class LayerTimes {
+
+		final int position; // Index of the layer in its network
+		final String name; // Position and class of the layer, for example 0 ConvolutionLayer
+		final LongAdder forwardCalls = new LongAdder();
+		final LongAdder forwardImages = new LongAdder();
+		final LongAdder forwardNanos = new LongAdder();
+		final LongAdder backwardCalls = new LongAdder();
+		final LongAdder backwardImages = new LongAdder();
+		final LongAdder backwardNanos = new LongAdder();
+
+		LayerTimes(int position, String name) {
+			this.position = position;
+			this.name = name;
+		}
+
+		// Method to record a forward pass of a batch
+		void recordForward(int images, long nanos) {
+			forwardCalls.increment();
+			forwardImages.add(images);
+			forwardNanos.add(nanos);
+		}
+
+		// Method to record a backward pass of a batch
+		void recordBackward(int images, long nanos) {
+			backwardCalls.increment();
+			backwardImages.add(images);
+			backwardNanos.add(nanos);
+		}
+	}
+
+	/**
+	 * Forward and backward pass times of one layer, the form the timings take in JConsole.
+	 */
+	public static class LayerTiming {
+
+		private final String _layer;
+		private final long _forwardCalls;
+		private final long _forwardNanos;
+		private final long _backwardCalls;
+		private final long _backwardNanos;
+
+		LayerTiming(LayerTimes times) {
+			_layer = times.name;
+			_forwardCalls = times.forwardCalls.sum();
+			_forwardNanos = times.forwardNanos.sum();
+			_backwardCalls = times.backwardCalls.sum();
+			_backwardNanos = times.backwardNanos.sum();
+		}
+
+		// Getters, the calls are batches and the nanoseconds are summed over them
+		public String getLayer() {
+			return _layer;
+		}
+
+		public long getForwardCalls() {
+			return _forwardCalls;
+		}
+
+		public long getForwardNanos() {
+			return _forwardNanos;
+		}
+
+		public long getBackwardCalls() {
+			return _backwardCalls;
+		}
+
+		public long getBackwardNanos() {
+			return _backwardNanos;
+		}
+
+		public double getMeanForwardMicros() {
+			return _forwardCalls == 0 ? 0 : _forwardNanos/1e3/_forwardCalls;
+		}
+
+		public double getMeanBackwardMicros() {
+			return _backwardCalls == 0 ? 0 : _backwardNanos/1e3/_backwardCalls;
+		}
+	}
+
+	// Constructor for the single instance
+	private NetworkMetrics() {
+	}
+
+	/**
+	 * Gets the metrics every network records to.
+	 *
+	 * @return The metrics.
+	 */
+	public static NetworkMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBeanServer under OBJECT_NAME, if they are not registered yet.
+	 *
+	 * @return The metrics.
+	 * @throws IllegalStateException if the metrics cannot be registered.
+	 */
+	public static synchronized NetworkMetrics register() {
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if(!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		}
+		catch(JMException e) {
+			throw new IllegalStateException("Could not register the network metrics", e);
+		}
+
+		return INSTANCE;
+	}
+
+	// Method to get the counters of every layer of a network, creating the ones not seen yet
+	LayerTimes[] layerTimes(List<Layer> layers) {
+
+		LayerTimes[] times = new LayerTimes[layers.size()];
+
+		for(int i = 0; i < times.length; i++) {
+			int position = i;
+			String name = i + " " + layers.get(i).getClass().getSimpleName();
+			times[i] = _layers.computeIfAbsent(name, key -> new LayerTimes(position, key));
+		}
+
+		return times;
+	}
+
+	// Method to start an epoch of the given number of images, -1 if unknown
+	void epochStarted(long size) {
+		_epochImages.reset();
+		_epochSize = size;
+		_epochEnd = 0;
+		_epochStart = System.nanoTime();
+		_epoch.incrementAndGet();
+	}
+
+	// Method to finish the current epoch, freezing its throughput
+	void epochFinished() {
+		_epochSize = _epochImages.sum();
+		_epochEnd = System.nanoTime();
+	}
+
+	// Method to record the forward and backward pass of a batch, or of a worker's shard of it
+	void recordBatch(int images, double lossSum, int correct) {
+
+		_imagesTrained.add(images);
+		_epochImages.add(images);
+
+		// Weight of the batch such that an image counts as much whatever the size of the batch it came in
+		double weight = 1 - Math.pow(1 - 1.0/MOVING_AVERAGE_IMAGES, images);
+
+		updateAverage(_loss, lossSum/images, weight);
+		updateAverage(_accuracy, 100.0*correct/images, weight);
+	}
+
+	// Method to record the accuracy of a test
+	void recordTest(float accuracy) {
+		_testAccuracy = accuracy;
+	}
+
+	// Method to record an inference call over a batch of images
+	void recordInference(int images, long nanos) {
+		_inferenceCalls.increment();
+		_imagesInferred.add(images);
+		_inferenceNanos.add(nanos);
+		_maxInferenceNanos.accumulate(nanos);
+	}
+
+	// Method to move a moving average stored as double bits towards a value, the first value replaces it
+	private static void updateAverage(AtomicLong average, double value, double weight) {
+
+		while(true) {
+			long bits = average.get();
+			double current = Double.longBitsToDouble(bits);
+			double updated = Double.isNaN(current) ? value : current + (value - current)*weight;
+
+			if(average.compareAndSet(bits, Double.doubleToRawLongBits(updated))) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public int getEpoch() {
+		return _epoch.get();
+	}
+
+	@Override
+	public long getEpochImages() {
+		return _epochImages.sum();
+	}
+
+	@Override
+	public long getEpochSize() {
+		return _epochSize;
+	}
+
+	@Override
+	public double getEpochProgress() {
+		long size = _epochSize;
+		return size < 0 ? -1 : size == 0 ? 100 : 100.0*_epochImages.sum()/size;
+	}
+
+	@Override
+	public double getImagesPerSecond() {
+
+		long start = _epochStart;
+		long end = _epochEnd;
+
+		if(start == 0) {
+			return 0;
+		}
+
+		long nanos = (end == 0 ? System.nanoTime() : end) - start;
+
+		return nanos <= 0 ? 0 : _epochImages.sum()*1e9/nanos;
+	}
+
+	@Override
+	public long getImagesTrained() {
+		return _imagesTrained.sum();
+	}
+
+	@Override
+	public double getLoss() {
+		return Double.longBitsToDouble(_loss.get());
+	}
+
+	@Override
+	public double getTrainingAccuracy() {
+		return Double.longBitsToDouble(_accuracy.get());
+	}
+
+	@Override
+	public double getTestAccuracy() {
+		return _testAccuracy;
+	}
+
+	@Override
+	public LayerTiming[] getLayerTimings() {
+		return _layers.values().stream()
+				.sorted(Comparator.comparingInt((LayerTimes times) -> times.position).thenComparing(times -> times.name))
+				.map(LayerTiming::new)
+				.toArray(LayerTiming[]::new);
+	}
+
+	@Override
+	public long getInferenceCalls() {
+		return _inferenceCalls.sum();
+	}
+
+	@Override
+	public long getImagesInferred() {
+		return _imagesInferred.sum();
+	}
+
+	@Override
+	public double getMeanInferenceMicros() {
+		long calls = _inferenceCalls.sum();
+		return calls == 0 ? 0 : _inferenceNanos.sum()/1e3/calls;
+	}
+
+	@Override
+	public double getMaxInferenceMicros() {
+		return _maxInferenceNanos.get()/1e3;
+	}
+
+	@Override
+	public void reset() {
+
+		_imagesTrained.reset();
+		_loss.set(Double.doubleToRawLongBits(Double.NaN));
+		_accuracy.set(Double.doubleToRawLongBits(Double.NaN));
+		_testAccuracy = Double.NaN;
+
+		for(LayerTimes times : _layers.values()) {
+			Arrays.asList(times.forwardCalls, times.forwardImages, times.forwardNanos, times.backwardCalls, times.backwardImages,
+					times.backwardNanos).forEach(LongAdder::reset);
+		}
+
+		_inferenceCalls.reset();
+		_imagesInferred.reset();
+		_inferenceNanos.reset();
+		_maxInferenceNanos.reset();
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * NetworkMetricsMXBean: This interface is the management interface of NetworkMetrics, the live training and inference
+ *                       metrics shown by JConsole or VisualVM under network:type=NetworkMetrics.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+public interface NetworkMetricsMXBean {
+
+	// Number of epochs started since the program started
+	int getEpoch();
+
+	// Number of images trained on in the current epoch
+	long getEpochImages();
+
+	// Number of images of the current epoch, or -1 if it is not known until the epoch ends
+	long getEpochSize();
+
+	// Percentage of the current epoch trained so far, or -1 if the size of the epoch is not known
+	double getEpochProgress();
+
+	// Images trained on per second in the current epoch, or in the last one once it has finished
+	double getImagesPerSecond();
+
+	// Number of images trained on since the last reset
+	long getImagesTrained();
+
+	// Moving average of the loss, half the squared error of the outputs, over roughly the last MOVING_AVERAGE_IMAGES images
+	double getLoss();
+
+	// Moving average of the percentage of training images predicted correctly before their weight update
+	double getTrainingAccuracy();
+
+	// Percentage of images predicted correctly by the last test
+	double getTestAccuracy();
+
+	// Forward and backward pass times of every layer, by position in the network
+	NetworkMetrics.LayerTiming[] getLayerTimings();
+
+	// Number of inference calls since the last reset, each a batch of one or more images
+	long getInferenceCalls();
+
+	// Number of images predicted since the last reset
+	long getImagesInferred();
+
+	// Mean and largest time of an inference call since the last reset
+	double getMeanInferenceMicros();
+
+	double getMaxInferenceMicros();
+
+	// Clears the counters, keeping the epoch
+	void reset();
+
+}
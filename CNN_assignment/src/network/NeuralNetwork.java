@@ -7,24 +7,52 @@
 
 package network;
 
-import static data.MatrixUtility.add;
-import static data.MatrixUtility.multiply;
+import static data.MatrixUtility.addInPlace;
+import static data.MatrixUtility.multiplyInPlace;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.IntStream;
 
+import data.Batch;
+import data.DataPipeline;
+import data.Dataset;
 import data.Image;
+import data.Precision;
+import data.Tensor;
 import layers.Layer;
 
 public class NeuralNetwork {
 
     List<Layer> _layers; // List of layers in the neural network
     double scaleFactor; //Factor used for scaling input data
+    boolean frozen; // True for a snapshot taken by freeze(), which can only make predictions
+    Precision precision; // Precision of the layers' weights and activations
+    NetworkBuilder builder; // Builder which built the network, recording its topology for a checkpoint, or null
+
+    // Number of images test(Dataset) and predictBatch run through the layers at once
+    private static final int TEST_BATCH_SIZE = 64;
+
+    // Workspaces reused by training from one batch to the next, see Tensor.workspace
+    private Tensor _inputWorkspace; // Scaled input images of the batch
+    private Tensor _errorsWorkspace; // Errors of the network output for the batch
+    private int[] _labelsWorkspace; // Labels of the images of the batch
+
+    private final NetworkMetrics _metrics = NetworkMetrics.getInstance(); // Live metrics, see NetworkMetrics
+    private final NetworkMetrics.LayerTimes[] _layerTimes; // Forward and backward times of every layer
 
     // Constructor
     public NeuralNetwork(List<Layer> _layers, double scaleFactor) {
+        this(_layers, scaleFactor, Precision.DOUBLE);
+    }
+
+    // Constructor for a network whose layers were built with the given precision
+    public NeuralNetwork(List<Layer> _layers, double scaleFactor, Precision precision) {
         this._layers = _layers;
         this.scaleFactor = scaleFactor;
+        this.precision = precision;
+        this._layerTimes = _metrics.layerTimes(_layers);
         linkLayers(); // Method to link layers together
     }
 
@@ -58,19 +86,78 @@ public class NeuralNetwork {
         expected[correctAnswer] = 1; // Set the correct answer index to 1, rest are 0
 
         // Calculate error by subtracting expected output from the actual output
-        return add(networkOutput, multiply(expected, -1));
+        multiplyInPlace(expected, -1);
+        addInPlace(expected, networkOutput);
+
+        return expected;
     }
 
-    // Method to get the index of the maximum value in an array
-    private int getMaxIndex(double[] in){
+    //Method to calculate the errors of every sample of a batch of network outputs, into the errors workspace
+    //The label of sample n is labels[labelOffset + n]
+    private Tensor getErrors(Tensor networkOutput, int[] labels, int labelOffset){
+
+        _errorsWorkspace = Tensor.workspace(_errorsWorkspace, precision, networkOutput.getBatch(), 1, 1, networkOutput.getSampleSize());
+        Tensor errors = _errorsWorkspace;
+
+        double loss = 0; // Half the squared errors, the loss whose gradient the errors are
+        int correct = 0; // Number of samples predicted correctly
+
+        if(errors.isFloat()){
+            float[] out = networkOutput.getFloatData();
+            float[] err = errors.getFloatData();
+
+            for(int n = 0; n < errors.getBatch(); n++){
+                int outOffset = networkOutput.matrixOffset(n, 0);
+                int errOffset = errors.matrixOffset(n, 0);
+                int correctAnswer = labels[labelOffset + n];
+
+                for(int j = 0; j < errors.getSampleSize(); j++){
+                    err[errOffset + j] = out[outOffset + j] - (j == correctAnswer ? 1 : 0);
+                    loss += 0.5*err[errOffset + j]*err[errOffset + j];
+                }
+
+                if(guess(networkOutput, n) == correctAnswer){
+                    correct++;
+                }
+            }
+
+            _metrics.recordBatch(errors.getBatch(), loss, correct);
+            return errors;
+        }
+
+        double[] out = networkOutput.getData();
+        double[] err = errors.getData();
+
+        for(int n = 0; n < errors.getBatch(); n++){
+            int outOffset = networkOutput.matrixOffset(n, 0);
+            int errOffset = errors.matrixOffset(n, 0);
+            int correctAnswer = labels[labelOffset + n];
+
+            // Subtract the expected output, 1 for the correct answer and 0 for the rest, from the actual output
+            for(int j = 0; j < errors.getSampleSize(); j++){
+                err[errOffset + j] = out[outOffset + j] - (j == correctAnswer ? 1 : 0);
+                loss += 0.5*err[errOffset + j]*err[errOffset + j];
+            }
+
+            if(guess(networkOutput, n) == correctAnswer){
+                correct++;
+            }
+        }
+
+        _metrics.recordBatch(errors.getBatch(), loss, correct);
+        return errors;
+    }
+
+    // Method to get the index of the maximum value in a range of an array
+    private int getMaxIndex(double[] in, int offset, int length){
 
         double max = 0;
         int index = 0;
 
         // Iterate through array to find the maximum value and its index
-        for(int i = 0; i < in.length; i++){
-            if(in[i] >= max){
-                max = in[i];
+        for(int i = 0; i < length; i++){
+            if(in[offset + i] >= max){
+                max = in[offset + i];
                 index = i;
             }
 
@@ -79,51 +166,590 @@ public class NeuralNetwork {
         return index; // Return index of maximum value
     }
 
+    // Method to get the index of the maximum value in a range of a float array
+    private int getMaxIndex(float[] in, int offset, int length){
+
+        float max = 0;
+        int index = 0;
+
+        for(int i = 0; i < length; i++){
+            if(in[offset + i] >= max){
+                max = in[offset + i];
+                index = i;
+            }
+
+        }
+
+        return index;
+    }
+
+    // Method to pack a batch of images into one tensor, scaling the input data
+    private Tensor toInputTensor(List<Image> images){
+
+        int rows = images.get(0).getRows();
+        int cols = images.get(0).getCols();
+
+        return toInputTensor(images, new Tensor(precision, images.size(), 1, rows, cols));
+    }
+
+    // Method to pack a batch of images into the given tensor, which has one sample per image, scaling the input data
+    private Tensor toInputTensor(List<Image> images, Tensor input){
+
+        for(int n = 0; n < images.size(); n++){
+            if(input.isFloat()){
+                images.get(n).copyPixels(scaleFactor, input.getFloatData(), input.matrixOffset(n, 0));
+            }
+            else {
+                images.get(n).copyPixels(scaleFactor, input.getData(), input.matrixOffset(n, 0)); // Scale input data
+            }
+        }
+
+        return input;
+    }
+
+    // Method to pack images from..to-1 of the dataset, taken in the given order, into the given tensor with one sample per image
+    // The dataset copies the pixels already divided by the scale factor, so no separate scaling pass is needed
+    private Tensor toInputTensor(Dataset data, int[] order, int from, int to, Tensor input){
+
+        for(int n = 0; n < to - from; n++){
+            int index = sampleIndex(order, from + n);
+
+            if(input.isFloat()){
+                data.copyPixels(index, scaleFactor, input.getFloatData(), input.matrixOffset(n, 0));
+            }
+            else {
+                data.copyPixels(index, scaleFactor, input.getData(), input.matrixOffset(n, 0));
+            }
+        }
+
+        return input;
+    }
+
+    // Method to get the dataset index of the i-th image in the given order, or i itself if there is no order
+    static int sampleIndex(int[] order, int i){
+        return order == null ? i : order[i];
+    }
+
     // Method to make a prediction (guess) based on an input image
+    // The layers' inference pass caches nothing, so guess may be called from several threads at once
+    // as long as the weights are not being trained at the same time
     public int guess(Image image){
 
-        List<double[][]> inList = new ArrayList<>();
+        long start = System.nanoTime();
+        Tensor input = toInputTensor(List.of(image));
+
+        Tensor out = _layers.get(0).infer(input); // Get output from the 1st layer
+        _metrics.recordInference(1, System.nanoTime() - start);
+
+        return guess(out, 0); // Return the predicted class, the index of the maximum output value
+    }
+
+    /**
+     * Gets the class predicted for one sample of the network's outputs, the index of its maximum output value.
+     *
+     * @param outputs Outputs of the network, as returned by infer.
+     * @param n Index of the sample.
+     * @return The predicted class.
+     */
+    public int guess(Tensor outputs, int n){
 
-        inList.add(multiply(image.getData(), (1.0/scaleFactor))); // Scale input data
+        int offset = outputs.matrixOffset(n, 0);
 
-        double[] out = _layers.get(0).getOutput(inList); // Get output from the 1st layer
-        int guess = getMaxIndex(out); // Get the index of the maximum output value
+        return outputs.isFloat() ? getMaxIndex(outputs.getFloatData(), offset, outputs.getSampleSize())
+                : getMaxIndex(outputs.getData(), offset, outputs.getSampleSize());
+    }
 
-        return guess; // Return the predicted class
+    /**
+     * Runs the images from..to-1 of a dataset through the inference pass of the layers as one batch.
+     * Like guess it caches nothing, so it may be called from several threads at once as long as the weights
+     * are not being trained at the same time.
+     *
+     * @param data The images, which the first layer reshapes to its input shape.
+     * @param from Index of the first image.
+     * @param to Index after the last image.
+     * @return The outputs of the last layer, with one sample per image.
+     */
+    public Tensor infer(Dataset data, int from, int to){
+
+        long start = System.nanoTime();
+        Tensor input = toInputTensor(data, null, from, to, new Tensor(precision, to - from, 1, data.getRows(), data.getCols()));
+        Tensor out = _layers.get(0).infer(input);
+
+        _metrics.recordInference(to - from, System.nanoTime() - start);
+        return out;
     }
 
-    //Method to test the accuracy of the neural network on a set of images
+    //Method to test the accuracy of the neural network on a set of images, the images are split across all cores
     public float test (List<Image> images){
 
-    	int correct = 0;
+        TestEvent event = new TestEvent();
+        event.begin();
 
-    	// Iterate through images and check if the network's prediction matches the image's label
-        for(Image img: images){
-            int guess = guess(img);
+    	// Check in parallel how many of the network's predictions match the image's label
+        long correct = images.parallelStream()
+                .filter(img -> guess(img) == img.getLabel())
+                .count();
 
-            if(guess == img.getLabel()){
+        // Return the accuracy as a percentage
+        float accuracy = (float)correct/images.size() * 100;
+        _metrics.recordTest(accuracy);
+        commitTest(event, images.size(), accuracy);
+        return accuracy;
+    }
+
+    /**
+     * Tests the accuracy of the neural network on a dataset. The images are run through the layers in batches
+     * which are split across all cores.
+     *
+     * @param data The test images.
+     * @return The percentage of images whose label is predicted correctly.
+     */
+    public float test (Dataset data){
+
+        TestEvent event = new TestEvent();
+        event.begin();
+
+        int batches = (data.size() + TEST_BATCH_SIZE - 1)/TEST_BATCH_SIZE;
+
+        long correct = IntStream.range(0, batches).parallel()
+                .mapToLong(b -> countCorrect(data, b*TEST_BATCH_SIZE, Math.min((b + 1)*TEST_BATCH_SIZE, data.size())))
+                .sum();
+
+        float accuracy = (float)correct/data.size() * 100;
+        _metrics.recordTest(accuracy);
+        commitTest(event, data.size(), accuracy);
+        return accuracy;
+    }
+
+    // Method to commit the event of a test, if the recording keeps it
+    private static void commitTest(TestEvent event, int images, float accuracy){
+
+        event.end();
+
+        if(event.shouldCommit()){
+            event.images = images;
+            event.accuracy = accuracy;
+            event.commit();
+        }
+    }
+
+    // Method to count how many of the images from..to-1 of the dataset are predicted correctly, using the inference pass
+    private long countCorrect(Dataset data, int from, int to){
+
+        Tensor out = infer(data, from, to);
+
+        long correct = 0;
+
+        for(int n = 0; n < to - from; n++){
+            if(guess(out, n) == data.getLabel(from + n)){
                 correct++;
             }
         }
 
-        // Return the accuracy as a percentage
-        return((float)correct/images.size() * 100);
+        return correct;
+    }
+
+    /**
+     * Predicts the classes of the images from..to-1 of a dataset, writing the predicted class of image from + n to labels[n].
+     *
+     * @param data The images.
+     * @param from Index of the first image.
+     * @param to Index after the last image.
+     * @param labels Array receiving the predicted classes, with room for at least to - from of them.
+     * @throws IllegalArgumentException if the range is not within the dataset or the array is too short.
+     */
+    public void predictBatch(Dataset data, int from, int to, int[] labels){
+        predictBatch(data, from, to, null, 0, null, labels);
+    }
+
+    /**
+     * Predicts the class probabilities, the top k classes and the predicted class of the images from..to-1 of a dataset.
+     * The images are run through the layers in batches, which are split across all cores, and the results of image
+     * from + n are written to the caller's arrays. Any of the arrays may be null if its results are not needed.
+     * The probabilities are the softmax of the network's outputs, the top k classes are in decreasing order of output
+     * and the first of them is the predicted class, the one guess returns.
+     *
+     * @param data The images.
+     * @param from Index of the first image.
+     * @param to Index after the last image.
+     * @param probabilities Array receiving the probability of every class, image after image, or null.
+     * @param k Number of classes to write to topK for every image.
+     * @param topK Array receiving the k most likely classes of every image, image after image, or null.
+     * @param labels Array receiving the predicted class of every image, or null.
+     * @throws IllegalArgumentException if the range is not within the dataset, k is not between 1 and the number
+     *                                  of classes while topK is given, or an array is too short.
+     */
+    public void predictBatch(Dataset data, int from, int to, double[] probabilities, int k, int[] topK, int[] labels){
+
+        int count = to - from;
+        int classes = _layers.get(_layers.size() - 1).getOutputElements();
+
+        if(from < 0 || to > data.size() || count < 0){
+            throw new IllegalArgumentException("Invalid range " + from + ".." + to + " of " + data.size() + " images");
+        }
+        if(topK != null && (k < 1 || k > classes)){
+            throw new IllegalArgumentException("k must be between 1 and " + classes + ": " + k);
+        }
+        if((probabilities != null && probabilities.length < (long) count*classes)
+                || (topK != null && topK.length < (long) count*k) || (labels != null && labels.length < count)){
+            throw new IllegalArgumentException("Output arrays are too short for " + count + " images");
+        }
+
+        int batches = (count + TEST_BATCH_SIZE - 1)/TEST_BATCH_SIZE;
+
+        // Every batch writes its own part of the arrays
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            int batchFrom = from + b*TEST_BATCH_SIZE;
+            int batchTo = Math.min(batchFrom + TEST_BATCH_SIZE, to);
+            Tensor out = infer(data, batchFrom, batchTo);
+
+            for(int n = 0; n < batchTo - batchFrom; n++){
+                int index = batchFrom - from + n;
+
+                if(probabilities != null){
+                    softmax(out, n, probabilities, index*classes);
+                }
+                if(topK != null){
+                    topClasses(out, n, k, topK, index*k);
+                }
+                if(labels != null){
+                    labels[index] = guess(out, n);
+                }
+            }
+        });
+    }
+
+    /**
+     * Predicts the classes of a list of images, see predictBatch(Dataset, int, int, int[]).
+     *
+     * @param images The images, which must all have the same number of rows and columns.
+     * @param labels Array receiving the predicted classes, with room for at least images.size() of them.
+     */
+    public void predictBatch(List<Image> images, int[] labels){
+        predictBatch(Dataset.of(images), 0, images.size(), null, 0, null, labels);
+    }
+
+    /**
+     * Predicts the class probabilities, the top k classes and the predicted class of a list of images,
+     * see predictBatch(Dataset, int, int, double[], int, int[], int[]).
+     *
+     * @param images The images, which must all have the same number of rows and columns.
+     * @param probabilities Array receiving the probability of every class, image after image, or null.
+     * @param k Number of classes to write to topK for every image.
+     * @param topK Array receiving the k most likely classes of every image, image after image, or null.
+     * @param labels Array receiving the predicted class of every image, or null.
+     */
+    public void predictBatch(List<Image> images, double[] probabilities, int k, int[] topK, int[] labels){
+        predictBatch(Dataset.of(images), 0, images.size(), probabilities, k, topK, labels);
+    }
+
+    // Method to write the softmax of the outputs of sample n to probabilities[offset..], subtracting the maximum output first
+    // so the exponentials cannot overflow
+    private static void softmax(Tensor outputs, int n, double[] probabilities, int offset){
+
+        int classes = outputs.getSampleSize();
+        double max = Double.NEGATIVE_INFINITY;
+
+        for(int j = 0; j < classes; j++){
+            max = Math.max(max, output(outputs, n, j));
+        }
+
+        double sum = 0;
+
+        for(int j = 0; j < classes; j++){
+            probabilities[offset + j] = Math.exp(output(outputs, n, j) - max);
+            sum += probabilities[offset + j];
+        }
+
+        for(int j = 0; j < classes; j++){
+            probabilities[offset + j] /= sum;
+        }
+    }
+
+    // Method to write the k classes with the largest outputs of sample n to topK[offset..], largest first
+    // Ties go to the later class like in getMaxIndex, so the first class is the one guess returns
+    private void topClasses(Tensor outputs, int n, int k, int[] topK, int offset){
+
+        topK[offset] = guess(outputs, n);
+
+        for(int r = 1; r < k; r++){
+            int best = -1;
+
+            for(int j = 0; j < outputs.getSampleSize(); j++){
+                if(!contains(topK, offset, r, j) && (best < 0 || output(outputs, n, j) >= output(outputs, n, best))){
+                    best = j;
+                }
+            }
+
+            topK[offset + r] = best;
+        }
     }
 
-    // Method to train the neural network using a set of images
+    // Method to check if value is one of array[offset..offset+length-1]
+    private static boolean contains(int[] array, int offset, int length, int value){
+
+        for(int i = 0; i < length; i++){
+            if(array[offset + i] == value){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Method to get output j of sample n, whatever the precision
+    private static double output(Tensor outputs, int n, int j){
+        int index = outputs.matrixOffset(n, 0) + j;
+        return outputs.isFloat() ? outputs.getFloatData()[index] : outputs.getData()[index];
+    }
+
+    /**
+     * Takes a frozen snapshot of the network. The snapshot has its own copy of the current weights, so it keeps
+     * giving the same predictions while this network continues training, and it can be used by many threads at once.
+     * Calling train on the snapshot throws an IllegalStateException.
+     *
+     * @return The frozen network.
+     */
+    public NeuralNetwork freeze(){
+
+        List<Layer> snapshotLayers = new ArrayList<>();
+
+        for(Layer layer: _layers){
+            snapshotLayers.add(layer.createSnapshot());
+        }
+
+        NeuralNetwork snapshot = new NeuralNetwork(snapshotLayers, scaleFactor, precision);
+        snapshot.frozen = true;
+        snapshot.builder = builder;
+        return snapshot;
+    }
+
+    /**
+     * Saves the network's topology and current weights to a checkpoint file, see Checkpoint.
+     *
+     * @param path The path of the checkpoint file to write.
+     * @throws IllegalStateException if the network was not built by a NetworkBuilder.
+     * @throws java.io.UncheckedIOException if the file cannot be written.
+     */
+    public void save(String path){
+        Checkpoint.save(this, path);
+    }
+
+    /**
+     * Loads a network from a checkpoint file written by save, see Checkpoint.
+     *
+     * @param path The path of the checkpoint file.
+     * @return The network, with the saved topology and weights.
+     * @throws IllegalArgumentException if the file is not a checkpoint or does not match its topology.
+     * @throws java.io.UncheckedIOException if the file cannot be read.
+     */
+    public static NeuralNetwork load(String path){
+        return Checkpoint.load(path);
+    }
+
+    // Method to get the factor the input data is divided by
+    public double getScaleFactor(){
+        return scaleFactor;
+    }
+
+    // Method to get the precision of the network's weights and activations
+    public Precision getPrecision(){
+        return precision;
+    }
+
+    // Method to get the number of pixels of an input image
+    public int getInputElements(){
+        return _layers.get(0).getInputElements();
+    }
+
+    // Method to get the layers in the order of the network, the list cannot be changed
+    public List<Layer> getLayers(){
+        return Collections.unmodifiableList(_layers);
+    }
+
+    // Method to get the counters of the forward and backward times of every layer, see NetworkMetrics
+    NetworkMetrics.LayerTimes[] getLayerTimes(){
+        return _layerTimes;
+    }
+
+    // Method to check if the network is a frozen snapshot
+    public boolean isFrozen(){
+        return frozen;
+    }
+
+    // Method to train the neural network using a set of images, updating the weights after every image
     public void train (List<Image> images){
+        train(images, 1);
+    }
+
+    /**
+     * Trains the neural network using mini-batches. Each layer accumulates its gradients over
+     * batchSize images and the weights are updated once per batch with the averaged gradients.
+     *
+     * @param images The training images.
+     * @param batchSize Number of images per weight update.
+     * @throws IllegalArgumentException if batchSize is less than 1.
+     */
+    public void train (List<Image> images, int batchSize){
+        train(Dataset.of(images), null, batchSize);
+    }
+
+    /**
+     * Trains the neural network on a dataset using mini-batches, see train(List, int).
+     *
+     * @param data The training images.
+     * @param batchSize Number of images per weight update.
+     * @throws IllegalArgumentException if batchSize is less than 1.
+     */
+    public void train (Dataset data, int batchSize){
+        train(data, null, batchSize);
+    }
+
+    /**
+     * Trains the neural network on a dataset using mini-batches, taking the images in the given order.
+     * Shuffling the order instead of the dataset lets a memory-mapped dataset be trained on in a new order every epoch.
+     *
+     * @param data The training images.
+     * @param order Indices of the images in the order they are trained on, or null to use the dataset's order.
+     * @param batchSize Number of images per weight update.
+     * @throws IllegalArgumentException if batchSize is less than 1.
+     */
+    public void train (Dataset data, int[] order, int batchSize){
+
+        if(batchSize < 1){
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+
+        checkNotFrozen();
 
-    	// Iterate through images and perform backpropagation to train the network
-        for(Image img:images){
-            List<double[][]> inList = new ArrayList<>();
-            inList.add(multiply(img.getData(), (1.0/scaleFactor))); // Scale input data
+        int size = order == null ? data.size() : order.length;
+        _metrics.epochStarted(size);
 
-            double[] out = _layers.get(0).getOutput(inList); // Get output from the 1st layer
-            double[] dldO = getErrors(out, img.getLabel()); // Calculate error
+    	// Iterate through the batches, the last one may be smaller, and perform backpropagation to train the network
+        for(int start = 0; start < size; start += batchSize){
+            int end = Math.min(start + batchSize, size);
+            TrainBatchEvent event = new TrainBatchEvent();
+            event.begin();
 
-            _layers.get((_layers.size()-1)).backPropagation(dldO); // Perform backpropagation
+            accumulateGradients(data, order, start, end);
+            applyGradients(end - start); // Update the weights once per batch
+
+            commitBatch(event, end - start, 1);
         }
 
+        _metrics.epochFinished();
+    }
+
+    /**
+     * Trains the neural network on every batch of a data pipeline, updating the weights once per batch.
+     * The batches are prepared on the pipeline's threads while the network trains.
+     *
+     * @param pipeline The pipeline providing the training batches.
+     */
+    public void train (DataPipeline pipeline){
+
+        checkNotFrozen();
+        _metrics.epochStarted(pipeline.getSize());
+
+        Batch batch;
+        while((batch = pipeline.next()) != null){
+            TrainBatchEvent event = new TrainBatchEvent();
+            event.begin();
+
+            accumulateGradients(batch.getInput(), batch.getLabels(), 0);
+            applyGradients(batch.size()); // Update the weights once per batch
+
+            commitBatch(event, batch.size(), 1);
+        }
+
+        _metrics.epochFinished();
+    }
+
+    // Method to run the forward pass and backpropagation for the images from..to-1 of the order, accumulating the gradients in the layers
+    void accumulateGradients(Dataset data, int[] order, int from, int to){
+
+        _inputWorkspace = Tensor.workspace(_inputWorkspace, precision, to - from, 1, data.getRows(), data.getCols());
+        Tensor input = toInputTensor(data, order, from, to, _inputWorkspace); // Pack and scale the input data
+
+        if(_labelsWorkspace == null || _labelsWorkspace.length < to - from){
+            _labelsWorkspace = new int[to - from];
+        }
+
+        for(int n = 0; n < to - from; n++){
+            _labelsWorkspace[n] = data.getLabel(sampleIndex(order, from + n));
+        }
+
+        accumulateGradients(input, _labelsWorkspace, 0);
+    }
+
+    // Method to run the forward pass and backpropagation for a batch already packed into a tensor, accumulating the gradients
+    // in the layers, the label of sample n is labels[labelOffset + n]
+    void accumulateGradients(Tensor input, int[] labels, int labelOffset){
+
+        // Forward pass through every layer, like Layer.getOutput, timing each one
+        Tensor out = input;
+
+        for(int i = 0; i < _layers.size(); i++){
+            long start = System.nanoTime();
+            out = _layers.get(i).forward(out);
+            _layerTimes[i].recordForward(input.getBatch(), System.nanoTime() - start);
+        }
+
+        Tensor dldO = getErrors(out, labels, labelOffset); // Calculate error
+
+        // Backpropagation from the last layer to the first, like Layer.backPropagation, timing each one
+        for(int i = _layers.size() - 1; i >= 0; i--){
+            long start = System.nanoTime();
+            dldO = _layers.get(i).backward(dldO);
+            _layerTimes[i].recordBackward(input.getBatch(), System.nanoTime() - start);
+        }
+    }
+
+    // Method to commit the event of a batch of the given number of images trained on the given number of threads,
+    // if the recording keeps it
+    static void commitBatch(TrainBatchEvent event, int images, int threads){
+
+        event.end();
+
+        if(event.shouldCommit()){
+            event.images = images;
+            event.threads = threads;
+            event.epoch = NetworkMetrics.getInstance().getEpoch();
+            event.commit();
+        }
+    }
+
+    // Method to apply the accumulated gradients of every layer
+    void applyGradients(int batchSize){
+        for(Layer layer: _layers){
+            layer.applyGradients(batchSize);
+        }
+    }
+
+    // Method to reject training on a frozen snapshot
+    void checkNotFrozen(){
+        if(frozen){
+            throw new IllegalStateException("A frozen network cannot be trained");
+        }
+    }
+
+    // Method to create a replica of the network which shares the weights but accumulates its own gradients
+    NeuralNetwork createReplica(){
+
+        List<Layer> replicaLayers = new ArrayList<>();
+
+        for(Layer layer: _layers){
+            replicaLayers.add(layer.createReplica());
+        }
+
+        return new NeuralNetwork(replicaLayers, scaleFactor, precision);
+    }
+
+    // Method to add the gradients accumulated by a replica to this network's layers
+    void addGradients(NeuralNetwork replica){
+        for(int i = 0; i < _layers.size(); i++){
+            _layers.get(i).addGradients(replica._layers.get(i));
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+ * ParallelTrainer: This class trains a neural network on several threads using synchronous data parallelism.
+ *                  Every batch is split into one shard per worker, each worker runs its shard through its own
+ *                  replica of the layers and the gradients are reduced in worker order before a single update.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import data.Batch;
+import data.DataPipeline;
+import data.Dataset;
+import data.Image;
+
+public class ParallelTrainer implements AutoCloseable {
+
+	private NeuralNetwork _network; // The network whose weights are trained
+	private List<NeuralNetwork> _replicas; // One replica of the network per worker thread
+	private ExecutorService _executor; // Thread pool running the workers
+
+	/**
+	 * Constructor for ParallelTrainer
+	 * @param network The network to train, its layers are shared with the worker replicas
+	 * @param threads Number of worker threads
+	 * @throws IllegalArgumentException if threads is less than 1
+	 * @throws IllegalStateException if the network is frozen
+	 */
+	public ParallelTrainer(NeuralNetwork network, int threads) {
+
+		if(threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+		}
+
+		network.checkNotFrozen();
+
+		_network = network;
+		_replicas = new ArrayList<>();
+
+		for(int t = 0; t < threads; t++) {
+			_replicas.add(network.createReplica());
+		}
+
+		_executor = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Gets the number of worker threads.
+	 *
+	 * @return The number of workers.
+	 */
+	public int getThreads() {
+		return _replicas.size();
+	}
+
+	/**
+	 * Trains the network for one pass over the images. Each batch is split into contiguous shards, one per worker,
+	 * and the weights are updated once per batch. The reduction always adds the workers' gradients in the same order,
+	 * so for a given number of threads and the same image order the resulting weights are identical on every run.
+	 *
+	 * @param images The training images.
+	 * @param batchSize Number of images per weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1.
+	 */
+	public void train(List<Image> images, int batchSize) {
+		train(Dataset.of(images), null, batchSize);
+	}
+
+	/**
+	 * Trains the network for one pass over a dataset, taking the images in the given order, see train(List, int).
+	 *
+	 * @param data The training images.
+	 * @param order Indices of the images in the order they are trained on, or null to use the dataset's order.
+	 * @param batchSize Number of images per weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1.
+	 */
+	public void train(Dataset data, int[] order, int batchSize) {
+
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+		}
+
+		int size = order == null ? data.size() : order.length;
+		NetworkMetrics.getInstance().epochStarted(size);
+
+		for(int start = 0; start < size; start += batchSize) {
+			int end = Math.min(start + batchSize, size);
+			trainBatch(data, order, start, end);
+		}
+
+		NetworkMetrics.getInstance().epochFinished();
+	}
+
+	/**
+	 * Trains the network on every batch of a data pipeline, see train(List, int). The batches are prepared
+	 * on the pipeline's threads while the workers train.
+	 *
+	 * @param pipeline The pipeline providing the training batches.
+	 */
+	public void train(DataPipeline pipeline) {
+
+		NetworkMetrics.getInstance().epochStarted(pipeline.getSize());
+
+		Batch batch;
+		while((batch = pipeline.next()) != null) {
+			Batch shards = batch;
+			runShards(0, batch.size(), (replica, from, to) ->
+					replica.accumulateGradients(shards.getInput().samples(from, to), shards.getLabels(), from));
+		}
+
+		NetworkMetrics.getInstance().epochFinished();
+	}
+
+	// Task run by a worker on the images from..to-1 of a batch with its replica
+	private interface Shard {
+		void run(NeuralNetwork replica, int from, int to);
+	}
+
+	// Method to run the images start..end-1 of the order on the workers, reduce their gradients and update the weights
+	private void trainBatch(Dataset data, int[] order, int start, int end) {
+		runShards(start, end, (replica, from, to) -> replica.accumulateGradients(data, order, from, to));
+	}
+
+	// Method to split start..end-1 into one contiguous shard per worker, run them, reduce the gradients and update the weights
+	private void runShards(int start, int end, Shard shard) {
+
+		TrainBatchEvent event = new TrainBatchEvent();
+		event.begin();
+
+		int threads = _replicas.size();
+		int shardSize = (end - start + threads - 1) / threads;
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+
+		// Give each worker a contiguous shard of the batch
+		for(int t = 0; t < threads; t++) {
+			int from = Math.min(start + t * shardSize, end);
+			int to = Math.min(from + shardSize, end);
+
+			NeuralNetwork replica = _replicas.get(t);
+
+			tasks.add(() -> {
+				if(from < to) {
+					shard.run(replica, from, to);
+				}
+				return null;
+			});
+		}
+
+		try {
+			// Wait for every worker, the weights are shared so none may be updated while a shard is running
+			for(Future<Void> future: _executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A training worker failed", e.getCause());
+		}
+
+		// Deterministic reduction: add the gradients of the workers in worker order
+		for(NeuralNetwork replica: _replicas) {
+			_network.addGradients(replica);
+		}
+
+		_network.applyGradients(end - start);
+
+		NeuralNetwork.commitBatch(event, end - start, threads);
+	}
+
+	// Method to stop the worker threads
+	@Override
+	public void close() {
+		_executor.shutdown();
+	}
+
+}
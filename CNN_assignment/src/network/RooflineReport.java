@@ -0,0 +1,317 @@
+/*
+ * RooflineReport: This class compares the speed the layers of a network were trained at with the peak of the machine,
+ *                 to tell which layers are limited by the arithmetic and which by memory before optimizing them.
+ *
+ *                 The peak is measured on one thread, as every forward or backward pass of a batch runs on one thread:
+ *                 the operations with the same multiplications and separate additions the layers' kernels use, on
+ *                 values held in registers, and the bandwidth of y += x * a over arrays much larger than the caches.
+ *                 The achieved rates divide the operations and bytes of Layer.getForwardFlops and getForwardBytes
+ *                 by the times recorded in NetworkMetrics, so they cover every batch trained since its last reset.
+ *
+ *                 The operational intensity of a pass is its operations per byte. Below the ridge point, the peak
+ *                 operations divided by the peak bandwidth, a pass cannot run faster than the bandwidth allows and is
+ *                 memory-bound, above it the arithmetic limits it and it is compute-bound. The efficiency compares the
+ *                 achieved operations with the attainable ones, the lower of the two limits.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import data.Precision;
+import data.Simd;
+import data.VectorKernels;
+import layers.Layer;
+
+public class RooflineReport {
+
+	// Number of times every measurement of the peak is repeated, the best is kept
+	private static final int PEAK_RUNS = 5;
+
+	// Updates of every value by the operations measurement
+	private static final long PEAK_REPEATS = 1 << 24;
+
+	// Bytes of each of the two arrays of the bandwidth measurement
+	private static final int BANDWIDTH_BYTES = 1 << 25;
+
+	// Format of a row of the table
+	private static final String ROW = "%-22s %-8s %12s %9s %8s %10s %11s %11s  %s%n";
+
+	/**
+	 * Peak rates of one thread of the machine.
+	 */
+	public static final class Peak {
+
+		private final double _gflops;
+		private final double _gbytesPerSecond;
+
+		/**
+		 * Constructor for Peak
+		 * @param gflops Billions of floating-point operations per second
+		 * @param gbytesPerSecond Billions of bytes read or written per second
+		 */
+		public Peak(double gflops, double gbytesPerSecond) {
+			_gflops = gflops;
+			_gbytesPerSecond = gbytesPerSecond;
+		}
+
+		// Getters
+		public double getGflops() {
+			return _gflops;
+		}
+
+		public double getGbytesPerSecond() {
+			return _gbytesPerSecond;
+		}
+
+		// Operational intensity, in operations per byte, above which a pass is compute-bound
+		public double getRidgePoint() {
+			return _gflops/_gbytesPerSecond;
+		}
+	}
+
+	/**
+	 * Achieved rates of the forward or backward passes of one layer.
+	 */
+	public static final class Row {
+
+		private final String _layer;
+		private final String _pass;
+		private final long _images;
+		private final double _seconds;
+		private final double _flops;
+		private final double _bytes;
+		private final Peak _peak;
+
+		Row(String layer, String pass, long images, double seconds, double flops, double bytes, Peak peak) {
+			_layer = layer;
+			_pass = pass;
+			_images = images;
+			_seconds = seconds;
+			_flops = flops;
+			_bytes = bytes;
+			_peak = peak;
+		}
+
+		// Getters
+		public String getLayer() {
+			return _layer;
+		}
+
+		// forward or backward
+		public String getPass() {
+			return _pass;
+		}
+
+		// Number of images the passes were timed over
+		public long getImages() {
+			return _images;
+		}
+
+		public double getMicrosPerImage() {
+			return _images == 0 ? 0 : _seconds*1e6/_images;
+		}
+
+		public double getGflops() {
+			return _seconds == 0 ? 0 : _flops/_seconds/1e9;
+		}
+
+		public double getGbytesPerSecond() {
+			return _seconds == 0 ? 0 : _bytes/_seconds/1e9;
+		}
+
+		public double getIntensity() {
+			return _bytes == 0 ? 0 : _flops/_bytes;
+		}
+
+		// Highest operations per second the roofline allows at the intensity of the passes
+		public double getAttainableGflops() {
+			return Math.min(_peak.getGflops(), getIntensity()*_peak.getGbytesPerSecond());
+		}
+
+		// Percentage of the attainable operations achieved
+		public double getEfficiency() {
+			return getAttainableGflops() == 0 ? 0 : 100*getGflops()/getAttainableGflops();
+		}
+
+		// compute if the arithmetic limits the passes, memory if the bandwidth does
+		public String getBound() {
+			return getIntensity() >= _peak.getRidgePoint() ? "compute" : "memory";
+		}
+	}
+
+	/**
+	 * Measures the peak operations and bandwidth of one thread for values of the given precision. Takes about a second.
+	 *
+	 * @param precision Precision of the values, FLOAT doubles the operations of a vector.
+	 * @return The peak rates.
+	 */
+	public static Peak measurePeak(Precision precision) {
+
+		double bestFlopSeconds = Double.MAX_VALUE;
+		double bestByteSeconds = Double.MAX_VALUE;
+		long flops = 0;
+		long bytes = 0;
+
+		// The first run warms up the compiled code
+		for(int run = 0; run <= PEAK_RUNS; run++) {
+			long start = System.nanoTime();
+			flops = multiplyAddLoop(precision);
+			double flopSeconds = (System.nanoTime() - start)/1e9;
+
+			start = System.nanoTime();
+			bytes = streamArrays(precision);
+			double byteSeconds = (System.nanoTime() - start)/1e9;
+
+			if(run > 0) {
+				bestFlopSeconds = Math.min(bestFlopSeconds, flopSeconds);
+				bestByteSeconds = Math.min(bestByteSeconds, byteSeconds);
+			}
+		}
+
+		return new Peak(flops/bestFlopSeconds/1e9, bytes/bestByteSeconds/1e9);
+	}
+
+	// Method to run the peak operations loop, returning the number of operations
+	private static long multiplyAddLoop(Precision precision) {
+
+		if(!Simd.isEnabled()) {
+			return precision.isFloat() ? scalarLoop(0.5f, PEAK_REPEATS) : scalarLoop(0.5, PEAK_REPEATS);
+		}
+
+		if(precision.isFloat()) {
+			float[] values = new float[8*Simd.floatLanes()];
+			VectorKernels.multiplyAddLoop(values, 0.999f, 0.001f, PEAK_REPEATS);
+			return 2*PEAK_REPEATS*values.length;
+		}
+
+		double[] values = new double[8*Simd.doubleLanes()];
+		VectorKernels.multiplyAddLoop(values, 0.999, 0.001, PEAK_REPEATS);
+		return 2*PEAK_REPEATS*values.length;
+	}
+
+	// Method to run the peak operations loop without vectors, on eight independent chains, returning the number of operations
+	private static long scalarLoop(double v, long repeats) {
+
+		double v0 = v, v1 = v, v2 = v, v3 = v, v4 = v, v5 = v, v6 = v, v7 = v;
+
+		for(long r = 0; r < repeats; r++) {
+			v0 = v0*0.999 + 0.001; v1 = v1*0.999 + 0.001; v2 = v2*0.999 + 0.001; v3 = v3*0.999 + 0.001;
+			v4 = v4*0.999 + 0.001; v5 = v5*0.999 + 0.001; v6 = v6*0.999 + 0.001; v7 = v7*0.999 + 0.001;
+		}
+
+		// Use the results so the loop is not removed
+		return v0 + v1 + v2 + v3 + v4 + v5 + v6 + v7 > 0 ? 16*repeats : 0;
+	}
+
+	// Float version of scalarLoop
+	private static long scalarLoop(float v, long repeats) {
+
+		float v0 = v, v1 = v, v2 = v, v3 = v, v4 = v, v5 = v, v6 = v, v7 = v;
+
+		for(long r = 0; r < repeats; r++) {
+			v0 = v0*0.999f + 0.001f; v1 = v1*0.999f + 0.001f; v2 = v2*0.999f + 0.001f; v3 = v3*0.999f + 0.001f;
+			v4 = v4*0.999f + 0.001f; v5 = v5*0.999f + 0.001f; v6 = v6*0.999f + 0.001f; v7 = v7*0.999f + 0.001f;
+		}
+
+		return v0 + v1 + v2 + v3 + v4 + v5 + v6 + v7 > 0 ? 16*repeats : 0;
+	}
+
+	// Method to stream through two arrays larger than the caches with y += x * a, returning the bytes read and written
+	private static long streamArrays(Precision precision) {
+
+		int length = BANDWIDTH_BYTES/precision.getBytes();
+
+		if(precision.isFloat()) {
+			float[] x = new float[length];
+			float[] y = new float[length];
+
+			if(Simd.isEnabled()) {
+				VectorKernels.multiplyAdd(x, 0, 0.5f, y, 0, length);
+			}
+			else {
+				for(int i = 0; i < length; i++) {
+					y[i] += x[i]*0.5f;
+				}
+			}
+		}
+		else {
+			double[] x = new double[length];
+			double[] y = new double[length];
+
+			if(Simd.isEnabled()) {
+				VectorKernels.multiplyAdd(x, 0, 0.5, y, 0, length);
+			}
+			else {
+				for(int i = 0; i < length; i++) {
+					y[i] += x[i]*0.5;
+				}
+			}
+		}
+
+		// x and y are read and y is written
+		return 3L*BANDWIDTH_BYTES;
+	}
+
+	/**
+	 * Works out the achieved rates of the forward and backward passes of every layer of a network.
+	 *
+	 * @param net The network, trained since NetworkMetrics was last reset.
+	 * @param peak The peak rates of the machine.
+	 * @return Two rows per layer, the forward then the backward pass, in the order of the network.
+	 */
+	public static List<Row> rows(NeuralNetwork net, Peak peak) {
+
+		List<Row> rows = new ArrayList<>();
+		NetworkMetrics.LayerTimes[] times = net.getLayerTimes();
+
+		for(int i = 0; i < net._layers.size(); i++) {
+			Layer layer = net._layers.get(i);
+			NetworkMetrics.LayerTimes layerTimes = times[i];
+
+			long images = layerTimes.forwardImages.sum();
+			long calls = layerTimes.forwardCalls.sum();
+
+			// The operations grow with the images, the bytes have a part per image and a part per pass for the parameters
+			rows.add(new Row(layerTimes.name, "forward", images, layerTimes.forwardNanos.sum()/1e9, (double) layer.getForwardFlops(1)*images,
+					(double) (layer.getForwardBytes(1) - layer.getForwardBytes(0))*images + (double) layer.getForwardBytes(0)*calls, peak));
+
+			images = layerTimes.backwardImages.sum();
+			calls = layerTimes.backwardCalls.sum();
+
+			rows.add(new Row(layerTimes.name, "backward", images, layerTimes.backwardNanos.sum()/1e9, (double) layer.getBackwardFlops(1)*images,
+					(double) (layer.getBackwardBytes(1) - layer.getBackwardBytes(0))*images + (double) layer.getBackwardBytes(0)*calls, peak));
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Formats the report of a network as a table with a row per pass of every layer.
+	 *
+	 * @param net The network, trained since NetworkMetrics was last reset.
+	 * @param peak The peak rates of the machine.
+	 * @return The table, ending with a line break.
+	 */
+	public static String format(NeuralNetwork net, Peak peak) {
+
+		StringBuilder table = new StringBuilder();
+
+		table.append(String.format(Locale.ROOT, "Peak of one thread: %.2f GFLOP/s, %.2f GB/s, ridge point %.2f FLOP/byte%n",
+				peak.getGflops(), peak.getGbytesPerSecond(), peak.getRidgePoint()));
+		table.append(String.format(Locale.ROOT, ROW, "Layer", "Pass", "us/image", "GFLOP/s", "GB/s", "FLOP/byte", "Attainable", "Efficiency", "Bound"));
+
+		for(Row row : rows(net, peak)) {
+			table.append(String.format(Locale.ROOT, ROW, row.getLayer(), row.getPass(), String.format(Locale.ROOT, "%.2f", row.getMicrosPerImage()),
+					String.format(Locale.ROOT, "%.2f", row.getGflops()), String.format(Locale.ROOT, "%.2f", row.getGbytesPerSecond()),
+					String.format(Locale.ROOT, "%.2f", row.getIntensity()), String.format(Locale.ROOT, "%.2f", row.getAttainableGflops()),
+					String.format(Locale.ROOT, "%.1f%%", row.getEfficiency()), row.getBound()));
+		}
+
+		return table.toString();
+	}
+
+}
@@ -0,0 +1,34 @@
+/*
+ * TestEvent: This class is the Java Flight Recorder event of a test pass of NeuralNetwork.test over a set of images.
+ *            It costs nothing while no recording is running.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cnn.Test")
+@Label("Test")
+@Category({"CNN", "Training"})
+@Description("Test of the accuracy of the network over a set of images")
+@Enabled(true)
+@Threshold("0 ms")
+@StackTrace(false)
+class TestEvent extends Event {
+
+	@Label("Images")
+	int images;
+
+	@Label("Accuracy")
+	@Description("Percentage of images predicted correctly")
+	float accuracy;
+
+}
@@ -0,0 +1,38 @@
+/*
+ * TrainBatchEvent: This class is the Java Flight Recorder event of training a batch, from the forward pass of its first
+ *                  image to the weight update, recorded by NeuralNetwork.train and ParallelTrainer.train. It costs
+ *                  nothing while no recording is running.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package network;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cnn.TrainBatch")
+@Label("Train Batch")
+@Category({"CNN", "Training"})
+@Description("Forward pass, backpropagation and weight update of a batch")
+@Enabled(true)
+@Threshold("1 ms")
+@StackTrace(false)
+class TrainBatchEvent extends Event {
+
+	@Label("Images")
+	int images;
+
+	@Label("Threads")
+	@Description("Number of workers the batch was split between")
+	int threads;
+
+	@Label("Epoch")
+	int epoch;
+
+}
@@ -0,0 +1,264 @@
+/*
+ * InferenceServer: This class serves the predictions of a trained network over HTTP, using the server built into the JDK.
+ *                  Every request is handled on its own virtual thread, which parses the image and then waits for the
+ *                  MicroBatcher to run it through the network together with the other requests that arrived meanwhile.
+ *
+ *                  POST /predict  the pixels of one image, 0 to 255 row by row, separated by commas or whitespace
+ *                                 answers {"label":7,"batchSize":4,"outputs":[...]}, or 504 after 30 seconds
+ *                  GET  /health   answers {"status":"ok"}
+ *
+ *                  Usage: InferenceServer <checkpoint> [port] [maxBatchSize] [maxWaitMicros]
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import network.NetworkMetrics;
+import network.NeuralNetwork;
+
+public class InferenceServer implements AutoCloseable {
+
+	// Defaults of the command line arguments
+	static final int DEFAULT_PORT = 8080;
+	static final int DEFAULT_MAX_BATCH_SIZE = 32;
+	static final long DEFAULT_MAX_WAIT_MICROS = 2000;
+
+	// Longest time a request waits for its prediction before it is answered with 504, so a handler never waits forever
+	static final long PREDICTION_TIMEOUT_MILLIS = 30_000;
+
+	// Largest request body accepted, an image written with the widest separators fits many times over
+	private static final int MAX_BODY_BYTES = 1 << 16;
+
+	static {
+		// Without TCP_NODELAY a response written in two packets waits for the client's delayed acknowledgement, adding
+		// 40 ms to every request. The JDK's server reads the property once, before the first server is created
+		if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer _server; // The HTTP server, not started until start is called
+	private final ExecutorService _executor; // Virtual thread per request
+	private final MicroBatcher _batcher; // Batches the images of the requests
+	private final AtomicInteger _pendingRequests = new AtomicInteger(); // Requests received but not answered yet
+
+	/**
+	 * Constructor for InferenceServer, which binds the address without accepting requests yet
+	 * @param network The trained network, which must not be trained while the server runs
+	 * @param address The address and port to listen on, port 0 picks a free port
+	 * @param maxBatchSize Largest number of requests run through the network as one batch
+	 * @param maxWaitMicros Longest time in microseconds a request waits for others to join its batch
+	 * @throws UncheckedIOException if the address cannot be bound
+	 */
+	public InferenceServer(NeuralNetwork network, InetSocketAddress address, int maxBatchSize, long maxWaitMicros) {
+
+		_batcher = new MicroBatcher(network, maxBatchSize, maxWaitMicros, _pendingRequests::get);
+		_executor = Executors.newVirtualThreadPerTaskExecutor();
+
+		try {
+			_server = HttpServer.create(address, 0);
+		}
+		catch(IOException e) {
+			_batcher.close();
+			throw new UncheckedIOException("Could not bind " + address, e);
+		}
+
+		_server.setExecutor(_executor);
+		_server.createContext("/predict", this::predict);
+		_server.createContext("/health", this::health);
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		_server.start();
+	}
+
+	/**
+	 * Gets the port the server listens on, which is useful when it was created with port 0.
+	 *
+	 * @return The port.
+	 */
+	public int getPort() {
+		return _server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server, failing the requests that have not been run yet.
+	 */
+	@Override
+	public void close() {
+		_server.stop(0);
+		_batcher.close();
+		_executor.close();
+	}
+
+	// Method handling POST /predict, parsing the image and answering with the network's prediction
+	private void predict(HttpExchange exchange) throws IOException {
+
+		try(exchange) {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, error("Use POST"));
+				return;
+			}
+
+			MicroBatcher.Prediction prediction;
+			CompletableFuture<MicroBatcher.Prediction> result = null;
+			_pendingRequests.incrementAndGet();
+
+			try {
+				result = _batcher.submit(parsePixels(exchange.getRequestBody()));
+				prediction = result.get(PREDICTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch(IllegalArgumentException e) {
+				respond(exchange, 400, error(e.getMessage()));
+				return;
+			}
+			catch(IllegalStateException e) {
+				respond(exchange, 503, error("The server is shutting down"));
+				return;
+			}
+			catch(ExecutionException e) {
+				respond(exchange, e.getCause() instanceof IllegalStateException ? 503 : 500, error("Prediction failed"));
+				return;
+			}
+			catch(TimeoutException e) {
+				result.cancel(false);
+				respond(exchange, 504, error("Prediction timed out"));
+				return;
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				respond(exchange, 503, error("Interrupted"));
+				return;
+			}
+			finally {
+				_pendingRequests.decrementAndGet();
+			}
+
+			StringBuilder json = new StringBuilder("{\"label\":").append(prediction.label)
+					.append(",\"batchSize\":").append(prediction.batchSize).append(",\"outputs\":[");
+
+			for(int i = 0; i < prediction.outputs.length; i++) {
+				json.append(i == 0 ? "" : ",").append(prediction.outputs[i]);
+			}
+
+			respond(exchange, 200, json.append("]}").toString());
+		}
+	}
+
+	// Method handling GET /health
+	private void health(HttpExchange exchange) throws IOException {
+
+		try(exchange) {
+			if(!exchange.getRequestMethod().equals("GET")) {
+				exchange.getResponseHeaders().set("Allow", "GET");
+				respond(exchange, 405, error("Use GET"));
+				return;
+			}
+
+			respond(exchange, 200, "{\"status\":\"ok\"}");
+		}
+	}
+
+	// Method to parse pixels 0 to 255 separated by commas or whitespace into unsigned bytes
+	static byte[] parsePixels(InputStream body) throws IOException {
+
+		byte[] text = body.readNBytes(MAX_BODY_BYTES + 1);
+
+		if(text.length > MAX_BODY_BYTES) {
+			throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+		}
+
+		byte[] pixels = new byte[text.length/2 + 1]; // Every pixel takes at least one digit and one separator
+		int count = 0;
+		int value = -1; // Value of the number being read, -1 between numbers
+
+		for(int i = 0; i <= text.length; i++) {
+			byte b = i < text.length ? text[i] : (byte) ',';
+
+			if(b >= '0' && b <= '9') {
+				value = value < 0 ? b - '0' : value*10 + b - '0';
+
+				if(value > 255) {
+					throw new IllegalArgumentException("Pixel " + count + " is larger than 255");
+				}
+			}
+			else if(b == ',' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+				if(value >= 0) {
+					pixels[count++] = (byte) value;
+					value = -1;
+				}
+			}
+			else {
+				throw new IllegalArgumentException("Unexpected character '" + (char) b + "' after pixel " + count);
+			}
+		}
+
+		return Arrays.copyOf(pixels, count);
+	}
+
+	// Method to send a JSON response with its status code
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	// Method to write an error message as JSON
+	private static String error(String message) {
+		return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+	}
+
+	/**
+	 * Loads a checkpoint and serves its predictions until the program is stopped, see the usage at the top of the file.
+	 *
+	 * @param args The checkpoint file, and optionally the port, largest batch size and longest wait in microseconds.
+	 */
+	public static void main(String[] args) {
+
+		if(args.length < 1 || args.length > 4) {
+			System.err.println("Usage: InferenceServer <checkpoint> [port] [maxBatchSize] [maxWaitMicros]");
+			System.exit(1);
+		}
+
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_BATCH_SIZE;
+		long maxWaitMicros = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_MAX_WAIT_MICROS;
+
+		NeuralNetwork network = NeuralNetwork.load(args[0]);
+		NetworkMetrics.register(); // Inference latency, see NetworkMetrics
+		InferenceServer server = new InferenceServer(network, new InetSocketAddress(port), maxBatchSize, maxWaitMicros);
+
+		server.start();
+		System.out.println("Serving " + args[0] + " on port " + server.getPort() + ", batches of up to " + maxBatchSize
+				+ " waiting at most " + maxWaitMicros + " us");
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * MicroBatcher: This class collects the images of concurrent prediction requests into batches, so the network runs one
+ *               inference pass for many requests instead of one per request. A request that arrives while nobody else
+ *               is waiting is run at once, and the batcher only waits for more requests, at most maxWait after the first
+ *               one of a batch arrived, while the server is still receiving others. A batch therefore grows with the
+ *               load on the server, and a lone client gets the latency of a batch of one.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import data.ImageStore;
+import data.Tensor;
+import network.NeuralNetwork;
+
+class MicroBatcher implements AutoCloseable {
+
+	private final NeuralNetwork _network; // Network the batches are run through
+	private final int _maxBatchSize; // Largest number of requests run as one batch
+	private final long _maxWaitNanos; // Longest time the first request of a batch waits for others
+	private final IntSupplier _pendingRequests; // Number of requests the server is receiving or waiting on, including queued ones
+	private final BlockingQueue<Request> _queue = new LinkedBlockingQueue<>(); // Requests waiting for a batch
+	private final Thread _worker; // Thread collecting and running the batches
+	private volatile boolean _closed;
+
+	/**
+	 * Constructor for MicroBatcher, which starts the batching thread
+	 * @param network The network, which is not trained while the batcher runs
+	 * @param maxBatchSize Largest number of requests run as one batch
+	 * @param maxWaitMicros Longest time in microseconds a request waits for others to join its batch
+	 * @param pendingRequests Number of requests the server has received but not answered yet
+	 * @throws IllegalArgumentException if maxBatchSize is less than 1 or maxWaitMicros is negative
+	 */
+	MicroBatcher(NeuralNetwork network, int maxBatchSize, long maxWaitMicros, IntSupplier pendingRequests) {
+
+		if(maxBatchSize < 1 || maxWaitMicros < 0) {
+			throw new IllegalArgumentException("Invalid batch size " + maxBatchSize + " or wait " + maxWaitMicros + " us");
+		}
+
+		this._network = network;
+		this._maxBatchSize = maxBatchSize;
+		this._maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+		this._pendingRequests = pendingRequests;
+
+		// Daemon thread, so a batcher that is not closed does not keep the program running
+		_worker = new Thread(this::run, "micro-batcher");
+		_worker.setDaemon(true);
+		_worker.start();
+	}
+
+	/**
+	 * Queues an image to be predicted in the next batch.
+	 *
+	 * @param pixels The pixels of the image row by row as unsigned bytes, as many as the network's input.
+	 * @return A future completed with the prediction once the image's batch has run.
+	 * @throws IllegalArgumentException if the number of pixels does not match the network's input.
+	 * @throws IllegalStateException if the batcher has been closed.
+	 */
+	CompletableFuture<Prediction> submit(byte[] pixels) {
+
+		if(pixels.length != _network.getInputElements()) {
+			throw new IllegalArgumentException("Expected " + _network.getInputElements() + " pixels, got " + pixels.length);
+		}
+		if(_closed) {
+			throw new IllegalStateException("The micro-batcher has been closed");
+		}
+
+		Request request = new Request(pixels, System.nanoTime());
+		_queue.add(request);
+
+		// The batcher may have been closed between the check and the add, after close failed the queued requests. The
+		// request is failed here unless close or the worker has already taken it, so its future always completes
+		if(_closed && _queue.remove(request)) {
+			request.result.completeExceptionally(new IllegalStateException("The micro-batcher has been closed"));
+		}
+
+		return request.result;
+	}
+
+	/**
+	 * Stops the batching thread, failing the requests that have not been run yet.
+	 */
+	@Override
+	public void close() {
+
+		_closed = true;
+		_worker.interrupt();
+
+		try {
+			_worker.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for(Request request; (request = _queue.poll()) != null;) {
+			request.result.completeExceptionally(new IllegalStateException("The micro-batcher has been closed"));
+		}
+	}
+
+	// Method run by the batching thread, collecting a batch and running it until the batcher is closed
+	private void run() {
+
+		List<Request> batch = new ArrayList<>(_maxBatchSize);
+
+		try {
+			while(!_closed) {
+				batch.add(_queue.take());
+				_queue.drainTo(batch, _maxBatchSize - batch.size());
+
+				// Wait for more requests only while the server has received some that are not queued yet
+				long deadline = batch.get(0).arrival + _maxWaitNanos;
+
+				while(batch.size() < _maxBatchSize && _pendingRequests.getAsInt() > batch.size()) {
+					long remaining = deadline - System.nanoTime();
+					Request next = remaining > 0 ? _queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+
+					if(next == null) {
+						break;
+					}
+
+					batch.add(next);
+					_queue.drainTo(batch, _maxBatchSize - batch.size());
+				}
+
+				runBatch(batch);
+				batch.clear();
+			}
+		}
+		catch(InterruptedException e) {
+			// Closed while waiting, the requests of the batch being collected are failed with the queued ones
+			for(Request request : batch) {
+				request.result.completeExceptionally(new IllegalStateException("The micro-batcher has been closed"));
+			}
+		}
+	}
+
+	// Method to run the images of a batch through the network as one tensor and complete their futures
+	private void runBatch(List<Request> batch) {
+
+		int size = batch.size();
+		int elements = _network.getInputElements();
+		byte[] pixels = new byte[size*elements];
+
+		for(int i = 0; i < size; i++) {
+			System.arraycopy(batch.get(i).pixels, 0, pixels, i*elements, elements);
+		}
+
+		try {
+			// The first layer reshapes every image to its input shape, so the images are stored as single rows
+			Tensor outputs = _network.infer(new ImageStore(size, 1, elements, pixels, new byte[size]), 0, size);
+
+			for(int i = 0; i < size; i++) {
+				batch.get(i).result.complete(new Prediction(_network.guess(outputs, i), sampleValues(outputs, i), size));
+			}
+		}
+		catch(RuntimeException e) {
+			for(Request request : batch) {
+				request.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	// Method to copy the outputs of one sample as doubles, whatever the network's precision
+	private static double[] sampleValues(Tensor outputs, int n) {
+
+		double[] values = new double[outputs.getSampleSize()];
+		int offset = outputs.matrixOffset(n, 0);
+
+		for(int i = 0; i < values.length; i++) {
+			values[i] = outputs.isFloat() ? outputs.getFloatData()[offset + i] : outputs.getData()[offset + i];
+		}
+
+		return values;
+	}
+
+	// A queued image with the time it arrived and the future of its prediction
+	private static final class Request {
+
+		final byte[] pixels;
+		final long arrival;
+		final CompletableFuture<Prediction> result = new CompletableFuture<>();
+
+		Request(byte[] pixels, long arrival) {
+			this.pixels = pixels;
+			this.arrival = arrival;
+		}
+	}
+
+	/**
+	 * The prediction for one image, with the outputs of the network and the size of the batch it was run in.
+	 */
+	static final class Prediction {
+
+		final int label;
+		final double[] outputs;
+		final int batchSize;
+
+		Prediction(int label, double[] outputs, int batchSize) {
+			this.label = label;
+			this.outputs = outputs;
+			this.batchSize = batchSize;
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+/*
+ * AllocationBudgetCheck: This class measures the bytes the training and inference hot paths allocate on the heap and
+ *                        checks them against budgets, so allocations removed from the layers, such as temporary
+ *                        matrices and flipped filters, cannot creep back unnoticed. The allocations of the thread are
+ *                        read with com.sun.management.ThreadMXBean.getThreadAllocatedBytes around the measured code,
+ *                        after warm-up epochs have sized the workspaces and compiled the code, on a SyntheticDataset.
+ *
+ *                        Training is measured per sample: NeuralNetwork.train(Dataset, int) as a whole, and every
+ *                        layer's forward, backward and applyGradients driven batch by batch like the network does.
+ *                        Inference is measured per call: NeuralNetwork.guess(Image) as a whole, and every layer's
+ *                        inferLayer on one image. The budgets are named train and guess for the whole network and
+ *                        LayerClass.train and LayerClass.infer for every layer of a class, in bytes, and the program
+ *                        exits with status 1 if any of them is exceeded. Every precision is checked against its own
+ *                        budgets unless --precision picks one, and a --budget replaces a budget of every precision
+ *                        checked. mvn verify runs the check with its defaults.
+ *
+ *                        Usage: AllocationBudgetCheck [--variant mnist] [--images 1024] [--batch 32] [--warmup-epochs 3]
+ *                               [--precision all] [--budget name=bytes]...
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import data.Image;
+import data.ImageStore;
+import data.Precision;
+import data.SyntheticDataset;
+import data.Tensor;
+import layers.Layer;
+import network.NeuralNetwork;
+
+public class AllocationBudgetCheck {
+
+	// Seed of the dataset and the weights
+	private static final long SEED = 123;
+
+	// Budgets in bytes of every precision when none is given on the command line, those of the MNIST network with about 10%
+	// of room. Training reuses the workspaces of the layers and the network, what is left are small objects of every batch
+	// such as reshaped views of tensors, the same in every precision. Inference allocates its activations on every call, so
+	// several threads can run it at once, and their size depends on the precision: FLOAT_DOUBLE_ACCUMULATION also allocates
+	// the double sums of the convolutions and the fully connected layer
+	static final Map<Precision, Map<String, Long>> DEFAULT_BUDGETS = Map.of(
+			Precision.DOUBLE, budgets(47104, 32768, 7168, 384),
+			Precision.FLOAT, budgets(24576, 17408, 3840, 384),
+			Precision.FLOAT_DOUBLE_ACCUMULATION, budgets(55296, 48128, 3840, 384));
+
+	private final com.sun.management.ThreadMXBean _threads; // Allocation counters of the threads
+	private final long _thread; // Id of the measuring thread
+	private final long _overhead; // Bytes allocated by reading the counter itself, subtracted from every measurement
+
+	/**
+	 * Bytes allocated by one hot path, per sample or per call, and its budget.
+	 */
+	static final class Measurement {
+
+		final String name;
+		final double bytes;
+		final long budget;
+
+		Measurement(String name, double bytes, long budget) {
+			this.name = name;
+			this.bytes = bytes;
+			this.budget = budget;
+		}
+
+		boolean isWithinBudget() {
+			return bytes <= budget;
+		}
+	}
+
+	/**
+	 * Constructor for AllocationBudgetCheck, enabling the allocation counters of the threads.
+	 *
+	 * @throws UnsupportedOperationException if the JVM cannot count the bytes allocated by a thread.
+	 */
+	AllocationBudgetCheck() {
+
+		if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+				|| !threads.isThreadAllocatedMemorySupported()) {
+			throw new UnsupportedOperationException("This JVM cannot count the bytes allocated by a thread");
+		}
+
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		_threads = threads;
+		_thread = Thread.currentThread().threadId();
+
+		// The smallest of many empty measurements, the counter's own allocation if it has any
+		long overhead = Long.MAX_VALUE;
+
+		for(int i = 0; i < 1000; i++) {
+			overhead = Math.min(overhead, allocated() - allocated());
+		}
+
+		_overhead = -overhead;
+	}
+
+	// Method to get the bytes the measuring thread has allocated since it started
+	private long allocated() {
+		return _threads.getThreadAllocatedBytes(_thread);
+	}
+
+	// Method to get the bytes the measuring thread has allocated since start, a value returned by allocated()
+	private long allocatedSince(long start) {
+		return Math.max(0, allocated() - start - _overhead);
+	}
+
+	/**
+	 * Measures every hot path of a network.
+	 *
+	 * @param net The network, trained on the data during the measurements.
+	 * @param data The training images.
+	 * @param batchSize Number of images per weight update.
+	 * @param warmupEpochs Number of epochs trained and passes of guess over the images before measuring.
+	 * @param budgets Budgets in bytes by name, see the top of the file.
+	 * @return The measurements, the whole network first and then the layers in the order of the network.
+	 * @throws IllegalArgumentException if a hot path has no budget.
+	 */
+	List<Measurement> run(NeuralNetwork net, ImageStore data, int batchSize, int warmupEpochs, Map<String, Long> budgets) {
+
+		List<Image> images = data.images();
+
+		for(int epoch = 0; epoch < warmupEpochs; epoch++) {
+			net.train(data, batchSize);
+			trainLayers(net, data, batchSize, null);
+
+			for(Image image : images) {
+				net.guess(image);
+			}
+
+			inferLayers(net, data, null);
+		}
+
+		List<Measurement> measurements = new ArrayList<>();
+
+		long start = allocated();
+		net.train(data, batchSize);
+		measurements.add(measurement("train", (double) allocatedSince(start)/data.size(), budgets));
+
+		long bytes = 0;
+
+		for(Image image : images) {
+			start = allocated();
+			net.guess(image);
+			bytes += allocatedSince(start);
+		}
+
+		measurements.add(measurement("guess", (double) bytes/images.size(), budgets));
+
+		List<Layer> layers = net.getLayers();
+		long[] trainBytes = new long[layers.size()];
+		long[] inferBytes = new long[layers.size()];
+
+		trainLayers(net, data, batchSize, trainBytes);
+		inferLayers(net, data, inferBytes);
+
+		for(int i = 0; i < layers.size(); i++) {
+			String layer = layers.get(i).getClass().getSimpleName();
+
+			measurements.add(measurement(i + " " + layer + ".train", layer + ".train", (double) trainBytes[i]/data.size(), budgets));
+			measurements.add(measurement(i + " " + layer + ".infer", layer + ".infer", (double) inferBytes[i]/data.size(), budgets));
+		}
+
+		return measurements;
+	}
+
+	// Method to train the layers of a network for an epoch batch by batch like NeuralNetwork.train, adding the bytes every layer
+	// allocates to its element of bytes, which may be null to only warm up
+	private void trainLayers(NeuralNetwork net, ImageStore data, int batchSize, long[] bytes) {
+
+		List<Layer> layers = net.getLayers();
+		Precision precision = net.getPrecision();
+		Tensor input = null;
+		Tensor errors = null;
+
+		for(int from = 0; from < data.size(); from += batchSize) {
+			int to = Math.min(from + batchSize, data.size());
+
+			input = Tensor.workspace(input, precision, to - from, 1, data.getRows(), data.getCols());
+			pack(data, from, to, net.getScaleFactor(), input);
+
+			Tensor out = input;
+
+			for(int i = 0; i < layers.size(); i++) {
+				long start = allocated();
+				out = layers.get(i).forward(out);
+				add(bytes, i, allocatedSince(start));
+			}
+
+			// Errors of the output against the labels, as NeuralNetwork.getErrors computes them
+			errors = Tensor.workspace(errors, precision, to - from, 1, 1, out.getSampleSize());
+
+			for(int n = 0; n < to - from; n++) {
+				for(int j = 0; j < out.getSampleSize(); j++) {
+					double expected = j == data.getLabel(from + n) ? 1 : 0;
+
+					if(errors.isFloat()) {
+						errors.getFloatData()[errors.matrixOffset(n, 0) + j] = (float) (out.getFloatData()[out.matrixOffset(n, 0) + j] - expected);
+					}
+					else {
+						errors.getData()[errors.matrixOffset(n, 0) + j] = out.getData()[out.matrixOffset(n, 0) + j] - expected;
+					}
+				}
+			}
+
+			Tensor dLdO = errors;
+
+			for(int i = layers.size() - 1; i >= 0; i--) {
+				long start = allocated();
+				dLdO = layers.get(i).backward(dLdO);
+				add(bytes, i, allocatedSince(start));
+			}
+
+			for(int i = 0; i < layers.size(); i++) {
+				long start = allocated();
+				layers.get(i).applyGradients(to - from);
+				add(bytes, i, allocatedSince(start));
+			}
+		}
+	}
+
+	// Method to run every image through the inference pass of the layers of a network one at a time like NeuralNetwork.guess,
+	// adding the bytes every layer allocates to its element of bytes, which may be null to only warm up
+	private void inferLayers(NeuralNetwork net, ImageStore data, long[] bytes) {
+
+		List<Layer> layers = net.getLayers();
+		Tensor input = new Tensor(net.getPrecision(), 1, 1, data.getRows(), data.getCols());
+
+		for(int index = 0; index < data.size(); index++) {
+			pack(data, index, index + 1, net.getScaleFactor(), input);
+
+			Tensor out = input;
+
+			for(int i = 0; i < layers.size(); i++) {
+				long start = allocated();
+				out = layers.get(i).inferLayer(out);
+				add(bytes, i, allocatedSince(start));
+			}
+		}
+	}
+
+	// Method to copy the pixels, divided by the scale factor, of the images from..to-1 into a tensor with one sample per image
+	private static void pack(ImageStore data, int from, int to, double scaleFactor, Tensor input) {
+		for(int n = 0; n < to - from; n++) {
+			if(input.isFloat()) {
+				data.copyPixels(from + n, scaleFactor, input.getFloatData(), input.matrixOffset(n, 0));
+			}
+			else {
+				data.copyPixels(from + n, scaleFactor, input.getData(), input.matrixOffset(n, 0));
+			}
+		}
+	}
+
+	// Method to add to an element of an array which may be null
+	private static void add(long[] bytes, int i, long value) {
+		if(bytes != null) {
+			bytes[i] += value;
+		}
+	}
+
+	// Method to make the budgets of a precision, which share the training budgets of every precision
+	private static Map<String, Long> budgets(long guess, long convolutionInfer, long maxPoolInfer, long fullyConnectedInfer) {
+		return Map.of(
+				"train", 32L,
+				"guess", guess,
+				"ConvolutionLayer.train", 16L,
+				"ConvolutionLayer.infer", convolutionInfer,
+				"MaxPoolLayer.train", 16L,
+				"MaxPoolLayer.infer", maxPoolInfer,
+				"FullyConnectedLayer.train", 16L,
+				"FullyConnectedLayer.infer", fullyConnectedInfer);
+	}
+
+	// Method to make the measurement of a hot path whose budget has its name
+	private static Measurement measurement(String name, double bytes, Map<String, Long> budgets) {
+		return measurement(name, name, bytes, budgets);
+	}
+
+	// Method to make the measurement of a hot path with the given budget
+	private static Measurement measurement(String name, String budget, double bytes, Map<String, Long> budgets) {
+
+		if(!budgets.containsKey(budget)) {
+			throw new IllegalArgumentException("No allocation budget for " + budget + ", give one with --budget " + budget + "=bytes");
+		}
+
+		return new Measurement(name, bytes, budgets.get(budget));
+	}
+
+	/**
+	 * Runs the check, see the usage at the top of the file.
+	 *
+	 * @param args The options, each a --name followed by its value.
+	 */
+	public static void main(String[] args) {
+
+		Map<String, String> options = new HashMap<>(Map.of("variant", "mnist", "images", "1024", "batch", "32",
+				"warmup-epochs", "3", "precision", "all"));
+		Map<String, Long> overrides = new HashMap<>(); // Budgets given on the command line, replacing those of every precision
+
+		for(int i = 0; i < args.length; i += 2) {
+			String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+			String value = i + 1 < args.length ? args[i + 1] : null;
+
+			if(value == null || !(options.containsKey(name) || name.equals("budget") && value.matches("[\\w.]+=\\d+"))) {
+				System.err.println("Usage: AllocationBudgetCheck [--variant mnist] [--images 1024] [--batch 32] [--warmup-epochs 3]");
+				System.err.println("       [--precision all] [--budget name=bytes]...");
+
+				for(Precision precision : Precision.values()) {
+					System.err.println("Budgets of " + precision + ": " + new TreeMap<>(DEFAULT_BUDGETS.get(precision)));
+				}
+
+				System.exit(2);
+			}
+
+			if(name.equals("budget")) {
+				overrides.put(value.substring(0, value.indexOf('=')), Long.parseLong(value.substring(value.indexOf('=') + 1)));
+			}
+			else {
+				options.put(name, value);
+			}
+		}
+
+		String variant = options.get("variant");
+		int size = TrainingThroughputBenchmark.inputSize(variant);
+		ImageStore data = SyntheticDataset.generate(Integer.parseInt(options.get("images")), size, size, SEED);
+		List<Precision> precisions = options.get("precision").equals("all") ? List.of(Precision.values())
+				: List.of(Precision.valueOf(options.get("precision")));
+
+		AllocationBudgetCheck check = new AllocationBudgetCheck();
+		boolean passed = true;
+
+		for(Precision precision : precisions) {
+			Map<String, Long> budgets = new HashMap<>(DEFAULT_BUDGETS.get(precision));
+			budgets.putAll(overrides);
+
+			NeuralNetwork net = TrainingThroughputBenchmark.build(variant, precision);
+			List<Measurement> measurements = check.run(net, data, Integer.parseInt(options.get("batch")),
+					Integer.parseInt(options.get("warmup-epochs")), budgets);
+
+			for(Measurement measurement : measurements) {
+				passed &= measurement.isWithinBudget();
+
+				System.out.printf(Locale.ROOT, "%-25s %-28s %10.1f bytes/%-6s budget %8d %s%n", precision, measurement.name,
+						measurement.bytes, measurement.name.endsWith("train") ? "sample" : "call", measurement.budget,
+						measurement.isWithinBudget() ? "ok" : "OVER BUDGET");
+			}
+		}
+
+		if(!passed) {
+			System.exit(1);
+		}
+	}
+
+}
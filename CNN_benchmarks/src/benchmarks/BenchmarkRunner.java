@@ -0,0 +1,42 @@
+/*
+ * BenchmarkRunner: This class runs the benchmarks whose names match the given regular expressions, all of them without
+ *                  arguments, with the GC profiler, so every result is reported in operations per second together with
+ *                  the bytes allocated per operation and the allocation rate.
+ *
+ *                  Usage: java -jar target/benchmarks.jar [regex...]
+ *                  The standard JMH command line, with any profiler, is available through org.openjdk.jmh.Main.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+	/**
+	 * Runs the benchmarks, see the usage at the top of the file.
+	 *
+	 * @param args Regular expressions selecting the benchmarks by name, all benchmarks of this package if none are given.
+	 * @throws RunnerException if a benchmark fails.
+	 */
+	public static void main(String[] args) throws RunnerException {
+
+		ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+
+		if(args.length == 0) {
+			options.include(BenchmarkRunner.class.getPackageName() + "\\.");
+		}
+
+		for(String regex : args) {
+			options.include(regex);
+		}
+
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * ConvolutionLayerBenchmark: This class measures the forward, inference and backward passes of a ConvolutionLayer, the
+ *                            convolve, im2col and fullConvolve kernels, for a range of filter sizes, filter counts, steps
+ *                            and input sizes. The layer is given a previous layer, so backward computes the errors for
+ *                            the input with fullConvolve and the dense kernels are measured rather than the sparse
+ *                            kernels of a first layer.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Precision;
+import data.Tensor;
+import layers.ConvolutionEngine;
+import layers.ConvolutionLayer;
+import layers.MaxPoolLayer;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ConvolutionLayerBenchmark {
+
+	@Param({"3", "5", "8"})
+	int filterSize;
+
+	@Param({"8", "16"})
+	int numFilters;
+
+	@Param({"1", "2"})
+	int stepSize;
+
+	@Param({"28"})
+	int inputSize;
+
+	@Param({"32"})
+	int batchSize;
+
+	@Param({"DIRECT", "IM2COL"})
+	ConvolutionEngine engine;
+
+	@Param({"DOUBLE", "FLOAT"})
+	Precision precision;
+
+	private ConvolutionLayer _layer; // Layer being measured
+	private Tensor _input; // Random input images
+	private Tensor _dLdO; // Random errors of the layer's output
+
+	@Setup
+	public void setUp() {
+
+		_layer = new ConvolutionLayer(filterSize, stepSize, 1, inputSize, inputSize, Inputs.SEED, numFilters, 0.1, engine, precision);
+
+		// Any previous layer makes backward compute the errors for the input
+		_layer.set_previousLayer(new MaxPoolLayer(1, 1, 1, inputSize, inputSize, precision));
+
+		_input = Inputs.random(precision, batchSize, 1, inputSize, inputSize);
+		_dLdO = Inputs.random(precision, batchSize, _layer.getOutputLength(), _layer.getOutputRows(), _layer.getOutputCols());
+
+		// backward uses the input cached by the last forward pass
+		_layer.forward(_input);
+	}
+
+	@Benchmark
+	public Tensor forward() {
+		return _layer.forward(_input);
+	}
+
+	@Benchmark
+	public Tensor infer() {
+		return _layer.inferLayer(_input);
+	}
+
+	@Benchmark
+	public Tensor backward() {
+		return _layer.backward(_dLdO);
+	}
+
+}
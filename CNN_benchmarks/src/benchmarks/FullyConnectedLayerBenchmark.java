@@ -0,0 +1,84 @@
+/*
+ * FullyConnectedLayerBenchmark: This class measures the forward, inference and backward passes of a FullyConnectedLayer,
+ *                               the weighted sums and the weight and input gradients, for a range of input and output
+ *                               sizes. Like ConvolutionLayerBenchmark it gives the layer a previous layer and dense
+ *                               inputs, so the dense kernels are measured.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Precision;
+import data.Tensor;
+import layers.FullyConnectedLayer;
+import layers.MaxPoolLayer;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FullyConnectedLayerBenchmark {
+
+	@Param({"800", "3528"})
+	int inLength;
+
+	@Param({"10", "128"})
+	int outLength;
+
+	@Param({"32"})
+	int batchSize;
+
+	@Param({"DOUBLE", "FLOAT"})
+	Precision precision;
+
+	private FullyConnectedLayer _layer; // Layer being measured
+	private Tensor _input; // Random input neurons
+	private Tensor _dLdO; // Random errors of the layer's output
+
+	@Setup
+	public void setUp() {
+
+		_layer = new FullyConnectedLayer(inLength, outLength, Inputs.SEED, 0.1, precision);
+
+		// Any previous layer makes backward compute the errors for the input
+		_layer.set_previousLayer(new MaxPoolLayer(1, 1, 1, 1, inLength, precision));
+
+		_input = Inputs.random(precision, batchSize, 1, 1, inLength);
+		_dLdO = Inputs.random(precision, batchSize, 1, 1, outLength);
+
+		// backward uses the input and weighted sums cached by the last forward pass
+		_layer.forward(_input);
+	}
+
+	@Benchmark
+	public Tensor forward() {
+		return _layer.forward(_input);
+	}
+
+	@Benchmark
+	public Tensor infer() {
+		return _layer.inferLayer(_input);
+	}
+
+	@Benchmark
+	public Tensor backward() {
+		return _layer.backward(_dLdO);
+	}
+
+}
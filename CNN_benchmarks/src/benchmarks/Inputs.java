@@ -0,0 +1,49 @@
+/*
+ * Inputs: This class creates the seeded random tensors the benchmarks feed to the layers, so every run of a benchmark
+ *         works on the same values.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.util.Random;
+
+import data.Precision;
+import data.Tensor;
+
+final class Inputs {
+
+	// Seed of the random values and of the layers' initial weights
+	static final long SEED = 123;
+
+	private Inputs() {
+	}
+
+	/**
+	 * Creates a tensor of random values between 0 and 1.
+	 *
+	 * @param precision Precision of the tensor.
+	 * @param batch Number of samples.
+	 * @param length Number of feature maps per sample.
+	 * @param rows Number of rows of every feature map.
+	 * @param cols Number of columns of every feature map.
+	 * @return The tensor.
+	 */
+	static Tensor random(Precision precision, int batch, int length, int rows, int cols) {
+
+		Tensor tensor = new Tensor(precision, batch, length, rows, cols);
+		Random random = new Random(SEED);
+
+		for(int i = 0; i < tensor.size(); i++) {
+			if(tensor.isFloat()) {
+				tensor.getFloatData()[i] = random.nextFloat();
+			}
+			else {
+				tensor.getData()[i] = random.nextDouble();
+			}
+		}
+
+		return tensor;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * MatrixUtilityBenchmark: This class measures the element-wise operations of MatrixUtility on matrices and vectors,
+ *                         and the conversions between lists of matrices and tensors, Tensor.fromMatrices and
+ *                         Tensor.toMatrices, which replaced the layers' matrixToVector and vectorToMatrix.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.MatrixUtility;
+import data.Precision;
+import data.Tensor;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixUtilityBenchmark {
+
+	@Param({"28", "128"})
+	int size;
+
+	@Param({"8"})
+	int numMaps;
+
+	private double[][] _a; // Random size x size matrices
+	private double[][] _b;
+	private double[] _vectorA; // The matrices' values row by row
+	private double[] _vectorB;
+	private double[] _out; // Buffer receiving a scaled matrix
+	private Tensor _maps; // Random numMaps x size x size feature maps of one sample
+	private List<double[][]> _matrices; // The same feature maps as matrices
+
+	@Setup
+	public void setUp() {
+
+		Tensor random = Inputs.random(Precision.DOUBLE, 2, 1, size, size);
+
+		_a = random.toMatrices(0).get(0);
+		_b = random.toMatrices(1).get(0);
+		_vectorA = random.sample(0).copy().getData();
+		_vectorB = random.sample(1).copy().getData();
+		_out = new double[size*size];
+
+		_maps = Inputs.random(Precision.DOUBLE, 1, numMaps, size, size);
+		_matrices = _maps.toMatrices(0);
+	}
+
+	@Benchmark
+	public double[][] addMatrices() {
+		return MatrixUtility.add(_a, _b);
+	}
+
+	@Benchmark
+	public double[][] multiplyMatrix() {
+		return MatrixUtility.multiply(_a, 0.5);
+	}
+
+	@Benchmark
+	public double[] multiplyMatrixInto() {
+		MatrixUtility.multiply(_a, 0.5, _out, 0);
+		return _out;
+	}
+
+	@Benchmark
+	public double[] addVectors() {
+		return MatrixUtility.add(_vectorA, _vectorB);
+	}
+
+	@Benchmark
+	public double[] addVectorsInPlace() {
+		MatrixUtility.addInPlace(_vectorA, _vectorB);
+		return _vectorA;
+	}
+
+	@Benchmark
+	public double[] multiplyVectorInPlace() {
+		MatrixUtility.multiplyInPlace(_vectorA, 1.0);
+		return _vectorA;
+	}
+
+	@Benchmark
+	public Tensor matricesToTensor() {
+		return Tensor.fromMatrices(_matrices);
+	}
+
+	@Benchmark
+	public List<double[][]> tensorToMatrices() {
+		return _maps.toMatrices(0);
+	}
+
+}
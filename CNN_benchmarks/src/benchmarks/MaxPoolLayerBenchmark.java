@@ -0,0 +1,84 @@
+/*
+ * MaxPoolLayerBenchmark: This class measures the forward, inference and backward passes of a MaxPoolLayer, the pool
+ *                        kernel and the routing of the errors to the maximum of every window, for a range of window
+ *                        sizes, steps and input sizes.
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Precision;
+import data.Tensor;
+import layers.MaxPoolLayer;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MaxPoolLayerBenchmark {
+
+	@Param({"2", "3"})
+	int windowSize;
+
+	@Param({"1", "2"})
+	int stepSize;
+
+	@Param({"8"})
+	int numMaps;
+
+	@Param({"21", "24"})
+	int inputSize;
+
+	@Param({"32"})
+	int batchSize;
+
+	@Param({"DOUBLE", "FLOAT"})
+	Precision precision;
+
+	private MaxPoolLayer _layer; // Layer being measured
+	private Tensor _input; // Random input feature maps
+	private Tensor _dLdO; // Random errors of the layer's output
+
+	@Setup
+	public void setUp() {
+
+		_layer = new MaxPoolLayer(stepSize, windowSize, numMaps, inputSize, inputSize, precision);
+		_input = Inputs.random(precision, batchSize, numMaps, inputSize, inputSize);
+		_dLdO = Inputs.random(precision, batchSize, numMaps, _layer.getOutputRows(), _layer.getOutputCols());
+
+		// backward uses the positions of the maxima found by the last forward pass
+		_layer.forward(_input);
+	}
+
+	@Benchmark
+	public Tensor forward() {
+		return _layer.forward(_input);
+	}
+
+	@Benchmark
+	public Tensor infer() {
+		return _layer.inferLayer(_input);
+	}
+
+	@Benchmark
+	public Tensor backward() {
+		return _layer.backward(_dLdO);
+	}
+
+}
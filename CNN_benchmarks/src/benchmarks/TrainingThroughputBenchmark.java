@@ -0,0 +1,396 @@
+/*
+ * TrainingThroughputBenchmark: This class measures the end-to-end training and inference throughput of the network
+ *                              of ConvolutionalNeuralNetwork.run and of larger variants of it. Every variant is trained
+ *                              on a SyntheticDataset generated in memory, so no CSV files are needed and every run sees
+ *                              the same images, with the same ParallelTrainer and DataPipeline as run. The results are
+ *                              written as JSON and can be compared with a baseline written by an earlier run, in which
+ *                              case the program exits with status 1 if a throughput fell by more than the tolerance.
+ *                              The reference results are committed as CNN_benchmarks/baseline.json, see the README.
+ *                              Given a baseline, --threads defaults to the number of threads it was measured with.
+ *
+ *                              Usage: TrainingThroughputBenchmark [--variants mnist,wide,deep,large] [--images 6000]
+ *                                     [--test-images 2000] [--epochs 2] [--warmup-epochs 1] [--batch 32]
+ *                                     [--threads cores] [--precision DOUBLE] [--output results.json]
+ *                                     [--baseline baseline.json] [--tolerance 0.1]
+ * Author: Max Ceban
+ * Date: 18/10/2026
+ */
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import data.DataPipeline;
+import data.ImageStore;
+import data.Precision;
+import data.SyntheticDataset;
+import network.NetworkBuilder;
+import network.NeuralNetwork;
+import network.ParallelTrainer;
+
+public class TrainingThroughputBenchmark {
+
+	// Seed of the datasets, the weights and the shuffles, and the scale factor of ConvolutionalNeuralNetwork.run
+	private static final long SEED = 123;
+	private static final double SCALE_FACTOR = 256 * 100;
+
+	// Number of measured inference passes over the test images
+	private static final int INFERENCE_PASSES = 3;
+
+	// Variants of the network, the first one is the network of ConvolutionalNeuralNetwork.run
+	static final List<String> VARIANTS = List.of("mnist", "wide", "deep", "large");
+
+	/**
+	 * The throughput measured for one variant.
+	 */
+	static final class Result {
+
+		final String variant;
+		final double trainImagesPerSecond;
+		final double inferImagesPerSecond;
+		final double epochMillis;
+		final long peakHeapBytes;
+
+		Result(String variant, double trainImagesPerSecond, double inferImagesPerSecond, double epochMillis, long peakHeapBytes) {
+			this.variant = variant;
+			this.trainImagesPerSecond = trainImagesPerSecond;
+			this.inferImagesPerSecond = inferImagesPerSecond;
+			this.epochMillis = epochMillis;
+			this.peakHeapBytes = peakHeapBytes;
+		}
+	}
+
+	/**
+	 * Builds a variant of the network.
+	 *
+	 * @param variant One of VARIANTS: mnist is the network of ConvolutionalNeuralNetwork.run, wide has 32 filters,
+	 *                deep adds a second convolution and pooling and large takes 56x56 images.
+	 * @param precision Precision of the network.
+	 * @return The network, whose input size is given by inputSize.
+	 * @throws IllegalArgumentException if the variant is unknown.
+	 */
+	static NeuralNetwork build(String variant, Precision precision) {
+
+		int size = inputSize(variant);
+		NetworkBuilder builder = new NetworkBuilder(size, size, SCALE_FACTOR, precision);
+
+		switch(variant) {
+			case "mnist", "large" -> {
+				builder.addConvolutionLayer(8, 8, 1, 0.1, SEED);
+				builder.addMaxPoolLayer(3, 2);
+			}
+			case "wide" -> {
+				builder.addConvolutionLayer(32, 8, 1, 0.1, SEED);
+				builder.addMaxPoolLayer(3, 2);
+			}
+			case "deep" -> {
+				builder.addConvolutionLayer(8, 5, 1, 0.1, SEED);
+				builder.addMaxPoolLayer(2, 2);
+				builder.addConvolutionLayer(16, 3, 1, 0.1, SEED);
+				builder.addMaxPoolLayer(2, 2);
+			}
+			default -> throw new IllegalArgumentException("Unknown variant " + variant + ", expected one of " + VARIANTS);
+		}
+
+		builder.addFullyConnectedLayer(10, 0.1, SEED);
+
+		return builder.build();
+	}
+
+	// Method to get the number of rows and columns of the images of a variant
+	static int inputSize(String variant) {
+		return variant.equals("large") ? 56 : 28;
+	}
+
+	/**
+	 * Trains and tests one variant, measuring its throughput.
+	 *
+	 * @param variant The variant, see build.
+	 * @param options The command line options.
+	 * @return The measured throughput.
+	 */
+	static Result run(String variant, Map<String, String> options) {
+
+		int images = Integer.parseInt(options.get("images"));
+		int testImages = Integer.parseInt(options.get("test-images"));
+		int epochs = Integer.parseInt(options.get("epochs"));
+		int warmupEpochs = Integer.parseInt(options.get("warmup-epochs"));
+		int batchSize = Integer.parseInt(options.get("batch"));
+		int threads = Integer.parseInt(options.get("threads"));
+		Precision precision = Precision.valueOf(options.get("precision"));
+
+		int size = inputSize(variant);
+		ImageStore train = SyntheticDataset.generate(images, size, size, SEED);
+		ImageStore test = SyntheticDataset.generate(testImages, size, size, SEED, images);
+		NeuralNetwork net = build(variant, precision);
+
+		System.gc();
+		resetPeakHeap();
+
+		long trainNanos = 0;
+
+		try(ParallelTrainer trainer = new ParallelTrainer(net, threads)) {
+			for(int epoch = 0; epoch < warmupEpochs + epochs; epoch++) {
+				long start = System.nanoTime();
+
+				try(DataPipeline pipeline = DataPipeline.fromDataset(train, batchSize, train.size(), SEED + epoch, SCALE_FACTOR, precision)) {
+					trainer.train(pipeline);
+				}
+
+				if(epoch >= warmupEpochs) {
+					trainNanos += System.nanoTime() - start;
+				}
+			}
+		}
+
+		// The first pass warms up the inference code, the fastest of the following passes is kept as it is the least
+		// disturbed by the garbage collector and other programs
+		int[] labels = new int[test.size()];
+		net.predictBatch(test, 0, test.size(), labels);
+
+		long inferNanos = Long.MAX_VALUE;
+
+		for(int pass = 0; pass < INFERENCE_PASSES; pass++) {
+			long start = System.nanoTime();
+			net.predictBatch(test, 0, test.size(), labels);
+			inferNanos = Math.min(inferNanos, System.nanoTime() - start);
+		}
+
+		return new Result(variant, (double) images*epochs/trainNanos*1e9, (double) testImages/inferNanos*1e9,
+				trainNanos/1e6/epochs, peakHeap());
+	}
+
+	// Method to reset the peak usage of the heap's memory pools
+	private static void resetPeakHeap() {
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	// Method to get the peak heap usage since the last reset, the sum of the peaks of the heap's memory pools
+	private static long peakHeap() {
+
+		long peak = 0;
+
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		return peak;
+	}
+
+	/**
+	 * Writes the results and the options they were measured with as JSON.
+	 *
+	 * @param results The results.
+	 * @param options The command line options.
+	 * @return The JSON text.
+	 */
+	static String toJson(List<Result> results, Map<String, String> options) {
+
+		StringBuilder json = new StringBuilder("{\n");
+
+		json.append(String.format(Locale.ROOT, "  \"precision\": \"%s\",%n  \"threads\": %s,%n  \"images\": %s,%n  \"testImages\": %s,%n"
+				+ "  \"epochs\": %s,%n  \"batchSize\": %s,%n  \"results\": [%n", options.get("precision"), options.get("threads"),
+				options.get("images"), options.get("test-images"), options.get("epochs"), options.get("batch")));
+
+		for(int i = 0; i < results.size(); i++) {
+			Result result = results.get(i);
+
+			json.append(String.format(Locale.ROOT, "    {\"variant\": \"%s\", \"trainImagesPerSecond\": %.1f, \"inferImagesPerSecond\": %.1f, "
+					+ "\"epochMillis\": %.1f, \"peakHeapBytes\": %d}%s%n", result.variant, result.trainImagesPerSecond,
+					result.inferImagesPerSecond, result.epochMillis, result.peakHeapBytes, i < results.size() - 1 ? "," : ""));
+		}
+
+		return json.append("  ]\n}\n").toString();
+	}
+
+	/**
+	 * Reads the results of a JSON file written by toJson.
+	 *
+	 * @param json The JSON text.
+	 * @return The results by variant.
+	 * @throws IllegalArgumentException if a result is missing a value.
+	 */
+	static Map<String, Result> parseResults(String json) {
+
+		Map<String, Result> results = new HashMap<>();
+		Matcher object = Pattern.compile("\\{\\s*\"variant\"[^}]*\\}").matcher(json);
+
+		while(object.find()) {
+			String text = object.group();
+			String variant = value(text, "variant").replace("\"", "");
+
+			results.put(variant, new Result(variant, Double.parseDouble(value(text, "trainImagesPerSecond")),
+					Double.parseDouble(value(text, "inferImagesPerSecond")), Double.parseDouble(value(text, "epochMillis")),
+					Long.parseLong(value(text, "peakHeapBytes"))));
+		}
+
+		return results;
+	}
+
+	// Method to get the value of a key of a flat JSON object, as it is written
+	private static String value(String object, String key) {
+
+		Matcher matcher = Pattern.compile("\"" + key + "\"\\s*:\\s*(\"[^\"]*\"|[-0-9.eE+]+)").matcher(object);
+
+		if(!matcher.find()) {
+			throw new IllegalArgumentException("Missing " + key + " in " + object);
+		}
+
+		return matcher.group(1);
+	}
+
+	/**
+	 * Compares results with a baseline, printing the change of every throughput.
+	 *
+	 * @param results The new results.
+	 * @param baseline The baseline results by variant, variants missing from it are not compared.
+	 * @param tolerance Largest fraction a throughput may fall below the baseline.
+	 * @return True if no throughput fell by more than the tolerance.
+	 */
+	static boolean compare(List<Result> results, Map<String, Result> baseline, double tolerance) {
+
+		boolean passed = true;
+
+		for(Result result : results) {
+			Result base = baseline.get(result.variant);
+
+			if(base == null) {
+				System.out.println(result.variant + ": not in the baseline");
+				continue;
+			}
+
+			passed &= compare(result.variant + " training", result.trainImagesPerSecond, base.trainImagesPerSecond, tolerance);
+			passed &= compare(result.variant + " inference", result.inferImagesPerSecond, base.inferImagesPerSecond, tolerance);
+		}
+
+		return passed;
+	}
+
+	// Method to warn about the options a baseline was measured with that differ from this run's, whose throughputs
+	// cannot be compared
+	private static void checkOptions(String baseline, Map<String, String> options) {
+
+		Map<String, String> keys = Map.of("precision", "precision", "threads", "threads", "images", "images",
+				"testImages", "test-images", "epochs", "epochs", "batchSize", "batch");
+
+		for(Map.Entry<String, String> key : keys.entrySet()) {
+			String base = value(baseline, key.getKey()).replace("\"", "");
+
+			if(!base.equals(options.get(key.getValue()))) {
+				System.out.println("Warning: the baseline was measured with --" + key.getValue() + " " + base + ", this run uses "
+						+ options.get(key.getValue()));
+			}
+		}
+	}
+
+	// Method to print the change of one throughput and check it is within the tolerance
+	private static boolean compare(String name, double value, double base, double tolerance) {
+
+		double change = value/base - 1;
+		boolean passed = change >= -tolerance;
+
+		System.out.printf(Locale.ROOT, "%-20s %10.1f images/s, baseline %10.1f, %+6.1f%% %s%n", name, value, base, change*100,
+				passed ? "ok" : "REGRESSION");
+
+		return passed;
+	}
+
+	// Method to read a whole text file
+	private static String readFile(String path) {
+		try {
+			return Files.readString(Path.of(path));
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException("Could not read " + path, e);
+		}
+	}
+
+	/**
+	 * Runs the benchmark, see the usage at the top of the file.
+	 *
+	 * @param args The options, each a --name followed by its value.
+	 */
+	public static void main(String[] args) {
+
+		Map<String, String> options = new HashMap<>(Map.of("variants", String.join(",", VARIANTS), "images", "6000",
+				"test-images", "2000", "epochs", "2", "warmup-epochs", "1", "batch", "32",
+				"threads", Integer.toString(Runtime.getRuntime().availableProcessors()), "precision", "DOUBLE",
+				"tolerance", "0.1"));
+
+		for(int i = 0; i < args.length; i += 2) {
+			String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+
+			if(i + 1 >= args.length || !(options.containsKey(name) || name.equals("output") || name.equals("baseline"))) {
+				System.err.println("Usage: TrainingThroughputBenchmark [--variants " + String.join(",", VARIANTS) + "] [--images 6000]");
+				System.err.println("       [--test-images 2000] [--epochs 2] [--warmup-epochs 1] [--batch 32] [--threads cores]");
+				System.err.println("       [--precision DOUBLE] [--output results.json] [--baseline baseline.json] [--tolerance 0.1]");
+				System.exit(2);
+			}
+
+			options.put(name, args[i + 1]);
+		}
+
+		String baseline = null;
+
+		if(options.containsKey("baseline")) {
+			baseline = readFile(options.get("baseline"));
+
+			// A throughput only compares with one measured on as many threads, so the baseline's count is the default
+			if(!Arrays.asList(args).contains("--threads")) {
+				options.put("threads", value(baseline, "threads"));
+			}
+		}
+
+		List<Result> results = new ArrayList<>();
+
+		for(String variant : options.get("variants").split(",")) {
+			Result result = run(variant.trim(), options);
+			results.add(result);
+
+			System.out.printf(Locale.ROOT, "%-6s training %9.1f images/s, %8.1f ms/epoch, inference %9.1f images/s, peak heap %5.1f MB%n",
+					result.variant, result.trainImagesPerSecond, result.epochMillis, result.inferImagesPerSecond, result.peakHeapBytes/1e6);
+		}
+
+		String json = toJson(results, options);
+
+		try {
+			if(options.containsKey("output")) {
+				Files.writeString(Path.of(options.get("output")), json);
+			}
+			else {
+				System.out.print(json);
+			}
+
+			if(baseline != null) {
+				checkOptions(baseline, options);
+
+				if(!compare(results, parseResults(baseline), Double.parseDouble(options.get("tolerance")))) {
+					System.exit(1);
+				}
+			}
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}